@@ -0,0 +1,171 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.framework.benchmarks;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.launch.Framework;
+import org.osgi.framework.wiring.FrameworkWiring;
+
+/**
+ * Measures installing, resolving, and starting a synthetic bundle set.
+ * Every measurement uses a new framework instance with an empty bundle
+ * cache, so each one is timed as a single shot.
+**/
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class BundleLifecycleBenchmark
+{
+    @State(Scope.Benchmark)
+    public static class BundleSet
+    {
+        @Param({"50", "200"})
+        public int bundleCount;
+
+        File m_dir;
+        List<File> m_files;
+
+        @Setup(Level.Trial)
+        public void setUp() throws Exception
+        {
+            m_dir = SyntheticBundles.createTempDir("felix-bench-bundles");
+            m_files = SyntheticBundles.createChain(m_dir, bundleCount);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown()
+        {
+            SyntheticBundles.deleteDir(m_dir);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class EmptyFramework
+    {
+        File m_storage;
+        Framework m_framework;
+
+        @Setup(Level.Iteration)
+        public void setUp() throws Exception
+        {
+            m_storage = SyntheticBundles.createTempDir("felix-bench-cache");
+            m_framework = SyntheticBundles.startFramework(m_storage);
+        }
+
+        @TearDown(Level.Iteration)
+        public void tearDown() throws Exception
+        {
+            SyntheticBundles.stopFramework(m_framework);
+            SyntheticBundles.deleteDir(m_storage);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class InstalledFramework
+    {
+        File m_storage;
+        Framework m_framework;
+        List<Bundle> m_bundles;
+
+        @Setup(Level.Iteration)
+        public void setUp(BundleSet bundleSet) throws Exception
+        {
+            m_storage = SyntheticBundles.createTempDir("felix-bench-cache");
+            m_framework = SyntheticBundles.startFramework(m_storage);
+            m_bundles = SyntheticBundles.install(
+                m_framework.getBundleContext(), bundleSet.m_files);
+        }
+
+        @TearDown(Level.Iteration)
+        public void tearDown() throws Exception
+        {
+            SyntheticBundles.stopFramework(m_framework);
+            SyntheticBundles.deleteDir(m_storage);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ResolvedFramework
+    {
+        File m_storage;
+        Framework m_framework;
+        List<Bundle> m_bundles;
+
+        @Setup(Level.Iteration)
+        public void setUp(BundleSet bundleSet) throws Exception
+        {
+            m_storage = SyntheticBundles.createTempDir("felix-bench-cache");
+            m_framework = SyntheticBundles.startFramework(m_storage);
+            m_bundles = SyntheticBundles.install(
+                m_framework.getBundleContext(), bundleSet.m_files);
+            if (!m_framework.adapt(FrameworkWiring.class).resolveBundles(m_bundles))
+            {
+                throw new IllegalStateException("Synthetic bundles did not resolve.");
+            }
+        }
+
+        @TearDown(Level.Iteration)
+        public void tearDown() throws Exception
+        {
+            SyntheticBundles.stopFramework(m_framework);
+            SyntheticBundles.deleteDir(m_storage);
+        }
+    }
+
+    @Benchmark
+    public List<Bundle> install(BundleSet bundleSet, EmptyFramework state) throws Exception
+    {
+        return SyntheticBundles.install(
+            state.m_framework.getBundleContext(), bundleSet.m_files);
+    }
+
+    @Benchmark
+    public boolean resolve(InstalledFramework state)
+    {
+        return state.m_framework.adapt(FrameworkWiring.class).resolveBundles(state.m_bundles);
+    }
+
+    @Benchmark
+    public void start(ResolvedFramework state) throws Exception
+    {
+        for (Bundle bundle : state.m_bundles)
+        {
+            bundle.start();
+        }
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.framework.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.felix.framework.capabilityset.CapabilitySet;
+import org.apache.felix.framework.capabilityset.SimpleFilter;
+import org.apache.felix.framework.wiring.BundleCapabilityImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.osgi.framework.Version;
+import org.osgi.framework.namespace.PackageNamespace;
+import org.osgi.framework.wiring.BundleCapability;
+import org.osgi.resource.Capability;
+
+/**
+ * Measures matching package capabilities while other bundles are
+ * installed and uninstalled, i.e. while capabilities are added to and
+ * removed from the same capability set. The matching threads run
+ * concurrently with a thread which repeatedly removes and adds the
+ * capabilities of one bundle, so the <tt>match</tt> results show how much
+ * matching is slowed down by updates of the capability index.
+ * Run the benchmark against different framework versions by overriding
+ * the <tt>felix.framework.version</tt> property of this module.
+**/
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CapabilitySetChurnBenchmark
+{
+    /**
+     * The number of bundles whose exported packages are in the set.
+    **/
+    @Param({"100", "1000"})
+    public int bundles;
+
+    /**
+     * The number of packages each bundle exports.
+    **/
+    @Param({"10"})
+    public int packages;
+
+    private CapabilitySet m_capSet;
+    private List<List<BundleCapability>> m_bundleCaps;
+    private SimpleFilter[] m_filters;
+    private int m_churned;
+
+    @Setup
+    public void setUp()
+    {
+        m_capSet = new CapabilitySet(
+            Collections.singletonList(PackageNamespace.PACKAGE_NAMESPACE), true);
+        m_bundleCaps = new ArrayList<List<BundleCapability>>();
+        List<SimpleFilter> filters = new ArrayList<SimpleFilter>();
+        for (int i = 0; i < bundles; i++)
+        {
+            List<BundleCapability> caps = new ArrayList<BundleCapability>();
+            for (int j = 0; j < packages; j++)
+            {
+                String pkg = "bench.pkg" + i + ".sub" + j;
+                BundleCapability cap = createCapability(pkg);
+                m_capSet.addCapability(cap);
+                caps.add(cap);
+                filters.add(SimpleFilter.parse("(&("
+                    + PackageNamespace.PACKAGE_NAMESPACE + "=" + pkg
+                    + ")(version>=1.0.0))"));
+            }
+            m_bundleCaps.add(caps);
+        }
+        Collections.shuffle(filters);
+        m_filters = filters.toArray(new SimpleFilter[filters.size()]);
+    }
+
+    @Benchmark
+    @Group("churn")
+    @GroupThreads(3)
+    public Set<Capability> match()
+    {
+        return m_capSet.match(
+            m_filters[ThreadLocalRandom.current().nextInt(m_filters.length)], false);
+    }
+
+    @Benchmark
+    @Group("churn")
+    @GroupThreads(1)
+    public void update()
+    {
+        // Uninstall and reinstall the exports of the next bundle.
+        m_churned = (m_churned + 1) % m_bundleCaps.size();
+        List<BundleCapability> caps = m_bundleCaps.get(m_churned);
+        for (BundleCapability cap : caps)
+        {
+            m_capSet.removeCapability(cap);
+        }
+        for (BundleCapability cap : caps)
+        {
+            m_capSet.addCapability(cap);
+        }
+    }
+
+    private static BundleCapability createCapability(String pkg)
+    {
+        Map<String, Object> attrs = new HashMap<String, Object>();
+        attrs.put(PackageNamespace.PACKAGE_NAMESPACE, pkg);
+        attrs.put(PackageNamespace.CAPABILITY_VERSION_ATTRIBUTE, new Version(1, 0, 0));
+        return new BundleCapabilityImpl(
+            null, PackageNamespace.PACKAGE_NAMESPACE,
+            Collections.<String, String>emptyMap(), attrs);
+    }
+}
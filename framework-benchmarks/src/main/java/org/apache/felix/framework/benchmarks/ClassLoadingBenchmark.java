@@ -0,0 +1,125 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.framework.benchmarks;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.launch.Framework;
+
+/**
+ * Measures class loading by the consumer bundle at the end of an import
+ * chain, both for classes of imported packages and for classes that
+ * cannot be found.
+**/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ClassLoadingBenchmark
+{
+    private static final int OPERATIONS = 100;
+
+    @Param({"10", "100"})
+    public int bundleCount;
+
+    private File m_dir;
+    private File m_storage;
+    private Framework m_framework;
+    private Bundle m_consumer;
+    private String[] m_classNames;
+    private String[] m_missingNames;
+
+    @Setup
+    public void setUp() throws Exception
+    {
+        m_dir = SyntheticBundles.createTempDir("felix-bench-bundles");
+        m_storage = SyntheticBundles.createTempDir("felix-bench-cache");
+        m_framework = SyntheticBundles.startFramework(m_storage);
+        List<Bundle> bundles = SyntheticBundles.install(
+            m_framework.getBundleContext(),
+            SyntheticBundles.createChain(m_dir, bundleCount));
+        m_consumer = bundles.get(bundles.size() - 1);
+        m_consumer.start();
+
+        m_classNames = new String[OPERATIONS];
+        m_missingNames = new String[OPERATIONS];
+        for (int i = 0; i < OPERATIONS; i++)
+        {
+            int idx = (i * 7) % bundleCount;
+            m_classNames[i] = SyntheticBundles.className(idx);
+            m_missingNames[i] = SyntheticBundles.packageName(idx) + ".Missing";
+            // Define the classes up front to only measure delegation.
+            m_consumer.loadClass(m_classNames[i]);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws Exception
+    {
+        SyntheticBundles.stopFramework(m_framework);
+        SyntheticBundles.deleteDir(m_storage);
+        SyntheticBundles.deleteDir(m_dir);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(OPERATIONS)
+    public void loadImportedClass(Blackhole bh) throws Exception
+    {
+        for (String className : m_classNames)
+        {
+            bh.consume(m_consumer.loadClass(className));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(OPERATIONS)
+    public void loadMissingClass(Blackhole bh)
+    {
+        for (String className : m_missingNames)
+        {
+            try
+            {
+                bh.consume(m_consumer.loadClass(className));
+            }
+            catch (ClassNotFoundException ex)
+            {
+                bh.consume(ex);
+            }
+        }
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.framework.benchmarks;
+
+import java.io.File;
+import java.io.Serializable;
+import java.util.Hashtable;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceReference;
+import org.osgi.framework.launch.Framework;
+
+/**
+ * Measures <tt>getServiceReferences()</tt> with and without filters on a
+ * framework with many registered services. Services are registered under
+ * a few interfaces, each with a unique <tt>name</tt> property and one of
+ * a few <tt>group</tt> values.
+**/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ServiceLookupBenchmark
+{
+    private static final String[] INTERFACES = {
+        Runnable.class.getName(), Comparable.class.getName(),
+        Cloneable.class.getName(), Serializable.class.getName()
+    };
+
+    @Param({"1000", "10000"})
+    public int serviceCount;
+
+    private File m_storage;
+    private Framework m_framework;
+    private BundleContext m_context;
+    private String m_name;
+
+    @Setup
+    public void setUp() throws Exception
+    {
+        m_storage = SyntheticBundles.createTempDir("felix-bench-cache");
+        m_framework = SyntheticBundles.startFramework(m_storage);
+        m_context = m_framework.getBundleContext();
+        for (int i = 0; i < serviceCount; i++)
+        {
+            Hashtable<String, Object> props = new Hashtable<String, Object>();
+            props.put("name", "service" + i);
+            props.put("group", "group" + (i % 10));
+            m_context.registerService(
+                INTERFACES[i % INTERFACES.length], new SyntheticService(), props);
+        }
+        m_name = "service" + (serviceCount / 2);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception
+    {
+        SyntheticBundles.stopFramework(m_framework);
+        SyntheticBundles.deleteDir(m_storage);
+    }
+
+    @Benchmark
+    public ServiceReference<?>[] byClass() throws Exception
+    {
+        return m_context.getServiceReferences(INTERFACES[0], null);
+    }
+
+    @Benchmark
+    public ServiceReference<?>[] byClassAndProperty() throws Exception
+    {
+        return m_context.getServiceReferences(INTERFACES[0], "(group=group4)");
+    }
+
+    @Benchmark
+    public ServiceReference<?>[] byUniqueProperty() throws Exception
+    {
+        return m_context.getServiceReferences((String) null, "(name=" + m_name + ")");
+    }
+
+    @Benchmark
+    public ServiceReference<?>[] byConjunction() throws Exception
+    {
+        return m_context.getServiceReferences((String) null,
+            "(&(objectClass=" + INTERFACES[1] + ")(group=group3)(name=service1*))");
+    }
+
+    @Benchmark
+    public ServiceReference<?>[] bySubstring() throws Exception
+    {
+        return m_context.getServiceReferences(INTERFACES[3], "(name=*99)");
+    }
+
+    private static class SyntheticService
+        implements Runnable, Comparable<Object>, Cloneable, Serializable
+    {
+        public void run()
+        {
+        }
+
+        public int compareTo(Object o)
+        {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.framework.benchmarks;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.felix.framework.Logger;
+import org.apache.felix.framework.ServiceRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.PrototypeServiceFactory;
+import org.osgi.framework.ServiceReference;
+import org.osgi.framework.ServiceRegistration;
+
+/**
+ * Measures getting and ungetting services through the service registry,
+ * which is dominated by the bookkeeping of service usage counts. The
+ * registry is shared by all benchmark threads, so running with several
+ * threads shows contention on the usage counts of a single bundle.
+ * Run the benchmark against different framework versions by overriding
+ * the <tt>felix.framework.version</tt> property of this module.
+**/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class ServiceUsageBenchmark
+{
+    /**
+     * The number of other services the using bundle holds, which the
+     * registry has to look through to find the usage count of a service.
+    **/
+    @Param({"0", "50"})
+    public int otherServices;
+
+    private ServiceRegistry m_registry;
+    private Bundle m_bundle;
+    private ServiceReference<?> m_singletonRef;
+    private ServiceReference<?> m_prototypeRef;
+
+    @Setup
+    public void setUp()
+    {
+        m_registry = new ServiceRegistry(new Logger(), null);
+        Bundle provider = createBundle(1);
+        m_bundle = createBundle(2);
+
+        m_singletonRef = register(provider, new Runnable()
+        {
+            public void run()
+            {
+            }
+        });
+        m_prototypeRef = register(provider, new PrototypeServiceFactory<Runnable>()
+        {
+            public Runnable getService(Bundle bundle, ServiceRegistration<Runnable> reg)
+            {
+                return new Runnable()
+                {
+                    public void run()
+                    {
+                    }
+                };
+            }
+
+            public void ungetService(Bundle bundle, ServiceRegistration<Runnable> reg,
+                Runnable service)
+            {
+            }
+        });
+
+        // Keep the singleton service in use, like a long lived consumer
+        // does, so that the benchmark measures the steady state.
+        m_registry.getService(m_bundle, m_singletonRef, false);
+        for (int i = 0; i < otherServices; i++)
+        {
+            m_registry.getService(m_bundle, register(provider, new Object()), false);
+        }
+    }
+
+    @Benchmark
+    public Object getUngetSingleton()
+    {
+        Object svc = m_registry.getService(m_bundle, m_singletonRef, false);
+        m_registry.ungetService(m_bundle, m_singletonRef, null);
+        return svc;
+    }
+
+    @Benchmark
+    public Object getUngetPrototype()
+    {
+        Object svc = m_registry.getService(m_bundle, m_prototypeRef, true);
+        m_registry.ungetService(m_bundle, m_prototypeRef, svc);
+        return svc;
+    }
+
+    private ServiceReference<?> register(Bundle bundle, Object svcObj)
+    {
+        String className = (svcObj instanceof Runnable) || (svcObj instanceof PrototypeServiceFactory)
+            ? Runnable.class.getName() : Object.class.getName();
+        return m_registry.registerService(
+            bundle, new String[] { className }, svcObj, null).getReference();
+    }
+
+    static Bundle createBundle(final long id)
+    {
+        return (Bundle) Proxy.newProxyInstance(
+            ServiceUsageBenchmark.class.getClassLoader(), new Class[] { Bundle.class },
+            new InvocationHandler()
+            {
+                public Object invoke(Object proxy, Method method, Object[] args)
+                {
+                    if (method.getName().equals("getBundleId"))
+                    {
+                        return id;
+                    }
+                    else if (method.getName().equals("hashCode"))
+                    {
+                        return (int) id;
+                    }
+                    else if (method.getName().equals("equals"))
+                    {
+                        return proxy == args[0];
+                    }
+                    else if (method.getName().equals("toString"))
+                    {
+                        return "bundle " + id;
+                    }
+                    else if (method.getName().equals("getState"))
+                    {
+                        return Bundle.ACTIVE;
+                    }
+                    return null;
+                }
+            });
+    }
+}
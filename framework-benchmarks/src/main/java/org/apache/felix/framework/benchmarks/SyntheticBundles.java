@@ -0,0 +1,234 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.framework.benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+import org.apache.felix.framework.FrameworkFactory;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.BundleException;
+import org.osgi.framework.Constants;
+import org.osgi.framework.launch.Framework;
+
+/**
+ * Creates synthetic bundle sets and framework instances for the benchmarks.
+ * The bundles form an import chain: bundle <tt>i</tt> exports package
+ * <tt>bench.p&lt;i&gt;</tt>, which uses the package <tt>bench.p&lt;i-1&gt;</tt>
+ * it imports from its predecessor. A consumer bundle at the end of the
+ * chain imports all of the packages.
+**/
+final class SyntheticBundles
+{
+    static final String CONSUMER = "bench.consumer";
+
+    private SyntheticBundles()
+    {
+    }
+
+    static String packageName(int i)
+    {
+        return "bench.p" + i;
+    }
+
+    static String className(int i)
+    {
+        return packageName(i) + ".C" + i;
+    }
+
+    /**
+     * Writes the bundles of an import chain of the specified length, followed
+     * by the consumer bundle, into the specified directory.
+     * @param dir the directory for the bundle JAR files.
+     * @param count the number of bundles in the chain.
+     * @return the bundle JAR files, the consumer bundle being the last one.
+    **/
+    static List<File> createChain(File dir, int count) throws IOException
+    {
+        List<File> files = new ArrayList<File>();
+        StringBuilder imports = new StringBuilder();
+        for (int i = 0; i < count; i++)
+        {
+            Manifest mf = createManifest("bench.chain." + i);
+            Attributes attrs = mf.getMainAttributes();
+            String exports = packageName(i) + ";version=1.0.0";
+            if (i > 0)
+            {
+                exports += ";uses:=\"" + packageName(i - 1) + "\"";
+                attrs.putValue(Constants.IMPORT_PACKAGE,
+                    packageName(i - 1) + ";version=\"[1.0,2.0)\"");
+            }
+            attrs.putValue(Constants.EXPORT_PACKAGE, exports);
+            files.add(writeBundle(new File(dir, "chain-" + i + ".jar"), mf, className(i)));
+
+            if (i > 0)
+            {
+                imports.append(',');
+            }
+            imports.append(packageName(i));
+        }
+
+        Manifest mf = createManifest(CONSUMER);
+        if (count > 0)
+        {
+            mf.getMainAttributes().putValue(Constants.IMPORT_PACKAGE, imports.toString());
+        }
+        files.add(writeBundle(new File(dir, "consumer.jar"), mf, null));
+        return files;
+    }
+
+    static List<Bundle> install(BundleContext context, List<File> files)
+        throws BundleException
+    {
+        List<Bundle> bundles = new ArrayList<Bundle>();
+        for (File file : files)
+        {
+            bundles.add(context.installBundle(file.toURI().toString()));
+        }
+        return bundles;
+    }
+
+    /**
+     * Starts a framework instance with an empty bundle cache in the
+     * specified directory.
+    **/
+    static Framework startFramework(File storage) throws BundleException
+    {
+        Map<String, String> config = new HashMap<String, String>();
+        config.put(Constants.FRAMEWORK_STORAGE, storage.getAbsolutePath());
+        config.put(Constants.FRAMEWORK_STORAGE_CLEAN,
+            Constants.FRAMEWORK_STORAGE_CLEAN_ONFIRSTINIT);
+        config.put("felix.service.urlhandlers", "false");
+        config.put("felix.log.level", "1");
+        Framework framework = new FrameworkFactory().newFramework(config);
+        framework.start();
+        return framework;
+    }
+
+    static void stopFramework(Framework framework) throws Exception
+    {
+        if (framework != null)
+        {
+            framework.stop();
+            framework.waitForStop(0);
+        }
+    }
+
+    static File createTempDir(String prefix) throws IOException
+    {
+        File dir = File.createTempFile(prefix, ".dir");
+        dir.delete();
+        if (!dir.mkdirs())
+        {
+            throw new IOException("Unable to create " + dir);
+        }
+        return dir;
+    }
+
+    static void deleteDir(File dir)
+    {
+        File[] files = dir.listFiles();
+        if (files != null)
+        {
+            for (File file : files)
+            {
+                deleteDir(file);
+            }
+        }
+        dir.delete();
+    }
+
+    private static Manifest createManifest(String symbolicName)
+    {
+        Manifest mf = new Manifest();
+        Attributes attrs = mf.getMainAttributes();
+        attrs.put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        attrs.putValue(Constants.BUNDLE_MANIFESTVERSION, "2");
+        attrs.putValue(Constants.BUNDLE_SYMBOLICNAME, symbolicName);
+        attrs.putValue(Constants.BUNDLE_VERSION, "1.0.0");
+        return mf;
+    }
+
+    private static File writeBundle(File file, Manifest mf, String className)
+        throws IOException
+    {
+        JarOutputStream jos = new JarOutputStream(new FileOutputStream(file), mf);
+        try
+        {
+            if (className != null)
+            {
+                jos.putNextEntry(new JarEntry(className.replace('.', '/') + ".class"));
+                jos.write(createClass(className));
+                jos.closeEntry();
+            }
+        }
+        finally
+        {
+            jos.close();
+        }
+        return file;
+    }
+
+    /**
+     * Creates the byte code of an empty public class without methods, which
+     * can be loaded, but not instantiated.
+    **/
+    private static byte[] createClass(String className) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0xCAFEBABE);
+        // Class file version 50.0, which does not require stack map frames.
+        out.writeShort(0);
+        out.writeShort(50);
+        // Constant pool with the names of this class and its super class.
+        out.writeShort(5);
+        out.writeByte(1);
+        out.writeUTF(className.replace('.', '/'));
+        out.writeByte(7);
+        out.writeShort(1);
+        out.writeByte(1);
+        out.writeUTF("java/lang/Object");
+        out.writeByte(7);
+        out.writeShort(3);
+        // ACC_PUBLIC | ACC_SUPER, this class, super class.
+        out.writeShort(0x0021);
+        out.writeShort(2);
+        out.writeShort(4);
+        // No interfaces, fields, methods, or attributes.
+        out.writeShort(0);
+        out.writeShort(0);
+        out.writeShort(0);
+        out.writeShort(0);
+        out.close();
+        return bytes.toByteArray();
+    }
+}
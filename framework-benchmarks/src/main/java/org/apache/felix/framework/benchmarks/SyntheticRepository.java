@@ -0,0 +1,318 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.framework.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.osgi.framework.namespace.IdentityNamespace;
+import org.osgi.framework.namespace.PackageNamespace;
+import org.osgi.resource.Capability;
+import org.osgi.resource.Namespace;
+import org.osgi.resource.Requirement;
+import org.osgi.resource.Resource;
+import org.osgi.resource.Wiring;
+import org.osgi.service.resolver.HostedCapability;
+import org.osgi.service.resolver.ResolveContext;
+
+/**
+ * Creates synthetic resource repositories for the resolver benchmarks.
+ * Resource <tt>i</tt> exports package <tt>bench.p&lt;i&gt;</tt>, imports
+ * up to three packages of lower numbered resources and uses the package of
+ * resource <tt>i/2</tt>, so uses chains stay logarithmic in length.
+ * When requested, every hundredth package in the upper half, which no
+ * uses constraint refers to, also has an alternative provider that every
+ * tenth importer prefers, so the resolver has to track several candidates
+ * for those requirements.
+**/
+final class SyntheticRepository
+{
+    private SyntheticRepository()
+    {
+    }
+
+    /**
+     * Creates a resolve context for a new repository of the specified size.
+     * @param count the number of resources exporting a package.
+     * @param alternatives whether packages may have alternative providers.
+     * @return a resolve context with all resources as mandatory resources.
+    **/
+    static ResolveContext create(int count, boolean alternatives)
+    {
+        List<Resource> resources = new ArrayList<Resource>();
+        Map<String, List<Capability>> exporters = new HashMap<String, List<Capability>>();
+        for (int i = 0; i < count; i++)
+        {
+            SyntheticResource resource = new SyntheticResource("bench.r" + i);
+            Set<String> imports = new LinkedHashSet<String>();
+            if (i > 0)
+            {
+                imports.add(packageName(i - 1));
+                imports.add(packageName(i / 2));
+                imports.add(packageName((i * 7) % i));
+            }
+            for (String pkg : imports)
+            {
+                // Every tenth importer prefers the alternative provider.
+                resource.addRequirement(pkg, (i % 10) == 0);
+            }
+            add(exporters, resource.addCapability(packageName(i),
+                i > 0 ? packageName(i / 2) : ""));
+            resources.add(resource);
+
+            if (alternatives && (i >= count / 2) && (i % 100 == 0))
+            {
+                SyntheticResource alternative = new SyntheticResource("bench.alt" + i);
+                add(exporters, alternative.addCapability(packageName(i), ""));
+                resources.add(alternative);
+            }
+        }
+        return new SyntheticContext(resources, exporters);
+    }
+
+    static String packageName(int i)
+    {
+        return "bench.p" + i;
+    }
+
+    private static void add(Map<String, List<Capability>> exporters, Capability cap)
+    {
+        String pkg = (String) cap.getAttributes().get(PackageNamespace.PACKAGE_NAMESPACE);
+        List<Capability> caps = exporters.get(pkg);
+        if (caps == null)
+        {
+            caps = new ArrayList<Capability>();
+            exporters.put(pkg, caps);
+        }
+        caps.add(cap);
+    }
+
+    private static class SyntheticContext extends ResolveContext
+    {
+        private final List<Resource> m_resources;
+        private final Map<String, List<Capability>> m_exporters;
+
+        SyntheticContext(List<Resource> resources, Map<String, List<Capability>> exporters)
+        {
+            m_resources = resources;
+            m_exporters = exporters;
+        }
+
+        @Override
+        public Collection<Resource> getMandatoryResources()
+        {
+            return m_resources;
+        }
+
+        @Override
+        public List<Capability> findProviders(Requirement requirement)
+        {
+            List<Capability> caps = m_exporters.get(
+                ((SyntheticRequirement) requirement).m_pkg);
+            if (caps == null)
+            {
+                return new ArrayList<Capability>();
+            }
+            List<Capability> result = new ArrayList<Capability>(caps);
+            if (((SyntheticRequirement) requirement).m_preferAlternative)
+            {
+                Collections.reverse(result);
+            }
+            return result;
+        }
+
+        @Override
+        public int insertHostedCapability(List<Capability> capabilities, HostedCapability hostedCapability)
+        {
+            capabilities.add(hostedCapability);
+            return capabilities.size() - 1;
+        }
+
+        @Override
+        public boolean isEffective(Requirement requirement)
+        {
+            return true;
+        }
+
+        @Override
+        public Map<Resource, Wiring> getWirings()
+        {
+            return Collections.emptyMap();
+        }
+    }
+
+    private static class SyntheticResource implements Resource
+    {
+        private final String m_name;
+        private final List<Capability> m_caps = new ArrayList<Capability>();
+        private final List<Requirement> m_reqs = new ArrayList<Requirement>();
+
+        SyntheticResource(String name)
+        {
+            m_name = name;
+            m_caps.add(new SyntheticCapability(this, IdentityNamespace.IDENTITY_NAMESPACE,
+                Collections.<String, Object>singletonMap(IdentityNamespace.IDENTITY_NAMESPACE, name),
+                Collections.<String, String>emptyMap()));
+        }
+
+        Capability addCapability(String pkg, String uses)
+        {
+            Capability cap = new SyntheticCapability(this, PackageNamespace.PACKAGE_NAMESPACE,
+                Collections.<String, Object>singletonMap(PackageNamespace.PACKAGE_NAMESPACE, pkg),
+                uses.length() == 0
+                    ? Collections.<String, String>emptyMap()
+                    : Collections.singletonMap(Namespace.CAPABILITY_USES_DIRECTIVE, uses));
+            m_caps.add(cap);
+            return cap;
+        }
+
+        void addRequirement(String pkg, boolean preferAlternative)
+        {
+            m_reqs.add(new SyntheticRequirement(this, pkg, preferAlternative));
+        }
+
+        public List<Capability> getCapabilities(String namespace)
+        {
+            return filter(m_caps, namespace);
+        }
+
+        public List<Requirement> getRequirements(String namespace)
+        {
+            return filter(m_reqs, namespace);
+        }
+
+        @Override
+        public String toString()
+        {
+            return m_name;
+        }
+    }
+
+    private static <T> List<T> filter(List<T> list, String namespace)
+    {
+        if (namespace == null)
+        {
+            return list;
+        }
+        List<T> result = new ArrayList<T>();
+        for (T t : list)
+        {
+            String ns = (t instanceof Capability)
+                ? ((Capability) t).getNamespace()
+                : ((Requirement) t).getNamespace();
+            if (namespace.equals(ns))
+            {
+                result.add(t);
+            }
+        }
+        return result;
+    }
+
+    private static class SyntheticCapability implements Capability
+    {
+        private final Resource m_resource;
+        private final String m_namespace;
+        private final Map<String, Object> m_attrs;
+        private final Map<String, String> m_dirs;
+
+        SyntheticCapability(Resource resource, String namespace,
+            Map<String, Object> attrs, Map<String, String> dirs)
+        {
+            m_resource = resource;
+            m_namespace = namespace;
+            m_attrs = attrs;
+            m_dirs = dirs;
+        }
+
+        public String getNamespace()
+        {
+            return m_namespace;
+        }
+
+        public Map<String, String> getDirectives()
+        {
+            return m_dirs;
+        }
+
+        public Map<String, Object> getAttributes()
+        {
+            return m_attrs;
+        }
+
+        public Resource getResource()
+        {
+            return m_resource;
+        }
+
+        @Override
+        public String toString()
+        {
+            return m_resource + ":" + m_attrs;
+        }
+    }
+
+    private static class SyntheticRequirement implements Requirement
+    {
+        private final Resource m_resource;
+        private final String m_pkg;
+        private final boolean m_preferAlternative;
+        private final Map<String, String> m_dirs;
+
+        SyntheticRequirement(Resource resource, String pkg, boolean preferAlternative)
+        {
+            m_resource = resource;
+            m_pkg = pkg;
+            m_preferAlternative = preferAlternative;
+            m_dirs = Collections.singletonMap(Namespace.REQUIREMENT_FILTER_DIRECTIVE,
+                "(" + PackageNamespace.PACKAGE_NAMESPACE + "=" + pkg + ")");
+        }
+
+        public String getNamespace()
+        {
+            return PackageNamespace.PACKAGE_NAMESPACE;
+        }
+
+        public Map<String, String> getDirectives()
+        {
+            return m_dirs;
+        }
+
+        public Map<String, Object> getAttributes()
+        {
+            return Collections.emptyMap();
+        }
+
+        public Resource getResource()
+        {
+            return m_resource;
+        }
+
+        @Override
+        public String toString()
+        {
+            return m_resource + ":" + m_pkg;
+        }
+    }
+}
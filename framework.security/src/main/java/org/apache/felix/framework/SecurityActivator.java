@@ -201,8 +201,17 @@ public final class SecurityActivator implements BundleActivator
                     "Each CACerts keystore must have one type and one passwd entry and vice versa.");
             }
 
+            File signers = context.getDataFile("security" + File.separator
+                + "signers");
+            if ((signers != null) && !signers.isDirectory()
+                && !signers.mkdirs())
+            {
+                signers = null;
+            }
+
             SecurityProvider provider = new SecurityProviderImpl(crlList,
-                typeList, passwdList, storeList, pai, cpai, action, ((Felix) context.getBundle(0)).getLogger());
+                typeList, passwdList, storeList, pai, cpai, signers, action,
+                ((Felix) context.getBundle(0)).getLogger());
 
             ((Felix) context.getBundle(0)).setSecurityProvider(provider);
         }
@@ -18,6 +18,7 @@
  */
 package org.apache.felix.framework;
 
+import java.io.File;
 import java.security.Permission;
 import java.security.ProtectionDomain;
 
@@ -45,13 +46,14 @@ public final class SecurityProviderImpl implements SecurityProvider
 
     SecurityProviderImpl(String crlList, String typeList, String passwdList,
         String storeList, PermissionAdminImpl pai,
-        ConditionalPermissionAdminImpl cpai, SecureAction action, Logger logger)
+        ConditionalPermissionAdminImpl cpai, File signers, SecureAction action,
+        Logger logger)
     {
         m_pai = pai;
         m_cpai = cpai;
         m_action = action;
         m_parser = new BundleDNParser(new TrustManager(crlList, typeList,
-            passwdList, storeList, m_action), logger);
+            passwdList, storeList, m_action), signers, m_action, logger);
     }
 
     /**
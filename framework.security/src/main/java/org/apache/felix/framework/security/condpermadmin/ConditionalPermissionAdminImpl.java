@@ -219,6 +219,8 @@ public final class ConditionalPermissionAdminImpl implements
     private final Conditions m_conditions;
     private final LocalPermissions m_localPermissions;
     private final PermissionAdminImpl m_pai;
+    private final PermissionDecisionCache m_decisions = new PermissionDecisionCache(
+        PermissionDecisionCache.DEFAULT_MAX_SIZE);
 
     public ConditionalPermissionAdminImpl(Permissions permissions,
         Conditions condtions, LocalPermissions localPermissions,
@@ -267,6 +269,8 @@ public final class ConditionalPermissionAdminImpl implements
 
             synchronized (m_condPermInfos)
             {
+                m_decisions.invalidate();
+
                 tmp = new OrderedHashMap();
                 tmp.putAll(m_condPermInfos);
 
@@ -294,6 +298,7 @@ public final class ConditionalPermissionAdminImpl implements
                 {
                     if (tmp != null)
                     {
+                        m_decisions.invalidate();
                         m_condPermInfos.clear();
                         m_condPermInfos.putAll(tmp);
                     }
@@ -511,7 +516,7 @@ public final class ConditionalPermissionAdminImpl implements
                 {
                     return result.booleanValue();
                 }
-                if (eval(posts, new BundleRevisionImpl(fake, Long.toString(fake.getBundleId())), permission, m_pai))
+                if (eval(posts, new BundleRevisionImpl(fake, Long.toString(fake.getBundleId())), permission, m_pai, null))
                 {
                     if (!posts.isEmpty())
                     {
@@ -715,7 +720,30 @@ public final class ConditionalPermissionAdminImpl implements
 
         List posts = new ArrayList();
 
-        boolean result = eval(posts, module, permission, admin);
+        boolean result;
+
+        // Decisions are only cached for the permission admin of the security
+        // provider, which is the only one that calls us. Checks triggered
+        // while conditions are evaluated bypass the cache, since the
+        // conditions deny them to break the recursion.
+        boolean cache = (admin == m_pai) && !Conditions.isEvaluating();
+        Boolean cached = cache ? m_decisions.get(module, permission) : null;
+        if (cached != null)
+        {
+            result = cached.booleanValue();
+        }
+        else
+        {
+            long generation = m_decisions.getGeneration();
+            boolean[] immutable = cache ? new boolean[] { true } : null;
+
+            result = eval(posts, module, permission, admin, immutable);
+
+            if ((immutable != null) && immutable[0] && posts.isEmpty())
+            {
+                m_decisions.put(module, permission, result, generation);
+            }
+        }
 
         domains.remove(pd);
 
@@ -754,6 +782,15 @@ public final class ConditionalPermissionAdminImpl implements
         return m_localPermissions.implies(content, felixBundle, permission);
     }
 
+    /**
+     * Returns the cache of permission decisions, e.g., to report its hit
+     * rate.
+     */
+    public PermissionDecisionCache getDecisionCache()
+    {
+        return m_decisions;
+    }
+
     public boolean isEmpty()
     {
         synchronized (m_condPermInfos)
@@ -766,9 +803,11 @@ public final class ConditionalPermissionAdminImpl implements
     // de note the permission in question unless the conditions are postponed
     // then we make sure their permissions imply the permission and add them
     // to the list of posts. Return true in case we pass or have posts
-    // else falls and clear the posts first.
+    // else falls and clear the posts first. If given, the first element of
+    // immutable is set to false in case the decision depends on a mutable
+    // condition.
     private boolean eval(List posts, BundleRevisionImpl module, Permission permission,
-        Object admin)
+        Object admin, boolean[] immutable)
     {
         List condPermInfos = null;
 
@@ -800,8 +839,13 @@ public final class ConditionalPermissionAdminImpl implements
             List currentPosts = new ArrayList();
 
             Conditions conds = m_conditions.getConditions(module, conditions);
-            if (!conds.isSatisfied(currentPosts, m_permissions
-                .getPermissions(cpi._getPermissionInfos()), permission))
+            boolean satisfied = conds.isSatisfied(currentPosts, m_permissions
+                .getPermissions(cpi._getPermissionInfos()), permission);
+            if ((immutable != null) && !conds.isImmutable())
+            {
+                immutable[0] = false;
+            }
+            if (!satisfied)
             {
                 continue;
             }
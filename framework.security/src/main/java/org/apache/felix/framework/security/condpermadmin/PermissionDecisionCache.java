@@ -0,0 +1,204 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.framework.security.condpermadmin;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.security.Permission;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.felix.framework.BundleRevisionImpl;
+
+/**
+ * This class caches the decisions of the conditional permission admin per
+ * bundle revision, i.e., per bundle protection domain, and permission.
+ * Lookups don't lock. Only decisions that neither depend on postponed nor on
+ * mutable conditions are cached, as those may change without notice. All
+ * decisions are invalidated whenever the conditional permission table
+ * changes. Revisions are only weakly referenced and once the cache exceeds
+ * its maximum size it is cleared, as permissions may be created with
+ * arbitrary targets.
+ */
+public final class PermissionDecisionCache
+{
+    static final int DEFAULT_MAX_SIZE = 4096;
+
+    private final ConcurrentMap m_decisions = new ConcurrentHashMap();
+    private final ReferenceQueue m_queue = new ReferenceQueue();
+    private final AtomicLong m_generation = new AtomicLong();
+    private final AtomicLong m_hits = new AtomicLong();
+    private final AtomicLong m_misses = new AtomicLong();
+    private final int m_maxSize;
+
+    PermissionDecisionCache(int maxSize)
+    {
+        m_maxSize = maxSize;
+    }
+
+    /**
+     * Returns the cached decision or <tt>null</tt> if there is none.
+     */
+    Boolean get(BundleRevisionImpl revision, Permission permission)
+    {
+        Boolean result = (Boolean) m_decisions.get(new Key(revision,
+            permission, null));
+        if (result != null)
+        {
+            m_hits.incrementAndGet();
+        }
+        else
+        {
+            m_misses.incrementAndGet();
+        }
+        return result;
+    }
+
+    /**
+     * Returns the current generation, which has to be obtained before the
+     * decision is made that is passed to {@link #put}.
+     */
+    long getGeneration()
+    {
+        return m_generation.get();
+    }
+
+    /**
+     * Caches the given decision unless the cache was invalidated since the
+     * given generation was obtained.
+     */
+    void put(BundleRevisionImpl revision, Permission permission,
+        boolean decision, long generation)
+    {
+        for (Object ref = m_queue.poll(); ref != null; ref = m_queue.poll())
+        {
+            m_decisions.remove(((KeyReference) ref).m_key);
+        }
+        if (m_decisions.size() >= m_maxSize)
+        {
+            m_decisions.clear();
+        }
+        Key key = new Key(revision, permission, m_queue);
+        m_decisions.put(key, Boolean.valueOf(decision));
+        // An invalidation may have raced with the decision.
+        if (m_generation.get() != generation)
+        {
+            m_decisions.remove(key);
+        }
+    }
+
+    /**
+     * Discards all cached decisions.
+     */
+    void invalidate()
+    {
+        m_generation.incrementAndGet();
+        m_decisions.clear();
+    }
+
+    /**
+     * Returns the number of permission checks answered by this cache.
+     */
+    public long getHitCount()
+    {
+        return m_hits.get();
+    }
+
+    /**
+     * Returns the number of permission checks not answered by this cache.
+     */
+    public long getMissCount()
+    {
+        return m_misses.get();
+    }
+
+    /**
+     * Returns the number of currently cached decisions.
+     */
+    public int size()
+    {
+        return m_decisions.size();
+    }
+
+    private static final class KeyReference extends WeakReference
+    {
+        private Key m_key;
+
+        KeyReference(BundleRevisionImpl revision, ReferenceQueue queue)
+        {
+            super(revision, queue);
+        }
+    }
+
+    private static final class Key
+    {
+        private final Object m_revision;
+        private final Permission m_permission;
+        private final int m_hashCode;
+
+        Key(BundleRevisionImpl revision, Permission permission,
+            ReferenceQueue queue)
+        {
+            // Lookup keys reference the revision directly, stored keys only
+            // weakly so cached decisions don't keep revisions alive.
+            if (queue != null)
+            {
+                KeyReference ref = new KeyReference(revision, queue);
+                ref.m_key = this;
+                m_revision = ref;
+            }
+            else
+            {
+                m_revision = revision;
+            }
+            m_permission = permission;
+            m_hashCode = System.identityHashCode(revision) * 31
+                + permission.hashCode();
+        }
+
+        private Object getRevision()
+        {
+            return (m_revision instanceof KeyReference) ? ((KeyReference) m_revision)
+                .get() : m_revision;
+        }
+
+        public boolean equals(Object o)
+        {
+            if (o == this)
+            {
+                return true;
+            }
+            if (!(o instanceof Key))
+            {
+                return false;
+            }
+            Key other = (Key) o;
+            Object revision = getRevision();
+            return (m_hashCode == other.m_hashCode) && (revision != null)
+                && (revision == other.getRevision())
+                && m_permission.equals(other.m_permission);
+        }
+
+        public int hashCode()
+        {
+            return m_hashCode;
+        }
+    }
+}
@@ -264,6 +264,46 @@ public final class Conditions
         return true;
     }
 
+    // Whether conditions are evaluated on the current thread, i.e., whether
+    // this is a permission check triggered by a condition. Such checks are
+    // denied if they need a condition of a type that is being evaluated,
+    // even if it is satisfied, so their outcome is not final.
+    public static boolean isEvaluating()
+    {
+        return m_conditionStack.get() != null;
+    }
+
+    // Whether the outcome of the last isSatisfied call can't change anymore,
+    // i.e., all conditions it evaluated turned out to be immutable. The
+    // conditions are evaluated in order and the first unsatisfied one ends
+    // the evaluation.
+    public boolean isImmutable()
+    {
+        if (m_conditionInfos == null)
+        {
+            return true;
+        }
+        if (m_module == null)
+        {
+            return false;
+        }
+        synchronized (m_conditions)
+        {
+            for (int i = 0; i < m_conditions.length; i++)
+            {
+                if (m_conditions[i] == Condition.FALSE)
+                {
+                    return true;
+                }
+                if (m_conditions[i] != Condition.TRUE)
+                {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
     public boolean evalRecursive(List entries)
     {
         Map contexts = new HashMap();
@@ -18,6 +18,7 @@
  */
 package org.apache.felix.framework.security.verifier;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.lang.reflect.Method;
@@ -38,6 +39,7 @@ import org.apache.felix.framework.BundleRevisionImpl;
 import org.apache.felix.framework.Logger;
 import org.apache.felix.framework.security.util.BundleInputStream;
 import org.apache.felix.framework.security.util.TrustManager;
+import org.apache.felix.framework.util.SecureAction;
 /*
 import org.apache.felix.moduleloader.IContent;
 import org.apache.felix.moduleloader.IModule;
@@ -84,11 +86,25 @@ public final class BundleDNParser
     private final Map m_allCache = new WeakHashMap();
 
     private final TrustManager m_manager;
+    private final SignerChainStore m_store;
 
     public BundleDNParser(TrustManager manager, Logger logger)
+    {
+        this(manager, null, null, logger);
+    }
+
+    /**
+     * Creates a parser that persists the verified signer chains of signed
+     * bundle contents in the given directory, so that they don't have to
+     * be verified again after a restart.
+     */
+    public BundleDNParser(TrustManager manager, File store,
+        SecureAction action, Logger logger)
     {
         m_manager = manager;
         m_logger = logger;
+        m_store = (store != null) ? new SignerChainStore(store, manager,
+            action, logger) : null;
     }
 
     public Map getCache()
@@ -235,6 +251,18 @@ public final class BundleDNParser
     private Map _getDNChains(Content content, boolean check)
         throws IOException
     {
+        String key = (m_store != null) ? m_store.getKey(content) : null;
+
+        if (key != null)
+        {
+            List stored = m_store.load(key, check);
+
+            if ((stored != null) && (!check || isValid(stored)))
+            {
+                return toResult(stored);
+            }
+        }
+
         X509Certificate[] certificates = null;
 
         certificates = getCertificates(new BundleInputStream(content), check);
@@ -248,6 +276,22 @@ public final class BundleDNParser
 
         getRootChains(certificates, rootChains, check);
 
+        Map result = toResult(rootChains);
+
+        if (result != null)
+        {
+            if (key != null)
+            {
+                m_store.store(key, check, rootChains);
+            }
+            return result;
+        }
+
+        throw new IOException();
+    }
+
+    private Map toResult(List rootChains)
+    {
         Map result = new HashMap();
 
         for (Iterator rootIter = rootChains.iterator(); rootIter.hasNext();)
@@ -263,12 +307,44 @@ public final class BundleDNParser
             result.put(current, chain);
         }
 
-        if (!result.isEmpty())
+        return result.isEmpty() ? null : result;
+    }
+
+    // Stored chains were trusted when they were verified, but their
+    // certificates may have expired since.
+    private boolean isValid(List rootChains)
+    {
+        for (Iterator iter = rootChains.iterator(); iter.hasNext();)
         {
-            return result;
+            List chain = (List) iter.next();
+
+            for (Iterator iter2 = chain.iterator(); iter2.hasNext();)
+            {
+                X509Certificate certificate = (X509Certificate) iter2.next();
+
+                try
+                {
+                    certificate.checkValidity();
+                }
+                catch (CertificateException ex)
+                {
+                    return false;
+                }
+
+                if (isRevoked(certificate))
+                {
+                    return false;
+                }
+            }
+
+            if (chain.isEmpty()
+                || !trusted((X509Certificate) chain.get(chain.size() - 1)))
+            {
+                return false;
+            }
         }
 
-        throw new IOException();
+        return true;
     }
 
     private X509Certificate[] getCertificates(InputStream input, boolean check)
@@ -0,0 +1,349 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.framework.security.verifier;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.cert.CRL;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509CRL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.felix.framework.Logger;
+import org.apache.felix.framework.cache.Content;
+import org.apache.felix.framework.cache.JarContent;
+import org.apache.felix.framework.security.util.TrustManager;
+import org.apache.felix.framework.util.SecureAction;
+
+/**
+ * This class persists verified signer chains of bundle contents across
+ * framework restarts. Chains are stored in one file per content, named by
+ * a digest of the location, length, and modification time of the JAR file
+ * and of its signature files, inside a directory named by a digest of the
+ * trusted CA certificates and CRLs. Hence, a changed content or trust store
+ * never matches a stored chain and the directories of previous trust stores
+ * are removed on first use. Only signed JAR files are stored, unsigned ones
+ * are recognized by their entry names alone.
+ */
+final class SignerChainStore
+{
+    private static final String DIGEST_ALGORITHM = "SHA-256";
+
+    private final File m_root;
+    private final TrustManager m_manager;
+    private final SecureAction m_action;
+    private final Logger m_logger;
+    private File m_dir = null;
+
+    SignerChainStore(File root, TrustManager manager, SecureAction action,
+        Logger logger)
+    {
+        m_root = root;
+        m_manager = manager;
+        m_action = action;
+        m_logger = logger;
+    }
+
+    /**
+     * Returns the key of the given content or <tt>null</tt> if the content
+     * is not a signed JAR file or can not be read. The key is a digest of
+     * the path, length, and modification time of the JAR file as well as of
+     * its signature files and signature blocks, so computing it does not
+     * read the other entries of the content.
+     */
+    String getKey(Content content)
+    {
+        if (!(content instanceof JarContent))
+        {
+            return null;
+        }
+        File file = ((JarContent) content).getFile();
+        List entries = new ArrayList();
+        boolean signed = false;
+        for (Enumeration e = content.getEntries(); (e != null)
+            && e.hasMoreElements();)
+        {
+            String entry = (String) e.nextElement();
+            String upper = entry.toUpperCase();
+            if (upper.startsWith("META-INF/")
+                && (entry.indexOf('/', "META-INF/".length()) < 0))
+            {
+                if (upper.endsWith(".SF"))
+                {
+                    signed = true;
+                    entries.add(entry);
+                }
+                else if (upper.endsWith(".RSA") || upper.endsWith(".DSA")
+                    || upper.endsWith(".EC"))
+                {
+                    entries.add(entry);
+                }
+            }
+        }
+        if (!signed)
+        {
+            return null;
+        }
+        // The order of entries must not change the key.
+        Collections.sort(entries);
+
+        try
+        {
+            MessageDigest digest = MessageDigest.getInstance(DIGEST_ALGORITHM);
+            digest.update((m_action.getAbsolutePath(file) + '\0'
+                + file.length() + '\0' + file.lastModified()).getBytes("UTF-8"));
+            byte[] buffer = new byte[4 * 1024];
+            for (Iterator iter = entries.iterator(); iter.hasNext();)
+            {
+                String entry = (String) iter.next();
+                digest.update((byte) 0);
+                digest.update(entry.getBytes("UTF-8"));
+                digest.update((byte) 0);
+                InputStream in = content.getEntryAsStream(entry);
+                if (in == null)
+                {
+                    return null;
+                }
+                try
+                {
+                    for (int c = in.read(buffer); c != -1; c = in.read(buffer))
+                    {
+                        digest.update(buffer, 0, c);
+                    }
+                }
+                finally
+                {
+                    in.close();
+                }
+            }
+            return toHex(digest.digest());
+        }
+        catch (Exception ex)
+        {
+            m_logger.log(Logger.LOG_DEBUG, "Unable to digest bundle content", ex);
+            return null;
+        }
+    }
+
+    /**
+     * Returns the stored chains of the content with the given key as a
+     * list of certificate lists or <tt>null</tt> if none are stored.
+     */
+    List load(String key, boolean check)
+    {
+        File dir = getDirectory();
+        if (dir == null)
+        {
+            return null;
+        }
+        File file = new File(dir, key + (check ? ".trusted" : ".all"));
+        if (!m_action.fileExists(file))
+        {
+            return null;
+        }
+        DataInputStream in = null;
+        try
+        {
+            in = new DataInputStream(new BufferedInputStream(
+                m_action.getFileInputStream(file)));
+            CertificateFactory factory = CertificateFactory.getInstance("X509");
+            List chains = new ArrayList();
+            for (int i = in.readInt(); i > 0; i--)
+            {
+                List chain = new ArrayList();
+                for (int j = in.readInt(); j > 0; j--)
+                {
+                    byte[] encoded = new byte[in.readInt()];
+                    in.readFully(encoded);
+                    chain.add(factory.generateCertificate(
+                        new ByteArrayInputStream(encoded)));
+                }
+                chains.add(chain);
+            }
+            return chains;
+        }
+        catch (Exception ex)
+        {
+            m_logger.log(Logger.LOG_WARNING,
+                "Ignoring corrupt signer chain cache file " + file, ex);
+            m_action.deleteFile(file);
+            return null;
+        }
+        finally
+        {
+            close(in);
+        }
+    }
+
+    /**
+     * Stores the given chains, a collection of certificate lists, of the
+     * content with the given key. Failures are logged and ignored, as the
+     * chains are only cached.
+     */
+    void store(String key, boolean check, List chains)
+    {
+        File dir = getDirectory();
+        if (dir == null)
+        {
+            return;
+        }
+        File file = new File(dir, key + (check ? ".trusted" : ".all"));
+        File tmp = null;
+        DataOutputStream out = null;
+        try
+        {
+            tmp = m_action.createTempFile("tmp", null, dir);
+            out = new DataOutputStream(new BufferedOutputStream(
+                m_action.getFileOutputStream(tmp)));
+            out.writeInt(chains.size());
+            for (Iterator iter = chains.iterator(); iter.hasNext();)
+            {
+                List chain = (List) iter.next();
+                out.writeInt(chain.size());
+                for (Iterator iter2 = chain.iterator(); iter2.hasNext();)
+                {
+                    byte[] encoded = ((Certificate) iter2.next()).getEncoded();
+                    out.writeInt(encoded.length);
+                    out.write(encoded);
+                }
+            }
+            out.close();
+            out = null;
+            if (!m_action.renameFile(tmp, file))
+            {
+                throw new IOException("Unable to rename " + tmp + " to " + file);
+            }
+            tmp = null;
+        }
+        catch (Exception ex)
+        {
+            m_logger.log(Logger.LOG_WARNING,
+                "Unable to write signer chain cache file " + file, ex);
+        }
+        finally
+        {
+            close(out);
+            if (tmp != null)
+            {
+                m_action.deleteFile(tmp);
+            }
+        }
+    }
+
+    // Returns the directory of the current trust store, creating it and
+    // removing the directories of other trust stores on first use.
+    private synchronized File getDirectory()
+    {
+        if (m_dir == null)
+        {
+            try
+            {
+                String version = getTrustVersion();
+                File[] dirs = m_action.listDirectory(m_root);
+                for (int i = 0; (dirs != null) && (i < dirs.length); i++)
+                {
+                    if (!dirs[i].getName().equals(version))
+                    {
+                        delete(dirs[i]);
+                    }
+                }
+                File dir = new File(m_root, version);
+                if (!m_action.isFileDirectory(dir) && !m_action.mkdirs(dir))
+                {
+                    throw new IOException("Unable to create " + dir);
+                }
+                m_dir = dir;
+            }
+            catch (Exception ex)
+            {
+                m_logger.log(Logger.LOG_WARNING,
+                    "Unable to use signer chain cache " + m_root, ex);
+                m_dir = m_root;
+                return null;
+            }
+        }
+        return (m_dir != m_root) ? m_dir : null;
+    }
+
+    private String getTrustVersion() throws Exception
+    {
+        MessageDigest digest = MessageDigest.getInstance(DIGEST_ALGORITHM);
+        for (Iterator iter = m_manager.getCaCerts().iterator(); iter.hasNext();)
+        {
+            digest.update(((Certificate) iter.next()).getEncoded());
+        }
+        digest.update((byte) 0);
+        for (Iterator iter = m_manager.getCRLs().iterator(); iter.hasNext();)
+        {
+            CRL crl = (CRL) iter.next();
+            digest.update((crl instanceof X509CRL) ? ((X509CRL) crl)
+                .getEncoded() : crl.toString().getBytes("UTF-8"));
+        }
+        return toHex(digest.digest());
+    }
+
+    private void delete(File file)
+    {
+        File[] children = m_action.listDirectory(file);
+        for (int i = 0; (children != null) && (i < children.length); i++)
+        {
+            delete(children[i]);
+        }
+        m_action.deleteFile(file);
+    }
+
+    private static String toHex(byte[] bytes)
+    {
+        StringBuffer buffer = new StringBuffer(bytes.length * 2);
+        for (int i = 0; i < bytes.length; i++)
+        {
+            buffer.append(Character.forDigit((bytes[i] >> 4) & 0xF, 16));
+            buffer.append(Character.forDigit(bytes[i] & 0xF, 16));
+        }
+        return buffer.toString();
+    }
+
+    private static void close(Closeable closeable)
+    {
+        if (closeable != null)
+        {
+            try
+            {
+                closeable.close();
+            }
+            catch (IOException ex)
+            {
+                // Not much we can do
+            }
+        }
+    }
+}
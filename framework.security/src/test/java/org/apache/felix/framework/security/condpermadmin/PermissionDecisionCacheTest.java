@@ -0,0 +1,300 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.framework.security.condpermadmin;
+
+import java.io.File;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.security.Permission;
+import java.security.ProtectionDomain;
+import java.util.Dictionary;
+import java.util.HashMap;
+import java.util.PropertyPermission;
+
+import junit.framework.TestCase;
+
+import org.apache.felix.framework.BundleRevisionImpl;
+import org.apache.felix.framework.FakeBundle;
+import org.apache.felix.framework.cache.Content;
+import org.apache.felix.framework.security.util.Conditions;
+import org.apache.felix.framework.security.util.LocalPermissions;
+import org.apache.felix.framework.security.util.Permissions;
+import org.apache.felix.framework.security.util.PropertiesCache;
+import org.apache.felix.framework.util.SecureAction;
+import org.osgi.framework.Bundle;
+import org.osgi.service.condpermadmin.Condition;
+import org.osgi.service.condpermadmin.ConditionInfo;
+import org.osgi.service.permissionadmin.PermissionInfo;
+
+public class PermissionDecisionCacheTest extends TestCase
+{
+    private static final Permission READ = new PropertyPermission(
+        "test.read", "read");
+    private static final Permission WRITE = new PropertyPermission(
+        "test.write", "write");
+
+    private File m_dir;
+    private File m_tmp;
+    private ConditionalPermissionAdminImpl m_cpai;
+    private PermissionDecisionCache m_cache;
+    private BundleRevisionImpl m_module;
+    private Content m_content;
+
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+        m_dir = File.createTempFile("felix-security", ".dir");
+        m_dir.delete();
+        m_tmp = new File(m_dir, "tmp");
+        m_tmp.mkdirs();
+
+        SecureAction action = new SecureAction();
+        Permissions permissions = new Permissions(null, action);
+        m_cpai = new ConditionalPermissionAdminImpl(permissions,
+            new Conditions(action), new LocalPermissions(permissions),
+            new PropertiesCache(new File(m_dir, "cpa.txt"), m_tmp, action),
+            null);
+        m_cache = m_cpai.getDecisionCache();
+        m_module = createModule();
+        m_content = createContent();
+        Mutable.s_satisfied = true;
+        Recursive.s_module = null;
+        Recursive.s_result = null;
+    }
+
+    protected void tearDown() throws Exception
+    {
+        super.tearDown();
+        deleteDir(m_dir);
+    }
+
+    public void testHit()
+    {
+        allow(null, READ);
+
+        assertTrue(hasPermission(m_module, READ));
+        assertEquals(0, m_cache.getHitCount());
+        assertEquals(1, m_cache.size());
+
+        assertTrue(hasPermission(m_module, READ));
+        assertEquals(1, m_cache.getHitCount());
+
+        // Denials are cached as well.
+        assertFalse(hasPermission(m_module, WRITE));
+        assertFalse(hasPermission(m_module, WRITE));
+        assertEquals(2, m_cache.getHitCount());
+        assertEquals(2, m_cache.size());
+    }
+
+    public void testInvalidatedOnWrite()
+    {
+        allow(null, READ);
+        assertFalse(hasPermission(m_module, WRITE));
+        assertEquals(1, m_cache.size());
+
+        allow(null, WRITE);
+        assertEquals(0, m_cache.size());
+        assertTrue(hasPermission(m_module, WRITE));
+    }
+
+    public void testInvalidatedOnRollback()
+    {
+        allow(null, READ);
+        assertFalse(hasPermission(m_module, WRITE));
+
+        // The table cannot be persisted without its temporary directory.
+        deleteDir(m_tmp);
+        try
+        {
+            allow(null, WRITE);
+            fail("The update must fail.");
+        }
+        catch (IllegalStateException ex)
+        {
+            // Expected.
+        }
+        assertEquals(0, m_cache.size());
+        assertFalse(hasPermission(m_module, WRITE));
+        assertTrue(hasPermission(m_module, READ));
+    }
+
+    public void testMutableConditionNotCached()
+    {
+        allow(new ConditionInfo(Mutable.class.getName(), new String[0]), READ);
+
+        assertTrue(hasPermission(m_module, READ));
+        assertEquals(0, m_cache.size());
+
+        Mutable.s_satisfied = false;
+        assertFalse(hasPermission(m_module, READ));
+        assertEquals(0, m_cache.size());
+    }
+
+    public void testRecursiveCheckNotCached()
+    {
+        BundleRevisionImpl other = createModule();
+        allow(new ConditionInfo(Recursive.class.getName(),
+            new String[] { "write" }), WRITE);
+        allow(new ConditionInfo(Recursive.class.getName(),
+            new String[] { "read" }), READ);
+
+        // Resolve the conditions of the other module to satisfied ones.
+        assertTrue(hasPermission(other, READ));
+
+        // Discard the decision, but not the resolved conditions.
+        allow(null, new PropertyPermission("test.other", "read"));
+        assertEquals(0, m_cache.size());
+
+        // The condition of this module checks the other module, which the
+        // recursion guard denies although its conditions are satisfied.
+        Recursive.s_test = this;
+        Recursive.s_module = other;
+        assertTrue(hasPermission(m_module, WRITE));
+        assertEquals(Boolean.FALSE, Recursive.s_result);
+        Recursive.s_module = null;
+
+        assertTrue(hasPermission(other, READ));
+    }
+
+    private void allow(ConditionInfo condition, Permission permission)
+    {
+        m_cpai.addConditionalPermissionInfo(
+            (condition != null) ? new ConditionInfo[] { condition }
+                : new ConditionInfo[0],
+            new PermissionInfo[] { new PermissionInfo(permission.getClass()
+                .getName(), permission.getName(), permission.getActions()) });
+    }
+
+    boolean hasPermission(BundleRevisionImpl module, Permission permission)
+    {
+        return m_cpai.hasPermission(module, m_content, new ProtectionDomain(
+            null, null), permission, true, null);
+    }
+
+    private static BundleRevisionImpl createModule()
+    {
+        return new BundleRevisionImpl(new FakeBundle(new HashMap()), "0");
+    }
+
+    // Content without local permissions.
+    private static Content createContent()
+    {
+        return (Content) Proxy.newProxyInstance(
+            PermissionDecisionCacheTest.class.getClassLoader(),
+            new Class[] { Content.class }, new InvocationHandler()
+            {
+                public Object invoke(Object proxy, Method method, Object[] args)
+                {
+                    if (method.getName().equals("hashCode"))
+                    {
+                        return new Integer(System.identityHashCode(proxy));
+                    }
+                    else if (method.getName().equals("equals"))
+                    {
+                        return Boolean.valueOf(proxy == args[0]);
+                    }
+                    return null;
+                }
+            });
+    }
+
+    private static void deleteDir(File file)
+    {
+        File[] children = file.listFiles();
+        if (children != null)
+        {
+            for (int i = 0; i < children.length; i++)
+            {
+                deleteDir(children[i]);
+            }
+        }
+        file.delete();
+    }
+
+    public static class Mutable implements Condition
+    {
+        static volatile boolean s_satisfied;
+
+        public static Condition getCondition(Bundle bundle, ConditionInfo info)
+        {
+            return new Mutable();
+        }
+
+        public boolean isPostponed()
+        {
+            return false;
+        }
+
+        public boolean isSatisfied()
+        {
+            return s_satisfied;
+        }
+
+        public boolean isMutable()
+        {
+            return true;
+        }
+
+        public boolean isSatisfied(Condition[] conditions,
+            Dictionary context)
+        {
+            return s_satisfied;
+        }
+    }
+
+    // An immutable condition, which checks whether another module has the
+    // read permission if asked to.
+    public static class Recursive implements Condition
+    {
+        static PermissionDecisionCacheTest s_test;
+        static BundleRevisionImpl s_module;
+        static Boolean s_result;
+
+        public static Condition getCondition(Bundle bundle, ConditionInfo info)
+        {
+            return new Recursive();
+        }
+
+        public boolean isPostponed()
+        {
+            return false;
+        }
+
+        public boolean isSatisfied()
+        {
+            if (s_module != null)
+            {
+                s_result = Boolean.valueOf(s_test.hasPermission(s_module, READ));
+            }
+            return true;
+        }
+
+        public boolean isMutable()
+        {
+            return false;
+        }
+
+        public boolean isSatisfied(Condition[] conditions,
+            Dictionary context)
+        {
+            return isSatisfied();
+        }
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.framework.security.verifier;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.cert.CertificateFactory;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import junit.framework.TestCase;
+
+import org.apache.felix.framework.Logger;
+import org.apache.felix.framework.cache.JarContent;
+import org.apache.felix.framework.security.util.TrustManager;
+import org.apache.felix.framework.util.SecureAction;
+import org.apache.felix.framework.util.WeakZipFileFactory;
+
+public class SignerChainStoreTest extends TestCase
+{
+    // A self-signed certificate valid until 2126.
+    private static final String CERTIFICATE =
+        "-----BEGIN CERTIFICATE-----\n"
+        + "MIIBdDCCARqgAwIBAgIJAItaK77+27uYMAoGCCqGSM49BAMCMC0xFTATBgNVBAoT\n"
+        + "DEFwYWNoZSBGZWxpeDEUMBIGA1UEAxMLVGVzdCBTaWduZXIwIBcNMjYxMDE3MDM0\n"
+        + "NTQyWhgPMjEyNjA5MjMwMzQ1NDJaMC0xFTATBgNVBAoTDEFwYWNoZSBGZWxpeDEU\n"
+        + "MBIGA1UEAxMLVGVzdCBTaWduZXIwWTATBgcqhkjOPQIBBggqhkjOPQMBBwNCAATf\n"
+        + "ErothlT9G4Ct+5pU7S9Z6zKfClT+ZtpuHLkfZv6plpNtVvtO0YSS0ZBEL5atPUdZ\n"
+        + "88eLPrIl/hz69DwgSOGOoyEwHzAdBgNVHQ4EFgQU15ar0ASJWg7oiv2wjsmPp6g8\n"
+        + "0p8wCgYIKoZIzj0EAwIDSAAwRQIhAKisOgXfm3qUjYKFQdMWAKtghfjxZqDaPj6y\n"
+        + "l7mtVkW+AiBIrqY9gz6FziF77FgVMShZgV3XRE7CJiINytq1kTwH2w==\n"
+        + "-----END CERTIFICATE-----\n";
+
+    private File m_dir;
+    private SignerChainStore m_store;
+    private WeakZipFileFactory m_zipFactory;
+
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+        m_dir = File.createTempFile("felix-signers", ".dir");
+        m_dir.delete();
+        m_dir.mkdirs();
+        SecureAction action = new SecureAction();
+        File root = new File(m_dir, "signers");
+        root.mkdirs();
+        m_store = new SignerChainStore(root,
+            new TrustManager("", "", "", "", action), action, new Logger());
+        m_zipFactory = new WeakZipFileFactory(10);
+    }
+
+    protected void tearDown() throws Exception
+    {
+        super.tearDown();
+        deleteDir(m_dir);
+    }
+
+    public void testStoreLoad() throws Exception
+    {
+        JarContent content = createContent("bundle.jar", "content", true);
+        String key = m_store.getKey(content);
+        assertNotNull(key);
+        assertEquals(key, m_store.getKey(content));
+        assertNull(m_store.load(key, true));
+
+        List chains = Collections.singletonList(Collections.singletonList(
+            CertificateFactory.getInstance("X509").generateCertificate(
+                new ByteArrayInputStream(CERTIFICATE.getBytes("US-ASCII")))));
+        m_store.store(key, true, chains);
+
+        assertEquals(chains, m_store.load(key, true));
+        // Chains of checked and unchecked verifications are kept apart.
+        assertNull(m_store.load(key, false));
+        content.close();
+    }
+
+    public void testKeyChangesWithContent() throws Exception
+    {
+        JarContent content = createContent("bundle.jar", "content", true);
+        String key = m_store.getKey(content);
+        File file = content.getFile();
+        long modified = file.lastModified();
+        content.close();
+
+        content = createContent("bundle.jar", "changed content", true);
+        assertFalse(key.equals(m_store.getKey(content)));
+        content.close();
+
+        // An entry of the same length changes the key through the time of
+        // the modification.
+        content = createContent("bundle.jar", "CONTENT", true);
+        assertTrue(content.getFile().setLastModified(modified + 2000));
+        assertFalse(key.equals(m_store.getKey(content)));
+        content.close();
+
+        // The same content at another location has another key.
+        content = createContent("other.jar", "content", true);
+        assertTrue(content.getFile().setLastModified(modified));
+        assertFalse(key.equals(m_store.getKey(content)));
+        content.close();
+    }
+
+    public void testUnsignedContent() throws Exception
+    {
+        JarContent content = createContent("bundle.jar", "content", false);
+        assertNull(m_store.getKey(content));
+        content.close();
+    }
+
+    private JarContent createContent(String name, String entry, boolean signed)
+        throws IOException
+    {
+        File file = new File(m_dir, name);
+        ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(file));
+        zos.putNextEntry(new ZipEntry("META-INF/MANIFEST.MF"));
+        zos.write("Manifest-Version: 1.0\n".getBytes("UTF-8"));
+        if (signed)
+        {
+            // The signature files need not be valid to compute the key.
+            zos.putNextEntry(new ZipEntry("META-INF/SIGNER.SF"));
+            zos.write("Signature-Version: 1.0\n".getBytes("UTF-8"));
+            zos.putNextEntry(new ZipEntry("META-INF/SIGNER.EC"));
+            zos.write(new byte[] { 1, 2, 3 });
+        }
+        zos.putNextEntry(new ZipEntry("entry.txt"));
+        zos.write(entry.getBytes("UTF-8"));
+        zos.close();
+        return new JarContent(new Logger(), new HashMap(), m_zipFactory,
+            this, m_dir, file, null);
+    }
+
+    private static void deleteDir(File file)
+    {
+        File[] children = file.listFiles();
+        if (children != null)
+        {
+            for (int i = 0; i < children.length; i++)
+            {
+                deleteDir(children[i]);
+            }
+        }
+        file.delete();
+    }
+}
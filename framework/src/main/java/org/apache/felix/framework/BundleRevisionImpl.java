@@ -19,6 +19,7 @@
 package org.apache.felix.framework;
 
 import org.apache.felix.framework.cache.Content;
+import org.apache.felix.framework.cache.JarContent;
 import org.apache.felix.framework.util.FelixConstants;
 import org.apache.felix.framework.util.MultiReleaseContent;
 import org.apache.felix.framework.util.SecureAction;
@@ -72,6 +73,7 @@ public class BundleRevisionImpl implements BundleRevision, Resource
 
     private volatile Content m_content;
     private volatile List<Content> m_contentPath;
+    private volatile EntryIndex m_entryIndex;
     private volatile ProtectionDomain m_protectionDomain = null;
     private final static SecureAction m_secureAction = new SecureAction();
 
@@ -344,6 +346,28 @@ public class BundleRevisionImpl implements BundleRevision, Resource
         m_content = content;
     }
 
+    /**
+     * Returns the directory tree index of the entries of the revision
+     * content, which is built on first use. Only jar contents are indexed,
+     * since the entries of other contents may change.
+     * @return the entry index or <tt>null</tt> if the content is not indexed.
+    **/
+    EntryIndex getEntryIndex()
+    {
+        Content content = m_content;
+        if (!(content instanceof JarContent) && !(content instanceof MultiReleaseContent))
+        {
+            return null;
+        }
+        EntryIndex index = m_entryIndex;
+        if ((index == null) || !index.isFor(content))
+        {
+            index = new EntryIndex(content);
+            m_entryIndex = index;
+        }
+        return index;
+    }
+
     List<Content> getContentPath()
     {
         if (m_contentPath == null)
@@ -671,6 +695,7 @@ public class BundleRevisionImpl implements BundleRevision, Resource
         }
         m_content.close();
         m_content = null;
+        m_entryIndex = null;
         for (int i = 0; (m_contentPath != null) && (i < m_contentPath.size()); i++)
         {
             m_contentPath.get(i).close();
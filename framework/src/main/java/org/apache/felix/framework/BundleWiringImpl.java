@@ -23,7 +23,9 @@ import org.apache.felix.framework.capabilityset.SimpleFilter;
 import org.apache.felix.framework.resolver.ResourceNotFoundException;
 import org.apache.felix.framework.util.CompoundEnumeration;
 import org.apache.felix.framework.util.FelixConstants;
+import org.apache.felix.framework.util.NegativeLookupCache;
 import org.apache.felix.framework.util.SecurityManagerEx;
+import org.apache.felix.framework.util.StripedCounter;
 import org.apache.felix.framework.util.Util;
 import org.apache.felix.framework.util.manifestparser.ManifestParser;
 import org.apache.felix.framework.util.manifestparser.NativeLibrary;
@@ -75,6 +77,7 @@ import java.util.SortedMap;
 import java.util.TreeMap;
 import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class BundleWiringImpl implements BundleWiring
 {
@@ -99,10 +102,10 @@ public class BundleWiringImpl implements BundleWiring
     private final List<BundleRevision> m_fragments;
     // Wire list is copy-on-write since it may change due to
     // dynamic imports.
-    private volatile List<BundleWire> m_wires;
-    // Imported package map is copy-on-write since it may change
+    private final AtomicReference<List<BundleWire>> m_wires;
+    // Imported package map is concurrent since it may change
     // due to dynamic imports.
-    private volatile Map<String, BundleRevision> m_importedPkgs;
+    private final ConcurrentHashMap<String, BundleRevision> m_importedPkgs;
     private final Map<String, List<BundleRevision>> m_requiredPkgs;
     private final List<BundleCapability> m_resolvedCaps;
     private final Map<String, List<List<String>>> m_includedPkgFilters;
@@ -170,8 +173,25 @@ public class BundleWiringImpl implements BundleWiring
     // Flag indicating whether this wiring has been disposed.
     private volatile boolean m_isDisposed = false;
 
+    // Default maximum number of cached class and resource lookup misses.
+    private static final int DEFAULT_NEGATIVE_CACHE_SIZE = 1024;
+
+    // Thread local counting class loading cycles detected on the current
+    // thread, used to avoid caching misses caused by a cycle.
+    private static final ThreadLocal<int[]> m_cycleCount = new ThreadLocal<int[]>();
+
+    // Cache of classes and resources not found by delegation, or null if
+    // disabled.
+    private final NegativeLookupCache m_negativeCache;
+
     private volatile ConcurrentHashMap<String, ClassLoader> m_accessorLookupCache;
 
+    // Framework metrics and the class load metrics of this wiring, or null
+    // if metrics are disabled.
+    private final FrameworkMetrics m_metrics;
+    private final StripedCounter m_classLoadCount;
+    private final StripedCounter m_classLoadTime;
+
     BundleWiringImpl(
         Logger logger, Map configMap, StatefulResolver resolver,
         BundleRevisionImpl revision, List<BundleRevision> fragments,
@@ -183,9 +203,11 @@ public class BundleWiringImpl implements BundleWiring
         m_configMap = configMap;
         m_resolver = resolver;
         m_revision = revision;
-        m_importedPkgs = importedPkgs;
+        m_importedPkgs = (importedPkgs != null)
+            ? new ConcurrentHashMap<String, BundleRevision>(importedPkgs)
+            : new ConcurrentHashMap<String, BundleRevision>();
         m_requiredPkgs = requiredPkgs;
-        m_wires =  Util.newImmutableList(wires);
+        m_wires = new AtomicReference<List<BundleWire>>(Util.newImmutableList(wires));
 
         // We need to sort the fragments and add ourself as a dependent of each one.
         // We also need to create an array of fragment contents to attach to our
@@ -463,6 +485,26 @@ public class BundleWiringImpl implements BundleWiring
 
         m_useLocalURLs =
             m_configMap.get(FelixConstants.USE_LOCALURLS_PROP) != null;
+
+        int negativeCacheSize = DEFAULT_NEGATIVE_CACHE_SIZE;
+        String s = (String) m_configMap.get(FelixConstants.NEGATIVE_CACHE_SIZE_PROP);
+        if (s != null)
+        {
+            try
+            {
+                negativeCacheSize = Integer.parseInt(s.trim());
+            }
+            catch (NumberFormatException ex)
+            {
+                // Ignore and use the default.
+            }
+        }
+        m_negativeCache = (negativeCacheSize > 0)
+            ? new NegativeLookupCache(negativeCacheSize) : null;
+
+        m_metrics = (m_resolver != null) ? m_resolver.getMetrics() : null;
+        m_classLoadCount = (m_metrics != null) ? new StripedCounter() : null;
+        m_classLoadTime = (m_metrics != null) ? new StripedCounter() : null;
     }
 
     private static List<List<String>> parsePkgFilters(BundleCapability cap, String filtername)
@@ -502,6 +544,48 @@ public class BundleWiringImpl implements BundleWiring
         m_classLoader = null;
         m_isDisposed = true;
         m_accessorLookupCache = null;
+        if (m_negativeCache != null)
+        {
+            m_negativeCache.invalidate();
+        }
+    }
+
+    /**
+     * Returns the cache of classes and resources that could not be found
+     * by delegation, which exposes hit and miss counts.
+     * @return the negative lookup cache or <tt>null</tt> if it is disabled.
+    **/
+    NegativeLookupCache getNegativeLookupCache()
+    {
+        return m_negativeCache;
+    }
+
+    /**
+     * Returns the number of classes defined by the class loader of this
+     * wiring.
+     * @return the number of defined classes or <tt>0</tt> if metrics are
+     *         disabled.
+    **/
+    long getClassLoadCount()
+    {
+        return (m_classLoadCount != null) ? m_classLoadCount.sum() : 0;
+    }
+
+    /**
+     * Returns the time in nanoseconds spent finding, weaving, and defining
+     * the classes of the class loader of this wiring.
+     * @return the class load time or <tt>0</tt> if metrics are disabled.
+    **/
+    long getClassLoadTime()
+    {
+        return (m_classLoadTime != null) ? m_classLoadTime.sum() : 0;
+    }
+
+    private void classDefined(long nanos)
+    {
+        m_classLoadCount.increment();
+        m_classLoadTime.add(nanos);
+        m_metrics.classDefined(nanos);
     }
 
     // TODO: OSGi R4.3 - This really shouldn't be public, but it is needed by the
@@ -645,11 +729,12 @@ public class BundleWiringImpl implements BundleWiring
     {
         if (isInUse())
         {
-            List<BundleWire> result = m_wires;
+            List<BundleWire> result = m_wires.get();
             if (namespace != null)
             {
+                List<BundleWire> wires = result;
                 result = new ArrayList<BundleWire>();
-                for (BundleWire bw : m_wires)
+                for (BundleWire bw : wires)
                 {
                     if (bw.getRequirement().getNamespace().equals(namespace))
                     {
@@ -662,27 +747,34 @@ public class BundleWiringImpl implements BundleWiring
         return null;
     }
 
-    public synchronized void addDynamicWire(BundleWire wire)
+    public void addDynamicWire(BundleWire wire)
     {
-        // Make new wires list.
-        List<BundleWire> wires = new ArrayList<BundleWire>(m_wires);
-        wires.add(wire);
-        if (wire.getCapability().getAttributes().get(BundleRevision.PACKAGE_NAMESPACE) != null)
+        String pkgName = (String)
+            wire.getCapability().getAttributes().get(BundleRevision.PACKAGE_NAMESPACE);
+        if (pkgName != null)
         {
-            // Make new imported package map.
-            Map<String, BundleRevision> importedPkgs =
-                    new HashMap<String, BundleRevision>(m_importedPkgs);
-            importedPkgs.put(
-                    (String) wire.getCapability().getAttributes().get(BundleRevision.PACKAGE_NAMESPACE),
-                    wire.getProviderWiring().getRevision());
+            // Add the package to the imported package map.
+            m_importedPkgs.put(pkgName, wire.getProviderWiring().getRevision());
 
-            m_importedPkgs = importedPkgs;
+            if (m_negativeCache != null)
+            {
+                m_negativeCache.invalidate(pkgName);
+            }
         }
-        // Update associated member values.
+        // Make new wires list.
         // Technically, there is a window here where readers won't see
         // both values updates at the same time, but it seems unlikely
         // to cause any issues.
-        m_wires = Util.newImmutableList(wires);
+        List<BundleWire> wires;
+        List<BundleWire> newWires;
+        do
+        {
+            wires = m_wires.get();
+            newWires = new ArrayList<BundleWire>(wires.size() + 1);
+            newWires.addAll(wires);
+            newWires.add(wire);
+        }
+        while (!m_wires.compareAndSet(wires, Util.newImmutableList(newWires)));
     }
 
     @Override
@@ -851,7 +943,7 @@ public class BundleWiringImpl implements BundleWiring
                 // keep track of these packages.
                 Set<String> noMerging = new HashSet<String>();
                 // Loop through wires to compute remote resources.
-                for (BundleWire bw : m_wires)
+                for (BundleWire bw : m_wires.get())
                 {
                     if (bw.getCapability().getNamespace()
                             .equals(BundleRevision.PACKAGE_NAMESPACE))
@@ -1542,6 +1634,19 @@ public class BundleWiringImpl implements BundleWiring
                     }
                 }
 
+                // If the class or resource was not found by the revision's
+                // imports, class path, or dynamic imports since the last
+                // change of the resolver state, only try implicit boot
+                // delegation, since its outcome depends on the caller.
+                long generation = m_resolver.getGeneration();
+                if ((m_negativeCache != null)
+                    && m_negativeCache.contains(generation, pkgName, name))
+                {
+                    return tryImplicitBootDelegation(name, isClass);
+                }
+                int[] cycles = m_cycleCount.get();
+                int cyclesBefore = (cycles != null) ? cycles[0] : 0;
+
                 // Look in the revision's imports. Note that the search may
                 // be aborted if this method throws an exception, otherwise
                 // it continues if a null is returned.
@@ -1574,6 +1679,24 @@ public class BundleWiringImpl implements BundleWiring
                     {
                         result = searchDynamicImports(pkgName, name, isClass);
                     }
+
+                    // If still not found, remember the miss unless it may be
+                    // caused by a cycle or by a dynamic import that resolver
+                    // hooks or permissions may allow next time, and try
+                    // implicit boot delegation.
+                    if (result == null)
+                    {
+                        cycles = m_cycleCount.get();
+                        if ((m_negativeCache != null)
+                            && (cyclesBefore == ((cycles != null) ? cycles[0] : 0))
+                            && (m_resolver.isDynamicImportFailureFinal()
+                                || Util.getDynamicRequirements(
+                                    getRequirements(null)).isEmpty()))
+                        {
+                            m_negativeCache.add(generation, pkgName, name);
+                        }
+                        result = tryImplicitBootDelegation(name, isClass);
+                    }
                 }
             }
             finally
@@ -1586,6 +1709,13 @@ public class BundleWiringImpl implements BundleWiring
             // If a cycle is detected, we should return null to break the
             // cycle. This should only ever be return to internal class
             // loading code and not to the actual instigator of the class load.
+            int[] cycles = m_cycleCount.get();
+            if (cycles == null)
+            {
+                cycles = new int[1];
+                m_cycleCount.set(cycles);
+            }
+            cycles[0]++;
             return null;
         }
 
@@ -1696,7 +1826,7 @@ public class BundleWiringImpl implements BundleWiring
                             : (Object) ((BundleWiringImpl) provider.getWiring()).getResourceByDelegation(name);
         }
 
-        return tryImplicitBootDelegation(name, isClass);
+        return null;
     }
 
     private Object tryImplicitBootDelegation(final String name, final boolean isClass)
@@ -2036,6 +2166,8 @@ public class BundleWiringImpl implements BundleWiring
                             + " is no longer valid.");
                 }
 
+                long start = (m_wiring.m_metrics != null) ? System.nanoTime() : 0;
+
                 String actual = name.replace('.', '/') + ".class";
 
                 byte[] bytes = null;
@@ -2106,6 +2238,11 @@ public class BundleWiringImpl implements BundleWiring
                         throw e;
                     }
 
+                    if (m_wiring.m_metrics != null)
+                    {
+                        m_wiring.classDefined(System.nanoTime() - start);
+                    }
+
                     // Perform deferred activation without holding the class loader lock,
                     // if the class we are returning is the instigating class.
                     List deferredList = (List) m_deferredActivation.get();
@@ -2272,6 +2409,18 @@ public class BundleWiringImpl implements BundleWiring
                             allWovenReqs.addAll(0, m_wiring.m_wovenReqs);
                         }
                         m_wiring.m_wovenReqs = allWovenReqs;
+                        // Classes and resources which were not found may
+                        // now be found through the woven dynamic imports.
+                        // Changing the generation also discards misses
+                        // recorded by lookups which are still running.
+                        if (m_wiring.m_resolver != null)
+                        {
+                            m_wiring.m_resolver.dynamicImportsWoven();
+                        }
+                        if (m_wiring.m_negativeCache != null)
+                        {
+                            m_wiring.m_negativeCache.invalidate();
+                        }
                     }
                 }
             }
@@ -29,6 +29,7 @@ class EntryFilterEnumeration implements Enumeration
 {
     private final BundleRevision m_revision;
     private final List<Enumeration> m_enumerations;
+    private final List<EntryIndex> m_indexes;
     private final List<BundleRevision> m_revisions;
     private int m_revisionIndex = 0;
     private final String m_path;
@@ -36,7 +37,7 @@ class EntryFilterEnumeration implements Enumeration
     private final boolean m_recurse;
     private final boolean m_isURLValues;
     private final Set<String> m_dirEntries = new HashSet();
-    private final List<Object> m_nextEntries = new ArrayList(2);
+    private final List<Object> m_nextEntries = new LinkedList<Object>();
 
     public EntryFilterEnumeration(
         BundleRevision revision, boolean includeFragments, String path,
@@ -54,9 +55,14 @@ class EntryFilterEnumeration implements Enumeration
         }
         m_revisions.add(0, m_revision);
         m_enumerations = new ArrayList(m_revisions.size());
+        m_indexes = new ArrayList<EntryIndex>(m_revisions.size());
         for (int i = 0; i < m_revisions.size(); i++)
         {
-            m_enumerations.add(((BundleRevisionImpl) m_revisions.get(i)).getContent() != null ?
+            // Indexed contents are queried instead of being enumerated.
+            EntryIndex index = ((BundleRevisionImpl) m_revisions.get(i)).getEntryIndex();
+            m_indexes.add(index);
+            m_enumerations.add((index == null)
+                && (((BundleRevisionImpl) m_revisions.get(i)).getContent() != null) ?
                 ((BundleRevisionImpl) m_revisions.get(i)).getContent().getEntries() : null);
         }
         m_recurse = recurse;
@@ -115,6 +121,14 @@ class EntryFilterEnumeration implements Enumeration
         }
         while ((m_revisionIndex < m_enumerations.size()) && m_nextEntries.isEmpty())
         {
+            // The index of a revision yields all of its matching entries at
+            // once, so it is only queried the first time.
+            EntryIndex index = m_indexes.get(m_revisionIndex);
+            if (index != null)
+            {
+                m_indexes.set(m_revisionIndex, null);
+                findIndexed(index, (BundleRevisionImpl) m_revisions.get(m_revisionIndex));
+            }
             while (m_enumerations.get(m_revisionIndex) != null
                 && m_enumerations.get(m_revisionIndex).hasMoreElements()
                 && m_nextEntries.isEmpty())
@@ -232,6 +246,34 @@ class EntryFilterEnumeration implements Enumeration
         }
     }
 
+    private void findIndexed(EntryIndex index, BundleRevisionImpl revision)
+    {
+        for (EntryIndex.Node node : index.find(m_path, m_filePattern, m_recurse))
+        {
+            if (!m_isURLValues)
+            {
+                m_nextEntries.add(node.getPath());
+            }
+            else if (node.isDirectory())
+            {
+                // Synthesize the directory URL from the URL of its first
+                // entry, just like the scan does.
+                URL entryURL = revision.getEntry(index.getFirstEntry(node));
+                try
+                {
+                    m_nextEntries.add(new URL(entryURL, "/" + node.getPath()));
+                }
+                catch (MalformedURLException ex)
+                {
+                }
+            }
+            else
+            {
+                m_nextEntries.add(revision.getEntry(node.getPath()));
+            }
+        }
+    }
+
     private static String getLastPathElement(String entryName)
     {
         int endIdx = (entryName.charAt(entryName.length() - 1) == '/')
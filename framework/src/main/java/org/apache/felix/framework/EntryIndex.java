@@ -0,0 +1,212 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.framework;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.felix.framework.cache.Content;
+import org.apache.felix.framework.capabilityset.SimpleFilter;
+
+/**
+ * This class implements a directory tree of the entries of a content, which
+ * is built once from <tt>Content.getEntries()</tt>. Directories that have
+ * no entry of their own are synthesized, just like <tt>findEntries()</tt>
+ * does. Queries for the entries below a path walk the tree and return the
+ * entries in the order a scan of the content entries finds them, i.e., by
+ * the position of the first entry of each directory or file, with parent
+ * directories ahead of their children.
+**/
+class EntryIndex
+{
+    private static final Comparator<Node> SCAN_ORDER = new Comparator<Node>()
+    {
+        public int compare(Node n1, Node n2)
+        {
+            if (n1.m_first != n2.m_first)
+            {
+                return (n1.m_first < n2.m_first) ? -1 : 1;
+            }
+            return (n1.m_depth < n2.m_depth) ? -1 : ((n1.m_depth == n2.m_depth) ? 0 : 1);
+        }
+    };
+
+    private final Content m_content;
+    private final List<String> m_entries = new ArrayList<String>();
+    private final Node m_root = new Node("", "", 0, 0, true);
+
+    /**
+     * Creates the index of the entries of the given content.
+     * @param content the content to index.
+    **/
+    EntryIndex(Content content)
+    {
+        m_content = content;
+        Enumeration<String> e = content.getEntries();
+        while ((e != null) && e.hasMoreElements())
+        {
+            add(e.nextElement());
+        }
+    }
+
+    /**
+     * Returns whether this index was built from the given content.
+     * @param content the content to compare.
+     * @return <tt>true</tt> if this index was built from the content.
+    **/
+    boolean isFor(Content content)
+    {
+        return m_content == content;
+    }
+
+    /**
+     * Returns the directories and files below the given path, whose last
+     * path element matches the given file pattern.
+     * @param path the directory path, which is either empty or ends with
+     *        a slash.
+     * @param filePattern the parsed file pattern.
+     * @param recurse whether to include all descendants or only children.
+     * @return the matching nodes in scan order.
+    **/
+    List<Node> find(String path, List<String> filePattern, boolean recurse)
+    {
+        Node node = m_root;
+        for (int idx = path.indexOf('/'); (node != null) && (idx >= 0);
+            idx = path.indexOf('/', idx + 1))
+        {
+            node = node.getChild(path.substring(0, idx + 1));
+        }
+        if ((node == null) || (node.m_children == null))
+        {
+            return Collections.emptyList();
+        }
+        List<Node> result = new ArrayList<Node>();
+        collect(node, filePattern, recurse, result);
+        Collections.sort(result, SCAN_ORDER);
+        return result;
+    }
+
+    /**
+     * Returns the name of the first entry in the subtree of the given node.
+     * @param node the node.
+     * @return the entry name.
+    **/
+    String getFirstEntry(Node node)
+    {
+        return m_entries.get(node.m_first);
+    }
+
+    private void collect(Node node, List<String> filePattern, boolean recurse,
+        List<Node> result)
+    {
+        for (Node child : node.m_children.values())
+        {
+            if (SimpleFilter.compareSubstring(filePattern, child.m_name))
+            {
+                result.add(child);
+            }
+            if (recurse && (child.m_children != null))
+            {
+                collect(child, filePattern, recurse, result);
+            }
+        }
+    }
+
+    private void add(String entry)
+    {
+        int first = m_entries.size();
+        m_entries.add(entry);
+        Node node = m_root;
+        int start = 0;
+        for (int idx = entry.indexOf('/'); idx >= 0; idx = entry.indexOf('/', start))
+        {
+            String dir = (idx == entry.length() - 1) ? entry : entry.substring(0, idx + 1);
+            Node child = node.getChild(dir);
+            if (child == null)
+            {
+                child = node.addChild(new Node(
+                    dir, entry.substring(start, idx), first, node.m_depth + 1, true));
+            }
+            node = child;
+            start = idx + 1;
+        }
+        if ((start < entry.length()) && (node.getChild(entry) == null))
+        {
+            node.addChild(new Node(
+                entry, entry.substring(start), first, node.m_depth + 1, false));
+        }
+    }
+
+    static class Node
+    {
+        private final String m_path;
+        private final String m_name;
+        private final int m_first;
+        private final int m_depth;
+        private Map<String, Node> m_children;
+
+        private Node(String path, String name, int first, int depth, boolean dir)
+        {
+            m_path = path;
+            m_name = name;
+            m_first = first;
+            m_depth = depth;
+            m_children = dir ? new HashMap<String, Node>(4) : null;
+        }
+
+        /**
+         * Returns the entry path of this node, which ends with a slash for
+         * directories.
+         * @return the entry path.
+        **/
+        String getPath()
+        {
+            return m_path;
+        }
+
+        /**
+         * Returns whether this node is a directory.
+         * @return <tt>true</tt> if this node is a directory.
+        **/
+        boolean isDirectory()
+        {
+            return m_children != null;
+        }
+
+        private Node getChild(String path)
+        {
+            return (m_children != null) ? m_children.get(path) : null;
+        }
+
+        private Node addChild(Node child)
+        {
+            if (m_children == null)
+            {
+                m_children = new HashMap<String, Node>(4);
+            }
+            m_children.put(child.m_path, child);
+            return child;
+        }
+    }
+}
@@ -28,17 +28,22 @@ import java.util.EventListener;
 import java.util.EventObject;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
+import org.apache.felix.framework.capabilityset.SimpleFilter;
 import org.apache.felix.framework.util.*;
 import org.osgi.framework.AllServiceListener;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.BundleEvent;
 import org.osgi.framework.BundleListener;
+import org.osgi.framework.Constants;
 import org.osgi.framework.Filter;
 import org.osgi.framework.FrameworkEvent;
 import org.osgi.framework.FrameworkListener;
@@ -64,6 +69,12 @@ public class EventDispatcher
         m_syncBndlListeners = Collections.EMPTY_MAP;
     private Map<BundleContext, List<ListenerInfo>>
         m_svcListeners = Collections.EMPTY_MAP;
+    // Service listeners indexed by the object classes required by their
+    // filters and the service listeners that may match any service.
+    private Map<String, Map<BundleContext, List<ListenerInfo>>>
+        m_svcListenerIndex = Collections.EMPTY_MAP;
+    private Map<BundleContext, List<ListenerInfo>>
+        m_unindexedSvcListeners = Collections.EMPTY_MAP;
 
     // A single thread is used to deliver events for all dispatchers.
     private static Thread m_thread = null;
@@ -78,14 +89,73 @@ public class EventDispatcher
 
     private static final SecureAction m_secureAction = new SecureAction();
 
+    // Default number of pending requests per dispatch thread of a pool.
+    private static final int DEFAULT_QUEUE_SIZE = 1000;
+
+    // If more than one thread is configured, the dispatcher uses its own
+    // pool of threads instead of the shared dispatch thread.
+    private final int m_threadCount;
+    private final int m_queueSize;
+    private final Object m_workerLock = new Object();
+    private volatile DispatchQueue[] m_workers = null;
+
+    // Metrics of asynchronously delivered events.
+    private final AtomicInteger m_queueDepth = new AtomicInteger();
+    private final AtomicLong m_dispatchCount = new AtomicLong();
+    private final AtomicLong m_totalLatency = new AtomicLong();
+    private final AtomicLong m_maxLatency = new AtomicLong();
+
     public EventDispatcher(Logger logger, ServiceRegistry registry)
+    {
+        this(logger, registry, Collections.EMPTY_MAP);
+    }
+
+    public EventDispatcher(Logger logger, ServiceRegistry registry, Map configMap)
     {
         m_logger = logger;
         m_registry = registry;
+        m_threadCount = getIntProperty(
+            configMap, FelixConstants.EVENTDISPATCHER_THREADS_PROP, 1);
+        m_queueSize = getIntProperty(
+            configMap, FelixConstants.EVENTDISPATCHER_QUEUESIZE_PROP, DEFAULT_QUEUE_SIZE);
+    }
+
+    private static int getIntProperty(Map configMap, String name, int defaultValue)
+    {
+        Object value = configMap.get(name);
+        if (value != null)
+        {
+            try
+            {
+                return Integer.parseInt(value.toString().trim());
+            }
+            catch (NumberFormatException ex)
+            {
+                // Ignore and use the default.
+            }
+        }
+        return defaultValue;
     }
 
     public void startDispatching()
     {
+        if (m_threadCount > 1)
+        {
+            synchronized (m_workerLock)
+            {
+                if (m_workers == null)
+                {
+                    DispatchQueue[] workers = new DispatchQueue[m_threadCount];
+                    for (int i = 0; i < workers.length; i++)
+                    {
+                        workers[i] = new DispatchQueue(this, i);
+                    }
+                    m_workers = workers;
+                }
+            }
+            return;
+        }
+
         synchronized (m_threadLock)
         {
             // Start event dispatching thread if necessary.
@@ -125,6 +195,25 @@ public class EventDispatcher
 
     public void stopDispatching()
     {
+        if (m_threadCount > 1)
+        {
+            DispatchQueue[] workers;
+            synchronized (m_workerLock)
+            {
+                workers = m_workers;
+                m_workers = null;
+            }
+            // Let the dispatch threads deliver all pending events and exit.
+            if (workers != null)
+            {
+                for (DispatchQueue worker : workers)
+                {
+                    worker.stop();
+                }
+            }
+            return;
+        }
+
         synchronized (m_threadLock)
         {
             // Return if already dead or stopping.
@@ -165,6 +254,62 @@ public class EventDispatcher
         }
     }
 
+    /**
+     * Returns the number of asynchronous event deliveries that are queued or
+     * in progress.
+     * @return the number of pending asynchronous event deliveries.
+    **/
+    public int getQueueDepth()
+    {
+        return m_queueDepth.get();
+    }
+
+    /**
+     * Returns the number of asynchronous event deliveries that have completed.
+     * Each delivery notifies the listeners of one event; if the dispatcher
+     * uses a pool of threads, an event is delivered once per thread serving
+     * its listeners.
+     * @return the number of completed asynchronous event deliveries.
+    **/
+    public long getDispatchedEventCount()
+    {
+        return m_dispatchCount.get();
+    }
+
+    /**
+     * Returns the average time in nanoseconds from queueing an asynchronous
+     * event until all of its listeners have been called.
+     * @return the average asynchronous dispatch latency in nanoseconds.
+    **/
+    public long getAverageDispatchLatency()
+    {
+        long count = m_dispatchCount.get();
+        return (count > 0) ? m_totalLatency.get() / count : 0;
+    }
+
+    /**
+     * Returns the largest time in nanoseconds from queueing an asynchronous
+     * event until all of its listeners have been called.
+     * @return the maximum asynchronous dispatch latency in nanoseconds.
+    **/
+    public long getMaxDispatchLatency()
+    {
+        return m_maxLatency.get();
+    }
+
+    private void eventDispatched(long queued)
+    {
+        long latency = System.nanoTime() - queued;
+        m_queueDepth.decrementAndGet();
+        m_dispatchCount.incrementAndGet();
+        m_totalLatency.addAndGet(latency);
+        long max = m_maxLatency.get();
+        while ((latency > max) && !m_maxLatency.compareAndSet(max, latency))
+        {
+            max = m_maxLatency.get();
+        }
+    }
+
     public Filter addListener(BundleContext bc, Class clazz, EventListener l, Filter filter)
     {
         // Verify the listener.
@@ -260,6 +405,7 @@ public class EventDispatcher
             else if (clazz == ServiceListener.class)
             {
                 m_svcListeners = listeners;
+                indexServiceListener(info);
             }
         }
         return null;
@@ -312,6 +458,7 @@ public class EventDispatcher
 
             // Try to find the instance in our list.
             int idx = -1;
+            ListenerInfo removed = null;
             for (Entry<BundleContext, List<ListenerInfo>> entry : listeners.entrySet())
             {
                 List<ListenerInfo> infos = entry.getValue();
@@ -329,6 +476,7 @@ public class EventDispatcher
                             returnInfo = new ListenerInfo(infos.get(i), true);
                         }
                         idx = i;
+                        removed = info;
                         break;
                     }
                 }
@@ -358,6 +506,10 @@ public class EventDispatcher
             else if (clazz == ServiceListener.class)
             {
                 m_svcListeners = listeners;
+                if (removed != null)
+                {
+                    unindexServiceListener(removed);
+                }
             }
         }
 
@@ -386,6 +538,14 @@ public class EventDispatcher
             m_syncBndlListeners = removeListenerInfos(m_syncBndlListeners, bc);
 
             // Remove all service listeners associated with the specified bundle.
+            List<ListenerInfo> infos = m_svcListeners.get(bc);
+            if (infos != null)
+            {
+                for (ListenerInfo info : infos)
+                {
+                    unindexServiceListener(info);
+                }
+            }
             m_svcListeners = removeListenerInfos(m_svcListeners, bc);
         }
     }
@@ -427,6 +587,8 @@ public class EventDispatcher
                             info.getSecurityContext(),
                             info.isRemoved());
                         m_svcListeners = updateListenerInfo(m_svcListeners, i, newInfo);
+                        unindexServiceListener(info);
+                        indexServiceListener(newInfo);
                         return oldFilter;
                     }
                 }
@@ -533,13 +695,34 @@ public class EventDispatcher
     {
         // Take a snapshot of the listener array.
         Map<BundleContext, List<ListenerInfo>> listeners = null;
+        Map<String, Map<BundleContext, List<ListenerInfo>>> index = null;
+        Map<BundleContext, List<ListenerInfo>> unindexed = null;
         synchronized (this)
         {
             listeners = m_svcListeners;
+            index = m_svcListenerIndex;
+            unindexed = m_unindexedSvcListeners;
         }
 
-        // Use service registry hooks to filter target listeners.
-        listeners = filterListenersUsingHooks(event, felix, listeners);
+        if (m_registry.getHookRegistry().getHooks(
+                org.osgi.framework.hooks.service.EventHook.class).isEmpty()
+            && m_registry.getHookRegistry().getHooks(
+                org.osgi.framework.hooks.service.EventListenerHook.class).isEmpty())
+        {
+            // Without event hooks, which must see all listeners, only the
+            // listeners whose filters can match the object classes of the
+            // service need to be considered.
+            Object classes = event.getServiceReference().getProperty(Constants.OBJECTCLASS);
+            if (classes instanceof String[])
+            {
+                listeners = getServiceListeners((String[]) classes, index, unindexed);
+            }
+        }
+        else
+        {
+            // Use service registry hooks to filter target listeners.
+            listeners = filterListenersUsingHooks(event, felix, listeners);
+        }
 
         // Fire all service events immediately on the calling thread.
         fireEventImmediately(
@@ -769,6 +952,12 @@ public class EventDispatcher
         Map<BundleContext, List<ListenerInfo>> listeners,
         EventObject event)
     {
+        if (dispatcher.m_threadCount > 1)
+        {
+            dispatcher.fireEventOnWorkers(type, listeners, event);
+            return;
+        }
+
         //TODO: should possibly check this within thread lock, seems to be ok though without
         // If dispatch thread is stopped, then ignore dispatch request.
         if (m_stopping || m_thread == null)
@@ -795,6 +984,8 @@ public class EventDispatcher
         req.m_type = type;
         req.m_listeners = listeners;
         req.m_event = event;
+        req.m_queued = System.nanoTime();
+        dispatcher.m_queueDepth.incrementAndGet();
 
         // Lock the request list.
         synchronized (m_requestList)
@@ -806,6 +997,45 @@ public class EventDispatcher
         }
     }
 
+    private void fireEventOnWorkers(
+        int type, Map<BundleContext, List<ListenerInfo>> listeners,
+        EventObject event)
+    {
+        // If the dispatch threads are stopped, then ignore dispatch request.
+        DispatchQueue[] workers = m_workers;
+        if (workers == null)
+        {
+            return;
+        }
+
+        // Partition the listeners by bundle context, so that the listeners of
+        // a bundle context are always called by the same dispatch thread and
+        // therefore receive events in the order in which they were fired.
+        Map<BundleContext, List<ListenerInfo>>[] partitions = new Map[workers.length];
+        for (Entry<BundleContext, List<ListenerInfo>> entry : listeners.entrySet())
+        {
+            int idx = (System.identityHashCode(entry.getKey()) & 0x7fffffff) % workers.length;
+            if (partitions[idx] == null)
+            {
+                partitions[idx] = new HashMap<BundleContext, List<ListenerInfo>>();
+            }
+            partitions[idx].put(entry.getKey(), entry.getValue());
+        }
+
+        for (int i = 0; i < partitions.length; i++)
+        {
+            if (partitions[i] != null)
+            {
+                Request req = new Request();
+                req.m_dispatcher = this;
+                req.m_type = type;
+                req.m_listeners = partitions[i];
+                req.m_event = event;
+                workers[i].add(req);
+            }
+        }
+    }
+
     private static void fireEventImmediately(
         EventDispatcher dispatcher, int type,
         Map<BundleContext, List<ListenerInfo>> listeners,
@@ -1021,6 +1251,187 @@ public class EventDispatcher
         }
     }
 
+    private static Map<BundleContext, List<ListenerInfo>> getServiceListeners(
+        String[] classes, Map<String, Map<BundleContext, List<ListenerInfo>>> index,
+        Map<BundleContext, List<ListenerInfo>> unindexed)
+    {
+        // Merge the unindexed listeners with the listeners indexed by the
+        // object classes of the service, only copying the maps if needed.
+        Map<BundleContext, List<ListenerInfo>> listeners = unindexed;
+        boolean copied = false;
+        for (String className : classes)
+        {
+            Map<BundleContext, List<ListenerInfo>> indexed = index.get(className);
+            if (indexed == null)
+            {
+                continue;
+            }
+            else if (listeners.isEmpty())
+            {
+                listeners = indexed;
+                continue;
+            }
+
+            if (!copied)
+            {
+                listeners = new HashMap<BundleContext, List<ListenerInfo>>(listeners);
+                copied = true;
+            }
+            for (Entry<BundleContext, List<ListenerInfo>> entry : indexed.entrySet())
+            {
+                List<ListenerInfo> infos = listeners.get(entry.getKey());
+                if (infos == null)
+                {
+                    listeners.put(entry.getKey(), entry.getValue());
+                }
+                else
+                {
+                    // A listener may be indexed by several object classes
+                    // of the service, but must only be called once.
+                    List<ListenerInfo> merged = new ArrayList<ListenerInfo>(infos);
+                    for (ListenerInfo info : entry.getValue())
+                    {
+                        if (indexOf(merged, info) < 0)
+                        {
+                            merged.add(info);
+                        }
+                    }
+                    listeners.put(entry.getKey(), merged);
+                }
+            }
+        }
+        return listeners;
+    }
+
+    private void indexServiceListener(ListenerInfo info)
+    {
+        Set<String> classes = getIndexClasses(info);
+        if (classes == null)
+        {
+            m_unindexedSvcListeners = addListenerInfo(m_unindexedSvcListeners, info);
+        }
+        else if (!classes.isEmpty())
+        {
+            Map<String, Map<BundleContext, List<ListenerInfo>>> index =
+                new HashMap<String, Map<BundleContext, List<ListenerInfo>>>(m_svcListenerIndex);
+            for (String className : classes)
+            {
+                Map<BundleContext, List<ListenerInfo>> listeners = index.get(className);
+                index.put(className, addListenerInfo(
+                    (listeners == null) ? Collections.EMPTY_MAP : listeners, info));
+            }
+            m_svcListenerIndex = index;
+        }
+    }
+
+    private void unindexServiceListener(ListenerInfo info)
+    {
+        Set<String> classes = getIndexClasses(info);
+        if (classes == null)
+        {
+            m_unindexedSvcListeners = removeListenerInfo(m_unindexedSvcListeners, info);
+        }
+        else if (!classes.isEmpty())
+        {
+            Map<String, Map<BundleContext, List<ListenerInfo>>> index =
+                new HashMap<String, Map<BundleContext, List<ListenerInfo>>>(m_svcListenerIndex);
+            for (String className : classes)
+            {
+                Map<BundleContext, List<ListenerInfo>> listeners = index.get(className);
+                if (listeners != null)
+                {
+                    listeners = removeListenerInfo(listeners, info);
+                    if (listeners.isEmpty())
+                    {
+                        index.remove(className);
+                    }
+                    else
+                    {
+                        index.put(className, listeners);
+                    }
+                }
+            }
+            m_svcListenerIndex = index;
+        }
+    }
+
+    /**
+     * Returns the object classes of which a service must have at least one
+     * to be matched by the filter of the specified service listener.
+     * @param info the service listener.
+     * @return the object classes or <tt>null</tt> if the listener may match
+     *         any service.
+    **/
+    private static Set<String> getIndexClasses(ListenerInfo info)
+    {
+        Filter filter = info.getParsedFilter();
+        if ((filter == null) || (info.getListener() instanceof UnfilteredServiceListener))
+        {
+            return null;
+        }
+        try
+        {
+            return getObjectClasses(SimpleFilter.parse(filter.toString()));
+        }
+        catch (Exception ex)
+        {
+            return null;
+        }
+    }
+
+    private static Set<String> getObjectClasses(SimpleFilter sf)
+    {
+        switch (sf.getOperation())
+        {
+            case SimpleFilter.EQ:
+                if (Constants.OBJECTCLASS.equalsIgnoreCase(sf.getName())
+                    && (sf.getValue() instanceof String))
+                {
+                    return Collections.singleton((String) sf.getValue());
+                }
+                return null;
+            case SimpleFilter.AND:
+                // Any object class required by one of the operands is
+                // required by the whole filter.
+                for (SimpleFilter child : (List<SimpleFilter>) sf.getValue())
+                {
+                    Set<String> classes = getObjectClasses(child);
+                    if (classes != null)
+                    {
+                        return classes;
+                    }
+                }
+                return null;
+            case SimpleFilter.OR:
+                // Each operand must require an object class.
+                Set<String> classes = new HashSet<String>();
+                for (SimpleFilter child : (List<SimpleFilter>) sf.getValue())
+                {
+                    Set<String> childClasses = getObjectClasses(child);
+                    if (childClasses == null)
+                    {
+                        return null;
+                    }
+                    classes.addAll(childClasses);
+                }
+                return classes;
+            default:
+                return null;
+        }
+    }
+
+    private static int indexOf(List<ListenerInfo> infos, ListenerInfo info)
+    {
+        for (int i = 0; i < infos.size(); i++)
+        {
+            if (infos.get(i) == info)
+            {
+                return i;
+            }
+        }
+        return -1;
+    }
+
     private static Map<BundleContext, List<ListenerInfo>> addListenerInfo(
         Map<BundleContext, List<ListenerInfo>> listeners, ListenerInfo info)
     {
@@ -1088,6 +1499,15 @@ public class EventDispatcher
         return listeners;
     }
 
+    private static Map<BundleContext, List<ListenerInfo>> removeListenerInfo(
+        Map<BundleContext, List<ListenerInfo>> listeners, ListenerInfo info)
+    {
+        List<ListenerInfo> infos = listeners.get(info.getBundleContext());
+        int idx = (infos == null) ? -1 : indexOf(infos, info);
+        return (idx < 0)
+            ? listeners : removeListenerInfo(listeners, info.getBundleContext(), idx);
+    }
+
     private static Map<BundleContext, List<ListenerInfo>> removeListenerInfos(
         Map<BundleContext, List<ListenerInfo>> listeners, BundleContext bc)
     {
@@ -1147,6 +1567,7 @@ public class EventDispatcher
             fireEventImmediately(
                 req.m_dispatcher, req.m_type, req.m_listeners,
                 req.m_event, null);
+            req.m_dispatcher.eventDispatched(req.m_queued);
 
             // Put dispatch request in cache.
             synchronized (m_requestPool)
@@ -1170,5 +1591,143 @@ public class EventDispatcher
         public int m_type = -1;
         public Map<BundleContext, List<ListenerInfo>> m_listeners = null;
         public EventObject m_event = null;
+        public long m_queued = 0;
+    }
+
+    /**
+     * A bounded request queue that is served by its own dispatch thread.
+     * Callers firing events are blocked while the queue is full, unless the
+     * dispatch thread makes no progress, in which case the request is queued
+     * anyway to avoid deadlocks with listeners waiting for the caller.
+    **/
+    private static class DispatchQueue implements Runnable
+    {
+        // Time to wait for the dispatch thread to make progress before
+        // exceeding the queue size.
+        private static final long QUEUE_WAIT = 1000;
+
+        private final EventDispatcher m_dispatcher;
+        private final List<Request> m_requestList = new LinkedList<Request>();
+        private final Thread m_thread;
+        private boolean m_stopping = false;
+        private long m_removed = 0;
+
+        DispatchQueue(EventDispatcher dispatcher, int idx)
+        {
+            m_dispatcher = dispatcher;
+            m_thread = new Thread(this, "FelixDispatchQueue-" + idx);
+            m_thread.start();
+        }
+
+        void add(Request req)
+        {
+            synchronized (m_requestList)
+            {
+                int limit = m_dispatcher.m_queueSize;
+                if ((limit > 0) && (Thread.currentThread() != m_thread))
+                {
+                    long removed = m_removed;
+                    long deadline = System.currentTimeMillis() + QUEUE_WAIT;
+                    while (!m_stopping && (m_requestList.size() >= limit))
+                    {
+                        long wait = deadline - System.currentTimeMillis();
+                        if (wait <= 0)
+                        {
+                            if (removed == m_removed)
+                            {
+                                break;
+                            }
+                            removed = m_removed;
+                            deadline = System.currentTimeMillis() + QUEUE_WAIT;
+                            wait = QUEUE_WAIT;
+                        }
+                        try
+                        {
+                            m_requestList.wait(wait);
+                        }
+                        catch (InterruptedException ex)
+                        {
+                            Thread.currentThread().interrupt();
+                            break;
+                        }
+                    }
+                }
+
+                // If the dispatch thread is stopping, then ignore dispatch request.
+                if (m_stopping)
+                {
+                    return;
+                }
+
+                req.m_queued = System.nanoTime();
+                m_dispatcher.m_queueDepth.incrementAndGet();
+                m_requestList.add(req);
+                m_requestList.notifyAll();
+            }
+        }
+
+        void stop()
+        {
+            synchronized (m_requestList)
+            {
+                m_stopping = true;
+                m_requestList.notifyAll();
+            }
+
+            while ((Thread.currentThread() != m_thread) && m_thread.isAlive())
+            {
+                try
+                {
+                    m_thread.join();
+                }
+                catch (InterruptedException ex)
+                {
+                }
+            }
+        }
+
+        @Override
+        public void run()
+        {
+            while (true)
+            {
+                Request req = null;
+                synchronized (m_requestList)
+                {
+                    // Wait while there are no requests to dispatch. If the
+                    // dispatcher thread is supposed to stop, then let the
+                    // dispatcher thread exit the loop and stop.
+                    while (m_requestList.isEmpty() && !m_stopping)
+                    {
+                        try
+                        {
+                            m_requestList.wait();
+                        }
+                        catch (InterruptedException ex)
+                        {
+                            // Not much we can do here except for keep waiting.
+                        }
+                    }
+
+                    if (m_requestList.isEmpty())
+                    {
+                        return;
+                    }
+
+                    // Get the dispatch request and wake up waiting callers.
+                    req = m_requestList.remove(0);
+                    m_removed++;
+                    m_requestList.notifyAll();
+                }
+
+                // NOTE: We don't catch any exceptions here, because
+                // the invoked method shields us from exceptions by
+                // catching Throwables when it invokes callbacks.
+                fireEventImmediately(
+                    m_dispatcher, req.m_type, req.m_listeners,
+                    req.m_event, null);
+                m_dispatcher.eventDispatched(req.m_queued);
+            }
+        }
     }
 }
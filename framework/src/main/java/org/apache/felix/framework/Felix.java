@@ -106,6 +106,13 @@ import java.util.StringTokenizer;
 import java.util.TreeMap;
 import java.util.TreeSet;
 import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -160,6 +167,9 @@ public class Felix extends BundleImpl implements Framework
     private volatile Map[] m_installedBundles;
     private static final int LOCATION_MAP_IDX = 0;
     private static final int IDENTIFIER_MAP_IDX = 1;
+    // Name of the file in the system bundle data area used to persist
+    // the wires of resolved bundles across framework restarts.
+    private static final String RESOLVER_SNAPSHOT_FILE = "resolver.snapshot";
     // An array of uninstalled bundles before a refresh occurs.
     // CONCURRENCY: Access guarded by the global lock for writes,
     // but no lock for reads since it is copy on write.
@@ -197,6 +207,9 @@ public class Felix extends BundleImpl implements Framework
     // List of event listeners.
     private final EventDispatcher m_dispatcher;
 
+    // Framework metrics, if enabled.
+    private final FrameworkMetrics m_metrics;
+
     // Reusable bundle URL stream handler.
     private final URLStreamHandler m_bundleStreamHandler;
 
@@ -426,6 +439,11 @@ public class Felix extends BundleImpl implements Framework
         // Create default bundle stream handler.
         m_bundleStreamHandler = new URLHandlersBundleStreamHandler(this, m_secureAction);
 
+        // Create the framework metrics, if enabled.
+        m_metrics = "true".equalsIgnoreCase(
+            String.valueOf(m_configMap.get(FelixConstants.METRICS_ENABLED_PROP)))
+            ? new FrameworkMetrics(this) : null;
+
         // Create service registry.
         m_registry = new ServiceRegistry(m_logger, new ServiceRegistryCallbacks() {
             @Override
@@ -454,7 +472,7 @@ public class Felix extends BundleImpl implements Framework
         }
 
         // Create event dispatcher.
-        m_dispatcher = new EventDispatcher(m_logger, m_registry);
+        m_dispatcher = new EventDispatcher(m_logger, m_registry, m_configMap);
 
         // Create framework wiring object.
         m_fwkWiring = new FrameworkWiringImpl(this, m_registry);
@@ -477,6 +495,16 @@ public class Felix extends BundleImpl implements Framework
         return m_resolver;
     }
 
+    EventDispatcher getEventDispatcher()
+    {
+        return m_dispatcher;
+    }
+
+    FrameworkMetrics getMetrics()
+    {
+        return m_metrics;
+    }
+
     BundleRevisionDependencies getDependencies()
     {
         return m_dependencies;
@@ -850,6 +878,22 @@ public class Felix extends BundleImpl implements Framework
                     m_extensionManager.startExtensionBundle(this, (BundleImpl) extension);
                 }
 
+                // Now that all cached bundles are installed, load the wires
+                // of the previous run so they do not need to be resolved again.
+                if (m_resolver.isSnapshotEnabled())
+                {
+                    try
+                    {
+                        m_resolver.loadSnapshot(
+                            m_cache.getSystemBundleDataFile(RESOLVER_SNAPSHOT_FILE));
+                    }
+                    catch (Exception ex)
+                    {
+                        m_logger.log(Logger.LOG_WARNING,
+                            "Unable to access resolution snapshot.", ex);
+                    }
+                }
+
                 // Now that we have loaded all cached bundles and have determined the
                 // max bundle ID of cached bundles, we need to try to load the next
                 // bundle ID from persistent storage. In case of failure, we should
@@ -1420,7 +1464,6 @@ public class Felix extends BundleImpl implements Framework
                     "Unable to acquire global lock to create bundle snapshot.");
             }
 
-            boolean bundlesRemaining;
             try
             {
                 synchronized (m_startLevelBundles)
@@ -1440,7 +1483,6 @@ public class Felix extends BundleImpl implements Framework
                                 ((BundleImpl) b).getStartLevel(
                                     getInitialBundleStartLevel())));
                     }
-                    bundlesRemaining = !m_startLevelBundles.isEmpty();
                 }
             }
             finally
@@ -1456,154 +1498,352 @@ public class Felix extends BundleImpl implements Framework
             int high = (isLowering) ? m_activeStartLevel : m_targetStartLevel;
             m_activeStartLevel = (isLowering) ? high : low;
 
-            // Process bundles and stop or start them accordingly.
-            while (bundlesRemaining)
+            // Process bundles and stop or start them accordingly. When raising
+            // the start level and parallel activation is configured, all bundles
+            // of a given start level are started concurrently on a bounded pool.
+            int parallelism = getStartLevelParallelism();
+            if (!isLowering && (parallelism > 1))
+            {
+                processStartLevelBundlesInParallel(low, high, parallelism);
+            }
+            else
             {
-                StartLevelTuple tuple;
+                processStartLevelBundles(isLowering, low, high);
+            }
 
-                // Remove our tuple to be processed while holding the queue lock
-                // and update the active start level accordingly, which allows
-                // us to determine in startBundle() if concurrent requests to
-                // start a bundle should be handled synchronously or just added
-                // to the queue and handled asynchronously.
-                synchronized (m_startLevelBundles)
+            m_activeStartLevel = m_targetStartLevel;
+        }
+
+        if (getState() == Bundle.ACTIVE)
+        {
+            fireFrameworkEvent(FrameworkEvent.STARTLEVEL_CHANGED, this, null);
+
+            if (listeners != null)
+            {
+                FrameworkEvent event = new FrameworkEvent(
+                    FrameworkEvent.STARTLEVEL_CHANGED, this, null);
+                for (FrameworkListener l : listeners)
                 {
-                    if (isLowering)
+                    try
                     {
-                        tuple = m_startLevelBundles.last();
+                        l.frameworkEvent(event);
                     }
-                    else
+                    catch (Throwable th)
                     {
-                        tuple = m_startLevelBundles.first();
+                        m_logger.log(Logger.LOG_ERROR,
+                            "Framework listener delivery error.", th);
                     }
+                }
+            }
+        }
+    }
 
-                    if ((tuple.m_level >= low) && (tuple.m_level <= high))
-                    {
-                        m_activeStartLevel = tuple.m_level;
-                    }
+    /**
+     * Processes the queued start level bundles one at a time on the calling
+     * thread, which is the start level thread.
+     * @param isLowering Whether the start level is being lowered.
+     * @param low The lowest start level to process.
+     * @param high The highest start level to process.
+    **/
+    private void processStartLevelBundles(boolean isLowering, int low, int high)
+    {
+        boolean bundlesRemaining;
+        synchronized (m_startLevelBundles)
+        {
+            bundlesRemaining = !m_startLevelBundles.isEmpty();
+        }
+
+        while (bundlesRemaining)
+        {
+            StartLevelTuple tuple;
+
+            // Remove our tuple to be processed while holding the queue lock
+            // and update the active start level accordingly, which allows
+            // us to determine in startBundle() if concurrent requests to
+            // start a bundle should be handled synchronously or just added
+            // to the queue and handled asynchronously.
+            synchronized (m_startLevelBundles)
+            {
+                if (isLowering)
+                {
+                    tuple = m_startLevelBundles.last();
+                }
+                else
+                {
+                    tuple = m_startLevelBundles.first();
                 }
 
-                // Ignore the system bundle, since its start() and
-                // stop() methods get called explicitly in Felix.start()
-                // and Felix.stop(), respectively.
-                if (tuple.m_bundle.getBundleId() != 0)
+                if ((tuple.m_level >= low) && (tuple.m_level <= high))
                 {
-                    // Lock the current bundle.
-                    try
-                    {
-                        acquireBundleLock(tuple.m_bundle,
-                            Bundle.INSTALLED | Bundle.RESOLVED | Bundle.ACTIVE
-                            | Bundle.STARTING | Bundle.STOPPING);
-                    }
-                    catch (IllegalStateException ex)
+                    m_activeStartLevel = tuple.m_level;
+                }
+            }
+
+            if (!processStartLevelTuple(tuple, isLowering))
+            {
+                continue;
+            }
+
+            synchronized (m_startLevelBundles)
+            {
+                m_startLevelBundles.remove(tuple);
+                bundlesRemaining = !m_startLevelBundles.isEmpty();
+            }
+        }
+    }
+
+    /**
+     * Processes the queued start level bundles one start level at a time,
+     * starting all bundles of the same start level concurrently using at
+     * most the given number of threads. The next start level is only
+     * processed once all bundles of the current start level have been
+     * processed, so start level ordering is preserved.
+     * @param low The lowest start level to process.
+     * @param high The highest start level to process.
+     * @param parallelism The maximum number of concurrently started bundles.
+    **/
+    private void processStartLevelBundlesInParallel(int low, int high, int parallelism)
+    {
+        ExecutorService executor = m_fwkStartLevel.getWorkers(parallelism);
+        while (true)
+        {
+            final List<StartLevelTuple> tuples = new ArrayList<StartLevelTuple>();
+
+            // Snapshot all bundles of the lowest remaining start level
+            // while holding the queue lock and update the active start
+            // level accordingly, see processStartLevelBundles().
+            synchronized (m_startLevelBundles)
+            {
+                if (m_startLevelBundles.isEmpty())
+                {
+                    break;
+                }
+                int level = m_startLevelBundles.first().m_level;
+                for (StartLevelTuple tuple : m_startLevelBundles)
+                {
+                    if (tuple.m_level != level)
                     {
-                        // Ignore if the bundle has been uninstalled.
-                        if (tuple.m_bundle.getState() != Bundle.UNINSTALLED)
-                        {
-                            fireFrameworkEvent(FrameworkEvent.ERROR, tuple.m_bundle, ex);
-                            m_logger.log(tuple.m_bundle,
-                                Logger.LOG_ERROR,
-                                "Error locking " + tuple.m_bundle._getLocation(), ex);
-                        }
-                        else
-                        {
-                            synchronized (m_startLevelBundles)
-                            {
-                                m_startLevelBundles.remove(tuple);
-                                bundlesRemaining = !m_startLevelBundles.isEmpty();
-                            }
-                        }
-                        continue;
+                        break;
                     }
+                    tuples.add(tuple);
+                }
+                if ((level >= low) && (level <= high))
+                {
+                    m_activeStartLevel = level;
+                }
+            }
 
-                    try
+            List<Future<Boolean>> results = new ArrayList<Future<Boolean>>(tuples.size());
+            for (final StartLevelTuple tuple : tuples)
+            {
+                Callable<Boolean> task = new Callable<Boolean>()
+                {
+                    public Boolean call()
                     {
-                        // Start the bundle if necessary.
-                        // Note that we only attempt to start the bundle if
-                        // its start level is equal to the active start level,
-                        // which means we assume lower bundles are in the state
-                        // they should be in (i.e., we won't attempt to restart
-                        // them if they previously failed to start).
-                        if (!isLowering
-                            && (((tuple.m_bundle.getPersistentState() == Bundle.ACTIVE)
-                                || (tuple.m_bundle.getPersistentState() == Bundle.STARTING))
-                                && (tuple.m_level == m_activeStartLevel)))
-                        {
-                            try
-                            {
-// TODO: LAZY - Not sure if this is the best way...
-                                int options = Bundle.START_TRANSIENT;
-                                options = (tuple.m_bundle.getPersistentState() == Bundle.STARTING)
-                                    ? options | Bundle.START_ACTIVATION_POLICY
-                                    : options;
-                                startBundle(tuple.m_bundle, options);
-                            }
-                            catch (Throwable th)
-                            {
-                                fireFrameworkEvent(FrameworkEvent.ERROR, tuple.m_bundle, th);
-                                m_logger.log(tuple.m_bundle,
-                                    Logger.LOG_ERROR,
-                                    "Error starting " + tuple.m_bundle._getLocation(), th);
-                            }
-                        }
-                        // Stop the bundle if necessary.
-                        else if (isLowering
-                            && (((tuple.m_bundle.getState() == Bundle.ACTIVE)
-                                || (tuple.m_bundle.getState() == Bundle.STARTING))
-                                && (tuple.m_level == m_activeStartLevel)))
-                        {
-                            try
-                            {
-                                stopBundle(tuple.m_bundle, false);
-                            }
-                            catch (Throwable th)
-                            {
-                                fireFrameworkEvent(FrameworkEvent.ERROR, tuple.m_bundle, th);
-                                m_logger.log(tuple.m_bundle,
-                                    Logger.LOG_ERROR,
-                                    "Error stopping " + tuple.m_bundle._getLocation(), th);
-                            }
-                        }
+                        return processStartLevelTuple(tuple, false);
                     }
-                    finally
+                };
+                try
+                {
+                    results.add(executor.submit(task));
+                }
+                catch (RejectedExecutionException ex)
+                {
+                    // The workers have been shut down concurrently by
+                    // stopping the framework, so process the bundle here.
+                    FutureTask<Boolean> result = new FutureTask<Boolean>(task);
+                    result.run();
+                    results.add(result);
+                }
+            }
+
+            // Wait for the whole start level to be processed before
+            // removing its bundles from the queue; bundles that could
+            // not be locked remain queued and will be retried.
+            for (int i = 0; i < tuples.size(); i++)
+            {
+                boolean processed;
+                try
+                {
+                    processed = getStartLevelResult(results.get(i));
+                }
+                catch (ExecutionException ex)
+                {
+                    StartLevelTuple tuple = tuples.get(i);
+                    fireFrameworkEvent(FrameworkEvent.ERROR, tuple.m_bundle, ex.getCause());
+                    m_logger.log(tuple.m_bundle,
+                        Logger.LOG_ERROR,
+                        "Error starting " + tuple.m_bundle._getLocation(), ex.getCause());
+                    processed = true;
+                }
+                if (processed)
+                {
+                    synchronized (m_startLevelBundles)
                     {
-                        // Always release bundle lock.
-                        releaseBundleLock(tuple.m_bundle);
+                        m_startLevelBundles.remove(tuples.get(i));
                     }
                 }
+            }
+        }
+    }
 
-                synchronized (m_startLevelBundles)
+    private static boolean getStartLevelResult(Future<Boolean> result)
+        throws ExecutionException
+    {
+        boolean interrupted = false;
+        try
+        {
+            while (true)
+            {
+                try
                 {
-                    m_startLevelBundles.remove(tuple);
-                    bundlesRemaining = !m_startLevelBundles.isEmpty();
+                    return result.get();
                 }
+                catch (InterruptedException ex)
+                {
+                    // Keep waiting, since the start level must not advance
+                    // before all bundles of the current level are processed.
+                    interrupted = true;
+                }
+            }
+        }
+        finally
+        {
+            if (interrupted)
+            {
+                Thread.currentThread().interrupt();
             }
+        }
+    }
 
-            m_activeStartLevel = m_targetStartLevel;
+    /**
+     * Starts or stops the bundle of the given start level tuple if required
+     * by the active start level while holding the bundle's lock.
+     * @param tuple The start level tuple to process.
+     * @param isLowering Whether the start level is being lowered.
+     * @return <tt>false</tt> if the bundle could not be locked and should be
+     *         processed again, <tt>true</tt> otherwise.
+    **/
+    private boolean processStartLevelTuple(StartLevelTuple tuple, boolean isLowering)
+    {
+        // Ignore the system bundle, since its start() and
+        // stop() methods get called explicitly in Felix.start()
+        // and Felix.stop(), respectively.
+        if (tuple.m_bundle.getBundleId() == 0)
+        {
+            return true;
         }
 
-        if (getState() == Bundle.ACTIVE)
+        // Lock the current bundle.
+        try
         {
-            fireFrameworkEvent(FrameworkEvent.STARTLEVEL_CHANGED, this, null);
+            acquireBundleLock(tuple.m_bundle,
+                Bundle.INSTALLED | Bundle.RESOLVED | Bundle.ACTIVE
+                | Bundle.STARTING | Bundle.STOPPING);
+        }
+        catch (IllegalStateException ex)
+        {
+            // Ignore if the bundle has been uninstalled.
+            if (tuple.m_bundle.getState() != Bundle.UNINSTALLED)
+            {
+                fireFrameworkEvent(FrameworkEvent.ERROR, tuple.m_bundle, ex);
+                m_logger.log(tuple.m_bundle,
+                    Logger.LOG_ERROR,
+                    "Error locking " + tuple.m_bundle._getLocation(), ex);
+                return false;
+            }
+            return true;
+        }
 
-            if (listeners != null)
+        try
+        {
+            // Start the bundle if necessary.
+            // Note that we only attempt to start the bundle if
+            // its start level is equal to the active start level,
+            // which means we assume lower bundles are in the state
+            // they should be in (i.e., we won't attempt to restart
+            // them if they previously failed to start).
+            if (!isLowering
+                && (((tuple.m_bundle.getPersistentState() == Bundle.ACTIVE)
+                    || (tuple.m_bundle.getPersistentState() == Bundle.STARTING))
+                    && (tuple.m_level == m_activeStartLevel)))
             {
-                FrameworkEvent event = new FrameworkEvent(
-                    FrameworkEvent.STARTLEVEL_CHANGED, this, null);
-                for (FrameworkListener l : listeners)
+                try
                 {
-                    try
-                    {
-                        l.frameworkEvent(event);
-                    }
-                    catch (Throwable th)
+// TODO: LAZY - Not sure if this is the best way...
+                    int options = Bundle.START_TRANSIENT;
+                    options = (tuple.m_bundle.getPersistentState() == Bundle.STARTING)
+                        ? options | Bundle.START_ACTIVATION_POLICY
+                        : options;
+                    long startTime = System.nanoTime();
+                    startBundle(tuple.m_bundle, options);
+                    long nanos = System.nanoTime() - startTime;
+                    if (m_metrics != null)
                     {
-                        m_logger.log(Logger.LOG_ERROR,
-                            "Framework listener delivery error.", th);
+                        m_metrics.bundleStarted(tuple.m_bundle.getBundleId(), nanos);
                     }
+                    m_logger.log(tuple.m_bundle,
+                        Logger.LOG_DEBUG,
+                        "Started " + tuple.m_bundle._getLocation()
+                        + " at start level " + tuple.m_level + " in "
+                        + TimeUnit.NANOSECONDS.toMillis(nanos) + " ms.");
                 }
+                catch (Throwable th)
+                {
+                    fireFrameworkEvent(FrameworkEvent.ERROR, tuple.m_bundle, th);
+                    m_logger.log(tuple.m_bundle,
+                        Logger.LOG_ERROR,
+                        "Error starting " + tuple.m_bundle._getLocation(), th);
+                }
+            }
+            // Stop the bundle if necessary.
+            else if (isLowering
+                && (((tuple.m_bundle.getState() == Bundle.ACTIVE)
+                    || (tuple.m_bundle.getState() == Bundle.STARTING))
+                    && (tuple.m_level == m_activeStartLevel)))
+            {
+                try
+                {
+                    stopBundle(tuple.m_bundle, false);
+                }
+                catch (Throwable th)
+                {
+                    fireFrameworkEvent(FrameworkEvent.ERROR, tuple.m_bundle, th);
+                    m_logger.log(tuple.m_bundle,
+                        Logger.LOG_ERROR,
+                        "Error stopping " + tuple.m_bundle._getLocation(), th);
+                }
+            }
+        }
+        finally
+        {
+            // Always release bundle lock.
+            releaseBundleLock(tuple.m_bundle);
+        }
+        return true;
+    }
+
+    /**
+     * Returns the maximum number of bundles of the same start level that
+     * may be started concurrently during a start level change.
+     * @return The configured start level parallelism, which defaults to 1.
+    **/
+    private int getStartLevelParallelism()
+    {
+        String s = getProperty(FelixConstants.STARTLEVEL_PARALLELISM_PROP);
+        if (s != null)
+        {
+            try
+            {
+                return Integer.parseInt(s.trim());
+            }
+            catch (NumberFormatException ex)
+            {
+                m_logger.log(Logger.LOG_WARNING,
+                    "Invalid " + FelixConstants.STARTLEVEL_PARALLELISM_PROP + " value: " + s);
             }
         }
+        return 1;
     }
 
     /**
@@ -2190,7 +2430,7 @@ public class Felix extends BundleImpl implements Framework
             // queued but processed synchronously.
             // Note: Don't queue starts from the start level thread, otherwise
             // we'd never get anything started.
-            if (!Thread.currentThread().getName().equals(FrameworkStartLevelImpl.THREAD_NAME))
+            if (!FrameworkStartLevelImpl.isStartLevelThread())
             {
                 synchronized (m_startLevelBundles)
                 {
@@ -2966,6 +3206,11 @@ public class Felix extends BundleImpl implements Framework
             // Set state to uninstalled.
             setBundleStateAndNotify(bundle, Bundle.UNINSTALLED);
             bundle.setLastModified(System.currentTimeMillis());
+
+            if (m_metrics != null)
+            {
+                m_metrics.bundleUninstalled(bundle.getBundleId());
+            }
         }
         finally
         {
@@ -3836,7 +4081,12 @@ public class Felix extends BundleImpl implements Framework
         }
 
         // Ask the service registry for all matching service references.
+        long start = (m_metrics != null) ? System.nanoTime() : 0;
         final Collection refList = m_registry.getServiceReferences(className, filter);
+        if (m_metrics != null)
+        {
+            m_metrics.serviceLookedUp(System.nanoTime() - start);
+        }
 
         // Filter on assignable references
         if (checkAssignable)
@@ -5122,6 +5372,13 @@ public class Felix extends BundleImpl implements Framework
             // Add the bundle activator for the url handler service.
             m_activatorList.add(0, new URLHandlersActivator(m_configMap, Felix.this));
 
+            // Add the framework metrics, which register themselves, unless
+            // they were added by a previous start already.
+            if ((m_metrics != null) && !m_activatorList.contains(m_metrics))
+            {
+                m_activatorList.add(1, m_metrics);
+            }
+
             // Start all activators.
             for (Iterator<BundleActivator> iter = m_activatorList.iterator(); iter.hasNext(); )
             {
@@ -5208,6 +5465,21 @@ public class Felix extends BundleImpl implements Framework
                 }
             }
 
+            // Save the wires of all resolved bundles for the next run.
+            if (m_resolver.isSnapshotEnabled())
+            {
+                try
+                {
+                    m_resolver.saveSnapshot(
+                        m_cache.getSystemBundleDataFile(RESOLVER_SNAPSHOT_FILE));
+                }
+                catch (Exception ex)
+                {
+                    m_logger.log(Logger.LOG_WARNING,
+                        "Unable to access resolution snapshot.", ex);
+                }
+            }
+
             // Dispose of the bundles to close their associated contents.
             bundles = getBundles();
             for (int i = 0; i < bundles.length; i++)
@@ -5665,6 +5937,24 @@ public class Felix extends BundleImpl implements Framework
         }
     }
 
+    /**
+     * Returns whether the calling thread holds the global lock.
+     * @return <tt>true</tt> if the calling thread holds the global lock,
+     *         <tt>false</tt> otherwise.
+    **/
+    boolean isGlobalLockHolder()
+    {
+        m_bundleLock.lock();
+        try
+        {
+            return m_globalLockThread == Thread.currentThread();
+        }
+        finally
+        {
+            m_bundleLock.unlock();
+        }
+    }
+
     /**
      * Releases the global lock.
      * @throws java.lang.IllegalStateException If the calling thread does not
@@ -0,0 +1,231 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.framework;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+import org.apache.felix.framework.util.FelixConstants;
+import org.apache.felix.framework.util.NegativeLookupCache;
+import org.apache.felix.framework.util.StripedCounter;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleActivator;
+import org.osgi.framework.BundleContext;
+
+/**
+ * This class collects the framework metrics. It is only created if metrics
+ * are enabled, so the instrumented code paths check whether there is an
+ * instance at all before measuring anything. As a system bundle activator,
+ * it registers itself as a platform MBean. It is not registered as a
+ * service, because its interface is not in an exported package.
+**/
+class FrameworkMetrics implements FrameworkMetricsMBean, BundleActivator
+{
+    private final Felix m_felix;
+    private final StripedCounter m_classLoadCount = new StripedCounter();
+    private final StripedCounter m_classLoadTime = new StripedCounter();
+    private final StripedCounter m_resolveCount = new StripedCounter();
+    private final StripedCounter m_resolveTime = new StripedCounter();
+    private final StripedCounter m_lookupCount = new StripedCounter();
+    private final StripedCounter m_lookupTime = new StripedCounter();
+    private final StripedCounter m_startCount = new StripedCounter();
+    private final StripedCounter m_startTime = new StripedCounter();
+    private final Map<Long, Long> m_bundleStartTimes = new ConcurrentHashMap<Long, Long>();
+    private ObjectName m_objectName = null;
+
+    FrameworkMetrics(Felix felix)
+    {
+        m_felix = felix;
+    }
+
+    public void start(BundleContext context) throws Exception
+    {
+        try
+        {
+            ObjectName name = new ObjectName(
+                "org.apache.felix.framework:type=FrameworkMetrics,uuid="
+                + m_felix._getProperty(FelixConstants.FRAMEWORK_UUID));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(
+                new StandardMBean(this, FrameworkMetricsMBean.class), name);
+            m_objectName = name;
+        }
+        catch (Throwable ex)
+        {
+            // The platform MBean server may not be available on all VMs.
+            m_felix.getLogger().log(Logger.LOG_WARNING,
+                "Unable to register the framework metrics MBean.", ex);
+        }
+    }
+
+    public void stop(BundleContext context) throws Exception
+    {
+        if (m_objectName != null)
+        {
+            try
+            {
+                MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+                server.unregisterMBean(m_objectName);
+            }
+            catch (Throwable ex)
+            {
+                m_felix.getLogger().log(Logger.LOG_DEBUG,
+                    "Unable to unregister the framework metrics MBean.", ex);
+            }
+            m_objectName = null;
+        }
+    }
+
+    void classDefined(long nanos)
+    {
+        m_classLoadCount.increment();
+        m_classLoadTime.add(nanos);
+    }
+
+    void resolved(long nanos)
+    {
+        m_resolveCount.increment();
+        m_resolveTime.add(nanos);
+    }
+
+    void serviceLookedUp(long nanos)
+    {
+        m_lookupCount.increment();
+        m_lookupTime.add(nanos);
+    }
+
+    void bundleStarted(long bundleId, long nanos)
+    {
+        m_startCount.increment();
+        m_startTime.add(nanos);
+        m_bundleStartTimes.put(bundleId, nanos);
+    }
+
+    void bundleUninstalled(long bundleId)
+    {
+        m_bundleStartTimes.remove(bundleId);
+    }
+
+    public long getClassLoadCount()
+    {
+        return m_classLoadCount.sum();
+    }
+
+    public long getClassLoadTime()
+    {
+        return m_classLoadTime.sum();
+    }
+
+    public long getBundleClassLoadCount(long bundleId)
+    {
+        BundleWiringImpl wiring = getWiring(bundleId);
+        return (wiring != null) ? wiring.getClassLoadCount() : 0;
+    }
+
+    public long getBundleClassLoadTime(long bundleId)
+    {
+        BundleWiringImpl wiring = getWiring(bundleId);
+        return (wiring != null) ? wiring.getClassLoadTime() : 0;
+    }
+
+    public long getBundleNegativeLookupHitCount(long bundleId)
+    {
+        BundleWiringImpl wiring = getWiring(bundleId);
+        NegativeLookupCache cache = (wiring != null)
+            ? wiring.getNegativeLookupCache() : null;
+        return (cache != null) ? cache.getHitCount() : 0;
+    }
+
+    public long getBundleNegativeLookupMissCount(long bundleId)
+    {
+        BundleWiringImpl wiring = getWiring(bundleId);
+        NegativeLookupCache cache = (wiring != null)
+            ? wiring.getNegativeLookupCache() : null;
+        return (cache != null) ? cache.getMissCount() : 0;
+    }
+
+    public long getResolveCount()
+    {
+        return m_resolveCount.sum();
+    }
+
+    public long getResolveTime()
+    {
+        return m_resolveTime.sum();
+    }
+
+    public long getServiceLookupCount()
+    {
+        return m_lookupCount.sum();
+    }
+
+    public long getServiceLookupTime()
+    {
+        return m_lookupTime.sum();
+    }
+
+    public long getStartCount()
+    {
+        return m_startCount.sum();
+    }
+
+    public long getStartTime()
+    {
+        return m_startTime.sum();
+    }
+
+    public long getBundleStartTime(long bundleId)
+    {
+        Long nanos = m_bundleStartTimes.get(bundleId);
+        return (nanos != null) ? nanos : 0;
+    }
+
+    public int getEventQueueDepth()
+    {
+        return m_felix.getEventDispatcher().getQueueDepth();
+    }
+
+    public long getEventDispatchCount()
+    {
+        return m_felix.getEventDispatcher().getDispatchedEventCount();
+    }
+
+    public long getAverageEventDispatchLatency()
+    {
+        return m_felix.getEventDispatcher().getAverageDispatchLatency();
+    }
+
+    public long getMaxEventDispatchLatency()
+    {
+        return m_felix.getEventDispatcher().getMaxDispatchLatency();
+    }
+
+    private BundleWiringImpl getWiring(long bundleId)
+    {
+        Bundle bundle = m_felix.getBundle(bundleId);
+        BundleRevisionImpl revision = (bundle != null)
+            ? bundle.adapt(BundleRevisionImpl.class) : null;
+        return ((revision != null) && (revision.getWiring() instanceof BundleWiringImpl))
+            ? (BundleWiringImpl) revision.getWiring() : null;
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.framework;
+
+/**
+ * Counters and latencies of the hot paths of the framework. If enabled with
+ * the <tt>felix.metrics.enabled</tt> configuration property, the system
+ * bundle registers an implementation of this interface as a platform MBean
+ * named <tt>org.apache.felix.framework:type=FrameworkMetrics,uuid=</tt>
+ * followed by the framework UUID. JMX is the only way to access the
+ * metrics, since this package is not exported. All times are in
+ * nanoseconds and all counters are cumulative since the framework was
+ * created.
+**/
+public interface FrameworkMetricsMBean
+{
+    /**
+     * Returns the number of classes defined by bundle class loaders.
+     * @return the number of defined classes.
+    **/
+    long getClassLoadCount();
+
+    /**
+     * Returns the total time spent finding, weaving, and defining the
+     * classes of bundle class loaders.
+     * @return the total class load time in nanoseconds.
+    **/
+    long getClassLoadTime();
+
+    /**
+     * Returns the number of classes defined by the class loader of the
+     * current wiring of the given bundle.
+     * @param bundleId the identifier of the bundle.
+     * @return the number of defined classes or <tt>0</tt> if the bundle
+     *         is not resolved.
+    **/
+    long getBundleClassLoadCount(long bundleId);
+
+    /**
+     * Returns the time spent defining the classes of the class loader of
+     * the current wiring of the given bundle.
+     * @param bundleId the identifier of the bundle.
+     * @return the class load time in nanoseconds or <tt>0</tt> if the
+     *         bundle is not resolved.
+    **/
+    long getBundleClassLoadTime(long bundleId);
+
+    /**
+     * Returns the number of class and resource lookups of the current wiring
+     * of the given bundle which were answered by its cache of names that
+     * could not be found.
+     * @param bundleId the identifier of the bundle.
+     * @return the number of negative lookup cache hits or <tt>0</tt> if the
+     *         bundle is not resolved or the cache is disabled.
+    **/
+    long getBundleNegativeLookupHitCount(long bundleId);
+
+    /**
+     * Returns the number of class and resource lookups of the current wiring
+     * of the given bundle which were not answered by its cache of names that
+     * could not be found.
+     * @param bundleId the identifier of the bundle.
+     * @return the number of negative lookup cache misses or <tt>0</tt> if
+     *         the bundle is not resolved or the cache is disabled.
+    **/
+    long getBundleNegativeLookupMissCount(long bundleId);
+
+    /**
+     * Returns the number of resolve operations, including dynamic imports.
+     * @return the number of resolve operations.
+    **/
+    long getResolveCount();
+
+    /**
+     * Returns the total time spent in resolve operations.
+     * @return the total resolve time in nanoseconds.
+    **/
+    long getResolveTime();
+
+    /**
+     * Returns the number of service registry lookups.
+     * @return the number of service lookups.
+    **/
+    long getServiceLookupCount();
+
+    /**
+     * Returns the total time spent in service registry lookups.
+     * @return the total service lookup time in nanoseconds.
+    **/
+    long getServiceLookupTime();
+
+    /**
+     * Returns the number of bundles started by changes of the framework
+     * start level.
+     * @return the number of bundles started by start level changes.
+    **/
+    long getStartCount();
+
+    /**
+     * Returns the total time spent starting bundles, including their
+     * activators, on changes of the framework start level. If bundles of a
+     * start level are started in parallel, their times add up.
+     * @return the total start time in nanoseconds.
+    **/
+    long getStartTime();
+
+    /**
+     * Returns the time it took the last start level change which started
+     * the given bundle to start it.
+     * @param bundleId the identifier of the bundle.
+     * @return the start time in nanoseconds or <tt>0</tt> if the bundle
+     *         was not started by a start level change.
+    **/
+    long getBundleStartTime(long bundleId);
+
+    /**
+     * Returns the number of asynchronous event deliveries that are queued or
+     * in progress.
+     * @return the number of pending asynchronous event deliveries.
+    **/
+    int getEventQueueDepth();
+
+    /**
+     * Returns the number of completed asynchronous event deliveries.
+     * @return the number of completed asynchronous event deliveries.
+    **/
+    long getEventDispatchCount();
+
+    /**
+     * Returns the average time from queueing an asynchronous event until
+     * all of its listeners have been called.
+     * @return the average dispatch latency in nanoseconds.
+    **/
+    long getAverageEventDispatchLatency();
+
+    /**
+     * Returns the largest time from queueing an asynchronous event until
+     * all of its listeners have been called.
+     * @return the maximum dispatch latency in nanoseconds.
+    **/
+    long getMaxEventDispatchLatency();
+}
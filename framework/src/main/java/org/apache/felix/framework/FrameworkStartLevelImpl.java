@@ -20,6 +20,12 @@ package org.apache.felix.framework;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.osgi.framework.AdminPermission;
 import org.osgi.framework.Bundle;
@@ -33,9 +39,12 @@ import org.osgi.service.startlevel.StartLevel;
 class FrameworkStartLevelImpl implements FrameworkStartLevel, Runnable
 {
     static final String THREAD_NAME = "FelixStartLevel";
+    static final String WORKER_THREAD_NAME_PREFIX = THREAD_NAME + "-Worker-";
 
     private static final int BUNDLE_IDX = 0;
     private static final int STARTLEVEL_IDX = 1;
+    // Idle worker threads end after this many seconds.
+    private static final long WORKER_KEEP_ALIVE_SECONDS = 60;
 
     private final Felix m_felix;
     private final ServiceRegistry m_registry;
@@ -44,6 +53,7 @@ class FrameworkStartLevelImpl implements FrameworkStartLevel, Runnable
         = new ArrayList<FrameworkListener[]>();
     private ServiceRegistration<StartLevel> m_slReg;
     private Thread m_thread = null;
+    private ExecutorService m_workers = null;
 
     FrameworkStartLevelImpl(Felix felix, ServiceRegistry registry)
     {
@@ -73,10 +83,72 @@ class FrameworkStartLevelImpl implements FrameworkStartLevel, Runnable
     }
 
     /**
-     * Stops the FelixStartLevel thread on system shutdown. Shutting down the
-     * thread explicitly is required in the embedded case, where Felix may be
-     * stopped without the Java VM being stopped. In this case the
-     * FelixStartLevel thread must be stopped explicitly.
+     * Returns the pool of worker threads used to start the bundles of a
+     * start level concurrently. The pool is created on first use and shut
+     * down along with the start level thread, see {@link #stop()}. Idle
+     * worker threads end after a while, so the pool does not keep threads
+     * once the start level is reached.
+     * @param parallelism The number of worker threads.
+     * @return The worker thread pool.
+     */
+    ExecutorService getWorkers(int parallelism)
+    {
+        synchronized (m_requests)
+        {
+            if (m_workers == null)
+            {
+                ThreadPoolExecutor workers = new ThreadPoolExecutor(
+                    parallelism, parallelism,
+                    WORKER_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(),
+                    createWorkerThreadFactory());
+                workers.allowCoreThreadTimeOut(true);
+                m_workers = workers;
+            }
+            return m_workers;
+        }
+    }
+
+    /**
+     * Creates a thread factory for the worker threads used to start the
+     * bundles of a start level concurrently. Worker threads are treated like
+     * the start level thread itself, see {@link #isStartLevelThread()}.
+     * @return A thread factory creating daemon start level worker threads.
+     */
+    private static ThreadFactory createWorkerThreadFactory()
+    {
+        return new ThreadFactory()
+        {
+            private final AtomicInteger m_counter = new AtomicInteger();
+
+            public Thread newThread(Runnable r)
+            {
+                Thread thread = new Thread(r,
+                    WORKER_THREAD_NAME_PREFIX + m_counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+
+    /**
+     * Determines whether the current thread is the start level thread or
+     * one of its worker threads.
+     * @return <tt>true</tt> if the current thread processes a start level
+     *         change, <tt>false</tt> otherwise.
+     */
+    static boolean isStartLevelThread()
+    {
+        String name = Thread.currentThread().getName();
+        return name.equals(THREAD_NAME) || name.startsWith(WORKER_THREAD_NAME_PREFIX);
+    }
+
+    /**
+     * Stops the FelixStartLevel thread and its worker threads on system
+     * shutdown. Shutting down the threads explicitly is required in the
+     * embedded case, where Felix may be stopped without the Java VM being
+     * stopped. In this case the FelixStartLevel thread must be stopped
+     * explicitly.
      * <p>
      * This method is called by the
      * {@link StartLevelActivator#stop(BundleContext)} method.
@@ -95,6 +167,11 @@ class FrameworkStartLevelImpl implements FrameworkStartLevel, Runnable
                 // for more work.
                 m_requests.notifyAll();
             }
+            if (m_workers != null)
+            {
+                m_workers.shutdown();
+                m_workers = null;
+            }
         }
     }
 
@@ -0,0 +1,247 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.framework;
+
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.osgi.framework.wiring.BundleRevision;
+import org.osgi.framework.wiring.BundleWiring;
+import org.osgi.resource.Resource;
+import org.osgi.resource.Wire;
+import org.osgi.service.resolver.ResolutionException;
+
+/**
+ * This class implements a bounded cache of the outcomes of resolve
+ * operations, i.e., either the resulting wire map or the resolution
+ * exception. Outcomes are keyed by the revisions to resolve and a
+ * fingerprint of the resolver state, which consists of all installed
+ * revisions and the wires of the resolved ones. Refreshing a bundle
+ * reuses its revision, so resolving the same bundles again after a
+ * refresh finds the previous outcome, while installing, updating,
+ * resolving, or uninstalling bundles or wiring dynamic imports changes
+ * the fingerprint. Once the cache is full, the least recently used
+ * outcome is discarded.
+**/
+class ResolutionCache
+{
+    private final int m_maxSize;
+    private final Map<Key, Object> m_outcomes;
+    // The state of the most recently created key, which is shared with
+    // new keys for the same state to avoid copying it for every outcome.
+    private Map<BundleRevision, Object> m_lastState;
+    private long m_hits;
+    private long m_misses;
+
+    /**
+     * Creates a cache holding at most the given number of outcomes.
+     * @param maxSize the maximum number of cached outcomes.
+    **/
+    ResolutionCache(int maxSize)
+    {
+        m_maxSize = maxSize;
+        m_outcomes = new LinkedHashMap<Key, Object>(16, 0.75f, true)
+        {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Object> eldest)
+            {
+                return size() > m_maxSize;
+            }
+        };
+    }
+
+    /**
+     * Creates the key for resolving the given revisions in the given
+     * resolver state. The caller must prevent concurrent modifications
+     * of the installed revisions.
+     * @param mandatory the revisions that must be resolved.
+     * @param optional the revisions that should be resolved.
+     * @param installed all currently installed revisions.
+     * @return the key.
+    **/
+    synchronized Key createKey(
+        Set<BundleRevision> mandatory, Set<BundleRevision> optional,
+        Collection<BundleRevision> installed)
+    {
+        Map<BundleRevision, Object> state =
+            new IdentityHashMap<BundleRevision, Object>(installed.size());
+        for (BundleRevision revision : installed)
+        {
+            BundleWiring wiring = revision.getWiring();
+            // The required wires are replaced whenever a dynamic wire is
+            // added, so they also identify the dynamic wires of a wiring.
+            state.put(revision, (wiring != null) ? wiring.getRequiredWires(null) : null);
+        }
+        if (state.equals(m_lastState))
+        {
+            state = m_lastState;
+        }
+        else
+        {
+            m_lastState = state;
+        }
+        return new Key(mandatory, optional, state);
+    }
+
+    /**
+     * Returns the cached wire map for the given key. The returned wire
+     * map must not be modified.
+     * @param key the key of the resolve operation.
+     * @return the cached wire map or <tt>null</tt> if there is no outcome
+     *         cached for the given key.
+     * @throws ResolutionException if the resolve operation failed before.
+    **/
+    synchronized Map<Resource, List<Wire>> get(Key key) throws ResolutionException
+    {
+        Object outcome = m_outcomes.get(key);
+        if (outcome == null)
+        {
+            m_misses++;
+            return null;
+        }
+        m_hits++;
+        if (outcome instanceof ResolutionException)
+        {
+            throw (ResolutionException) outcome;
+        }
+        // Outcomes other than exceptions are only stored by put(Key, Map).
+        @SuppressWarnings("unchecked")
+        Map<Resource, List<Wire>> wireMap = (Map<Resource, List<Wire>>) outcome;
+        return wireMap;
+    }
+
+    /**
+     * Caches the wire map of a successful resolve operation.
+     * @param key the key of the resolve operation.
+     * @param wireMap the resulting wire map.
+    **/
+    synchronized void put(Key key, Map<Resource, List<Wire>> wireMap)
+    {
+        m_outcomes.put(key, wireMap);
+    }
+
+    /**
+     * Caches the exception of a failed resolve operation.
+     * @param key the key of the resolve operation.
+     * @param ex the resolution exception.
+    **/
+    synchronized void put(Key key, ResolutionException ex)
+    {
+        m_outcomes.put(key, ex);
+    }
+
+    /**
+     * Discards all outcomes whose resolver state includes the given
+     * revision, which can never match again once the revision is gone.
+     * @param revision the revision that was removed.
+    **/
+    synchronized void remove(BundleRevision revision)
+    {
+        for (Iterator<Key> it = m_outcomes.keySet().iterator(); it.hasNext(); )
+        {
+            if (it.next().m_state.containsKey(revision))
+            {
+                it.remove();
+            }
+        }
+        if ((m_lastState != null) && m_lastState.containsKey(revision))
+        {
+            m_lastState = null;
+        }
+    }
+
+    /**
+     * Discards all cached outcomes.
+    **/
+    synchronized void clear()
+    {
+        m_outcomes.clear();
+        m_lastState = null;
+    }
+
+    /**
+     * Returns the number of resolve operations answered by this cache.
+     * @return the number of cache hits.
+    **/
+    synchronized long getHitCount()
+    {
+        return m_hits;
+    }
+
+    /**
+     * Returns the number of resolve operations not answered by this cache.
+     * @return the number of cache misses.
+    **/
+    synchronized long getMissCount()
+    {
+        return m_misses;
+    }
+
+    /**
+     * Returns the number of currently cached outcomes.
+     * @return the number of cached outcomes.
+    **/
+    synchronized int size()
+    {
+        return m_outcomes.size();
+    }
+
+    static class Key
+    {
+        private final Set<BundleRevision> m_mandatory;
+        private final Set<BundleRevision> m_optional;
+        private final Map<BundleRevision, Object> m_state;
+        private final int m_hashCode;
+
+        private Key(Set<BundleRevision> mandatory, Set<BundleRevision> optional,
+            Map<BundleRevision, Object> state)
+        {
+            m_mandatory = mandatory;
+            m_optional = optional;
+            m_state = state;
+            m_hashCode = 31 * (31 * mandatory.hashCode() + optional.hashCode())
+                + state.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (!(obj instanceof Key))
+            {
+                return false;
+            }
+            Key other = (Key) obj;
+            return (m_hashCode == other.m_hashCode)
+                && m_mandatory.equals(other.m_mandatory)
+                && m_optional.equals(other.m_optional)
+                && ((m_state == other.m_state) || m_state.equals(other.m_state));
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return m_hashCode;
+        }
+    }
+}
@@ -0,0 +1,534 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.framework;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.apache.felix.framework.util.FelixConstants;
+import org.apache.felix.framework.util.SecureAction;
+import org.apache.felix.framework.util.Util;
+import org.apache.felix.framework.wiring.BundleRequirementImpl;
+import org.apache.felix.framework.wiring.BundleWireImpl;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.Constants;
+import org.osgi.framework.namespace.NativeNamespace;
+import org.osgi.framework.wiring.BundleCapability;
+import org.osgi.framework.wiring.BundleRequirement;
+import org.osgi.framework.wiring.BundleRevision;
+import org.osgi.framework.wiring.BundleWire;
+import org.osgi.framework.wiring.BundleWiring;
+import org.osgi.resource.Resource;
+import org.osgi.resource.Wire;
+
+/**
+ * This class implements a persisted snapshot of the wires of all resolved
+ * bundle revisions, which is used to avoid resolving bundles again when the
+ * framework is restarted. Revisions are identified by their revision
+ * identifier and last modification time, while requirements and capabilities
+ * are identified by their position in the declaring revision. The snapshot
+ * is only valid for the system bundle capabilities it was taken with.
+ * Wires are only restored for revisions whose complete dependency closure
+ * is unchanged; otherwise the caller has to resolve them as usual.
+**/
+class ResolutionSnapshot
+{
+    private static final int SNAPSHOT_MAGIC = 0x46525353;
+    private static final int SNAPSHOT_VERSION = 1;
+
+    private static final SecureAction m_secureAction = new SecureAction();
+
+    private final Map<String, RevisionEntry> m_entries;
+    // Maps host revision keys to the keys of their attached fragments.
+    private final Map<String, List<String>> m_fragments;
+    private final Map<String, BundleRevision> m_revisions;
+    // Keys of revisions whose wires were restored already; these are
+    // resolved by the resolver if they ever get unresolved again.
+    private final Set<String> m_restored = new HashSet<String>();
+
+    private ResolutionSnapshot(
+        Map<String, RevisionEntry> entries, Collection<BundleRevision> revisions)
+    {
+        m_entries = entries;
+        m_fragments = new HashMap<String, List<String>>();
+        for (RevisionEntry entry : entries.values())
+        {
+            if (entry.m_fragment)
+            {
+                for (WireEntry wire : entry.m_wires)
+                {
+                    List<String> fragments = m_fragments.get(wire.m_provider);
+                    if (fragments == null)
+                    {
+                        fragments = new ArrayList<String>();
+                        m_fragments.put(wire.m_provider, fragments);
+                    }
+                    fragments.add(entry.m_key);
+                }
+            }
+        }
+        m_revisions = new HashMap<String, BundleRevision>(revisions.size());
+        for (BundleRevision revision : revisions)
+        {
+            m_revisions.put(getKey(revision), revision);
+        }
+    }
+
+    /**
+     * Loads a snapshot from the given file.
+     * @param file the file containing the snapshot.
+     * @param revisions all currently installed revisions.
+     * @param systemRevision the system bundle revision.
+     * @return the snapshot or <tt>null</tt> if the file does not exist or
+     *         was taken for a different set of system bundle capabilities.
+     * @throws IOException if the snapshot could not be read.
+    **/
+    static ResolutionSnapshot load(
+        File file, Collection<BundleRevision> revisions, BundleRevision systemRevision)
+        throws IOException
+    {
+        if (!m_secureAction.fileExists(file))
+        {
+            return null;
+        }
+
+        DataInputStream in = new DataInputStream(
+            new BufferedInputStream(m_secureAction.getFileInputStream(file)));
+        try
+        {
+            if ((in.readInt() != SNAPSHOT_MAGIC)
+                || (in.readInt() != SNAPSHOT_VERSION)
+                || (in.readLong() != getConfigHash(systemRevision)))
+            {
+                return null;
+            }
+            int count = in.readInt();
+            Map<String, RevisionEntry> entries = new HashMap<String, RevisionEntry>(count);
+            for (int i = 0; i < count; i++)
+            {
+                RevisionEntry entry = new RevisionEntry(
+                    in.readUTF(), in.readLong(), in.readBoolean());
+                int wireCount = in.readInt();
+                for (int j = 0; j < wireCount; j++)
+                {
+                    entry.m_wires.add(new WireEntry(
+                        in.readUTF(), in.readUTF(), in.readInt(),
+                        in.readUTF(), in.readUTF(), in.readInt()));
+                }
+                entries.put(entry.m_key, entry);
+            }
+            return new ResolutionSnapshot(entries, revisions);
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    /**
+     * Saves the wires of all resolved revisions to the given file. Revisions
+     * whose wires cannot be described, because they refer to capabilities or
+     * requirements that are not declared by any revision, are left out.
+     * @param file the file to write the snapshot to.
+     * @param revisions all currently installed revisions.
+     * @param systemRevision the system bundle revision.
+     * @throws IOException if the snapshot could not be written.
+    **/
+    static void save(
+        File file, Collection<BundleRevision> revisions, BundleRevision systemRevision)
+        throws IOException
+    {
+        List<RevisionEntry> entries = new ArrayList<RevisionEntry>();
+        for (BundleRevision revision : revisions)
+        {
+            RevisionEntry entry = createEntry(revision);
+            if (entry != null)
+            {
+                entries.add(entry);
+            }
+        }
+
+        DataOutputStream out = new DataOutputStream(
+            new BufferedOutputStream(m_secureAction.getFileOutputStream(file)));
+        try
+        {
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(SNAPSHOT_VERSION);
+            out.writeLong(getConfigHash(systemRevision));
+            out.writeInt(entries.size());
+            for (RevisionEntry entry : entries)
+            {
+                out.writeUTF(entry.m_key);
+                out.writeLong(entry.m_lastModified);
+                out.writeBoolean(entry.m_fragment);
+                out.writeInt(entry.m_wires.size());
+                for (WireEntry wire : entry.m_wires)
+                {
+                    out.writeUTF(wire.m_requirer);
+                    out.writeUTF(wire.m_requirementOwner);
+                    out.writeInt(wire.m_requirementIndex);
+                    out.writeUTF(wire.m_provider);
+                    out.writeUTF(wire.m_capabilityOwner);
+                    out.writeInt(wire.m_capabilityIndex);
+                }
+            }
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+    /**
+     * Restores the wires of the given unresolved revisions and all of the
+     * unresolved revisions they depend on. The returned wire map has the
+     * same structure as the one returned by the resolver.
+     * @param mandatory the revisions that must be resolved.
+     * @param optional the revisions that should be resolved.
+     * @param installed all currently installed revisions.
+     * @param fragments all currently installed fragments.
+     * @return the restored wire map or <tt>null</tt> if the snapshot cannot
+     *         be used for all of the given revisions.
+    **/
+    Map<Resource, List<Wire>> restore(
+        Collection<BundleRevision> mandatory, Collection<BundleRevision> optional,
+        Set<BundleRevision> installed, Set<BundleRevision> fragments)
+    {
+        LinkedList<BundleRevision> todo = new LinkedList<BundleRevision>();
+        for (BundleRevision revision : mandatory)
+        {
+            if (revision.getWiring() == null)
+            {
+                todo.add(revision);
+            }
+        }
+        for (BundleRevision revision : optional)
+        {
+            if (revision.getWiring() == null)
+            {
+                todo.add(revision);
+            }
+        }
+        if (todo.isEmpty())
+        {
+            return null;
+        }
+
+        Map<Resource, List<Wire>> wireMap = new HashMap<Resource, List<Wire>>();
+        Set<BundleRevision> checked = new HashSet<BundleRevision>();
+        List<BundleRevision> hosts = new ArrayList<BundleRevision>();
+        while (!todo.isEmpty())
+        {
+            BundleRevision revision = todo.removeFirst();
+            if (wireMap.containsKey(revision))
+            {
+                continue;
+            }
+            RevisionEntry entry = getEntry(revision, installed);
+            if ((entry == null) || m_restored.contains(entry.m_key))
+            {
+                return null;
+            }
+
+            List<Wire> wires = new ArrayList<Wire>(entry.m_wires.size());
+            for (WireEntry wireEntry : entry.m_wires)
+            {
+                BundleWire wire = createWire(wireEntry, installed);
+                if (wire == null)
+                {
+                    return null;
+                }
+                wires.add(wire);
+
+                BundleRevision provider = wire.getProvider();
+                if (provider.getWiring() == null)
+                {
+                    todo.add(provider);
+                }
+                else if (Util.isFragment(revision))
+                {
+                    // Fragments are only attached to hosts being resolved.
+                    return null;
+                }
+                else if (checked.add(provider) && !isUnchanged(provider, installed))
+                {
+                    return null;
+                }
+            }
+            wireMap.put(revision, wires);
+
+            if (!Util.isFragment(revision))
+            {
+                hosts.add(revision);
+                List<String> attached = m_fragments.get(entry.m_key);
+                if (attached != null)
+                {
+                    for (String key : attached)
+                    {
+                        BundleRevision fragment = m_revisions.get(key);
+                        // Attaching to additional hosts is left to the resolver.
+                        if ((fragment == null) || (fragment.getWiring() != null))
+                        {
+                            return null;
+                        }
+                        todo.add(fragment);
+                    }
+                }
+            }
+        }
+
+        // The resolver would attach any unresolved fragments, so the snapshot
+        // cannot be used if such fragments were not attached before.
+        for (BundleRevision fragment : fragments)
+        {
+            if ((fragment.getWiring() == null) && !wireMap.containsKey(fragment))
+            {
+                List<BundleRequirement> hostReqs =
+                    fragment.getDeclaredRequirements(BundleRevision.HOST_NAMESPACE);
+                for (BundleRevision host : hosts)
+                {
+                    for (BundleCapability hostCap
+                        : host.getDeclaredCapabilities(BundleRevision.HOST_NAMESPACE))
+                    {
+                        if (!hostReqs.isEmpty() && hostReqs.get(0).matches(hostCap))
+                        {
+                            return null;
+                        }
+                    }
+                }
+            }
+        }
+
+        for (Resource revision : wireMap.keySet())
+        {
+            m_restored.add(getKey((BundleRevision) revision));
+        }
+        return wireMap;
+    }
+
+    // Returns the entry of the given revision if the revision is still
+    // installed and has not been modified since the snapshot was taken.
+    private RevisionEntry getEntry(BundleRevision revision, Set<BundleRevision> installed)
+    {
+        String key = getKey(revision);
+        RevisionEntry entry = m_entries.get(key);
+        if ((entry == null) || (m_revisions.get(key) != revision)
+            || !installed.contains(revision)
+            || (revision.getBundle().getState() == Bundle.UNINSTALLED)
+            || (revision.getBundle().getLastModified() != entry.m_lastModified))
+        {
+            return null;
+        }
+        return entry;
+    }
+
+    // Checks whether the wires of a resolved revision still match the
+    // snapshot, since the snapshot is only consistent as a whole.
+    private boolean isUnchanged(BundleRevision revision, Set<BundleRevision> installed)
+    {
+        RevisionEntry entry = getEntry(revision, installed);
+        RevisionEntry current = createEntry(revision);
+        return (entry != null) && (current != null)
+            && entry.m_wires.equals(current.m_wires);
+    }
+
+    private BundleWire createWire(WireEntry entry, Set<BundleRevision> installed)
+    {
+        BundleRevision requirer = getRevision(entry.m_requirer, installed);
+        BundleRevision reqOwner = getRevision(entry.m_requirementOwner, installed);
+        BundleRevision provider = getRevision(entry.m_provider, installed);
+        BundleRevision capOwner = getRevision(entry.m_capabilityOwner, installed);
+        if ((requirer == null) || (reqOwner == null)
+            || (provider == null) || (capOwner == null))
+        {
+            return null;
+        }
+
+        List<BundleRequirement> reqs = reqOwner.getDeclaredRequirements(null);
+        List<BundleCapability> caps = capOwner.getDeclaredCapabilities(null);
+        if ((entry.m_requirementIndex >= reqs.size())
+            || (entry.m_capabilityIndex >= caps.size()))
+        {
+            return null;
+        }
+        BundleRequirement req = reqs.get(entry.m_requirementIndex);
+        BundleCapability cap = caps.get(entry.m_capabilityIndex);
+        if (!req.getNamespace().equals(cap.getNamespace())
+            || !((req instanceof BundleRequirementImpl)
+                && ((BundleRequirementImpl) req).matches(cap)))
+        {
+            return null;
+        }
+        return new BundleWireImpl(requirer, req, provider, cap);
+    }
+
+    private BundleRevision getRevision(String key, Set<BundleRevision> installed)
+    {
+        BundleRevision revision = m_revisions.get(key);
+        return ((revision != null) && (getEntry(revision, installed) != null))
+            ? revision : null;
+    }
+
+    private static RevisionEntry createEntry(BundleRevision revision)
+    {
+        BundleWiring wiring = revision.getWiring();
+        if ((wiring == null) || !(revision instanceof BundleRevisionImpl)
+            || (revision.getBundle().getState() == Bundle.UNINSTALLED))
+        {
+            return null;
+        }
+
+        RevisionEntry entry = new RevisionEntry(getKey(revision),
+            revision.getBundle().getLastModified(), Util.isFragment(revision));
+        for (BundleWire wire : wiring.getRequiredWires(null))
+        {
+            BundleRequirement req = wire.getRequirement();
+            // Dynamic wires are not part of the resolution.
+            if (FelixConstants.RESOLUTION_DYNAMIC.equals(
+                req.getDirectives().get(Constants.RESOLUTION_DIRECTIVE)))
+            {
+                continue;
+            }
+            BundleCapability cap = wire.getCapability();
+            int reqIndex = req.getRevision().getDeclaredRequirements(null).indexOf(req);
+            int capIndex = cap.getRevision().getDeclaredCapabilities(null).indexOf(cap);
+            if ((reqIndex < 0) || (capIndex < 0))
+            {
+                return null;
+            }
+            entry.m_wires.add(new WireEntry(
+                getKey(wire.getRequirer()), getKey(req.getRevision()), reqIndex,
+                getKey(wire.getProvider()), getKey(cap.getRevision()), capIndex));
+        }
+        return entry;
+    }
+
+    private static String getKey(BundleRevision revision)
+    {
+        return (revision instanceof BundleRevisionImpl)
+            ? ((BundleRevisionImpl) revision).getId()
+            : revision.getBundle().getBundleId() + "." + revision.toString();
+    }
+
+    // Calculates a hash of the system bundle capabilities, which are
+    // derived from the framework configuration. The native capability
+    // carries all framework properties, so only its standard attributes
+    // are considered.
+    private static long getConfigHash(BundleRevision systemRevision)
+    {
+        StringBuilder sb = new StringBuilder();
+        for (BundleCapability cap : systemRevision.getDeclaredCapabilities(null))
+        {
+            sb.append(cap.getNamespace());
+            Map<String, Object> attrs = new TreeMap<String, Object>(cap.getAttributes());
+            for (Map.Entry<String, Object> attr : attrs.entrySet())
+            {
+                if (!NativeNamespace.NATIVE_NAMESPACE.equals(cap.getNamespace())
+                    || attr.getKey().startsWith(NativeNamespace.NATIVE_NAMESPACE + "."))
+                {
+                    Object value = attr.getValue();
+                    sb.append(';').append(attr.getKey()).append('=').append(
+                        (value instanceof Object[])
+                            ? Arrays.asList((Object[]) value) : value);
+                }
+            }
+            sb.append(new TreeMap<String, String>(cap.getDirectives())).append('\n');
+        }
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < sb.length(); i++)
+        {
+            hash ^= sb.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private static class RevisionEntry
+    {
+        private final String m_key;
+        private final long m_lastModified;
+        private final boolean m_fragment;
+        private final List<WireEntry> m_wires = new ArrayList<WireEntry>();
+
+        RevisionEntry(String key, long lastModified, boolean fragment)
+        {
+            m_key = key;
+            m_lastModified = lastModified;
+            m_fragment = fragment;
+        }
+    }
+
+    private static class WireEntry
+    {
+        private final String m_requirer;
+        private final String m_requirementOwner;
+        private final int m_requirementIndex;
+        private final String m_provider;
+        private final String m_capabilityOwner;
+        private final int m_capabilityIndex;
+
+        WireEntry(String requirer, String requirementOwner, int requirementIndex,
+            String provider, String capabilityOwner, int capabilityIndex)
+        {
+            m_requirer = requirer;
+            m_requirementOwner = requirementOwner;
+            m_requirementIndex = requirementIndex;
+            m_provider = provider;
+            m_capabilityOwner = capabilityOwner;
+            m_capabilityIndex = capabilityIndex;
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (!(obj instanceof WireEntry))
+            {
+                return false;
+            }
+            WireEntry other = (WireEntry) obj;
+            return m_requirer.equals(other.m_requirer)
+                && m_requirementOwner.equals(other.m_requirementOwner)
+                && (m_requirementIndex == other.m_requirementIndex)
+                && m_provider.equals(other.m_provider)
+                && m_capabilityOwner.equals(other.m_capabilityOwner)
+                && (m_capabilityIndex == other.m_capabilityIndex);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return m_requirer.hashCode() ^ m_provider.hashCode()
+                ^ (31 * m_requirementIndex) ^ m_capabilityIndex;
+        }
+    }
+}
@@ -96,12 +96,22 @@ class ServiceRegistrationImpl implements ServiceRegistration
         return (m_svcObj != null);
     }
 
+    /**
+     * Returns whether the service objects are created by a service factory.
+     * Otherwise all bundles use the registered service object itself.
+     * @return <code>true</code> if the service is provided by a service factory.
+    **/
+    boolean isFactory()
+    {
+        return (m_factory != null);
+    }
+
     protected synchronized void invalidate()
     {
         m_svcObj = null;
     }
 
-    public synchronized ServiceReference getReference()
+    public ServiceReference getReference()
     {
         // Make sure registration is valid.
         if (!isValid())
@@ -28,6 +28,7 @@ import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
@@ -197,7 +198,8 @@ public class ServiceRegistry
             final UsageCount[] usages = m_inUseMap.get(clients[i]);
             for (int x = 0; (usages != null) && (x < usages.length); x++)
             {
-                if (usages[x].m_ref.equals(ref))
+                if (usages[x].m_ref.equals(ref)
+                    && (!usages[x].m_prototype || (usages[x].getService() != null)))
                 {
                     ungetService(clients[i], ref, (usages[x].m_prototype ? usages[x].getService() : null));
                 }
@@ -354,8 +356,17 @@ public class ServiceRegistry
                     // why the below section is in a loop.
                     while (holder == null)
                     {
-                        ServiceHolder h = new ServiceHolder();
-                        if (usage.m_svcHolderRef.compareAndSet(null, h))
+                        // Only allocate a holder if the service object is not
+                        // cached yet, so getting a cached service does not
+                        // allocate anything. A reused prototype usage count
+                        // brings its own holder, which no other thread waits on.
+                        ServiceHolder h = null;
+                        if (usage.m_svcHolderRef.get() == null)
+                        {
+                            h = (usage.m_spareHolder != null)
+                                ? usage.m_spareHolder : new ServiceHolder();
+                        }
+                        if ((h != null) && usage.m_svcHolderRef.compareAndSet(null, h))
                         {
                             holder = h;
                             try {
@@ -493,6 +504,7 @@ public class ServiceRegistry
             // If usage count will go to zero, then unget the service
             // from the registration.
             long count = usage.m_count.decrementAndGet();
+            ServiceHolder released = null;
             try
             {
                 if (count <= 0)
@@ -500,6 +512,14 @@ public class ServiceRegistry
                     ServiceHolder holder = usage.m_svcHolderRef.get();
                     Object svc = holder != null ? holder.m_service : null;
 
+                    // The object of a plain service is the same for every
+                    // bundle and there is nothing to release, so it is kept
+                    // for the next time the bundle gets the service.
+                    if (svc != null && !usage.m_prototype && !reg.isFactory() && reg.isValid())
+                    {
+                        return count >= 0;
+                    }
+
                     if (svc != null)
                     {
                         // Check the count again to ensure that nobody else has just
@@ -508,6 +528,7 @@ public class ServiceRegistry
                         {
                             if (usage.m_svcHolderRef.compareAndSet(holder, null))
                             {
+                                released = holder;
                                 // Temporarily increase the usage again so that the 
                                 // service factory still sees the usage in the unget
                                 usage.m_count.incrementAndGet();
@@ -540,10 +561,26 @@ public class ServiceRegistry
                 // reached zero, then flush it. Non-prototype services are not flushed
                 // on ungetService() when they reach 0 as this introduces a race
                 // condition of concurrently the same service is obtained via getService()
-                if (!reg.isValid() || (count <= 0 && svcObj != null))
+                if (!reg.isValid())
                 {
                     flushUsageCount(bundle, ref, usage);
                 }
+                else if (count <= 0 && svcObj != null)
+                {
+                    if (released != null)
+                    {
+                        // Keep the usage count and its holder for the next
+                        // service object of the prototype, instead of
+                        // copying the usage count array twice.
+                        released.m_service = null;
+                        usage.m_spareHolder = released;
+                        usage.m_free.set(true);
+                    }
+                    else
+                    {
+                        flushUsageCount(bundle, ref, usage);
+                    }
+                }
             }
         }
         finally
@@ -584,6 +621,10 @@ public class ServiceRegistry
                 // Empty loop body.
             }
         }
+
+        // Forget the remaining usage counts, which only hold on to plain
+        // service objects and usage counts kept for reuse.
+        m_inUseMap.remove(bundle);
     }
 
     public Bundle[] getUsingBundles(ServiceReference<?> ref)
@@ -636,7 +677,8 @@ public class ServiceRegistry
      * This method tries to find a UsageCount object in the {@code m_inUseMap}. If one is found then
      * this is returned, otherwise a UsageCount object will be created, but this can only be done if
      * the {@code isPrototype} parameter is not {@code null}. If {@code isPrototype} is {@code TRUE}
-     * then a new UsageCount object will always be created.
+     * then a UsageCount object which is no longer used by a service object of the prototype is
+     * reused, or a new UsageCount object is created.
      * @param bundle The bundle using the service.
      * @param ref The Service Reference.
      * @param svcObj A Service Object, if applicable.
@@ -656,13 +698,25 @@ public class ServiceRegistry
         {
             UsageCount[] usages = m_inUseMap.get(bundle);
 
-            // If we know it's a prototype, then we always need to create a new usage count
-            if (!Boolean.TRUE.equals(isPrototype))
+            // If we know it's a prototype, then we always need a usage count
+            // which is not used by another service object
+            if (Boolean.TRUE.equals(isPrototype))
+            {
+                for (int i = 0; (usages != null) && (i < usages.length); i++)
+                {
+                    if (usages[i].m_prototype && usages[i].m_ref.equals(ref)
+                        && usages[i].m_free.compareAndSet(true, false))
+                    {
+                        return usages[i];
+                    }
+                }
+            }
+            else
             {
                 for (int i = 0; (usages != null) && (i < usages.length); i++)
                 {
                     if (usages[i].m_ref.equals(ref)
-                       && ((svcObj == null && !usages[i].m_prototype) || usages[i].getService() == svcObj))
+                       && ((svcObj == null) ? !usages[i].m_prototype : usages[i].getService() == svcObj))
                     {
                         return usages[i];
                     }
@@ -768,6 +822,11 @@ public class ServiceRegistry
         final AtomicLong m_count = new AtomicLong();
         final AtomicLong m_serviceObjectsCount = new AtomicLong();
         final AtomicReference<ServiceHolder> m_svcHolderRef = new AtomicReference<ServiceHolder>();
+        // Set while a prototype usage count is kept for reuse, together with
+        // the holder of its last service object. The holder is only used by
+        // the thread which reuses the usage count.
+        final AtomicBoolean m_free = new AtomicBoolean();
+        ServiceHolder m_spareHolder;
 
         UsageCount(final ServiceReference<?> ref, final boolean isPrototype)
         {
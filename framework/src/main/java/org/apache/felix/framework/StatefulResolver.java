@@ -18,6 +18,7 @@
  */
 package org.apache.felix.framework;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -30,6 +31,8 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.LinkedBlockingQueue;
@@ -37,12 +40,14 @@ import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.felix.framework.capabilityset.CapabilitySet;
 import org.apache.felix.framework.capabilityset.SimpleFilter;
 import org.apache.felix.framework.resolver.CandidateComparator;
 import org.apache.felix.framework.resolver.ResolveException;
 import org.apache.felix.framework.util.FelixConstants;
+import org.apache.felix.framework.util.NegativeLookupCache;
 import org.apache.felix.framework.util.ShrinkableCollection;
 import org.apache.felix.framework.util.Util;
 import org.apache.felix.framework.util.manifestparser.NativeLibrary;
@@ -74,6 +79,9 @@ import org.osgi.service.resolver.Resolver;
 
 class StatefulResolver
 {
+    private static final int DEFAULT_RESOLUTION_CACHE_SIZE = 32;
+    private static final int DEFAULT_DYNAMIC_MISS_CACHE_SIZE = 1024;
+
     private final Logger m_logger;
     private final Felix m_felix;
     private final ServiceRegistry m_registry;
@@ -91,6 +99,18 @@ class StatefulResolver
     private final Map<String, List<BundleRevision>> m_singletons;
     // Selected singleton bundle revisions.
     private final Set<BundleRevision> m_selectedSingletons;
+    // Incremented whenever the resolver state changes.
+    private final AtomicLong m_generation = new AtomicLong();
+    // Snapshot of the wires of the previous framework run, if enabled.
+    private ResolutionSnapshot m_snapshot;
+    // Outcomes of previous resolve operations, if enabled.
+    private final ResolutionCache m_resolutionCache;
+    // Packages that could not be dynamically imported, if enabled.
+    private final NegativeLookupCache m_dynamicMisses;
+    // Dynamic imports in progress, so concurrent requests for the same
+    // package wait for the first one instead of resolving again.
+    private final ConcurrentHashMap<DynamicImport, DynamicImport> m_pendingDynamics =
+        new ConcurrentHashMap<DynamicImport, DynamicImport>();
 
     StatefulResolver(Felix felix, ServiceRegistry registry)
     {
@@ -100,6 +120,13 @@ class StatefulResolver
         m_executor = getExecutor();
         m_resolver = new ResolverImpl(m_logger, m_executor);
 
+        int size = getCacheSize(
+            FelixConstants.RESOLVER_CACHE_SIZE_PROP, DEFAULT_RESOLUTION_CACHE_SIZE);
+        m_resolutionCache = (size > 0) ? new ResolutionCache(size) : null;
+        size = getCacheSize(
+            FelixConstants.NEGATIVE_CACHE_SIZE_PROP, DEFAULT_DYNAMIC_MISS_CACHE_SIZE);
+        m_dynamicMisses = (size > 0) ? new NegativeLookupCache(size) : null;
+
         m_revisions = new HashSet<BundleRevision>();
         m_fragments = new HashSet<BundleRevision>();
         m_capSets = new HashMap<String, CapabilitySet>();
@@ -166,6 +193,23 @@ class StatefulResolver
         }
     }
 
+    private int getCacheSize(String name, int defaultSize)
+    {
+        String str = m_felix.getProperty(name);
+        if (str != null)
+        {
+            try
+            {
+                return Integer.parseInt(str.trim());
+            }
+            catch (NumberFormatException e)
+            {
+                // Ignore
+            }
+        }
+        return defaultSize;
+    }
+
     void start()
     {
         m_registry.registerService(m_felix,
@@ -203,6 +247,15 @@ class StatefulResolver
             }
             indexCapabilities(br);
         }
+
+        // The system bundle capabilities change with its extensions, which
+        // is not reflected by the fingerprint of the resolver state.
+        if ((m_resolutionCache != null) && (br.getBundle().getBundleId() == 0))
+        {
+            m_resolutionCache.clear();
+        }
+
+        m_generation.incrementAndGet();
     }
 
     synchronized void removeRevision(BundleRevision br)
@@ -223,9 +276,137 @@ class StatefulResolver
                     m_singletons.remove(br.getSymbolicName());
                 }
             }
+
+            // Outcomes involving revisions of uninstalled bundles cannot be
+            // reused, since the revisions are never added again.
+            if ((m_resolutionCache != null)
+                && (br.getBundle().getState() == Bundle.UNINSTALLED))
+            {
+                m_resolutionCache.remove(br);
+            }
+
+            m_generation.incrementAndGet();
+        }
+    }
+
+    /**
+     * Loads the resolution snapshot of the previous framework run. This
+     * must be called after all cached bundles have been reloaded.
+     * @param file the file containing the snapshot.
+    **/
+    synchronized void loadSnapshot(File file)
+    {
+        try
+        {
+            m_snapshot = ResolutionSnapshot.load(
+                file, m_revisions, m_felix.adapt(BundleRevision.class));
+        }
+        catch (Exception ex)
+        {
+            m_logger.log(Logger.LOG_WARNING,
+                "Unable to load resolution snapshot, resolving all bundles.", ex);
         }
     }
 
+    /**
+     * Saves the wires of all resolved revisions, so they can be reused
+     * by the next framework run.
+     * @param file the file to write the snapshot to.
+    **/
+    synchronized void saveSnapshot(File file)
+    {
+        m_snapshot = null;
+        try
+        {
+            ResolutionSnapshot.save(
+                file, m_revisions, m_felix.adapt(BundleRevision.class));
+        }
+        catch (Exception ex)
+        {
+            m_logger.log(Logger.LOG_WARNING,
+                "Unable to save resolution snapshot.", ex);
+            Felix.m_secureAction.deleteFile(file);
+        }
+    }
+
+    boolean isSnapshotEnabled()
+    {
+        return "true".equalsIgnoreCase(
+            m_felix.getProperty(FelixConstants.RESOLVER_SNAPSHOT_PROP));
+    }
+
+    private synchronized Map<Resource, List<Wire>> restoreSnapshot(
+        Set<BundleRevision> mandatory, Set<BundleRevision> optional)
+    {
+        if (m_snapshot == null)
+        {
+            return null;
+        }
+        Map<Resource, List<Wire>> wireMap =
+            m_snapshot.restore(mandatory, optional, m_revisions, m_fragments);
+        if ((wireMap != null) && (m_logger.getLogLevel() >= Logger.LOG_DEBUG))
+        {
+            m_logger.log(Logger.LOG_DEBUG,
+                "Restored wires of " + wireMap.keySet() + " from resolution snapshot.");
+        }
+        return wireMap;
+    }
+
+    /**
+     * Returns the cache of resolve outcomes.
+     * @return the cache or <tt>null</tt> if it is disabled.
+    **/
+    ResolutionCache getResolutionCache()
+    {
+        return m_resolutionCache;
+    }
+
+    FrameworkMetrics getMetrics()
+    {
+        return m_felix.getMetrics();
+    }
+
+    private synchronized ResolutionCache.Key createCacheKey(
+        Set<BundleRevision> mandatory, Set<BundleRevision> optional)
+    {
+        return m_resolutionCache.createKey(mandatory, optional, m_revisions);
+    }
+
+    /**
+     * Returns a counter that changes whenever revisions are added to or
+     * removed from the resolver state, a dynamic wire is created, or
+     * dynamic imports are woven into a wiring, so callers can detect that
+     * cached lookup results may be outdated. The counter is only updated
+     * after the state has changed.
+     * @return the current generation of the resolver state.
+    **/
+    long getGeneration()
+    {
+        return m_generation.get();
+    }
+
+    /**
+     * Notes that dynamic imports were woven into a wiring, which may let
+     * dynamic imports and lookups succeed that failed before.
+    **/
+    void dynamicImportsWoven()
+    {
+        m_generation.incrementAndGet();
+    }
+
+    /**
+     * Returns whether failed dynamic imports may be remembered for the
+     * current generation, which is only the case if there are no resolver
+     * hooks or permissions that might decide differently next time, since
+     * changing them does not change the generation.
+     * @return <tt>true</tt> if failed dynamic imports may be remembered.
+    **/
+    boolean isDynamicImportFailureFinal()
+    {
+        return m_felix.getHookRegistry().getHooks(ResolverHookFactory.class).isEmpty()
+            && (System.getSecurityManager() == null);
+    }
+
     boolean isEffective(Requirement req)
     {
         String effective = req.getDirectives().get(Constants.EFFECTIVE_DIRECTIVE);
@@ -425,6 +606,8 @@ class StatefulResolver
             throw new IllegalStateException("Nested resolve operations not allowed.");
         }
         m_isResolving = true;
+        FrameworkMetrics metrics = m_felix.getMetrics();
+        long start = (metrics != null) ? System.nanoTime() : 0;
 
         Map<Resource, List<Wire>> wireMap = null;
         try
@@ -469,20 +652,60 @@ class StatefulResolver
                 }
             }
 
+            // Try to reuse the wires of the previous framework run or the
+            // outcome of a previous resolve in the same resolver state, which
+            // is only possible if there are no hooks to consult.
+            ResolutionCache.Key cacheKey = null;
+            if (record.getResolverHookRefs().isEmpty()
+                && (System.getSecurityManager() == null))
+            {
+                wireMap = restoreSnapshot(mandatory, optional);
+                if ((wireMap == null) && (m_resolutionCache != null))
+                {
+                    cacheKey = createCacheKey(mandatory, optional);
+                }
+            }
+
             // Catch any resolve exception to rethrow later because
             // we may need to call end() on resolver hooks.
             ResolutionException rethrow = null;
             try
             {
+                if (cacheKey != null)
+                {
+                    wireMap = m_resolutionCache.get(cacheKey);
+                }
+
                 // Resolve the revision.
-                wireMap = m_resolver.resolve(
-                    new ResolveContextImpl(
-                        this,
-                        getWirings(),
-                        record,
-                        mandatory,
-                        optional,
-                        getFragments()));
+                if (wireMap == null)
+                {
+                    long generation = m_generation.get();
+                    try
+                    {
+                        wireMap = m_resolver.resolve(
+                            new ResolveContextImpl(
+                                this,
+                                getWirings(),
+                                record,
+                                mandatory,
+                                optional,
+                                getFragments()));
+                    }
+                    catch (ResolutionException ex)
+                    {
+                        // Only cache the outcome if the resolver state did
+                        // not change while resolving.
+                        if ((cacheKey != null) && (generation == m_generation.get()))
+                        {
+                            m_resolutionCache.put(cacheKey, ex);
+                        }
+                        throw ex;
+                    }
+                    if ((cacheKey != null) && (generation == m_generation.get()))
+                    {
+                        m_resolutionCache.put(cacheKey, wireMap);
+                    }
+                }
             }
             catch (ResolutionException ex)
             {
@@ -507,6 +730,10 @@ class StatefulResolver
             m_isResolving = false;
             // Always release the global lock.
             m_felix.releaseGlobalLock();
+            if (metrics != null)
+            {
+                metrics.resolved(System.nanoTime() - start);
+            }
         }
 
         fireResolvedEvents(wireMap);
@@ -515,185 +742,302 @@ class StatefulResolver
     BundleRevision resolve(BundleRevision revision, String pkgName)
         throws ResolutionException, BundleException
     {
-        BundleRevision provider = null;
+        // We cannot dynamically import if the revision is not already resolved.
+        BundleWiringImpl wiring = (BundleWiringImpl) revision.getWiring();
+        if (wiring == null)
+        {
+            return null;
+        }
+
+        // If another thread has dynamically imported the package in the
+        // meantime, then just return the existing wire. This must be checked
+        // before whether the import is allowed, since an imported package is
+        // no longer allowed to be imported dynamically.
+        BundleRevision provider = wiring.getImportedPackageSource(pkgName);
+        if (provider != null)
+        {
+            return provider;
+        }
 
-        // We cannot dynamically import if the revision is not already resolved
-        // or if it is not allowed, so check that first. Note: We check if the
-        // dynamic import is allowed without holding any locks, but this is
-        // okay since the resolver will double check later after we have
-        // acquired the global lock below.
-        if ((revision.getWiring() != null) && isAllowedDynamicImport(revision, pkgName))
+        // We cannot dynamically import if it is not allowed. Note: We check
+        // if the dynamic import is allowed without holding any locks, but this
+        // is okay since the resolver will double check later after we have
+        // acquired the global lock below. A failed dynamic import is not
+        // attempted again until the resolver state changes.
+        if (isDynamicMiss(m_generation.get(), revision, pkgName)
+            || !isAllowedDynamicImport(revision, pkgName))
         {
-            // Acquire global lock.
-            boolean locked = m_felix.acquireGlobalLock();
-            if (!locked)
+            // The import may have been completed by another thread since
+            // the check above.
+            return wiring.getImportedPackageSource(pkgName);
+        }
+
+        // If another thread is already dynamically importing the package,
+        // then wait for its outcome instead of resolving again. The thread
+        // holding the global lock must not wait, since the other thread
+        // may be waiting for the global lock, and neither must the thread
+        // importing the package, which would be a nested resolve.
+        DynamicImport pending = new DynamicImport(revision, pkgName);
+        DynamicImport existing = m_pendingDynamics.putIfAbsent(pending, pending);
+        if (existing != null)
+        {
+            if (!existing.isImporter(Thread.currentThread())
+                && !m_felix.isGlobalLockHolder())
             {
-                throw new ResolveException(
-                    "Unable to acquire global lock for resolve.", revision, null);
+                return existing.await();
             }
+            pending = null;
+        }
 
-            // Make sure we are not already resolving, which can be
-            // the case if a resolver hook does something bad.
-            if (m_isResolving)
+        try
+        {
+            provider = resolveDynamicImport(revision, pkgName);
+            if (pending != null)
             {
-                m_felix.releaseGlobalLock();
-                throw new IllegalStateException("Nested resolve operations not allowed.");
+                pending.done(provider, null);
             }
-            m_isResolving = true;
-
-            Map<Resource, List<Wire>> wireMap = null;
-            try
+            return provider;
+        }
+        catch (ResolutionException ex)
+        {
+            if (pending != null)
             {
-                // Double check to make sure that someone hasn't beaten us to
-                // dynamically importing the package, which can happen if two
-                // threads are racing to do so. If we have an existing wire,
-                // then just return it instead.
-                provider = ((BundleWiringImpl) revision.getWiring())
-                    .getImportedPackageSource(pkgName);
-                if (provider == null)
-                {
-                    // Prepare resolver hooks, if any.
-                    ResolverHookRecord record =
-                        prepareResolverHooks(
-                            Collections.singleton(revision), Collections.EMPTY_SET);
+                pending.done(null, ex);
+            }
+            throw ex;
+        }
+        catch (BundleException ex)
+        {
+            if (pending != null)
+            {
+                pending.done(null, ex);
+            }
+            throw ex;
+        }
+        finally
+        {
+            if (pending != null)
+            {
+                // Wake up waiting threads even if an unchecked exception was
+                // thrown, in which case they return without a provider.
+                m_pendingDynamics.remove(pending);
+                pending.done(null, null);
+            }
+        }
+    }
 
-                    // Select any singletons in the resolver state.
-                    selectSingletons(record);
+    private BundleRevision resolveDynamicImport(BundleRevision revision, String pkgName)
+        throws ResolutionException, BundleException
+    {
+        BundleRevision provider = null;
 
-                    // Catch any resolve exception to rethrow later because
-                    // we may need to call end() on resolver hooks.
-                    ResolutionException rethrow = null;
-                    try
+        // Acquire global lock.
+        boolean locked = m_felix.acquireGlobalLock();
+        if (!locked)
+        {
+            throw new ResolveException(
+                "Unable to acquire global lock for resolve.", revision, null);
+        }
+
+        // Make sure we are not already resolving, which can be
+        // the case if a resolver hook does something bad.
+        if (m_isResolving)
+        {
+            m_felix.releaseGlobalLock();
+            throw new IllegalStateException("Nested resolve operations not allowed.");
+        }
+        m_isResolving = true;
+        FrameworkMetrics metrics = m_felix.getMetrics();
+        long start = (metrics != null) ? System.nanoTime() : 0;
+
+        Map<Resource, List<Wire>> wireMap = null;
+        long generation = m_generation.get();
+        try
+        {
+            // Double check to make sure that someone hasn't beaten us to
+            // dynamically importing the package, which can happen if two
+            // threads are racing to do so. If we have an existing wire,
+            // then just return it instead.
+            provider = ((BundleWiringImpl) revision.getWiring())
+                .getImportedPackageSource(pkgName);
+            if (provider == null)
+            {
+                // Prepare resolver hooks, if any.
+                ResolverHookRecord record =
+                    prepareResolverHooks(
+                        Collections.singleton(revision), Collections.EMPTY_SET);
+
+                // Select any singletons in the resolver state.
+                selectSingletons(record);
+
+                // Failures can only be remembered if there are no hooks
+                // or permissions that might decide differently next time.
+                boolean cacheMiss = record.getResolverHookRefs().isEmpty()
+                    && (System.getSecurityManager() == null);
+
+                // Catch any resolve exception to rethrow later because
+                // we may need to call end() on resolver hooks.
+                ResolutionException rethrow = null;
+                try
+                {
+                    List<BundleRequirement> dynamics =
+                            Util.getDynamicRequirements(revision.getWiring().getRequirements(null));
+
+                    // Loop through the importer's dynamic requirements to determine if
+                    // there is a matching one for the package from which we want to
+                    // load a class.
+                    Map<String, Object> attrs = Collections.singletonMap(
+                            BundleRevision.PACKAGE_NAMESPACE, (Object) pkgName);
+                    BundleRequirementImpl req = new BundleRequirementImpl(
+                            revision,
+                            BundleRevision.PACKAGE_NAMESPACE,
+                            Collections.EMPTY_MAP,
+                            attrs);
+                    final List<BundleCapability> candidates = findProvidersInternal(record, req, false, true);
+
+                    // Try to find a dynamic requirement that matches the capabilities.
+                    final BundleRequirementImpl dynReq = findDynamicRequirement(dynamics, candidates);
+
+                    // If we found a matching dynamic requirement, then filter out
+                    // any candidates that do not match it.
+                    if (dynReq != null)
                     {
-                        List<BundleRequirement> dynamics =
-                                Util.getDynamicRequirements(revision.getWiring().getRequirements(null));
-
-                        // Loop through the importer's dynamic requirements to determine if
-                        // there is a matching one for the package from which we want to
-                        // load a class.
-                        Map<String, Object> attrs = Collections.singletonMap(
-                                BundleRevision.PACKAGE_NAMESPACE, (Object) pkgName);
-                        BundleRequirementImpl req = new BundleRequirementImpl(
-                                revision,
-                                BundleRevision.PACKAGE_NAMESPACE,
-                                Collections.EMPTY_MAP,
-                                attrs);
-                        final List<BundleCapability> candidates = findProvidersInternal(record, req, false, true);
-
-                        // Try to find a dynamic requirement that matches the capabilities.
-                        final BundleRequirementImpl dynReq = findDynamicRequirement(dynamics, candidates);
-
-                        // If we found a matching dynamic requirement, then filter out
-                        // any candidates that do not match it.
-                        if (dynReq != null)
+                        for (Iterator<BundleCapability> itCand = candidates.iterator();
+                             itCand.hasNext(); )
                         {
-                            for (Iterator<BundleCapability> itCand = candidates.iterator();
-                                 itCand.hasNext(); )
+                            Capability cap = itCand.next();
+                            if (!CapabilitySet.matches(
+                                cap, dynReq.getFilter()))
                             {
-                                Capability cap = itCand.next();
-                                if (!CapabilitySet.matches(
-                                    cap, dynReq.getFilter()))
-                                {
-                                    itCand.remove();
-                                }
+                                itCand.remove();
                             }
                         }
-                        else
-                        {
-                            candidates.clear();
-                        }
-
-                        Map<Resource, Wiring> wirings = getWirings();
-
-                        wireMap = dynReq != null && wirings.containsKey(revision) ? m_resolver.resolveDynamic(
-                            new ResolveContextImpl(
-                                this,
-                                wirings,
-                                record,
-                                Collections.<BundleRevision>emptyList(),
-                                Collections.<BundleRevision>emptyList(),
-                                getFragments())
-                            {
-                                @Override
-                                public List<Capability> findProviders(Requirement br)
-                                {
-                                    return (List) (br == dynReq ? candidates : super.findProviders(br));
-                                }
-                            },
-                            revision.getWiring(), dynReq) : Collections.<Resource, List<Wire>>emptyMap();
                     }
-                    catch (ResolutionException ex)
+                    else
                     {
-                        rethrow = ex;
+                        candidates.clear();
                     }
 
-                    // Release resolver hooks, if any.
-                    releaseResolverHooks(record);
+                    Map<Resource, Wiring> wirings = getWirings();
+
+                    wireMap = dynReq != null && wirings.containsKey(revision) ? m_resolver.resolveDynamic(
+                        new ResolveContextImpl(
+                            this,
+                            wirings,
+                            record,
+                            Collections.<BundleRevision>emptyList(),
+                            Collections.<BundleRevision>emptyList(),
+                            getFragments())
+                        {
+                            @Override
+                            public List<Capability> findProviders(Requirement br)
+                            {
+                                return (List) (br == dynReq ? candidates : super.findProviders(br));
+                            }
+                        },
+                        revision.getWiring(), dynReq) : Collections.<Resource, List<Wire>>emptyMap();
+                }
+                catch (ResolutionException ex)
+                {
+                    rethrow = ex;
+                }
+
+                // Release resolver hooks, if any.
+                releaseResolverHooks(record);
 
-                    // If the resolve failed, rethrow the exception.
-                    if (rethrow != null)
+                // If the resolve failed, rethrow the exception.
+                if (rethrow != null)
+                {
+                    if (cacheMiss)
                     {
-                        throw rethrow;
+                        addDynamicMiss(generation, revision, pkgName);
                     }
+                    throw rethrow;
+                }
 
-                    if ((wireMap != null) && wireMap.containsKey(revision))
-                    {
-                        List<Wire> dynamicWires = wireMap.remove(revision);
-                        Wire dynamicWire = dynamicWires.get(0);
+                if ((wireMap != null) && wireMap.containsKey(revision))
+                {
+                    List<Wire> dynamicWires = wireMap.remove(revision);
+                    Wire dynamicWire = dynamicWires.get(0);
 
-                        // Mark all revisions as resolved.
-                        markResolvedRevisions(wireMap);
+                    // Mark all revisions as resolved.
+                    markResolvedRevisions(wireMap);
 
-                        // Dynamically add new wire to importing revision.
-                        if (dynamicWire != null)
+                    // Dynamically add new wire to importing revision.
+                    if (dynamicWire != null)
+                    {
+                        // TODO is a rw already a BundleWire?
+                        // TODO can we optimize this?
+                        if (dynamicWire.getRequirer() instanceof BundleRevision &&
+                            dynamicWire.getRequirement() instanceof BundleRequirement &&
+                            dynamicWire.getProvider() instanceof BundleRevision &&
+                            dynamicWire.getCapability() instanceof BundleCapability)
                         {
-                            // TODO is a rw already a BundleWire?
-                            // TODO can we optimize this?
-                            if (dynamicWire.getRequirer() instanceof BundleRevision &&
-                                dynamicWire.getRequirement() instanceof BundleRequirement &&
-                                dynamicWire.getProvider() instanceof BundleRevision &&
-                                dynamicWire.getCapability() instanceof BundleCapability)
-                            {
-                                BundleRevision dwRequirer = (BundleRevision) dynamicWire.getRequirer();
-                                BundleRequirement dwRequirement = (BundleRequirement) dynamicWire.getRequirement();
-                                BundleRevision dwProvider = (BundleRevision) dynamicWire.getProvider();
-                                BundleCapability dwCapability = (BundleCapability) dynamicWire.getCapability();
+                            BundleRevision dwRequirer = (BundleRevision) dynamicWire.getRequirer();
+                            BundleRequirement dwRequirement = (BundleRequirement) dynamicWire.getRequirement();
+                            BundleRevision dwProvider = (BundleRevision) dynamicWire.getProvider();
+                            BundleCapability dwCapability = (BundleCapability) dynamicWire.getCapability();
 
-                                BundleWire bw = new BundleWireImpl(
-                                    dwRequirer,
-                                    dwRequirement,
-                                    dwProvider,
-                                    dwCapability);
+                            BundleWire bw = new BundleWireImpl(
+                                dwRequirer,
+                                dwRequirement,
+                                dwProvider,
+                                dwCapability);
 
-                                m_felix.getDependencies().addDependent(bw);
+                            m_felix.getDependencies().addDependent(bw);
 
-                                ((BundleWiringImpl) revision.getWiring()).addDynamicWire(bw);
+                            ((BundleWiringImpl) revision.getWiring()).addDynamicWire(bw);
+                            m_generation.incrementAndGet();
 
-                                m_felix.getLogger().log(
-                                    Logger.LOG_DEBUG,
-                                    "DYNAMIC WIRE: " + dynamicWire);
+                            m_felix.getLogger().log(
+                                Logger.LOG_DEBUG,
+                                "DYNAMIC WIRE: " + dynamicWire);
 
-                                provider = ((BundleWiringImpl) revision.getWiring())
-                                    .getImportedPackageSource(pkgName);
-                            }
+                            provider = ((BundleWiringImpl) revision.getWiring())
+                                .getImportedPackageSource(pkgName);
                         }
                     }
                 }
+
+                if ((provider == null) && cacheMiss)
+                {
+                    addDynamicMiss(generation, revision, pkgName);
+                }
             }
-            finally
+        }
+        finally
+        {
+            // Clear resolving flag.
+            m_isResolving = false;
+            // Always release the global lock.
+            m_felix.releaseGlobalLock();
+            if (metrics != null)
             {
-                // Clear resolving flag.
-                m_isResolving = false;
-                // Always release the global lock.
-                m_felix.releaseGlobalLock();
+                metrics.resolved(System.nanoTime() - start);
             }
-
-            fireResolvedEvents(wireMap);
         }
 
+        fireResolvedEvents(wireMap);
+
         return provider;
     }
 
+    private boolean isDynamicMiss(long generation, BundleRevision revision, String pkgName)
+    {
+        return (m_dynamicMisses != null) && (revision instanceof BundleRevisionImpl)
+            && m_dynamicMisses.contains(
+                generation, pkgName, ((BundleRevisionImpl) revision).getId());
+    }
+
+    private void addDynamicMiss(long generation, BundleRevision revision, String pkgName)
+    {
+        if ((m_dynamicMisses != null) && (revision instanceof BundleRevisionImpl))
+        {
+            m_dynamicMisses.add(
+                generation, pkgName, ((BundleRevisionImpl) revision).getId());
+        }
+    }
+
     private BundleRequirementImpl findDynamicRequirement(List<BundleRequirement> dynamics, List<BundleCapability> candidates)
     {
         for (int dynIdx = 0; (candidates.size() > 0)  && (dynIdx < dynamics.size()); dynIdx++)
@@ -925,6 +1269,14 @@ class StatefulResolver
             return false;
         }
 
+        // Packages without any provider are remembered independently of
+        // the importer, which is denoted by an empty name.
+        long generation = m_generation.get();
+        if ((m_dynamicMisses != null) && m_dynamicMisses.contains(generation, pkgName, ""))
+        {
+            return false;
+        }
+
         // If the revision doesn't have dynamic imports, then just return
         // immediately.
         List<BundleRequirement> dynamics =
@@ -963,6 +1315,11 @@ class StatefulResolver
             Collections.EMPTY_MAP,
             attrs);
         List<BundleCapability> candidates = findProviders(req, false);
+        if (candidates.isEmpty() && (m_dynamicMisses != null)
+            && (System.getSecurityManager() == null))
+        {
+            m_dynamicMisses.add(generation, pkgName, "");
+        }
 
         // Try to find a dynamic requirement that matches the capabilities.
         BundleRequirementImpl dynReq = null;
@@ -1774,4 +2131,92 @@ class StatefulResolver
             };
         }
     }
+
+    /**
+     * A dynamic import of a package by a revision in progress, which other
+     * threads needing the same package wait for.
+    **/
+    private static class DynamicImport
+    {
+        private final BundleRevision m_revision;
+        private final String m_pkgName;
+        private final Thread m_importer = Thread.currentThread();
+        private final CountDownLatch m_done = new CountDownLatch(1);
+        private BundleRevision m_provider;
+        private Exception m_failure;
+
+        DynamicImport(BundleRevision revision, String pkgName)
+        {
+            m_revision = revision;
+            m_pkgName = pkgName;
+        }
+
+        boolean isImporter(Thread thread)
+        {
+            return m_importer == thread;
+        }
+
+        /**
+         * Sets the outcome of the dynamic import and wakes up waiting
+         * threads, unless the outcome is already set.
+        **/
+        void done(BundleRevision provider, Exception failure)
+        {
+            if (m_done.getCount() > 0)
+            {
+                m_provider = provider;
+                m_failure = failure;
+                m_done.countDown();
+            }
+        }
+
+        /**
+         * Waits for the outcome of the dynamic import.
+         * @return the provider of the package or <tt>null</tt>.
+         * @throws ResolutionException if the dynamic import failed.
+         * @throws BundleException if a resolver hook failed.
+        **/
+        BundleRevision await() throws ResolutionException, BundleException
+        {
+            boolean interrupted = false;
+            while (m_done.getCount() > 0)
+            {
+                try
+                {
+                    m_done.await();
+                }
+                catch (InterruptedException ex)
+                {
+                    interrupted = true;
+                }
+            }
+            if (interrupted)
+            {
+                Thread.currentThread().interrupt();
+            }
+            if (m_failure instanceof ResolutionException)
+            {
+                throw (ResolutionException) m_failure;
+            }
+            else if (m_failure instanceof BundleException)
+            {
+                throw (BundleException) m_failure;
+            }
+            return m_provider;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return m_revision.hashCode() * 31 + m_pkgName.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            return (obj instanceof DynamicImport)
+                && (((DynamicImport) obj).m_revision == m_revision)
+                && ((DynamicImport) obj).m_pkgName.equals(m_pkgName);
+        }
+    }
 }
@@ -50,6 +50,13 @@ import java.util.Map;
  *       sets an upper limit on how many files the cache will open. The default
  *       value is zero, which means there is no limit.
  *   </li>
+ *   <li><tt>felix.cache.mappedjars</tt> - Enables or disables memory mapping
+ *       of bundle JAR files. Mapped JAR files do not keep a file open and
+ *       persist an index of their entries in the revision directory, which
+ *       is reused on restart. This is disabled by default, since some
+ *       platforms do not allow deleting mapped files until they are garbage
+ *       collected; set this property to <tt>true</tt> to enable it.
+ *   </li>
  *   <li><tt>org.osgi.framework.storage</tt> - Sets the directory to use as
  *       the bundle cache; by default bundle cache directory is
  *       <tt>felix-cache</tt> in the current working directory. The value
@@ -87,6 +94,7 @@ public class BundleCache
     public static final String CACHE_ROOTDIR_PROP = "felix.cache.rootdir";
     public static final String CACHE_LOCKING_PROP = "felix.cache.locking";
     public static final String CACHE_FILELIMIT_PROP = "felix.cache.filelimit";
+    public static final String CACHE_MAPPEDJARS_PROP = "felix.cache.mappedjars";
     private static final ThreadLocal m_defaultBuffer = new ThreadLocal();
     private static volatile int DEFAULT_BUFFER = 1024 * 64;
 
@@ -121,7 +129,9 @@ public class BundleCache
                 limit = 0;
             }
         }
-        m_zipFactory = new WeakZipFileFactory(limit);
+        Object mapped = m_configMap.get(CACHE_MAPPEDJARS_PROP);
+        m_zipFactory = new WeakZipFileFactory(limit, (mapped != null)
+            && mapped.toString().equalsIgnoreCase(Boolean.TRUE.toString()));
 
         // Create the cache directory, if it does not exist.
         File cacheDir = determineCacheDir(m_configMap);
@@ -40,6 +40,7 @@ public class JarContent implements Content
 {
     private static final transient String EMBEDDED_DIRECTORY = "-embedded";
     private static final transient String LIBRARY_DIRECTORY = "-lib";
+    private static final transient String INDEX_FILE_SUFFIX = ".index";
 
     private final Logger m_logger;
     private final Map m_configMap;
@@ -64,7 +65,15 @@ public class JarContent implements Content
         {
             try
             {
-                m_zipFile = m_zipFactory.create(m_file);
+                // Keep the entry index in the root directory, since the
+                // JAR file itself may not be located in the bundle cache.
+                // JAR files with the same name from different directories
+                // may share the root directory, so the index is named after
+                // the full path of the JAR file.
+                m_zipFile = m_zipFactory.create(m_file, new File(m_rootDir,
+                    m_file.getName() + '-'
+                    + Integer.toHexString(m_file.getAbsolutePath().hashCode())
+                    + INDEX_FILE_SUFFIX));
             }
             catch (IOException ex)
             {
@@ -47,6 +47,7 @@ import java.util.zip.ZipEntry;
 class JarRevision extends BundleArchiveRevision
 {
     private static final transient String BUNDLE_JAR_FILE = "bundle.jar";
+    private static final transient String BUNDLE_JAR_INDEX_FILE = "bundle.jar.index";
 
     private final WeakZipFileFactory m_zipFactory;
     private final File m_bundleFile;
@@ -80,7 +81,8 @@ class JarRevision extends BundleArchiveRevision
         try
         {
             // Open bundle JAR file.
-            zipFile = m_zipFactory.create(m_bundleFile);
+            zipFile = m_zipFactory.create(m_bundleFile,
+                new File(getRevisionRootDir(), BUNDLE_JAR_INDEX_FILE));
             // Error if no jar file.
             if (zipFile == null)
             {
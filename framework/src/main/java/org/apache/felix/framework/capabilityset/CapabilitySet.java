@@ -26,6 +26,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -45,13 +46,16 @@ import org.osgi.resource.Capability;
 
 public class CapabilitySet
 {
-    private final SortedMap<String, Map<Object, Set<BundleCapability>>> m_indices; // Should also be concurrent!
+    // Indexed attribute name to attribute value to capabilities. The index
+    // buckets are immutable and replaced atomically on change (copy-on-write),
+    // so lookups never block and never observe a partially updated bucket.
+    private final SortedMap<String, ConcurrentMap<Object, Set<BundleCapability>>> m_indices;
     private final Set<Capability> m_capSet = Collections.newSetFromMap(new ConcurrentHashMap<Capability, Boolean>());
     private final static SecureAction m_secureAction = new SecureAction();
 
     public void dump()
     {
-        for (Entry<String, Map<Object, Set<BundleCapability>>> entry : m_indices.entrySet())
+        for (Entry<String, ConcurrentMap<Object, Set<BundleCapability>>> entry : m_indices.entrySet())
         {
             boolean header1 = false;
             for (Entry<Object, Set<BundleCapability>> entry2 : entry.getValue().entrySet())
@@ -81,8 +85,8 @@ public class CapabilitySet
     public CapabilitySet(final List<String> indexProps, final boolean caseSensitive)
     {
         m_indices = (caseSensitive)
-            ? new ConcurrentSkipListMap<String, Map<Object, Set<BundleCapability>>>()
-            : new ConcurrentSkipListMap<String, Map<Object, Set<BundleCapability>>>(
+            ? new ConcurrentSkipListMap<String, ConcurrentMap<Object, Set<BundleCapability>>>()
+            : new ConcurrentSkipListMap<String, ConcurrentMap<Object, Set<BundleCapability>>>(
                 StringComparator.COMPARATOR);
         for (int i = 0; (indexProps != null) && (i < indexProps.size()); i++)
         {
@@ -96,7 +100,7 @@ public class CapabilitySet
         m_capSet.add(cap);
 
         // Index capability.
-        for (Entry<String, Map<Object, Set<BundleCapability>>> entry : m_indices.entrySet())
+        for (Entry<String, ConcurrentMap<Object, Set<BundleCapability>>> entry : m_indices.entrySet())
         {
             Object value = cap.getAttributes().get(entry.getKey());
             if (value != null)
@@ -106,8 +110,7 @@ public class CapabilitySet
                     value = convertArrayToList(value);
                 }
 
-                ConcurrentMap<Object, Set<BundleCapability>> index =
-                        (ConcurrentMap<Object, Set<BundleCapability>>) entry.getValue();
+                ConcurrentMap<Object, Set<BundleCapability>> index = entry.getValue();
 
                 if (value instanceof Collection)
                 {
@@ -125,21 +128,40 @@ public class CapabilitySet
         }
     }
 
-    private void indexCapability(
+    private static void indexCapability(
         ConcurrentMap<Object, Set<BundleCapability>> index, BundleCapability cap, Object capValue)
     {
-        Set<BundleCapability> caps = Collections.newSetFromMap(new ConcurrentHashMap<BundleCapability, Boolean>());
-        Set<BundleCapability> prevval = index.putIfAbsent(capValue, caps);
-        if (prevval != null)
-            caps = prevval;
-        caps.add(cap);
+        while (true)
+        {
+            Set<BundleCapability> caps = index.get(capValue);
+            if (caps == null)
+            {
+                if (index.putIfAbsent(capValue, Collections.singleton(cap)) == null)
+                {
+                    return;
+                }
+            }
+            else if (caps.contains(cap))
+            {
+                return;
+            }
+            else
+            {
+                Set<BundleCapability> newCaps = new LinkedHashSet<BundleCapability>(caps);
+                newCaps.add(cap);
+                if (index.replace(capValue, caps, Collections.unmodifiableSet(newCaps)))
+                {
+                    return;
+                }
+            }
+        }
     }
 
     public void removeCapability(final BundleCapability cap)
     {
         if (m_capSet.remove(cap))
         {
-            for (Entry<String, Map<Object, Set<BundleCapability>>> entry : m_indices.entrySet())
+            for (Entry<String, ConcurrentMap<Object, Set<BundleCapability>>> entry : m_indices.entrySet())
             {
                 Object value = cap.getAttributes().get(entry.getKey());
                 if (value != null)
@@ -149,7 +171,7 @@ public class CapabilitySet
                         value = convertArrayToList(value);
                     }
 
-                    Map<Object, Set<BundleCapability>> index = entry.getValue();
+                    ConcurrentMap<Object, Set<BundleCapability>> index = entry.getValue();
 
                     if (value instanceof Collection)
                     {
@@ -168,16 +190,31 @@ public class CapabilitySet
         }
     }
 
-    private void deindexCapability(
-        Map<Object, Set<BundleCapability>> index, BundleCapability cap, Object value)
+    private static void deindexCapability(
+        ConcurrentMap<Object, Set<BundleCapability>> index, BundleCapability cap, Object value)
     {
-        Set<BundleCapability> caps = index.get(value);
-        if (caps != null)
+        while (true)
         {
-            caps.remove(cap);
-            if (caps.isEmpty())
+            Set<BundleCapability> caps = index.get(value);
+            if ((caps == null) || !caps.contains(cap))
+            {
+                return;
+            }
+            else if (caps.size() == 1)
+            {
+                if (index.remove(value, caps))
+                {
+                    return;
+                }
+            }
+            else
             {
-                index.remove(value);
+                Set<BundleCapability> newCaps = new LinkedHashSet<BundleCapability>(caps);
+                newCaps.remove(cap);
+                if (index.replace(value, caps, Collections.unmodifiableSet(newCaps)))
+                {
+                    return;
+                }
             }
         }
     }
@@ -200,15 +237,61 @@ public class CapabilitySet
         }
         else if (sf.getOperation() == SimpleFilter.AND)
         {
-            // Evaluate each subfilter against the remaining capabilities.
-            // For AND we calculate the intersection of each subfilter.
-            // We can short-circuit the AND operation if there are no
-            // remaining capabilities.
             final List<SimpleFilter> sfs = (List<SimpleFilter>) sf.getValue();
-            for (int i = 0; (caps.size() > 0) && (i < sfs.size()); i++)
+
+            // If one of the subfilters can be answered by an index, use it
+            // to select the candidates and evaluate the remaining subfilters
+            // directly against each candidate, which avoids creating an
+            // intermediate result set for every subfilter.
+            int indexedIdx = -1;
+            Set<BundleCapability> indexedCaps = null;
+            for (int i = 0; (indexedIdx < 0) && (i < sfs.size()); i++)
+            {
+                SimpleFilter sf2 = sfs.get(i);
+                if (sf2.getOperation() == SimpleFilter.EQ)
+                {
+                    ConcurrentMap<Object, Set<BundleCapability>> index =
+                        m_indices.get(sf2.getName());
+                    if (index != null)
+                    {
+                        indexedIdx = i;
+                        indexedCaps = index.get(sf2.getValue());
+                    }
+                }
+            }
+
+            if (indexedIdx >= 0)
             {
-                matches = match(caps, sfs.get(i));
-                caps = matches;
+                if (indexedCaps != null)
+                {
+                    for (BundleCapability cap : indexedCaps)
+                    {
+                        if ((caps == m_capSet) || caps.contains(cap))
+                        {
+                            boolean matched = true;
+                            for (int i = 0; matched && (i < sfs.size()); i++)
+                            {
+                                matched = (i == indexedIdx) || matchesInternal(cap, sfs.get(i));
+                            }
+                            if (matched)
+                            {
+                                matches.add(cap);
+                            }
+                        }
+                    }
+                }
+            }
+            else
+            {
+                // Evaluate each subfilter against the remaining capabilities.
+                // For AND we calculate the intersection of each subfilter.
+                // We can short-circuit the AND operation if there are no
+                // remaining capabilities.
+                for (int i = 0; (caps.size() > 0) && (i < sfs.size()); i++)
+                {
+                    matches = match(caps, sfs.get(i));
+                    caps = matches;
+                }
             }
         }
         else if (sf.getOperation() == SimpleFilter.OR)
@@ -234,7 +317,7 @@ public class CapabilitySet
         }
         else
         {
-            Map<Object, Set<BundleCapability>> index = m_indices.get(sf.getName());
+            ConcurrentMap<Object, Set<BundleCapability>> index = m_indices.get(sf.getName());
             if ((sf.getOperation() == SimpleFilter.EQ) && (index != null))
             {
                 Set<BundleCapability> existingCaps = index.get(sf.getValue());
@@ -255,7 +338,7 @@ public class CapabilitySet
                     Object lhs = cap.getAttributes().get(sf.getName());
                     if (lhs != null)
                     {
-                        if (compare(lhs, sf.getValue(), sf.getOperation()))
+                        if (compare(lhs, sf))
                         {
                             matches.add(cap);
                         }
@@ -319,7 +402,7 @@ public class CapabilitySet
             Object lhs = cap.getAttributes().get(sf.getName());
             if (lhs != null)
             {
-                matched = compare(lhs, sf.getValue(), sf.getOperation());
+                matched = compare(lhs, sf);
             }
         }
 
@@ -379,13 +462,15 @@ public class CapabilitySet
     private static final Class<?>[] STRING_CLASS = new Class[] { String.class };
     private static final String VALUE_OF_METHOD_NAME = "valueOf";
 
-    private static boolean compare(Object lhs, Object rhsUnknown, int op)
+    private static boolean compare(Object lhs, SimpleFilter sf)
     {
         if (lhs == null)
         {
             return false;
         }
 
+        int op = sf.getOperation();
+
         // If this is a PRESENT operation, then just return true immediately
         // since we wouldn't be here if the attribute wasn't present.
         if (op == SimpleFilter.PRESENT)
@@ -397,16 +482,7 @@ public class CapabilitySet
         //Version is comparable so we need to check this first
         if(lhs instanceof Version && op == SimpleFilter.EQ)
         {
-            Object rhs = null;
-            try
-            {
-                rhs = coerceType(lhs, (String) rhsUnknown);
-            }
-            catch (Exception ex)
-            {
-                //Do nothing will check later if rhs is null
-            }
-
+            Object rhs = coerceType(lhs, sf);
             if(rhs != null && rhs instanceof VersionRange)
             {
                 return ((VersionRange)rhs).includes((Version)lhs);
@@ -426,15 +502,12 @@ public class CapabilitySet
             Object rhs;
             if (op == SimpleFilter.SUBSTRING)
             {
-                rhs = rhsUnknown;
+                rhs = sf.getValue();
             }
             else
             {
-                try
-                {
-                    rhs = coerceType(lhs, (String) rhsUnknown);
-                }
-                catch (Exception ex)
+                rhs = coerceType(lhs, sf);
+                if (rhs == null)
                 {
                     return false;
                 }
@@ -481,12 +554,8 @@ public class CapabilitySet
         // Booleans do not implement comparable, so special case them.
         else if (lhs instanceof Boolean)
         {
-            Object rhs;
-            try
-            {
-                rhs = coerceType(lhs, (String) rhsUnknown);
-            }
-            catch (Exception ex)
+            Object rhs = coerceType(lhs, sf);
+            if (rhs == null)
             {
                 return false;
             }
@@ -518,7 +587,7 @@ public class CapabilitySet
         {
             for (Iterator iter = ((Collection) lhs).iterator(); iter.hasNext(); )
             {
-                if (compare(iter.next(), rhsUnknown, op))
+                if (compare(iter.next(), sf))
                 {
                     return true;
                 }
@@ -537,7 +606,7 @@ public class CapabilitySet
         // equality comparison.
         try
         {
-            return lhs.equals(coerceType(lhs, (String) rhsUnknown));
+            return lhs.equals(coerceType(lhs, sf));
         }
         catch (Exception ex)
         {
@@ -573,6 +642,39 @@ public class CapabilitySet
         return sb.toString();
     }
 
+    /**
+     * Coerces the value of the given filter to the type of the given
+     * attribute value. The coerced value is cached in the filter for the
+     * attribute type, so repeated evaluations of the same filter do not
+     * need to reflectively convert the value again.
+     * @param lhs The attribute value.
+     * @param sf The filter whose value should be coerced.
+     * @return The coerced value or <tt>null</tt> if the value cannot be
+     *         converted to the type of the attribute value.
+    **/
+    private static Object coerceType(Object lhs, SimpleFilter sf)
+    {
+        Class<?> type = lhs.getClass();
+        Object rhs = sf.getCoercedValue(type);
+        if (rhs == null)
+        {
+            try
+            {
+                rhs = coerceType(lhs, (String) sf.getValue());
+            }
+            catch (Exception ex)
+            {
+                rhs = null;
+            }
+            sf.setCoercedValue(type, rhs);
+        }
+        else if (rhs == SimpleFilter.UNCOERCIBLE)
+        {
+            rhs = null;
+        }
+        return rhs;
+    }
+
     private static Object coerceType(Object lhs, String rhsString) throws Exception
     {
         // If the LHS expects a string, then we can just return
@@ -42,6 +42,15 @@ public class SimpleFilter
     private final String m_name;
     private final Object m_value;
     private final int m_op;
+    // The values of this filter coerced to the types of the attributes it
+    // was compared against, stored as { type, value, type, value, ... } or
+    // null. Only the first MAX_COERCED_TYPES types are cached, so that
+    // mixed attribute types do not keep replacing each other. The value is
+    // UNCOERCIBLE if the conversion failed.
+    private volatile Object[] m_coerced;
+
+    static final Object UNCOERCIBLE = new Object();
+    static final int MAX_COERCED_TYPES = 4;
 
     public SimpleFilter(String attr, Object value, int op)
     {
@@ -65,6 +74,52 @@ public class SimpleFilter
         return m_op;
     }
 
+    /**
+     * Returns the cached value of this filter coerced to the given type.
+     * @param type The type of the attribute value compared against.
+     * @return The coerced value, <tt>UNCOERCIBLE</tt> if the value cannot be
+     *         coerced to the given type, or <tt>null</tt> if not cached.
+    **/
+    Object getCoercedValue(Class<?> type)
+    {
+        Object[] coerced = m_coerced;
+        if (coerced != null)
+        {
+            for (int i = 0; i < coerced.length; i += 2)
+            {
+                if (coerced[i] == type)
+                {
+                    return coerced[i + 1];
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Caches the value of this filter coerced to the given type, unless
+     * the values of <tt>MAX_COERCED_TYPES</tt> other types are cached already.
+     * @param type The type of the attribute value compared against.
+     * @param value The coerced value or <tt>null</tt> if the value cannot be
+     *        coerced to the given type.
+    **/
+    void setCoercedValue(Class<?> type, Object value)
+    {
+        Object[] coerced = m_coerced;
+        int length = (coerced != null) ? coerced.length : 0;
+        if (length < MAX_COERCED_TYPES * 2)
+        {
+            Object[] copy = new Object[length + 2];
+            if (coerced != null)
+            {
+                System.arraycopy(coerced, 0, copy, 0, length);
+            }
+            copy[length] = type;
+            copy[length + 1] = (value == null) ? UNCOERCIBLE : value;
+            m_coerced = copy;
+        }
+    }
+
     public String toString()
     {
         String s = null;
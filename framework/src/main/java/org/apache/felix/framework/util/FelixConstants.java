@@ -47,6 +47,7 @@ public interface FelixConstants extends org.osgi.framework.Constants
     String LOG_LOGGER_PROP = "felix.log.logger";
     String SYSTEMBUNDLE_ACTIVATORS_PROP = "felix.systembundle.activators";
     String BUNDLE_STARTLEVEL_PROP = "felix.startlevel.bundle";
+    String STARTLEVEL_PARALLELISM_PROP = "felix.startlevel.parallelism";
     String SERVICE_URLHANDLERS_PROP = "felix.service.urlhandlers";
     String IMPLICIT_BOOT_DELEGATION_PROP = "felix.bootdelegation.implicit";
     String BOOT_CLASSLOADERS_PROP = "felix.bootdelegation.classloaders";
@@ -54,7 +55,13 @@ public interface FelixConstants extends org.osgi.framework.Constants
     String NATIVE_OS_NAME_ALIAS_PREFIX = "felix.native.osname.alias";
     String NATIVE_PROC_NAME_ALIAS_PREFIX = "felix.native.processor.alias";
     String USE_CACHEDURLS_PROPS = "felix.bundlecodesource.usecachedurls";
+    String NEGATIVE_CACHE_SIZE_PROP = "felix.classloader.negativecache.size";
     String RESOLVER_PARALLELISM = "felix.resolver.parallelism";
+    String RESOLVER_SNAPSHOT_PROP = "felix.resolver.snapshot";
+    String RESOLVER_CACHE_SIZE_PROP = "felix.resolver.cache.size";
+    String EVENTDISPATCHER_THREADS_PROP = "felix.eventdispatcher.threads";
+    String EVENTDISPATCHER_QUEUESIZE_PROP = "felix.eventdispatcher.queuesize";
+    String METRICS_ENABLED_PROP = "felix.metrics.enabled";
     String USE_PROPERTY_SUBSTITUTION_IN_SYSTEMPACKAGES = "felix.systempackages.substitution";
 
     // Missing OSGi constant for resolution directive.
@@ -0,0 +1,315 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.framework.util;
+
+import java.lang.ref.WeakReference;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+import org.osgi.framework.Version;
+import org.osgi.framework.VersionRange;
+
+/**
+ * This class implements weak interning of the values that make up bundle
+ * capabilities and requirements. Revisions declaring the same package
+ * names, versions, version ranges, directives, attributes, or uses
+ * constraints share a single immutable instance of each, which is only
+ * weakly referenced by the interner and reclaimed once no revision uses
+ * it anymore. Interned maps keep the iteration order of the original map
+ * and only share instances with maps of the same order. Only the manifest
+ * parser interns values, since the lookup is synchronized; capabilities and
+ * requirements created on other paths, e.g., for dynamic imports while
+ * loading classes, keep their values as they are.
+**/
+public class Interner
+{
+    // Maps up to this size are searched linearly instead of being hashed.
+    private static final int MAX_LINEAR_SIZE = 8;
+
+    private static final Map<Object, WeakReference<Object>> m_values =
+        new WeakHashMap<Object, WeakReference<Object>>();
+
+    private Interner()
+    {
+    }
+
+    /**
+     * Returns the shared instance of the given string.
+     * @param s the string to intern.
+     * @return the shared instance equal to the given string.
+    **/
+    public static String intern(String s)
+    {
+        return (s == null) ? null : lookup(s, s);
+    }
+
+    /**
+     * Returns the shared instance of the given attribute or directive value.
+     * Strings, versions, version ranges, and lists of those are interned;
+     * other values are returned as they are.
+     * @param value the value to intern.
+     * @return the shared instance equal to the given value.
+    **/
+    public static Object internValue(Object value)
+    {
+        if ((value instanceof String) || (value instanceof Version)
+            || (value instanceof VersionRange))
+        {
+            return lookup(value, value);
+        }
+        else if (value instanceof List)
+        {
+            return internList((List<?>) value);
+        }
+        return value;
+    }
+
+    /**
+     * Returns the shared immutable instance of the given list with all of
+     * its elements interned.
+     * @param list the list to intern.
+     * @return the shared immutable list equal to the given list.
+    **/
+    public static <T> List<T> internList(List<T> list)
+    {
+        if ((list == null) || list.isEmpty())
+        {
+            return Collections.emptyList();
+        }
+        List<T> copy = new ArrayList<T>(list.size());
+        for (T value : list)
+        {
+            // Interning returns an equal value of the same type.
+            @SuppressWarnings("unchecked")
+            T interned = (T) internValue(value);
+            copy.add(interned);
+        }
+        copy = Collections.unmodifiableList(copy);
+        return lookup(copy, copy);
+    }
+
+    /**
+     * Returns the shared immutable instance of the given directive or
+     * attribute map with all of its keys and values interned.
+     * @param map the map to intern.
+     * @return the shared immutable map equal to the given map.
+    **/
+    public static <V> Map<String, V> internMap(Map<String, V> map)
+    {
+        if ((map == null) || map.isEmpty())
+        {
+            return Collections.emptyMap();
+        }
+        else if (map instanceof InternedMap)
+        {
+            return map;
+        }
+        Object[] entries = new Object[map.size() * 2];
+        int i = 0;
+        for (Map.Entry<String, V> entry : map.entrySet())
+        {
+            entries[i++] = intern(entry.getKey());
+            entries[i++] = internValue(entry.getValue());
+        }
+        InternedMap<V> interned = new InternedMap<V>(entries);
+        return lookup(interned.m_key, interned);
+    }
+
+    /**
+     * Returns whether the given map is an interned map, i.e., it was returned
+     * by {@link #internMap(Map)}.
+     * @param map the map to check.
+     * @return <tt>true</tt> if the map is interned, <tt>false</tt> otherwise.
+    **/
+    public static boolean isInterned(Map<?, ?> map)
+    {
+        return (map instanceof InternedMap) || (map == Collections.emptyMap());
+    }
+
+    // Values are only stored under keys equal to the values themselves, or
+    // under the key of an interned map, so an existing value has the type
+    // of the given value.
+    @SuppressWarnings("unchecked")
+    private static synchronized <T> T lookup(Object key, T value)
+    {
+        WeakReference<Object> ref = m_values.get(key);
+        Object existing = (ref != null) ? ref.get() : null;
+        if (existing != null)
+        {
+            return (T) existing;
+        }
+        m_values.put(key, new WeakReference<Object>(value));
+        return value;
+    }
+
+    // The interning key of a map, which compares the entries in order. It
+    // is referenced by its map, so it stays in the table as long as the
+    // map is in use.
+    private static class EntriesKey
+    {
+        private final Object[] m_entries;
+        private final int m_hashCode;
+
+        EntriesKey(Object[] entries)
+        {
+            m_entries = entries;
+            m_hashCode = Arrays.hashCode(entries);
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            return (obj instanceof EntriesKey)
+                && (m_hashCode == ((EntriesKey) obj).m_hashCode)
+                && Arrays.equals(m_entries, ((EntriesKey) obj).m_entries);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return m_hashCode;
+        }
+    }
+
+    // An immutable map storing its keys and values in a single array, which
+    // is only indexed if it has more than a few entries.
+    private static class InternedMap<V> extends AbstractMap<String, V>
+    {
+        private final EntriesKey m_key;
+        private final Object[] m_entries;
+        private final Map<Object, Integer> m_index;
+
+        InternedMap(Object[] entries)
+        {
+            m_key = new EntriesKey(entries);
+            m_entries = entries;
+            if (entries.length > MAX_LINEAR_SIZE * 2)
+            {
+                m_index = new HashMap<Object, Integer>(entries.length);
+                for (int i = 0; i < entries.length; i += 2)
+                {
+                    m_index.put(entries[i], i);
+                }
+            }
+            else
+            {
+                m_index = null;
+            }
+        }
+
+        private int indexOf(Object key)
+        {
+            if (m_index != null)
+            {
+                Integer i = m_index.get(key);
+                return (i != null) ? i : -1;
+            }
+            for (int i = 0; i < m_entries.length; i += 2)
+            {
+                if ((m_entries[i] == key)
+                    || ((m_entries[i] != null) && m_entries[i].equals(key)))
+                {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        public V get(Object key)
+        {
+            int i = indexOf(key);
+            return (i < 0) ? null : valueAt(i);
+        }
+
+        // The values were all taken from a Map<String, V> by internMap().
+        @SuppressWarnings("unchecked")
+        private V valueAt(int i)
+        {
+            return (V) m_entries[i + 1];
+        }
+
+        @Override
+        public boolean containsKey(Object key)
+        {
+            return indexOf(key) >= 0;
+        }
+
+        @Override
+        public int size()
+        {
+            return m_entries.length / 2;
+        }
+
+        @Override
+        public Set<Map.Entry<String, V>> entrySet()
+        {
+            return new AbstractSet<Map.Entry<String, V>>()
+            {
+                @Override
+                public Iterator<Map.Entry<String, V>> iterator()
+                {
+                    return new Iterator<Map.Entry<String, V>>()
+                    {
+                        private int m_next = 0;
+
+                        public boolean hasNext()
+                        {
+                            return m_next < m_entries.length;
+                        }
+
+                        public Map.Entry<String, V> next()
+                        {
+                            if (!hasNext())
+                            {
+                                throw new NoSuchElementException();
+                            }
+                            Map.Entry<String, V> entry =
+                                new AbstractMap.SimpleImmutableEntry<String, V>(
+                                    (String) m_entries[m_next], valueAt(m_next));
+                            m_next += 2;
+                            return entry;
+                        }
+
+                        public void remove()
+                        {
+                            throw new UnsupportedOperationException();
+                        }
+                    };
+                }
+
+                @Override
+                public int size()
+                {
+                    return m_entries.length / 2;
+                }
+            };
+        }
+    }
+}
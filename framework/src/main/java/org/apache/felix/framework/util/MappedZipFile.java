@@ -0,0 +1,522 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.framework.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.GregorianCalendar;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+/**
+ * This class provides read access to a memory-mapped zip file. The central
+ * directory is only parsed once; the resulting entry offsets can be persisted
+ * to an index file, which is reused as long as the zip file's path, length,
+ * and last modification time do not change. No file handle is kept open once the
+ * zip file is mapped. ZIP64 files and files larger than 2GB are not supported
+ * and result in an <tt>IOException</tt> when opened, so callers can fall back
+ * to a regular <tt>ZipFile</tt>.
+**/
+class MappedZipFile
+{
+    private static final int INDEX_MAGIC = 0x464a4958;
+    private static final int INDEX_VERSION = 2;
+
+    private static final int LOCSIG = 0x04034b50;
+    private static final int CENSIG = 0x02014b50;
+    private static final int ENDSIG = 0x06054b50;
+    private static final int ZIP64_LOCSIG = 0x07064b50;
+    private static final int LOCHDR = 30;
+    private static final int CENHDR = 46;
+    private static final int ENDHDR = 22;
+
+    private static final SecureAction m_secureAction = new SecureAction();
+
+    private final File m_file;
+    private volatile ByteBuffer m_buffer;
+    private String[] m_names;
+    private int[] m_offsets;
+    private int[] m_compressedSizes;
+    private int[] m_sizes;
+    private int[] m_methods;
+    private int[] m_times;
+    private int[] m_crcs;
+    private Map<String, Integer> m_indices;
+
+    /**
+     * Maps the specified zip file and loads its entry index, either from the
+     * specified index file or by parsing the central directory. If an index
+     * file is specified and it does not match the zip file, it is rewritten.
+     * @param file the zip file to map.
+     * @param indexFile the file to persist the entry index to or <tt>null</tt>.
+     * @throws IOException if the zip file cannot be mapped or is not supported.
+    **/
+    MappedZipFile(File file, File indexFile) throws IOException
+    {
+        m_file = file;
+        FileInputStream fis = m_secureAction.getFileInputStream(file);
+        try
+        {
+            FileChannel channel = fis.getChannel();
+            long length = channel.size();
+            if (length > Integer.MAX_VALUE)
+            {
+                throw new ZipException("Zip file too large to map: " + file);
+            }
+            m_buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, length)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        }
+        finally
+        {
+            // The mapping stays valid after the channel is closed.
+            fis.close();
+        }
+
+        if ((indexFile == null) || !readIndex(indexFile))
+        {
+            readCentralDirectory();
+            if (indexFile != null)
+            {
+                writeIndex(indexFile);
+            }
+        }
+
+        m_indices = new HashMap<String, Integer>(m_names.length * 4 / 3 + 1);
+        for (int i = m_names.length - 1; i >= 0; i--)
+        {
+            m_indices.put(m_names[i], Integer.valueOf(i));
+        }
+    }
+
+    /**
+     * Returns the specified entry from the zip file.
+     * @param name the name of the entry to return.
+     * @return the zip entry associated with the specified name or null
+     *         if it does not exist.
+    **/
+    ZipEntry getEntry(String name)
+    {
+        checkOpen();
+        Integer idx = m_indices.get(name);
+        if (idx == null)
+        {
+            idx = m_indices.get(name + "/");
+        }
+        return (idx != null) ? createEntry(idx.intValue()) : null;
+    }
+
+    /**
+     * Returns an enumeration of zip entries from the zip file.
+     * @return an enumeration of zip entries.
+    **/
+    Enumeration<ZipEntry> entries()
+    {
+        checkOpen();
+        ZipEntry[] entries = new ZipEntry[m_names.length];
+        for (int i = 0; i < entries.length; i++)
+        {
+            entries[i] = createEntry(i);
+        }
+        return Collections.enumeration(Arrays.asList(entries));
+    }
+
+    /**
+     * Returns an enumeration of the entry names of the zip file.
+     * @return an enumeration of entry names.
+    **/
+    Enumeration<String> names()
+    {
+        checkOpen();
+        return Collections.enumeration(Arrays.asList(m_names));
+    }
+
+    /**
+     * Returns an input stream for the specified zip entry.
+     * @param ze the zip entry whose input stream is to be retrieved.
+     * @return an input stream to the zip entry.
+     * @throws IOException if the entry does not exist or is malformed.
+    **/
+    InputStream getInputStream(ZipEntry ze) throws IOException
+    {
+        ByteBuffer buffer = m_buffer;
+        if (buffer == null)
+        {
+            throw new IllegalStateException("Zip file is closed: " + m_file);
+        }
+        Integer idx = m_indices.get(ze.getName());
+        if (idx == null)
+        {
+            throw new ZipException("No such entry: " + ze.getName());
+        }
+        int i = idx.intValue();
+
+        int offset = m_offsets[i];
+        if ((offset < 0) || (offset + LOCHDR > buffer.limit())
+            || (buffer.getInt(offset) != LOCSIG))
+        {
+            throw new ZipException("Invalid local header for entry: " + ze.getName());
+        }
+        int start = offset + LOCHDR
+            + (buffer.getShort(offset + 26) & 0xffff)
+            + (buffer.getShort(offset + 28) & 0xffff);
+        if (start + m_compressedSizes[i] > buffer.limit())
+        {
+            throw new ZipException("Invalid entry size: " + ze.getName());
+        }
+
+        ByteBuffer data = buffer.duplicate();
+        data.position(start);
+        data.limit(start + m_compressedSizes[i]);
+
+        if (m_methods[i] == ZipEntry.STORED)
+        {
+            return new ByteBufferInputStream(data, false);
+        }
+        else if (m_methods[i] == ZipEntry.DEFLATED)
+        {
+            // The inflater needs an extra dummy byte when used without
+            // the zlib wrapper.
+            final Inflater inflater = new Inflater(true);
+            return new InflaterInputStream(
+                new ByteBufferInputStream(data, true), inflater,
+                Math.max(64, Math.min(m_compressedSizes[i] + 1, 8192)))
+            {
+                private boolean m_closed;
+
+                public void close() throws IOException
+                {
+                    if (!m_closed)
+                    {
+                        m_closed = true;
+                        inflater.end();
+                        super.close();
+                    }
+                }
+
+                public int available() throws IOException
+                {
+                    return m_closed ? 0 : super.available();
+                }
+            };
+        }
+        throw new ZipException("Unsupported compression method: " + m_methods[i]);
+    }
+
+    /**
+     * Releases the mapped zip file. The mapping itself is released once it
+     * is garbage collected.
+    **/
+    void close()
+    {
+        m_buffer = null;
+    }
+
+    private void checkOpen()
+    {
+        if (m_buffer == null)
+        {
+            throw new IllegalStateException("Zip file is closed: " + m_file);
+        }
+    }
+
+    private ZipEntry createEntry(int i)
+    {
+        ZipEntry ze = new ZipEntry(m_names[i]);
+        ze.setMethod(m_methods[i]);
+        ze.setSize(m_sizes[i] & 0xffffffffL);
+        ze.setCompressedSize(m_compressedSizes[i] & 0xffffffffL);
+        ze.setCrc(m_crcs[i] & 0xffffffffL);
+        ze.setTime(dosToJavaTime(m_times[i]));
+        return ze;
+    }
+
+    private void readCentralDirectory() throws IOException
+    {
+        ByteBuffer buffer = m_buffer;
+        int end = -1;
+        for (int pos = buffer.limit() - ENDHDR,
+            min = Math.max(0, buffer.limit() - ENDHDR - 0xffff); pos >= min; pos--)
+        {
+            if (buffer.getInt(pos) == ENDSIG)
+            {
+                end = pos;
+                break;
+            }
+        }
+        if (end < 0)
+        {
+            throw new ZipException("No central directory found: " + m_file);
+        }
+        if ((end >= 20) && (buffer.getInt(end - 20) == ZIP64_LOCSIG))
+        {
+            throw new ZipException("ZIP64 is not supported: " + m_file);
+        }
+
+        int count = buffer.getShort(end + 10) & 0xffff;
+        long cenSize = buffer.getInt(end + 12) & 0xffffffffL;
+        long cenOffset = buffer.getInt(end + 16) & 0xffffffffL;
+        if (cenOffset + cenSize > end)
+        {
+            throw new ZipException("Invalid central directory: " + m_file);
+        }
+
+        init(count);
+        byte[] name = new byte[256];
+        int pos = (int) cenOffset;
+        for (int i = 0; i < count; i++)
+        {
+            if ((pos + CENHDR > end) || (buffer.getInt(pos) != CENSIG))
+            {
+                throw new ZipException("Invalid central directory header: " + m_file);
+            }
+            int nameLen = buffer.getShort(pos + 28) & 0xffff;
+            int extraLen = buffer.getShort(pos + 30) & 0xffff;
+            int commentLen = buffer.getShort(pos + 32) & 0xffff;
+            m_methods[i] = buffer.getShort(pos + 10) & 0xffff;
+            m_times[i] = buffer.getInt(pos + 12);
+            m_crcs[i] = buffer.getInt(pos + 16);
+            m_compressedSizes[i] = buffer.getInt(pos + 20);
+            m_sizes[i] = buffer.getInt(pos + 24);
+            m_offsets[i] = buffer.getInt(pos + 42);
+            if ((m_compressedSizes[i] < 0) || (m_sizes[i] < 0) || (m_offsets[i] < 0))
+            {
+                throw new ZipException("ZIP64 is not supported: " + m_file);
+            }
+            if (name.length < nameLen)
+            {
+                name = new byte[nameLen];
+            }
+            ByteBuffer dup = buffer.duplicate();
+            dup.position(pos + CENHDR);
+            dup.get(name, 0, nameLen);
+            m_names[i] = new String(name, 0, nameLen, "UTF-8");
+            pos += CENHDR + nameLen + extraLen + commentLen;
+        }
+    }
+
+    private boolean readIndex(File indexFile)
+    {
+        if (!m_secureAction.fileExists(indexFile))
+        {
+            return false;
+        }
+        DataInputStream in = null;
+        try
+        {
+            in = new DataInputStream(new BufferedInputStream(
+                m_secureAction.getFileInputStream(indexFile)));
+            if ((in.readInt() != INDEX_MAGIC)
+                || (in.readInt() != INDEX_VERSION)
+                || !in.readUTF().equals(m_file.getAbsolutePath())
+                || (in.readLong() != m_buffer.limit())
+                || (in.readLong() != m_file.lastModified()))
+            {
+                return false;
+            }
+            int count = in.readInt();
+            init(count);
+            for (int i = 0; i < count; i++)
+            {
+                m_names[i] = in.readUTF();
+                m_offsets[i] = in.readInt();
+                m_compressedSizes[i] = in.readInt();
+                m_sizes[i] = in.readInt();
+                m_methods[i] = in.readShort() & 0xffff;
+                m_times[i] = in.readInt();
+                m_crcs[i] = in.readInt();
+            }
+            return true;
+        }
+        catch (IOException ex)
+        {
+            return false;
+        }
+        finally
+        {
+            if (in != null)
+            {
+                try
+                {
+                    in.close();
+                }
+                catch (IOException ex)
+                {
+                    // Not much we can do.
+                }
+            }
+        }
+    }
+
+    private void writeIndex(File indexFile)
+    {
+        // The index is written to a temporary file first, so a partially
+        // written index never replaces a valid one.
+        File tmpFile = new File(indexFile.getPath() + ".tmp");
+        DataOutputStream out = null;
+        try
+        {
+            out = new DataOutputStream(new BufferedOutputStream(
+                m_secureAction.getFileOutputStream(tmpFile)));
+            out.writeInt(INDEX_MAGIC);
+            out.writeInt(INDEX_VERSION);
+            out.writeUTF(m_file.getAbsolutePath());
+            out.writeLong(m_buffer.limit());
+            out.writeLong(m_file.lastModified());
+            out.writeInt(m_names.length);
+            for (int i = 0; i < m_names.length; i++)
+            {
+                out.writeUTF(m_names[i]);
+                out.writeInt(m_offsets[i]);
+                out.writeInt(m_compressedSizes[i]);
+                out.writeInt(m_sizes[i]);
+                out.writeShort(m_methods[i]);
+                out.writeInt(m_times[i]);
+                out.writeInt(m_crcs[i]);
+            }
+            out.close();
+            out = null;
+            m_secureAction.deleteFile(indexFile);
+            if (!m_secureAction.renameFile(tmpFile, indexFile))
+            {
+                m_secureAction.deleteFile(tmpFile);
+            }
+        }
+        catch (IOException ex)
+        {
+            // The index is only an optimization, so just parse the
+            // central directory again next time.
+            if (out != null)
+            {
+                try
+                {
+                    out.close();
+                }
+                catch (IOException ex2)
+                {
+                    // Not much we can do.
+                }
+            }
+            m_secureAction.deleteFile(tmpFile);
+        }
+    }
+
+    private void init(int count)
+    {
+        m_names = new String[count];
+        m_offsets = new int[count];
+        m_compressedSizes = new int[count];
+        m_sizes = new int[count];
+        m_methods = new int[count];
+        m_times = new int[count];
+        m_crcs = new int[count];
+    }
+
+    private static long dosToJavaTime(int dtime)
+    {
+        Calendar cal = new GregorianCalendar(
+            ((dtime >> 25) & 0x7f) + 1980,
+            ((dtime >> 21) & 0x0f) - 1,
+            (dtime >> 16) & 0x1f,
+            (dtime >> 11) & 0x1f,
+            (dtime >> 5) & 0x3f,
+            (dtime << 1) & 0x3e);
+        return cal.getTimeInMillis();
+    }
+
+    /**
+     * This is an InputStream reading from a slice of the mapped zip file,
+     * optionally followed by a single zero byte as needed by the inflater.
+    **/
+    private static class ByteBufferInputStream extends InputStream
+    {
+        private final ByteBuffer m_data;
+        private boolean m_pad;
+
+        ByteBufferInputStream(ByteBuffer data, boolean pad)
+        {
+            m_data = data;
+            m_pad = pad;
+        }
+
+        public int read()
+        {
+            if (m_data.hasRemaining())
+            {
+                return m_data.get() & 0xff;
+            }
+            else if (m_pad)
+            {
+                m_pad = false;
+                return 0;
+            }
+            return -1;
+        }
+
+        public int read(byte[] b, int off, int len)
+        {
+            if (len == 0)
+            {
+                return 0;
+            }
+            int remaining = m_data.remaining();
+            if (remaining > 0)
+            {
+                len = Math.min(len, remaining);
+                m_data.get(b, off, len);
+                return len;
+            }
+            else if (m_pad)
+            {
+                m_pad = false;
+                b[off] = 0;
+                return 1;
+            }
+            return -1;
+        }
+
+        public long skip(long n)
+        {
+            int skipped = (int) Math.max(0, Math.min(n, m_data.remaining()));
+            m_data.position(m_data.position() + skipped);
+            return skipped;
+        }
+
+        public int available()
+        {
+            return m_data.remaining();
+        }
+    }
+}
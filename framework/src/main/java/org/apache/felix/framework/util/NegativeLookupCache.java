@@ -0,0 +1,197 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.framework.util;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * This class implements a bounded cache of class and resource names that
+ * could not be found, grouped by package. Each entry is only valid for the
+ * generation it was recorded in; recording or looking up an entry for a
+ * newer generation discards all cached entries. Once the cache is full
+ * it is cleared rather than evicting individual entries, since misses are
+ * cheap to record again.
+**/
+public class NegativeLookupCache
+{
+    private final int m_maxSize;
+    private final AtomicLong m_hits = new AtomicLong();
+    private final AtomicLong m_misses = new AtomicLong();
+    // The entries are replaced as a whole when the generation changes or the
+    // cache is invalidated, so concurrent additions for an outdated generation
+    // can only end up in a discarded entries instance.
+    private final AtomicReference<Entries> m_entries =
+        new AtomicReference<Entries>(new Entries(0));
+
+    /**
+     * Creates a cache holding at most the given number of names.
+     * @param maxSize the maximum number of cached names.
+    **/
+    public NegativeLookupCache(int maxSize)
+    {
+        m_maxSize = maxSize;
+    }
+
+    /**
+     * Checks whether the given name was recorded as not found in the
+     * given generation and updates the hit and miss counters accordingly.
+     * @param generation the current generation.
+     * @param pkgName the package of the class or resource.
+     * @param name the name of the class or resource.
+     * @return <tt>true</tt> if the name is known to be missing.
+    **/
+    public boolean contains(long generation, String pkgName, String name)
+    {
+        Entries entries = getEntries(generation);
+        Set<String> names = (entries != null) ? entries.m_names.get(pkgName) : null;
+        if ((names != null) && names.contains(name))
+        {
+            m_hits.incrementAndGet();
+            return true;
+        }
+        m_misses.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Records that the given name could not be found in the given generation.
+     * @param generation the generation in which the lookup was performed.
+     * @param pkgName the package of the class or resource.
+     * @param name the name of the class or resource.
+    **/
+    public void add(long generation, String pkgName, String name)
+    {
+        Entries entries = getEntries(generation);
+        if (entries == null)
+        {
+            return;
+        }
+        if (entries.m_size.get() >= m_maxSize)
+        {
+            Entries empty = new Entries(generation);
+            if (!m_entries.compareAndSet(entries, empty))
+            {
+                return;
+            }
+            entries = empty;
+        }
+        Set<String> names = entries.m_names.get(pkgName);
+        if (names == null)
+        {
+            names = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+            Set<String> existing = entries.m_names.putIfAbsent(pkgName, names);
+            if (existing != null)
+            {
+                names = existing;
+            }
+        }
+        if (names.add(name))
+        {
+            entries.m_size.incrementAndGet();
+        }
+    }
+
+    /**
+     * Discards all cached names of the given package.
+     * @param pkgName the package whose cached names should be discarded.
+    **/
+    public void invalidate(String pkgName)
+    {
+        Entries entries = m_entries.get();
+        Set<String> names = entries.m_names.remove(pkgName);
+        if (names != null)
+        {
+            entries.m_size.addAndGet(-names.size());
+        }
+    }
+
+    /**
+     * Discards all cached names.
+    **/
+    public void invalidate()
+    {
+        m_entries.set(new Entries(m_entries.get().m_generation));
+    }
+
+    /**
+     * Returns the number of lookups answered by this cache.
+     * @return the number of cache hits.
+    **/
+    public long getHitCount()
+    {
+        return m_hits.get();
+    }
+
+    /**
+     * Returns the number of lookups not answered by this cache.
+     * @return the number of cache misses.
+    **/
+    public long getMissCount()
+    {
+        return m_misses.get();
+    }
+
+    /**
+     * Returns the number of currently cached names.
+     * @return the number of cached names.
+    **/
+    public int size()
+    {
+        return Math.max(0, m_entries.get().m_size.get());
+    }
+
+    // Returns the entries for the given generation, discarding the current
+    // entries if the given generation is newer, or null if the given
+    // generation is outdated.
+    private Entries getEntries(long generation)
+    {
+        while (true)
+        {
+            Entries entries = m_entries.get();
+            if (entries.m_generation == generation)
+            {
+                return entries;
+            }
+            else if (entries.m_generation > generation)
+            {
+                return null;
+            }
+            m_entries.compareAndSet(entries, new Entries(generation));
+        }
+    }
+
+    private static class Entries
+    {
+        private final long m_generation;
+        private final ConcurrentMap<String, Set<String>> m_names =
+            new ConcurrentHashMap<String, Set<String>>();
+        private final AtomicInteger m_size = new AtomicInteger();
+
+        Entries(long generation)
+        {
+            m_generation = generation;
+        }
+    }
+}
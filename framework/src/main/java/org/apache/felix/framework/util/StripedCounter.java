@@ -0,0 +1,109 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.framework.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * This class implements a counter that threads can update concurrently
+ * without contending on a single memory location. Uncontended updates go to
+ * a single base value. Once an update fails due to contention, the counter
+ * switches to an array of stripes, which are selected by thread and spaced
+ * apart to avoid false sharing. Reading the counter sums up all values, so
+ * it is only consistent while no updates are in progress.
+**/
+public class StripedCounter
+{
+    // The number of longs between two stripes, which spans a cache line.
+    private static final int PADDING = 8;
+    private static final int MAX_STRIPES = 64;
+
+    private final AtomicLong m_base = new AtomicLong();
+    private volatile AtomicLongArray m_stripes = null;
+
+    /**
+     * Adds one to the counter.
+    **/
+    public void increment()
+    {
+        add(1);
+    }
+
+    /**
+     * Adds the given value to the counter.
+     * @param value the value to add.
+    **/
+    public void add(long value)
+    {
+        AtomicLongArray stripes = m_stripes;
+        if (stripes == null)
+        {
+            long base = m_base.get();
+            if (m_base.compareAndSet(base, base + value))
+            {
+                return;
+            }
+            stripes = createStripes();
+        }
+        stripes.addAndGet(getIndex(stripes), value);
+    }
+
+    /**
+     * Returns the current value of the counter.
+     * @return the sum of all values added so far.
+    **/
+    public long sum()
+    {
+        long sum = m_base.get();
+        AtomicLongArray stripes = m_stripes;
+        if (stripes != null)
+        {
+            for (int i = 0; i < stripes.length(); i += PADDING)
+            {
+                sum += stripes.get(i);
+            }
+        }
+        return sum;
+    }
+
+    private synchronized AtomicLongArray createStripes()
+    {
+        if (m_stripes == null)
+        {
+            int count = 2;
+            while ((count < Runtime.getRuntime().availableProcessors())
+                && (count < MAX_STRIPES))
+            {
+                count <<= 1;
+            }
+            m_stripes = new AtomicLongArray(count * PADDING);
+        }
+        return m_stripes;
+    }
+
+    private static int getIndex(AtomicLongArray stripes)
+    {
+        // Spread the thread ids, which are usually consecutive.
+        long id = Thread.currentThread().getId() * 0x9E3779B97F4A7C15L;
+        int hash = (int) (id ^ (id >>> 32));
+        int count = stripes.length() / PADDING;
+        return ((hash ^ (hash >>> 16)) & (count - 1)) * PADDING;
+    }
+}
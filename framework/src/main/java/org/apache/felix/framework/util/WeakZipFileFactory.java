@@ -52,6 +52,7 @@ public class WeakZipFileFactory
     private final List<WeakZipFile> m_openFiles = new ArrayList<WeakZipFile>();
     private final Lock m_globalMutex = new ReentrantLock();
     private final int m_limit;
+    private final boolean m_mapped;
 
     /**
      * Constructs a weak zip file factory with the specified file limit. A limit
@@ -59,12 +60,26 @@ public class WeakZipFileFactory
      * @param limit maximum number of open zip files at any given time.
      */
     public WeakZipFileFactory(int limit)
+    {
+        this(limit, false);
+    }
+
+    /**
+     * Constructs a weak zip file factory with the specified file limit, which
+     * optionally memory maps zip files. Memory-mapped zip files do not keep
+     * a file open, so they do not count against the limit. A limit of zero
+     * signifies no limit.
+     * @param limit maximum number of open zip files at any given time.
+     * @param mapped whether zip files should be memory mapped if possible.
+     */
+    public WeakZipFileFactory(int limit, boolean mapped)
     {
         if (limit < 0)
         {
             throw new IllegalArgumentException("Limit must be non-negative.");
         }
         m_limit = limit;
+        m_mapped = mapped;
     }
 
     /**
@@ -75,9 +90,24 @@ public class WeakZipFileFactory
      */
     public WeakZipFile create(File file) throws IOException
     {
-        WeakZipFile wzf = new WeakZipFile(file);
+        return create(file, null);
+    }
 
-        if (m_limit > 0)
+    /**
+     * Factory method used to create weak zip files. If this factory memory
+     * maps zip files, the entry index of the zip file is persisted to the
+     * specified index file, so it does not have to be recreated from the
+     * central directory the next time the zip file is opened.
+     * @param file the target zip file.
+     * @param indexFile the file used to persist the entry index or null.
+     * @return the created weak zip file.
+     * @throws IOException if the zip file could not be opened.
+     */
+    public WeakZipFile create(File file, File indexFile) throws IOException
+    {
+        WeakZipFile wzf = new WeakZipFile(file, indexFile);
+
+        if ((m_limit > 0) && (wzf.m_mappedFile == null))
         {
             m_globalMutex.lock();
 
@@ -151,6 +181,7 @@ public class WeakZipFileFactory
     public class WeakZipFile
     {
         private final File m_file;
+        private final MappedZipFile m_mappedFile;
         private final Lock m_localMutex = new ReentrantLock(false);
         private volatile ZipFile m_zipFile;
         private volatile int m_status = OPEN;
@@ -161,12 +192,30 @@ public class WeakZipFileFactory
          * Constructor is private since instances need to be centrally
          * managed.
          * @param file the target zip file.
+         * @param indexFile the file used to persist the entry index or null.
          * @throws IOException if the zip file could not be opened.
          */
-        private WeakZipFile(File file) throws IOException
+        private WeakZipFile(File file, File indexFile) throws IOException
         {
             m_file = file;
-            m_zipFile = m_secureAction.openZipFile(m_file);
+            MappedZipFile mappedFile = null;
+            if (m_mapped)
+            {
+                try
+                {
+                    mappedFile = new MappedZipFile(m_file, indexFile);
+                }
+                catch (IOException ex)
+                {
+                    // Fall back to a regular zip file, which will report
+                    // the error if the file is really corrupt.
+                }
+            }
+            m_mappedFile = mappedFile;
+            if (m_mappedFile == null)
+            {
+                m_zipFile = m_secureAction.openZipFile(m_file);
+            }
             m_timestamp = System.currentTimeMillis();
         }
 
@@ -178,6 +227,11 @@ public class WeakZipFileFactory
          */
         public ZipEntry getEntry(String name)
         {
+            if (m_mappedFile != null)
+            {
+                return m_mappedFile.getEntry(name);
+            }
+
             ensureZipFileIsOpen();
 
             try
@@ -225,6 +279,11 @@ public class WeakZipFileFactory
          */
         public Enumeration<ZipEntry> entries()
         {
+            if (m_mappedFile != null)
+            {
+                return m_mappedFile.entries();
+            }
+
             ensureZipFileIsOpen();
 
             try
@@ -243,6 +302,11 @@ public class WeakZipFileFactory
 
         public Enumeration<String> names()
         {
+            if (m_mappedFile != null)
+            {
+                return m_mappedFile.names();
+            }
+
             ensureZipFileIsOpen();
 
             try
@@ -304,6 +368,11 @@ public class WeakZipFileFactory
          */
         public InputStream getInputStream(ZipEntry ze) throws IOException
         {
+            if (m_mappedFile != null)
+            {
+                return m_mappedFile.getInputStream(ze);
+            }
+
             ensureZipFileIsOpen();
 
             try
@@ -390,6 +459,10 @@ public class WeakZipFileFactory
             {
                 ZipFile tmp = m_zipFile;
                 __close();
+                if (m_mappedFile != null)
+                {
+                    m_mappedFile.close();
+                }
                 if (tmp != null)
                 {
                     tmp.close();
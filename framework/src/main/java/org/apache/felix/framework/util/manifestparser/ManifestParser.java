@@ -22,6 +22,7 @@ import org.apache.felix.framework.BundleRevisionImpl;
 import org.apache.felix.framework.Logger;
 import org.apache.felix.framework.capabilityset.SimpleFilter;
 import org.apache.felix.framework.util.FelixConstants;
+import org.apache.felix.framework.util.Interner;
 import org.apache.felix.framework.wiring.BundleCapabilityImpl;
 import org.apache.felix.framework.wiring.BundleRequirementImpl;
 import org.osgi.framework.BundleException;
@@ -137,7 +138,7 @@ public class ManifestParser
                         new HashMap<String, Object>(bundleCap.getAttributes());
                     Object value = hostAttrs.remove(BundleRevision.BUNDLE_NAMESPACE);
                     hostAttrs.put(BundleRevision.HOST_NAMESPACE, value);
-                    capList.add(new BundleCapabilityImpl(
+                    capList.add(newCapability(
                         owner, BundleRevision.HOST_NAMESPACE,
                         bundleCap.getDirectives(),
                         hostAttrs));
@@ -458,7 +459,7 @@ public class ManifestParser
 
                 // Create package requirement and add to requirement list.
                 reqList.add(
-                    new BundleRequirementImpl(
+                    newRequirement(
                         owner,
                         BundleRevision.PACKAGE_NAMESPACE,
                         newDirs,
@@ -565,7 +566,7 @@ public class ManifestParser
 
                     // Create requirement and add to requirement list.
                     reqList.add(
-                        new BundleRequirementImpl(
+                        newRequirement(
                             owner,
                             path,
                             clause.m_dirs,
@@ -656,7 +657,7 @@ public class ManifestParser
             
             if(requirementDirectives.size() > 0)
             {
-                result.add(new BundleRequirementImpl(owner, NativeNamespace.NATIVE_NAMESPACE, requirementDirectives,
+                result.add(newRequirement(owner, NativeNamespace.NATIVE_NAMESPACE, requirementDirectives,
                         Collections.<String, Object>emptyMap(),
                         consolidatedNativeFilter));
             }
@@ -823,7 +824,7 @@ public class ManifestParser
 
                 // Create package capability and add to capability list.
                 capList.add(
-                    new BundleCapabilityImpl(
+                    newCapability(
                         owner,
                         path,
                         clause.m_dirs,
@@ -975,7 +976,7 @@ public class ManifestParser
 
                 // Create package capability and add to capability list.
                 capList.add(
-                    new BundleCapabilityImpl(
+                    newCapability(
                         owner,
                         BundleRevision.PACKAGE_NAMESPACE,
                         clause.m_dirs,
@@ -992,6 +993,31 @@ public class ManifestParser
         return (manifestVersion == null) ? "1" : manifestVersion;
     }
 
+    // The capabilities and requirements of revisions share their directives,
+    // attributes, and uses with equal ones of other revisions.
+    private static BundleCapabilityImpl newCapability(BundleRevision owner,
+        String namespace, Map<String, String> dirs, Map<String, Object> attrs)
+    {
+        return new BundleCapabilityImpl(owner, namespace,
+            Interner.internMap(dirs), Interner.internMap(attrs));
+    }
+
+    private static BundleRequirementImpl newRequirement(BundleRevision owner,
+        String namespace, Map<String, String> dirs, Map<String, Object> attrs,
+        SimpleFilter filter)
+    {
+        return new BundleRequirementImpl(owner, namespace,
+            Interner.internMap(dirs), Interner.internMap(attrs), filter);
+    }
+
+    private static BundleRequirementImpl newRequirement(BundleRevision owner,
+        String namespace, Map<String, String> dirs, Map<String, Object> attrs)
+    {
+        // The attributes are converted into the filter of the requirement.
+        return new BundleRequirementImpl(owner, namespace,
+            Interner.internMap(dirs), attrs);
+    }
+
     private static String getManifestVersion(Map<String, Object> headerMap)
     {
         String manifestVersion = (String) headerMap.get(Constants.BUNDLE_MANIFESTVERSION);
@@ -1323,7 +1349,7 @@ public class ManifestParser
         {
             Map<String, String> dirs = new HashMap<String, String>(1);
             dirs.put(Constants.USES_DIRECTIVE, usesValue);
-            exports.set(i, new BundleCapabilityImpl(
+            exports.set(i, newCapability(
                 exports.get(i).getRevision(),
                 BundleRevision.PACKAGE_NAMESPACE,
                 dirs,
@@ -1404,7 +1430,7 @@ public class ManifestParser
             String symName = (String) clauses.get(0).m_paths.get(0);
             clauses.get(0).m_attrs.put(BundleRevision.BUNDLE_NAMESPACE, symName);
             clauses.get(0).m_attrs.put(Constants.BUNDLE_VERSION_ATTRIBUTE, bundleVersion);
-            return new BundleCapabilityImpl(
+            return newCapability(
                 owner,
                 BundleRevision.BUNDLE_NAMESPACE,
                 clauses.get(0).m_dirs,
@@ -1460,7 +1486,7 @@ public class ManifestParser
         {
             dirs = Collections.emptyMap();
         }
-        return new BundleCapabilityImpl(owner, IdentityNamespace.IDENTITY_NAMESPACE, dirs, attrs);
+        return newCapability(owner, IdentityNamespace.IDENTITY_NAMESPACE, dirs, attrs);
     }
 
     private static List<BundleRequirementImpl> parseFragmentHost(
@@ -1530,7 +1556,7 @@ public class ManifestParser
                     Constants.FILTER_DIRECTIVE,
                     sf.toString());
 
-                reqs.add(new BundleRequirementImpl(
+                reqs.add(newRequirement(
                     owner, BundleRevision.HOST_NAMESPACE,
                     newDirs,
                     newAttrs));
@@ -1653,7 +1679,7 @@ public class ManifestParser
             }
 
             SimpleFilter sf = SimpleFilter.parse(reqFilter);
-            return Collections.<BundleRequirement>singletonList(new BundleRequirementImpl(
+            return Collections.<BundleRequirement>singletonList(newRequirement(
                 owner,
                 ExecutionEnvironmentNamespace.EXECUTION_ENVIRONMENT_NAMESPACE,
                 Collections.singletonMap(ExecutionEnvironmentNamespace.REQUIREMENT_FILTER_DIRECTIVE, reqFilter),
@@ -1736,7 +1762,7 @@ public class ManifestParser
 
                 // Create package requirement and add to requirement list.
                 reqList.add(
-                    new BundleRequirementImpl(
+                    newRequirement(
                         owner,
                         BundleRevision.BUNDLE_NAMESPACE,
                         newDirs,
@@ -2155,7 +2181,7 @@ public class ManifestParser
                 // Add the aliased value.
                 aliasAttrs.put(cap.getNamespace(), aliases);
                 // Create the aliased capability to replace the old capability.
-                cap = new BundleCapabilityImpl(
+                cap = newCapability(
                         owner,
                         cap.getNamespace(),
                         cap.getDirectives(),
@@ -2176,7 +2202,7 @@ public class ManifestParser
                     // Add the aliased value.
                     aliasAttrs.put(Constants.BUNDLE_SYMBOLICNAME_ATTRIBUTE, aliases);
                     // Create the aliased capability to replace the old capability.
-                    aliasCaps.set(capIdx, new BundleCapabilityImpl(
+                    aliasCaps.set(capIdx, newCapability(
                             owner,
                             cap.getNamespace(),
                             cap.getDirectives(),
@@ -26,6 +26,7 @@ import java.util.Map;
 import java.util.Set;
 import java.util.StringTokenizer;
 import org.apache.felix.framework.capabilityset.SimpleFilter;
+import org.apache.felix.framework.util.Interner;
 import org.apache.felix.framework.util.Util;
 import org.apache.felix.framework.util.manifestparser.ManifestParser;
 import org.osgi.framework.Constants;
@@ -50,8 +51,10 @@ public class BundleCapabilityImpl implements BundleCapability
     {
         m_namespace = namespace;
         m_revision = revision;
-        m_dirs = Util.newImmutableMap(dirs);
-        m_attrs = Util.newImmutableMap(attrs);
+        // The manifest parser interns the directives and attributes of the
+        // capabilities it creates, which are kept as they are.
+        m_dirs = Interner.isInterned(dirs) ? dirs : Util.newImmutableMap(dirs);
+        m_attrs = Interner.isInterned(attrs) ? attrs : Util.newImmutableMap(attrs);
 
         // Find all export directives: uses, mandatory, include, and exclude.
 
@@ -67,7 +70,7 @@ public class BundleCapabilityImpl implements BundleCapability
                 uses.add(tok.nextToken().trim());
             }
         }
-        m_uses = uses;
+        m_uses = Interner.isInterned(dirs) ? Interner.internList(uses) : uses;
 
         value = m_dirs.get(Constants.INCLUDE_DIRECTIVE);
         if (value != null)
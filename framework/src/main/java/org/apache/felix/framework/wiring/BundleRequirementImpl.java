@@ -22,6 +22,7 @@ import java.util.Collections;
 import java.util.Map;
 import org.apache.felix.framework.capabilityset.CapabilitySet;
 import org.apache.felix.framework.capabilityset.SimpleFilter;
+import org.apache.felix.framework.util.Interner;
 import org.apache.felix.framework.util.Util;
 import org.osgi.framework.Constants;
 import org.osgi.framework.wiring.BundleCapability;
@@ -43,8 +44,10 @@ public class BundleRequirementImpl implements BundleRequirement
     {
         m_revision = revision;
         m_namespace = namespace;
-        m_dirs =  Util.newImmutableMap(dirs);
-        m_attrs =  Util.newImmutableMap(attrs);
+        // The manifest parser interns the directives and attributes of the
+        // requirements it creates, which are kept as they are.
+        m_dirs = Interner.isInterned(dirs) ? dirs : Util.newImmutableMap(dirs);
+        m_attrs = Interner.isInterned(attrs) ? attrs : Util.newImmutableMap(attrs);
         m_filter = filter;
 
         // Find resolution import directives.
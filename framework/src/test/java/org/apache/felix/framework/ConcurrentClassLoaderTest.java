@@ -22,6 +22,9 @@ import junit.framework.TestCase;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.Constants;
 import org.osgi.framework.launch.Framework;
+import org.osgi.framework.wiring.BundleRevision;
+import org.osgi.framework.wiring.BundleWire;
+import org.osgi.framework.wiring.BundleWiring;
 
 import java.io.ByteArrayInputStream;
 import java.io.File;
@@ -29,12 +32,14 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.jar.JarOutputStream;
 import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
 
 public class ConcurrentClassLoaderTest extends TestCase
 {
@@ -86,6 +91,57 @@ public class ConcurrentClassLoaderTest extends TestCase
         assertEquals("Class resolution all finished", CONCURRENCY_LEVEL, doneCount.get());
     }
 
+    public void testDynamicImportWiredOnceInParallel() throws Exception
+    {
+        m_cacheDir = createCacheDir();
+        m_felix = createFramework(m_cacheDir);
+        m_felix.init();
+        m_felix.start();
+        m_felix.getBundleContext().installBundle(createBundle(
+            "Bundle-SymbolicName: provider\n" + "Export-Package: test.dyn\n",
+            "test/dyn/resource.txt"));
+        final Bundle consumer = m_felix.getBundleContext().installBundle(createBundle(
+            "Bundle-SymbolicName: consumer\n" + "DynamicImport-Package: test.*\n"));
+        consumer.start();
+
+        final int threads = 16;
+        final CountDownLatch latch = new CountDownLatch(threads);
+        final AtomicInteger foundCount = new AtomicInteger();
+        Thread[] workers = new Thread[threads];
+        for (int i = 0; i < threads; i++)
+        {
+            workers[i] = new Thread()
+            {
+                public void run()
+                {
+                    latch.countDown();
+                    try
+                    {
+                        latch.await();
+                    }
+                    catch (InterruptedException e)
+                    {
+                        return;
+                    }
+                    if (consumer.getResource("test/dyn/resource.txt") != null)
+                    {
+                        foundCount.incrementAndGet();
+                    }
+                }
+            };
+            workers[i].start();
+        }
+        for (Thread worker : workers)
+        {
+            worker.join(TimeUnit.MINUTES.toMillis(1));
+        }
+
+        assertEquals(threads, foundCount.get());
+        List<BundleWire> wires = consumer.adapt(BundleWiring.class)
+            .getRequiredWires(BundleRevision.PACKAGE_NAMESPACE);
+        assertEquals(1, wires.size());
+    }
+
     @Override
     protected void tearDown() throws Exception
     {
@@ -138,6 +194,26 @@ public class ConcurrentClassLoaderTest extends TestCase
         return f.toURI().toString();
     }
 
+    private static String createBundle(String manifest, String... entries) throws IOException
+    {
+        File f = File.createTempFile("felix-bundle", ".jar");
+        f.deleteOnExit();
+
+        Manifest mf = new Manifest(new ByteArrayInputStream(
+            ("Bundle-ManifestVersion: 2\n" + manifest).getBytes("utf-8")));
+        mf.getMainAttributes().putValue("Manifest-Version", "1.0");
+        JarOutputStream os = new JarOutputStream(new FileOutputStream(f), mf);
+        for (String entry : entries)
+        {
+            os.putNextEntry(new ZipEntry(entry));
+            os.write(entry.getBytes("utf-8"));
+            os.closeEntry();
+        }
+        os.close();
+
+        return f.toURI().toString();
+    }
+
     private static void delete(File file) throws IOException {
         if (file.isDirectory()) {
             File[] children = file.listFiles();
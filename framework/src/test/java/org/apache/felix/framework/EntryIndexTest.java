@@ -0,0 +1,140 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.framework;
+
+import java.io.InputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.felix.framework.cache.Content;
+import org.apache.felix.framework.capabilityset.SimpleFilter;
+
+public class EntryIndexTest extends TestCase
+{
+    private static final String[] ENTRIES = {
+        "META-INF/MANIFEST.MF",
+        "OSGI-INF/b.xml",
+        "org/foo/Foo.class",
+        "OSGI-INF/",
+        "OSGI-INF/a.xml",
+        "org/",
+        "org/bar/sub/Bar.class",
+        "readme.txt"
+    };
+
+    public void testChildren()
+    {
+        EntryIndex index = new EntryIndex(new TestContent(ENTRIES));
+        assertEquals(Arrays.asList("META-INF/", "OSGI-INF/", "org/", "readme.txt"),
+            find(index, "", "*", false));
+        assertEquals(Arrays.asList("org/foo/", "org/bar/"),
+            find(index, "org/", "*", false));
+        assertEquals(Collections.emptyList(), find(index, "missing/", "*", false));
+        assertEquals(Collections.emptyList(), find(index, "readme.txt/", "*", false));
+    }
+
+    public void testRecursiveInScanOrder()
+    {
+        EntryIndex index = new EntryIndex(new TestContent(ENTRIES));
+        assertEquals(Arrays.asList("OSGI-INF/b.xml", "OSGI-INF/a.xml"),
+            find(index, "", "*.xml", true));
+        assertEquals(Arrays.asList(
+            "org/foo/", "org/foo/Foo.class", "org/bar/", "org/bar/sub/",
+            "org/bar/sub/Bar.class"),
+            find(index, "org/", "*", true));
+        assertEquals(Arrays.asList("org/bar/sub/"), find(index, "org/", "s*", true));
+    }
+
+    public void testFirstEntry()
+    {
+        EntryIndex index = new EntryIndex(new TestContent(ENTRIES));
+        List<EntryIndex.Node> nodes = index.find("", SimpleFilter.parseSubstring("OSGI-INF"), false);
+        assertEquals(1, nodes.size());
+        assertTrue(nodes.get(0).isDirectory());
+        // The directory entry itself comes after one of its files.
+        assertEquals("OSGI-INF/b.xml", index.getFirstEntry(nodes.get(0)));
+    }
+
+    private static List<String> find(EntryIndex index, String path, String pattern,
+        boolean recurse)
+    {
+        List<String> result = new ArrayList<String>();
+        for (EntryIndex.Node node : index.find(
+            path, SimpleFilter.parseSubstring(pattern), recurse))
+        {
+            result.add(node.getPath());
+        }
+        return result;
+    }
+
+    private static class TestContent implements Content
+    {
+        private final String[] m_entries;
+
+        TestContent(String[] entries)
+        {
+            m_entries = entries;
+        }
+
+        public void close()
+        {
+        }
+
+        public boolean hasEntry(String name)
+        {
+            return Arrays.asList(m_entries).contains(name);
+        }
+
+        public Enumeration<String> getEntries()
+        {
+            return Collections.enumeration(Arrays.asList(m_entries));
+        }
+
+        public byte[] getEntryAsBytes(String name)
+        {
+            return null;
+        }
+
+        public InputStream getEntryAsStream(String name)
+        {
+            return null;
+        }
+
+        public Content getEntryAsContent(String name)
+        {
+            return null;
+        }
+
+        public String getEntryAsNativeLibrary(String name)
+        {
+            return null;
+        }
+
+        public URL getEntryAsURL(String name)
+        {
+            return null;
+        }
+    }
+}
@@ -19,17 +19,25 @@
 package org.apache.felix.framework;
 
 import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import junit.framework.TestCase;
 
 import org.easymock.EasyMock;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
+import org.osgi.framework.AllServiceListener;
 import org.osgi.framework.Constants;
+import org.osgi.framework.Filter;
+import org.osgi.framework.FrameworkEvent;
+import org.osgi.framework.FrameworkListener;
+import org.osgi.framework.FrameworkUtil;
 import org.osgi.framework.ServiceEvent;
 import org.osgi.framework.ServiceListener;
 import org.osgi.framework.ServiceReference;
 import org.osgi.framework.hooks.service.EventHook;
+import org.apache.felix.framework.util.FelixConstants;
 
 public class EventDispatcherTest extends TestCase
 {
@@ -137,6 +145,226 @@ public class EventDispatcherTest extends TestCase
         assertTrue(calledHooks.contains(eh2));
     }
 
+    public void testFireServiceEventUsesObjectClassIndex() throws Exception
+    {
+        Logger logger = new Logger();
+        EventDispatcher ed = new EventDispatcher(logger, new ServiceRegistry(logger, null));
+
+        final List<String> fired = Collections.synchronizedList(new ArrayList<String>());
+        final List<String> matched = Collections.synchronizedList(new ArrayList<String>());
+        String[] filters = new String[] {
+            "(objectClass=foo)",
+            "(&(objectClass=bar)(x=1))",
+            "(|(objectClass=foo)(objectClass=bar))",
+            "(|(objectClass=bar)(x=1))",
+            "(objectClass=f*)"
+        };
+        for (final String filter : filters)
+        {
+            final Filter parsed = FrameworkUtil.createFilter(filter);
+            Filter counting = new Filter()
+            {
+                public boolean match(ServiceReference<?> reference)
+                {
+                    matched.add(filter);
+                    return parsed.match(reference);
+                }
+
+                public boolean match(Dictionary<String, ?> dictionary)
+                {
+                    return parsed.match(dictionary);
+                }
+
+                public boolean matchCase(Dictionary<String, ?> dictionary)
+                {
+                    return parsed.matchCase(dictionary);
+                }
+
+                public boolean matches(Map<String, ?> map)
+                {
+                    return parsed.matches(map);
+                }
+
+                @Override
+                public String toString()
+                {
+                    return parsed.toString();
+                }
+            };
+            ed.addListener(getMockBundle().getBundleContext(), ServiceListener.class,
+                new AllServiceListener()
+                {
+                    public void serviceChanged(ServiceEvent event)
+                    {
+                        fired.add(filter);
+                    }
+                }, counting);
+        }
+
+        Felix framework = new Felix(new HashMap());
+        ed.fireServiceEvent(new ServiceEvent(ServiceEvent.REGISTERED,
+            getMockServiceReference(new String[] { "foo" })), null, framework);
+        assertEquals(new HashSet<String>(Arrays.asList(filters[0], filters[2], filters[3], filters[4])),
+            new HashSet<String>(matched));
+        assertEquals(new HashSet<String>(Arrays.asList(filters[0], filters[2], filters[4])),
+            new HashSet<String>(fired));
+
+        // A listener indexed by several object classes is only called once.
+        matched.clear();
+        fired.clear();
+        ed.fireServiceEvent(new ServiceEvent(ServiceEvent.REGISTERED,
+            getMockServiceReference(new String[] { "foo", "bar", "baz" })), null, framework);
+        assertEquals(5, matched.size());
+        assertEquals(1, Collections.frequency(fired, filters[2]));
+        assertEquals(4, fired.size());
+
+        // Other services only reach listeners that may match any service.
+        matched.clear();
+        fired.clear();
+        ed.fireServiceEvent(new ServiceEvent(ServiceEvent.REGISTERED,
+            getMockServiceReference(new String[] { "baz" })), null, framework);
+        assertEquals(new HashSet<String>(Arrays.asList(filters[3], filters[4])),
+            new HashSet<String>(matched));
+        assertEquals(2, matched.size());
+        assertTrue(fired.isEmpty());
+    }
+
+    private ServiceReference getMockServiceReference(String[] classes)
+    {
+        ServiceReference sr = EasyMock.createNiceMock(ServiceReference.class);
+        EasyMock.expect(sr.getProperty(Constants.OBJECTCLASS)).andReturn(classes).anyTimes();
+        EasyMock.expect(sr.getPropertyKeys()).andReturn(new String[] { Constants.OBJECTCLASS }).anyTimes();
+        EasyMock.replay(new Object[] { sr });
+        return sr;
+    }
+
+    public void testFireFrameworkEventsOnThreadPool() throws Exception
+    {
+        Map config = new HashMap();
+        config.put(FelixConstants.EVENTDISPATCHER_THREADS_PROP, "4");
+        config.put(FelixConstants.EVENTDISPATCHER_QUEUESIZE_PROP, "0");
+        Logger logger = new Logger();
+        EventDispatcher ed = new EventDispatcher(
+            logger, new ServiceRegistry(logger, null), config);
+        ed.startDispatching();
+
+        // The first listener blocks until all events have been fired.
+        final CountDownLatch release = new CountDownLatch(1);
+        final int count = 20;
+        List<List<Integer>> received = new ArrayList<List<Integer>>();
+        final CountDownLatch done = new CountDownLatch(8);
+        for (int i = 0; i < 8; i++)
+        {
+            final boolean blocking = (i == 0);
+            final List<Integer> events = Collections.synchronizedList(new ArrayList<Integer>());
+            received.add(events);
+            ed.addListener(getMockBundle().getBundleContext(), FrameworkListener.class,
+                new FrameworkListener()
+                {
+                    public void frameworkEvent(FrameworkEvent event)
+                    {
+                        try
+                        {
+                            if (blocking)
+                            {
+                                release.await();
+                            }
+                        }
+                        catch (InterruptedException ex)
+                        {
+                            Thread.currentThread().interrupt();
+                        }
+                        events.add(event.getType());
+                        if (events.size() == count)
+                        {
+                            done.countDown();
+                        }
+                    }
+                }, null);
+        }
+
+        Bundle bundle = getMockBundle();
+        for (int i = 0; i < count; i++)
+        {
+            ed.fireFrameworkEvent(new FrameworkEvent(i, bundle, null));
+        }
+
+        // Listeners served by other threads are not held up by the blocked one.
+        long deadline = System.currentTimeMillis() + 10000;
+        int complete = 0;
+        while ((complete == 0) && (System.currentTimeMillis() < deadline))
+        {
+            for (List<Integer> events : received.subList(1, received.size()))
+            {
+                complete += (events.size() == count) ? 1 : 0;
+            }
+            Thread.sleep(10);
+        }
+        assertTrue(complete > 0);
+        assertTrue(received.get(0).isEmpty());
+        assertTrue(ed.getQueueDepth() > 0);
+
+        release.countDown();
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        for (List<Integer> events : received)
+        {
+            for (int i = 0; i < count; i++)
+            {
+                assertEquals(i, events.get(i).intValue());
+            }
+        }
+        ed.stopDispatching();
+
+        assertEquals(0, ed.getQueueDepth());
+        assertTrue(ed.getDispatchedEventCount() >= count);
+        assertTrue(ed.getMaxDispatchLatency() >= ed.getAverageDispatchLatency());
+        assertTrue(ed.getAverageDispatchLatency() > 0);
+    }
+
+    public void testBoundedQueueDoesNotBlockStuckListener() throws Exception
+    {
+        Map config = new HashMap();
+        config.put(FelixConstants.EVENTDISPATCHER_THREADS_PROP, "2");
+        config.put(FelixConstants.EVENTDISPATCHER_QUEUESIZE_PROP, "1");
+        Logger logger = new Logger();
+        EventDispatcher ed = new EventDispatcher(
+            logger, new ServiceRegistry(logger, null), config);
+        ed.startDispatching();
+
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(3);
+        ed.addListener(getMockBundle().getBundleContext(), FrameworkListener.class,
+            new FrameworkListener()
+            {
+                public void frameworkEvent(FrameworkEvent event)
+                {
+                    try
+                    {
+                        release.await();
+                    }
+                    catch (InterruptedException ex)
+                    {
+                        Thread.currentThread().interrupt();
+                    }
+                    done.countDown();
+                }
+            }, null);
+
+        // The queue is full after the second event, the third one is queued
+        // anyway once the dispatch thread is found not to make progress.
+        Bundle bundle = getMockBundle();
+        for (int i = 0; i < 3; i++)
+        {
+            ed.fireFrameworkEvent(new FrameworkEvent(FrameworkEvent.INFO, bundle, null));
+        }
+        assertEquals(3, ed.getQueueDepth());
+
+        release.countDown();
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        ed.stopDispatching();
+        assertEquals(3, ed.getDispatchedEventCount());
+    }
+
     private Bundle getMockBundle()
     {
         BundleContext bc = EasyMock.createNiceMock(BundleContext.class);
@@ -147,6 +375,10 @@ public class EventDispatcherTest extends TestCase
 
         EasyMock.expect(bc.getBundle()).andReturn(b).anyTimes();
 
+        // Asynchronous events are delivered on the dispatch threads.
+        EasyMock.makeThreadSafe(bc, true);
+        EasyMock.makeThreadSafe(b, true);
+
         EasyMock.replay(new Object[]
             {
                 bc, b
@@ -0,0 +1,184 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.framework;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+
+import javax.management.JMX;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import junit.framework.TestCase;
+
+import org.apache.felix.framework.util.FelixConstants;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.Constants;
+
+public class FrameworkMetricsTest extends TestCase
+{
+    private File m_cacheDir;
+    private Felix m_felix;
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+        m_cacheDir = File.createTempFile("felix-cache", ".dir");
+        m_cacheDir.delete();
+        m_cacheDir.mkdirs();
+    }
+
+    @Override
+    protected void tearDown() throws Exception
+    {
+        super.tearDown();
+        if (m_felix != null)
+        {
+            m_felix.stop();
+            m_felix.waitForStop(10000);
+        }
+        deleteDir(m_cacheDir);
+    }
+
+    public void testDisabledByDefault() throws Exception
+    {
+        startFramework(false);
+        assertNull(m_felix.getMetrics());
+        assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(
+            getObjectName()));
+    }
+
+    public void testCountersUpdated() throws Exception
+    {
+        startFramework(true);
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName objectName = getObjectName();
+        assertTrue(server.isRegistered(objectName));
+        // The metrics are only available through JMX, not as a service.
+        assertNull(m_felix.getBundleContext().getServiceReference(
+            FrameworkMetricsMBean.class.getName()));
+        FrameworkMetricsMBean metrics = JMX.newMBeanProxy(
+            server, objectName, FrameworkMetricsMBean.class);
+
+        long lookups = metrics.getServiceLookupCount();
+        m_felix.getBundleContext().getServiceReference(Runnable.class.getName());
+        assertTrue(metrics.getServiceLookupCount() > lookups);
+
+        String name = Dummy.class.getName();
+        Bundle bundle = m_felix.getBundleContext().installBundle(createBundle(
+            "Bundle-SymbolicName: dummy\n", name.replace('.', '/') + ".class")
+            .toURI().toString());
+        long resolves = metrics.getResolveCount();
+        long loads = metrics.getClassLoadCount();
+        assertEquals(0, metrics.getBundleClassLoadCount(bundle.getBundleId()));
+
+        Class clazz = bundle.loadClass(name);
+        assertNotSame(Dummy.class, clazz);
+        assertTrue(metrics.getResolveCount() > resolves);
+        assertEquals(loads + 1, metrics.getClassLoadCount());
+        assertEquals(1, metrics.getBundleClassLoadCount(bundle.getBundleId()));
+        assertTrue(metrics.getBundleClassLoadTime(bundle.getBundleId()) > 0);
+
+        long hits = metrics.getBundleNegativeLookupHitCount(bundle.getBundleId());
+        assertNull(bundle.getResource("missing/resource.txt"));
+        assertTrue(metrics.getBundleNegativeLookupMissCount(bundle.getBundleId()) > 0);
+        assertNull(bundle.getResource("missing/resource.txt"));
+        assertEquals(hits + 1, metrics.getBundleNegativeLookupHitCount(bundle.getBundleId()));
+
+        m_felix.stop();
+        m_felix.waitForStop(10000);
+        m_felix = null;
+        assertFalse(server.isRegistered(objectName));
+    }
+
+    private ObjectName getObjectName() throws Exception
+    {
+        return new ObjectName("org.apache.felix.framework:type=FrameworkMetrics,uuid="
+            + m_felix.getBundleContext().getProperty(Constants.FRAMEWORK_UUID));
+    }
+
+    private void startFramework(boolean metrics) throws Exception
+    {
+        Map params = new HashMap();
+        params.put(Constants.FRAMEWORK_SYSTEMPACKAGES, "org.osgi.framework; version=1.4.0");
+        params.put(Constants.FRAMEWORK_STORAGE, m_cacheDir.getPath());
+        params.put(FelixConstants.SERVICE_URLHANDLERS_PROP, "false");
+        if (metrics)
+        {
+            params.put(FelixConstants.METRICS_ENABLED_PROP, "true");
+        }
+        m_felix = new Felix(params);
+        m_felix.init();
+        m_felix.start();
+    }
+
+    private File createBundle(String manifest, String classEntry) throws IOException
+    {
+        File f = File.createTempFile("felix-bundle", ".jar", m_cacheDir);
+
+        Manifest mf = new Manifest(new ByteArrayInputStream(
+            ("Bundle-ManifestVersion: 2\n" + manifest).getBytes("utf-8")));
+        mf.getMainAttributes().putValue("Manifest-Version", "1.0");
+        JarOutputStream os = new JarOutputStream(new FileOutputStream(f), mf);
+        os.putNextEntry(new ZipEntry(classEntry));
+        os.write(getBytes(getClass().getClassLoader().getResourceAsStream(classEntry)));
+        os.closeEntry();
+        os.close();
+        return f;
+    }
+
+    private static byte[] getBytes(InputStream is) throws IOException
+    {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        for (int n = is.read(buffer); n != -1; n = is.read(buffer))
+        {
+            baos.write(buffer, 0, n);
+        }
+        is.close();
+        return baos.toByteArray();
+    }
+
+    private static void deleteDir(File root) throws IOException
+    {
+        if (root.isDirectory())
+        {
+            for (File file : root.listFiles())
+            {
+                deleteDir(file);
+            }
+        }
+        assertTrue(root.delete());
+    }
+
+    public static class Dummy
+    {
+    }
+}
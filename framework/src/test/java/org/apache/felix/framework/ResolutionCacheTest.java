@@ -0,0 +1,190 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.framework;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+
+import junit.framework.TestCase;
+
+import org.apache.felix.framework.util.FelixConstants;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.Constants;
+import org.osgi.framework.FrameworkEvent;
+import org.osgi.framework.FrameworkListener;
+import org.osgi.framework.wiring.BundleWire;
+import org.osgi.framework.wiring.BundleWiring;
+import org.osgi.framework.wiring.FrameworkWiring;
+
+public class ResolutionCacheTest extends TestCase
+{
+    private File m_cacheDir;
+    private Felix m_felix;
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+        m_cacheDir = File.createTempFile("felix-cache", ".dir");
+        m_cacheDir.delete();
+        m_cacheDir.mkdirs();
+
+        Map params = new HashMap();
+        params.put(Constants.FRAMEWORK_SYSTEMPACKAGES, "org.osgi.framework; version=1.4.0");
+        params.put(Constants.FRAMEWORK_STORAGE, m_cacheDir.getPath());
+        params.put(FelixConstants.SERVICE_URLHANDLERS_PROP, "false");
+        m_felix = new Felix(params);
+        m_felix.init();
+        m_felix.start();
+    }
+
+    @Override
+    protected void tearDown() throws Exception
+    {
+        super.tearDown();
+        m_felix.stop();
+        m_felix.waitForStop(10000);
+        deleteDir(m_cacheDir);
+    }
+
+    public void testOutcomeReusedAfterRefresh() throws Exception
+    {
+        m_felix.getBundleContext().installBundle(createBundle(
+            "Bundle-SymbolicName: provider\n"
+            + "Export-Package: test.p\n").toURI().toString());
+        Bundle consumer = m_felix.getBundleContext().installBundle(createBundle(
+            "Bundle-SymbolicName: consumer\n"
+            + "Import-Package: test.p\n").toURI().toString());
+        FrameworkWiring fw = m_felix.adapt(FrameworkWiring.class);
+        assertTrue(fw.resolveBundles(Collections.singleton(consumer)));
+        List<String> expected = getWires(consumer);
+
+        // The first refresh leaves the provider resolved, which changes the
+        // resolver state, but all further refreshes restore the same state.
+        ResolutionCache cache = m_felix.getResolver().getResolutionCache();
+        for (int i = 0; i < 3; i++)
+        {
+            refresh(consumer);
+            assertEquals(Bundle.INSTALLED, consumer.getState());
+            long hits = cache.getHitCount();
+            assertTrue(fw.resolveBundles(Collections.singleton(consumer)));
+            assertEquals(expected, getWires(consumer));
+            assertEquals((i == 0) ? hits : hits + 1, cache.getHitCount());
+        }
+    }
+
+    public void testFailureCachedUntilInstall() throws Exception
+    {
+        Bundle consumer = m_felix.getBundleContext().installBundle(createBundle(
+            "Bundle-SymbolicName: consumer\n"
+            + "Import-Package: test.q\n").toURI().toString());
+        FrameworkWiring fw = m_felix.adapt(FrameworkWiring.class);
+        ResolutionCache cache = m_felix.getResolver().getResolutionCache();
+        assertFalse(fw.resolveBundles(Collections.singleton(consumer)));
+        long hits = cache.getHitCount();
+        assertFalse(fw.resolveBundles(Collections.singleton(consumer)));
+        assertEquals(hits + 1, cache.getHitCount());
+
+        m_felix.getBundleContext().installBundle(createBundle(
+            "Bundle-SymbolicName: provider\n"
+            + "Export-Package: test.q\n").toURI().toString());
+        assertTrue(fw.resolveBundles(Collections.singleton(consumer)));
+        assertEquals(Bundle.RESOLVED, consumer.getState());
+    }
+
+    public void testDynamicImportRetriedAfterInstall() throws Exception
+    {
+        Bundle consumer = m_felix.getBundleContext().installBundle(createBundle(
+            "Bundle-SymbolicName: consumer\n"
+            + "DynamicImport-Package: test.d\n").toURI().toString());
+        assertNull(consumer.getResource("test/d/resource.txt"));
+        assertNull(consumer.getResource("test/d/resource.txt"));
+
+        m_felix.getBundleContext().installBundle(createBundle(
+            "Bundle-SymbolicName: provider\n"
+            + "Export-Package: test.d\n", "test/d/resource.txt").toURI().toString());
+        assertNotNull(consumer.getResource("test/d/resource.txt"));
+    }
+
+    private void refresh(Bundle bundle) throws InterruptedException
+    {
+        final CountDownLatch latch = new CountDownLatch(1);
+        m_felix.adapt(FrameworkWiring.class).refreshBundles(
+            Collections.singleton(bundle), new FrameworkListener()
+            {
+                public void frameworkEvent(FrameworkEvent event)
+                {
+                    latch.countDown();
+                }
+            });
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+    }
+
+    private List<String> getWires(Bundle bundle)
+    {
+        List<String> wires = new ArrayList<String>();
+        for (BundleWire wire : bundle.adapt(BundleWiring.class).getRequiredWires(null))
+        {
+            wires.add(wire.toString());
+        }
+        return wires;
+    }
+
+    private File createBundle(String manifest, String... entries) throws IOException
+    {
+        File f = File.createTempFile("felix-bundle", ".jar", m_cacheDir);
+
+        Manifest mf = new Manifest(new ByteArrayInputStream(
+            ("Bundle-ManifestVersion: 2\n" + manifest).getBytes("utf-8")));
+        mf.getMainAttributes().putValue("Manifest-Version", "1.0");
+        JarOutputStream os = new JarOutputStream(new FileOutputStream(f), mf);
+        for (String entry : entries)
+        {
+            os.putNextEntry(new ZipEntry(entry));
+            os.write(entry.getBytes("utf-8"));
+            os.closeEntry();
+        }
+        os.close();
+        return f;
+    }
+
+    private static void deleteDir(File root) throws IOException
+    {
+        if (root.isDirectory())
+        {
+            for (File file : root.listFiles())
+            {
+                deleteDir(file);
+            }
+        }
+        assertTrue(root.delete());
+    }
+}
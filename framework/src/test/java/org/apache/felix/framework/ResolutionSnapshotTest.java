@@ -0,0 +1,214 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.framework;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+import junit.framework.TestCase;
+
+import org.apache.felix.framework.util.FelixConstants;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.Constants;
+import org.osgi.framework.FrameworkEvent;
+import org.osgi.framework.FrameworkListener;
+import org.osgi.framework.launch.Framework;
+import org.osgi.framework.wiring.BundleWire;
+import org.osgi.framework.wiring.BundleWiring;
+import org.osgi.framework.wiring.FrameworkWiring;
+
+public class ResolutionSnapshotTest extends TestCase
+{
+    private File m_cacheDir;
+    private Framework m_felix;
+    private final List<String> m_messages = new ArrayList<String>();
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+        m_cacheDir = File.createTempFile("felix-cache", ".dir");
+        m_cacheDir.delete();
+        m_cacheDir.mkdirs();
+    }
+
+    @Override
+    protected void tearDown() throws Exception
+    {
+        super.tearDown();
+        stopFramework();
+        deleteDir(m_cacheDir);
+    }
+
+    public void testWiresRestoredOnRestart() throws Exception
+    {
+        startFramework("org.osgi.framework; version=1.4.0");
+        BundleContext context = m_felix.getBundleContext();
+        context.installBundle(createBundle(
+            "Bundle-SymbolicName: provider\n"
+            + "Export-Package: test.p; version=1.0.0\n").toURI().toString());
+        Bundle fragment = context.installBundle(createBundle(
+            "Bundle-SymbolicName: fragment\n"
+            + "Fragment-Host: provider\n"
+            + "Export-Package: test.f\n").toURI().toString());
+        Bundle consumer = context.installBundle(createBundle(
+            "Bundle-SymbolicName: consumer\n"
+            + "Import-Package: test.p, test.f, org.osgi.framework\n").toURI().toString());
+        consumer.start();
+        List<String> expected = getWires(consumer);
+        stopFramework();
+
+        m_messages.clear();
+        startFramework("org.osgi.framework; version=1.4.0");
+        consumer = m_felix.getBundleContext().getBundle(consumer.getBundleId());
+        assertEquals(Bundle.ACTIVE, consumer.getState());
+        assertEquals(expected, getWires(consumer));
+        assertTrue(m_messages.toString(), isRestored());
+        fragment = m_felix.getBundleContext().getBundle(fragment.getBundleId());
+        assertEquals(Bundle.RESOLVED, fragment.getState());
+
+        // Refreshed bundles are resolved by the resolver again.
+        m_messages.clear();
+        final CountDownLatch latch = new CountDownLatch(1);
+        m_felix.adapt(FrameworkWiring.class).refreshBundles(
+            Collections.singleton(consumer), new FrameworkListener()
+            {
+                public void frameworkEvent(FrameworkEvent event)
+                {
+                    latch.countDown();
+                }
+            });
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        assertEquals(Bundle.ACTIVE, consumer.getState());
+        assertEquals(expected, getWires(consumer));
+        assertFalse(m_messages.toString(), isRestored());
+    }
+
+    public void testSnapshotIgnoredAfterConfigChange() throws Exception
+    {
+        startFramework("org.osgi.framework; version=1.4.0");
+        Bundle consumer = m_felix.getBundleContext().installBundle(createBundle(
+            "Bundle-SymbolicName: consumer\n"
+            + "Import-Package: org.osgi.framework\n").toURI().toString());
+        consumer.start();
+        stopFramework();
+
+        m_messages.clear();
+        startFramework("org.osgi.framework; version=1.4.0, test.q");
+        consumer = m_felix.getBundleContext().getBundle(consumer.getBundleId());
+        assertEquals(Bundle.ACTIVE, consumer.getState());
+        assertFalse(m_messages.toString(), isRestored());
+    }
+
+    private boolean isRestored()
+    {
+        synchronized (m_messages)
+        {
+            for (String msg : m_messages)
+            {
+                if (msg.contains("resolution snapshot") && msg.contains("consumer"))
+                {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private List<String> getWires(Bundle bundle)
+    {
+        List<String> wires = new ArrayList<String>();
+        for (BundleWire wire : bundle.adapt(BundleWiring.class).getRequiredWires(null))
+        {
+            wires.add(wire.toString());
+        }
+        return wires;
+    }
+
+    private void startFramework(String systemPackages) throws Exception
+    {
+        Map params = new HashMap();
+        params.put(Constants.FRAMEWORK_SYSTEMPACKAGES, systemPackages);
+        params.put(Constants.FRAMEWORK_STORAGE, m_cacheDir.getPath());
+        params.put(FelixConstants.RESOLVER_SNAPSHOT_PROP, "true");
+        params.put(FelixConstants.SERVICE_URLHANDLERS_PROP, "false");
+        params.put(FelixConstants.LOG_LEVEL_PROP, "4");
+        params.put(FelixConstants.LOG_LOGGER_PROP, new Logger()
+        {
+            @Override
+            protected void doLog(int level, String msg, Throwable throwable)
+            {
+                synchronized (m_messages)
+                {
+                    m_messages.add(msg);
+                }
+            }
+        });
+
+        m_felix = new Felix(params);
+        m_felix.init();
+        m_felix.start();
+    }
+
+    private void stopFramework() throws Exception
+    {
+        if (m_felix != null)
+        {
+            m_felix.stop();
+            m_felix.waitForStop(10000);
+            m_felix = null;
+        }
+    }
+
+    private File createBundle(String manifest) throws IOException
+    {
+        File f = File.createTempFile("felix-bundle", ".jar", m_cacheDir);
+
+        Manifest mf = new Manifest(new ByteArrayInputStream(
+            ("Bundle-ManifestVersion: 2\n" + manifest).getBytes("utf-8")));
+        mf.getMainAttributes().putValue("Manifest-Version", "1.0");
+        JarOutputStream os = new JarOutputStream(new FileOutputStream(f), mf);
+        os.close();
+        return f;
+    }
+
+    private static void deleteDir(File root) throws IOException
+    {
+        if (root.isDirectory())
+        {
+            for (File file : root.listFiles())
+            {
+                deleteDir(file);
+            }
+        }
+        assertTrue(root.delete());
+    }
+}
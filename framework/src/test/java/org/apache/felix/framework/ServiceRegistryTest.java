@@ -45,6 +45,8 @@ import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
+import org.osgi.framework.Constants;
+import org.osgi.framework.PrototypeServiceFactory;
 import org.osgi.framework.ServiceEvent;
 import org.osgi.framework.ServiceException;
 import org.osgi.framework.ServiceFactory;
@@ -459,6 +461,87 @@ public class ServiceRegistryTest extends TestCase
         assertEquals(2, uca[0].m_serviceObjectsCount.get());
     }
 
+    public void testGetUngetPlainServiceKeepsHolder() throws Exception
+    {
+        ServiceRegistry sr = new ServiceRegistry(null, null);
+
+        String svc = "foo";
+
+        Bundle b = Mockito.mock(Bundle.class);
+        ServiceRegistration<?> reg = sr.registerService(
+                b, new String [] {String.class.getName()}, svc, null);
+        ServiceReference<?> ref = reg.getReference();
+
+        assertSame(svc, sr.getService(b, ref, false));
+        UsageCount uc = sr.obtainUsageCount(b, ref, null, null);
+        ServiceHolder sh = uc.m_svcHolderRef.get();
+        assertNotNull(sh);
+
+        assertTrue(sr.ungetService(b, ref, null));
+        assertNull(sr.getServicesInUse(b));
+        assertSame("The holder of a plain service should be kept after unget",
+                sh, uc.m_svcHolderRef.get());
+
+        assertSame(svc, sr.getService(b, ref, false));
+        assertSame(sh, uc.m_svcHolderRef.get());
+        assertTrue(sr.ungetService(b, ref, null));
+
+        sr.ungetServices(b);
+        assertNull(sr.obtainUsageCount(b, ref, null, null));
+    }
+
+    @SuppressWarnings("unchecked")
+    public void testGetUngetPrototypeReusesUsageCount() throws Exception
+    {
+        ServiceRegistry sr = new ServiceRegistry(null, null);
+
+        Bundle b = Mockito.mock(Bundle.class);
+        Hashtable<String, Object> props = new Hashtable<String, Object>();
+        props.put(Constants.SERVICE_SCOPE, Constants.SCOPE_PROTOTYPE);
+        ServiceRegistration<?> reg = sr.registerService(
+                b, new String [] {Object.class.getName()}, new PrototypeServiceFactory<Object>()
+                {
+                    public Object getService(Bundle bundle, ServiceRegistration<Object> registration)
+                    {
+                        return new Object();
+                    }
+
+                    public void ungetService(Bundle bundle, ServiceRegistration<Object> registration,
+                        Object service)
+                    {
+                    }
+                }, props);
+        ServiceReference<?> ref = reg.getReference();
+
+        final ConcurrentMap<Bundle, UsageCount[]> inUseMap =
+                (ConcurrentMap<Bundle, UsageCount[]>) getPrivateField(sr, "m_inUseMap");
+
+        Object svc1 = sr.getService(b, ref, true);
+        UsageCount[] uca = inUseMap.get(b);
+        assertEquals(1, uca.length);
+        ServiceHolder sh = uca[0].m_svcHolderRef.get();
+
+        assertTrue(sr.ungetService(b, ref, svc1));
+        assertSame("The usage count should be kept for reuse", uca, inUseMap.get(b));
+        assertNull(uca[0].getService());
+        assertNull(sr.getServicesInUse(b));
+
+        Object svc2 = sr.getService(b, ref, true);
+        assertNotSame(svc1, svc2);
+        assertSame(uca, inUseMap.get(b));
+        assertSame(svc2, uca[0].getService());
+        assertSame(sh, uca[0].m_svcHolderRef.get());
+        assertEquals(1, uca[0].m_serviceObjectsCount.get());
+
+        // A prototype in use is not taken for a second service object
+        Object svc3 = sr.getService(b, ref, true);
+        assertEquals(2, inUseMap.get(b).length);
+
+        assertTrue(sr.ungetService(b, ref, svc2));
+        assertTrue(sr.ungetService(b, ref, svc3));
+        assertFalse(sr.ungetService(b, ref, svc3));
+    }
+
     @SuppressWarnings("unchecked")
     public void testGetServiceThreadMarking() throws Exception
     {
@@ -0,0 +1,306 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.framework;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+
+import junit.framework.TestCase;
+
+import org.apache.felix.framework.util.FelixConstants;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleActivator;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.BundleEvent;
+import org.osgi.framework.Constants;
+import org.osgi.framework.FrameworkEvent;
+import org.osgi.framework.FrameworkListener;
+import org.osgi.framework.SynchronousBundleListener;
+import org.osgi.framework.launch.Framework;
+import org.osgi.framework.startlevel.BundleStartLevel;
+import org.osgi.framework.startlevel.FrameworkStartLevel;
+
+public class StartLevelParallelismTest extends TestCase
+{
+    public static final int DELAY = 500;
+
+    private File m_cacheDir;
+    private Framework m_felix;
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+        m_cacheDir = File.createTempFile("felix-cache", ".dir");
+        m_cacheDir.delete();
+        m_cacheDir.mkdirs();
+    }
+
+    @Override
+    protected void tearDown() throws Exception
+    {
+        super.tearDown();
+        if (m_felix != null)
+        {
+            m_felix.stop();
+            m_felix.waitForStop(DELAY * 10);
+        }
+        deleteDir(m_cacheDir);
+    }
+
+    public void testParallelStartWithinStartLevel() throws Exception
+    {
+        final List<String> events = startBundles("4");
+
+        // All level 2 bundles must be started before the level 3 bundle.
+        assertEquals(10, events.size());
+        for (int i = 0; i < 8; i++)
+        {
+            assertTrue(events.get(i), events.get(i).contains("level2"));
+        }
+        assertEquals("STARTING level3.0", events.get(8));
+        assertEquals("STARTED level3.0", events.get(9));
+
+        // The level 2 bundles must have been started concurrently.
+        assertEquals("STARTING", events.get(0).split(" ")[0]);
+        assertEquals("STARTING", events.get(1).split(" ")[0]);
+    }
+
+    public void testWorkersReusedAndTimed() throws Exception
+    {
+        TestBundleActivator.s_threads.clear();
+        startBundles("4", true);
+        FrameworkMetrics metrics = ((Felix) m_felix).getMetrics();
+        assertEquals(5, metrics.getStartCount());
+        assertTrue(metrics.getStartTime() >= TimeUnit.MILLISECONDS.toNanos(DELAY * 5));
+        for (Bundle b : m_felix.getBundleContext().getBundles())
+        {
+            if (b.getBundleId() != 0)
+            {
+                assertTrue(metrics.getBundleStartTime(b.getBundleId())
+                    >= TimeUnit.MILLISECONDS.toNanos(DELAY));
+            }
+        }
+
+        // Raising the start level again uses the same worker threads.
+        setStartLevel(1);
+        setStartLevel(3);
+        assertEquals(10, metrics.getStartCount());
+        synchronized (TestBundleActivator.s_threads)
+        {
+            assertTrue(TestBundleActivator.s_threads.toString(),
+                TestBundleActivator.s_threads.size() <= 4);
+        }
+
+        // The worker threads end with the framework.
+        m_felix.stop();
+        m_felix.waitForStop(DELAY * 10);
+        m_felix = null;
+        synchronized (TestBundleActivator.s_threads)
+        {
+            for (Thread t : TestBundleActivator.s_threads)
+            {
+                t.join(DELAY * 10);
+                assertFalse(t.isAlive());
+            }
+        }
+    }
+
+    public void testSequentialStartByDefault() throws Exception
+    {
+        final List<String> events = startBundles(null);
+
+        assertEquals(10, events.size());
+        for (int i = 0; i < events.size(); i += 2)
+        {
+            assertEquals("STARTING", events.get(i).split(" ")[0]);
+            assertEquals("STARTED", events.get(i + 1).split(" ")[0]);
+            assertEquals(events.get(i).split(" ")[1], events.get(i + 1).split(" ")[1]);
+        }
+    }
+
+    private List<String> startBundles(String parallelism) throws Exception
+    {
+        return startBundles(parallelism, false);
+    }
+
+    private List<String> startBundles(String parallelism, boolean metrics) throws Exception
+    {
+        Map params = new HashMap();
+        params.put(Constants.FRAMEWORK_SYSTEMPACKAGES,
+            "org.osgi.framework; version=1.4.0");
+        params.put(Constants.FRAMEWORK_STORAGE, m_cacheDir.getPath());
+        if (parallelism != null)
+        {
+            params.put(FelixConstants.STARTLEVEL_PARALLELISM_PROP, parallelism);
+        }
+        if (metrics)
+        {
+            params.put(FelixConstants.METRICS_ENABLED_PROP, "true");
+        }
+
+        m_felix = new Felix(params);
+        m_felix.init();
+        m_felix.start();
+
+        BundleContext context = m_felix.getBundleContext();
+        List<Bundle> bundles = new ArrayList<Bundle>();
+        for (int i = 0; i < 4; i++)
+        {
+            bundles.add(installBundle(context, "level2." + i, 2));
+        }
+        bundles.add(installBundle(context, "level3.0", 3));
+
+        final List<String> events = new ArrayList<String>();
+        context.addBundleListener(new SynchronousBundleListener()
+        {
+            public void bundleChanged(BundleEvent event)
+            {
+                String type = null;
+                if (event.getType() == BundleEvent.STARTING)
+                {
+                    type = "STARTING";
+                }
+                else if (event.getType() == BundleEvent.STARTED)
+                {
+                    type = "STARTED";
+                }
+                if (type != null)
+                {
+                    synchronized (events)
+                    {
+                        events.add(type + " " + event.getBundle().getSymbolicName());
+                    }
+                }
+            }
+        });
+
+        setStartLevel(3);
+
+        for (Bundle b : bundles)
+        {
+            assertEquals(Bundle.ACTIVE, b.getState());
+        }
+
+        synchronized (events)
+        {
+            return new ArrayList<String>(events);
+        }
+    }
+
+    private void setStartLevel(int startLevel) throws Exception
+    {
+        final CountDownLatch latch = new CountDownLatch(1);
+        final AtomicInteger level = new AtomicInteger();
+        m_felix.adapt(FrameworkStartLevel.class).setStartLevel(startLevel, new FrameworkListener()
+        {
+            public void frameworkEvent(FrameworkEvent event)
+            {
+                if (event.getType() == FrameworkEvent.STARTLEVEL_CHANGED)
+                {
+                    level.set(m_felix.adapt(FrameworkStartLevel.class).getStartLevel());
+                    latch.countDown();
+                }
+            }
+        });
+        assertTrue(latch.await(DELAY * 20, TimeUnit.MILLISECONDS));
+        assertEquals(startLevel, level.get());
+    }
+
+    private Bundle installBundle(BundleContext context, String bsn, int startLevel)
+        throws Exception
+    {
+        String mf = "Bundle-SymbolicName: " + bsn + "\n"
+            + "Bundle-Version: 1.0.0\n"
+            + "Bundle-ManifestVersion: 2\n"
+            + "Import-Package: org.osgi.framework\n";
+        File bundleFile = createBundle(mf, m_cacheDir);
+        Bundle b = context.installBundle(bundleFile.toURI().toString());
+        b.adapt(BundleStartLevel.class).setStartLevel(startLevel);
+        b.start();
+        return b;
+    }
+
+    private static File createBundle(String manifest, File tempDir) throws IOException
+    {
+        File f = File.createTempFile("felix-bundle", ".jar", tempDir);
+
+        Manifest mf = new Manifest(new ByteArrayInputStream(manifest.getBytes("utf-8")));
+        mf.getMainAttributes().putValue("Manifest-Version", "1.0");
+        mf.getMainAttributes().putValue(Constants.BUNDLE_ACTIVATOR, TestBundleActivator.class.getName());
+        JarOutputStream os = new JarOutputStream(new FileOutputStream(f), mf);
+
+        String path = TestBundleActivator.class.getName().replace('.', '/') + ".class";
+        os.putNextEntry(new ZipEntry(path));
+
+        InputStream is = TestBundleActivator.class.getClassLoader().getResourceAsStream(path);
+        byte[] b = new byte[is.available()];
+        is.read(b);
+        is.close();
+        os.write(b);
+
+        os.close();
+        return f;
+    }
+
+    private static void deleteDir(File root) throws IOException
+    {
+        if (root.isDirectory())
+        {
+            for (File file : root.listFiles())
+            {
+                deleteDir(file);
+            }
+        }
+        assertTrue(root.delete());
+    }
+
+    public static class TestBundleActivator implements BundleActivator
+    {
+        static final Set<Thread> s_threads = new HashSet<Thread>();
+
+        public void start(BundleContext context) throws Exception
+        {
+            synchronized (s_threads)
+            {
+                s_threads.add(Thread.currentThread());
+            }
+            Thread.sleep(DELAY);
+        }
+
+        public void stop(BundleContext context) throws Exception
+        {
+        }
+    }
+}
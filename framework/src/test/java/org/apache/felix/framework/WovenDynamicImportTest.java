@@ -0,0 +1,243 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.framework;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+
+import junit.framework.TestCase;
+
+import org.apache.felix.framework.util.FelixConstants;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.Constants;
+import org.osgi.framework.hooks.resolver.ResolverHook;
+import org.osgi.framework.hooks.resolver.ResolverHookFactory;
+import org.osgi.framework.hooks.weaving.WeavingHook;
+import org.osgi.framework.hooks.weaving.WovenClass;
+import org.osgi.framework.wiring.BundleCapability;
+import org.osgi.framework.wiring.BundleRequirement;
+import org.osgi.framework.wiring.BundleRevision;
+
+public class WovenDynamicImportTest extends TestCase
+{
+    private static final String WOVEN_CLASS = Woven.class.getName();
+
+    private File m_cacheDir;
+    private Felix m_felix;
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+        m_cacheDir = File.createTempFile("felix-cache", ".dir");
+        m_cacheDir.delete();
+        m_cacheDir.mkdirs();
+
+        Map<String, String> params = new HashMap<String, String>();
+        params.put(Constants.FRAMEWORK_SYSTEMPACKAGES,
+            "org.osgi.framework; version=1.4.0,"
+            + "org.osgi.framework.hooks.weaving; version=1.1.0");
+        params.put(Constants.FRAMEWORK_STORAGE, m_cacheDir.getPath());
+        params.put(FelixConstants.SERVICE_URLHANDLERS_PROP, "false");
+        m_felix = new Felix(params);
+        m_felix.init();
+        m_felix.start();
+    }
+
+    @Override
+    protected void tearDown() throws Exception
+    {
+        super.tearDown();
+        m_felix.stop();
+        m_felix.waitForStop(10000);
+        deleteDir(m_cacheDir);
+    }
+
+    public void testMissForgottenWhenImportWoven() throws Exception
+    {
+        m_felix.getBundleContext().installBundle(createBundle(
+            "Bundle-SymbolicName: provider\nExport-Package: test.dyn\n",
+            "test/dyn/resource.txt", null));
+        Bundle consumer = m_felix.getBundleContext().installBundle(createBundle(
+            "Bundle-SymbolicName: consumer\n",
+            null, WOVEN_CLASS));
+        consumer.start();
+
+        // The consumer cannot see the package yet, which is remembered.
+        assertNull(consumer.getResource("test/dyn/resource.txt"));
+        BundleWiringImpl wiring = (BundleWiringImpl)
+            consumer.adapt(BundleRevisionImpl.class).getWiring();
+        assertTrue(wiring.getNegativeLookupCache().size() > 0);
+
+        m_felix.getBundleContext().registerService(
+            WeavingHook.class, new ImportHook("test.dyn"), null);
+        assertNotNull(consumer.loadClass(WOVEN_CLASS));
+
+        assertNotNull(consumer.getResource("test/dyn/resource.txt"));
+    }
+
+    public void testGenerationChangedWhenImportWoven() throws Exception
+    {
+        Bundle consumer = m_felix.getBundleContext().installBundle(createBundle(
+            "Bundle-SymbolicName: consumer\n",
+            null, WOVEN_CLASS));
+        consumer.start();
+
+        // Failed dynamic imports and lookups are only remembered for the
+        // current generation of the resolver state.
+        long generation = m_felix.getResolver().getGeneration();
+        m_felix.getBundleContext().registerService(
+            WeavingHook.class, new ImportHook("test.dyn"), null);
+        assertNotNull(consumer.loadClass(WOVEN_CLASS));
+        assertTrue(m_felix.getResolver().getGeneration() > generation);
+    }
+
+    public void testMissNotRememberedWithResolverHook() throws Exception
+    {
+        m_felix.getBundleContext().installBundle(createBundle(
+            "Bundle-SymbolicName: provider\nExport-Package: test.dyn\n",
+            "test/dyn/resource.txt", null));
+        Bundle consumer = m_felix.getBundleContext().installBundle(createBundle(
+            "Bundle-SymbolicName: consumer\nDynamicImport-Package: test.dyn\n",
+            null, null));
+        consumer.start();
+
+        // The hook denies the dynamic import, which it may allow next time
+        // without changing the resolver state.
+        final boolean[] deny = new boolean[] { true };
+        m_felix.getBundleContext().registerService(ResolverHookFactory.class,
+            new ResolverHookFactory()
+            {
+                public ResolverHook begin(Collection<BundleRevision> triggers)
+                {
+                    return new ResolverHook()
+                    {
+                        public void filterResolvable(Collection<BundleRevision> candidates)
+                        {
+                        }
+
+                        public void filterSingletonCollisions(
+                            BundleCapability singleton,
+                            Collection<BundleCapability> collisionCandidates)
+                        {
+                        }
+
+                        public void filterMatches(BundleRequirement requirement,
+                            Collection<BundleCapability> candidates)
+                        {
+                            if (deny[0])
+                            {
+                                candidates.clear();
+                            }
+                        }
+
+                        public void end()
+                        {
+                        }
+                    };
+                }
+            }, null);
+        assertNull(consumer.getResource("test/dyn/resource.txt"));
+
+        deny[0] = false;
+        assertNotNull(consumer.getResource("test/dyn/resource.txt"));
+    }
+
+    public static class Woven
+    {
+    }
+
+    private static class ImportHook implements WeavingHook
+    {
+        private final String m_dynamicImport;
+
+        ImportHook(String dynamicImport)
+        {
+            m_dynamicImport = dynamicImport;
+        }
+
+        public void weave(WovenClass wovenClass)
+        {
+            if (wovenClass.getClassName().equals(WOVEN_CLASS))
+            {
+                wovenClass.getDynamicImports().add(m_dynamicImport);
+            }
+        }
+    }
+
+    private static String createBundle(String manifest, String resource, String className)
+        throws IOException
+    {
+        File f = File.createTempFile("felix-bundle", ".jar");
+        f.deleteOnExit();
+
+        Manifest mf = new Manifest(new ByteArrayInputStream(
+            ("Bundle-ManifestVersion: 2\n" + manifest).getBytes("utf-8")));
+        mf.getMainAttributes().putValue("Manifest-Version", "1.0");
+        JarOutputStream os = new JarOutputStream(new FileOutputStream(f), mf);
+        if (resource != null)
+        {
+            os.putNextEntry(new ZipEntry(resource));
+            os.write(resource.getBytes("utf-8"));
+            os.closeEntry();
+        }
+        if (className != null)
+        {
+            String path = className.replace('.', '/') + ".class";
+            os.putNextEntry(new ZipEntry(path));
+            InputStream is = WovenDynamicImportTest.class.getClassLoader()
+                .getResourceAsStream(path);
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            for (int n = is.read(buffer); n != -1; n = is.read(buffer))
+            {
+                baos.write(buffer, 0, n);
+            }
+            is.close();
+            os.write(baos.toByteArray());
+            os.closeEntry();
+        }
+        os.close();
+
+        return f.toURI().toString();
+    }
+
+    private static void deleteDir(File file)
+    {
+        File[] children = file.listFiles();
+        if (children != null)
+        {
+            for (File child : children)
+            {
+                deleteDir(child);
+            }
+        }
+        file.delete();
+    }
+}
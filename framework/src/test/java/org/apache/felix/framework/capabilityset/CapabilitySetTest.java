@@ -0,0 +1,165 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.framework.capabilityset;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import junit.framework.TestCase;
+
+import org.apache.felix.framework.wiring.BundleCapabilityImpl;
+import org.osgi.framework.Version;
+import org.osgi.framework.wiring.BundleCapability;
+
+public class CapabilitySetTest extends TestCase
+{
+    private static final String NS = "test.namespace";
+
+    public void testIndexedMatch()
+    {
+        CapabilitySet capSet = new CapabilitySet(Collections.singletonList(NS), true);
+        BundleCapability foo = createCapability("foo");
+        BundleCapability bar = createCapability("bar");
+        capSet.addCapability(foo);
+        capSet.addCapability(bar);
+
+        SimpleFilter sf = SimpleFilter.parse("(" + NS + "=foo)");
+        assertEquals(Collections.singleton(foo), capSet.match(sf, false));
+
+        capSet.removeCapability(foo);
+        assertTrue(capSet.match(sf, false).isEmpty());
+
+        sf = SimpleFilter.parse("(" + NS + "=bar)");
+        assertEquals(Collections.singleton(bar), capSet.match(sf, false));
+    }
+
+    public void testConcurrentChurnKeepsIndexConsistent() throws Exception
+    {
+        final CapabilitySet capSet = new CapabilitySet(Collections.singletonList(NS), true);
+        final BundleCapability stable = createCapability("foo");
+        capSet.addCapability(stable);
+
+        final SimpleFilter sf = SimpleFilter.parse("(" + NS + "=foo)");
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Throwable> failures =
+            Collections.synchronizedList(new ArrayList<Throwable>());
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < 4; i++)
+        {
+            threads.add(new Thread()
+            {
+                public void run()
+                {
+                    try
+                    {
+                        start.await();
+                        for (int j = 0; j < 2000; j++)
+                        {
+                            BundleCapability cap = createCapability("foo");
+                            capSet.addCapability(cap);
+                            if (!capSet.match(sf, false).contains(stable))
+                            {
+                                throw new AssertionError("Lost indexed capability.");
+                            }
+                            capSet.removeCapability(cap);
+                        }
+                    }
+                    catch (Throwable th)
+                    {
+                        failures.add(th);
+                    }
+                }
+            });
+        }
+        for (Thread t : threads)
+        {
+            t.start();
+        }
+        start.countDown();
+        for (Thread t : threads)
+        {
+            t.join();
+        }
+
+        assertTrue(failures.toString(), failures.isEmpty());
+        assertEquals(Collections.singleton(stable), capSet.match(sf, false));
+    }
+
+    public void testCoercedValueIsCachedPerType()
+    {
+        SimpleFilter sf = SimpleFilter.parse("(" + NS + ">=10)");
+
+        assertTrue(CapabilitySet.matches(createCapability(Integer.valueOf(10)), sf));
+        assertEquals(Integer.valueOf(10), sf.getCoercedValue(Integer.class));
+        assertFalse(CapabilitySet.matches(createCapability(Integer.valueOf(9)), sf));
+
+        // Other types are cached next to the first one.
+        assertTrue(CapabilitySet.matches(createCapability(Long.valueOf(11)), sf));
+        assertEquals(Long.valueOf(10), sf.getCoercedValue(Long.class));
+        assertEquals(Integer.valueOf(10), sf.getCoercedValue(Integer.class));
+
+        // Once enough types are cached, further types are coerced on every
+        // comparison without replacing the cached ones.
+        assertTrue(CapabilitySet.matches(createCapability(Double.valueOf(10)), sf));
+        assertTrue(CapabilitySet.matches(createCapability(Float.valueOf(10)), sf));
+        assertTrue(CapabilitySet.matches(createCapability(Short.valueOf((short) 10)), sf));
+        assertNull(sf.getCoercedValue(Short.class));
+        assertFalse(CapabilitySet.matches(createCapability(Short.valueOf((short) 9)), sf));
+        assertEquals(Integer.valueOf(10), sf.getCoercedValue(Integer.class));
+        assertEquals(Long.valueOf(10), sf.getCoercedValue(Long.class));
+
+        // Conversion failures are cached as well.
+        sf = SimpleFilter.parse("(" + NS + "=abc)");
+        assertFalse(CapabilitySet.matches(createCapability(Integer.valueOf(1)), sf));
+        assertSame(SimpleFilter.UNCOERCIBLE, sf.getCoercedValue(Integer.class));
+        assertFalse(CapabilitySet.matches(createCapability(Integer.valueOf(1)), sf));
+    }
+
+    public void testAndFilterUsesIndex()
+    {
+        CapabilitySet capSet = new CapabilitySet(Collections.singletonList(NS), true);
+        Map<String, Object> attrs = new HashMap<String, Object>();
+        attrs.put(NS, "foo");
+        attrs.put("version", new Version(1, 2, 0));
+        BundleCapability foo12 = new BundleCapabilityImpl(
+            null, NS, Collections.<String, String>emptyMap(), attrs);
+        capSet.addCapability(foo12);
+        capSet.addCapability(createCapability("foo"));
+        capSet.addCapability(createCapability("bar"));
+
+        SimpleFilter sf = SimpleFilter.parse(
+            "(&(version>=1.0.0)(" + NS + "=foo)(!(version>=2.0.0)))");
+        assertEquals(Collections.singleton(foo12), capSet.match(sf, false));
+
+        sf = SimpleFilter.parse("(&(version>=1.0.0)(" + NS + "=baz))");
+        assertTrue(capSet.match(sf, false).isEmpty());
+    }
+
+    private static BundleCapability createCapability(Object value)
+    {
+        Map<String, Object> attrs = new HashMap<String, Object>();
+        attrs.put(NS, value);
+        return new BundleCapabilityImpl(
+            null, NS, Collections.<String, String>emptyMap(), attrs);
+    }
+}
@@ -0,0 +1,263 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.framework.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.apache.felix.framework.util.manifestparser.ManifestParser;
+import org.apache.felix.framework.wiring.BundleCapabilityImpl;
+import org.apache.felix.framework.wiring.BundleRequirementImpl;
+import org.osgi.framework.Constants;
+import org.osgi.framework.Version;
+import org.osgi.framework.wiring.BundleCapability;
+import org.osgi.framework.wiring.BundleRequirement;
+import org.osgi.framework.wiring.BundleRevision;
+
+public class InternerTest extends TestCase
+{
+    public void testInternMap()
+    {
+        Map<String, Object> first = new LinkedHashMap<String, Object>();
+        first.put("a", "x");
+        first.put("b", new Version("1.0"));
+        Map<String, Object> second = new LinkedHashMap<String, Object>();
+        second.put(new String("a"), new String("x"));
+        second.put(new String("b"), new Version("1.0"));
+        Map<String, Object> reversed = new LinkedHashMap<String, Object>();
+        reversed.put("b", new Version("1.0"));
+        reversed.put("a", "x");
+
+        Map<String, Object> interned = Interner.internMap(first);
+        assertEquals(first, interned);
+        assertEquals(first.hashCode(), interned.hashCode());
+        assertSame(interned, Interner.internMap(second));
+        assertSame(interned.get("b"), Interner.internMap(second).get("b"));
+
+        // Maps with a different iteration order are equal but not shared.
+        Map<String, Object> other = Interner.internMap(reversed);
+        assertEquals(interned, other);
+        assertNotSame(interned, other);
+        assertEquals("b", other.keySet().iterator().next());
+
+        try
+        {
+            interned.put("c", "z");
+            fail("Interned maps must be immutable.");
+        }
+        catch (UnsupportedOperationException ex)
+        {
+            // Expected.
+        }
+    }
+
+    public void testLargeMap()
+    {
+        Map<String, Object> map = new LinkedHashMap<String, Object>();
+        for (int i = 0; i < 100; i++)
+        {
+            map.put("key" + i, "value" + i);
+        }
+        Map<String, Object> interned = Interner.internMap(map);
+        assertEquals(map, interned);
+        assertEquals("value42", interned.get("key42"));
+        assertNull(interned.get("key100"));
+    }
+
+    public void testRevisionsShareValues() throws Exception
+    {
+        ManifestParser first = createParser(0);
+        ManifestParser second = createParser(1);
+
+        BundleCapability firstExport = getExport(first);
+        BundleCapability secondExport = getExport(second);
+        assertNotSame(firstExport, secondExport);
+        assertSame(firstExport.getDirectives(), secondExport.getDirectives());
+        assertSame(((BundleCapabilityImpl) firstExport).getUses(),
+            ((BundleCapabilityImpl) secondExport).getUses());
+        assertSame(firstExport.getAttributes().get(Constants.VERSION_ATTRIBUTE),
+            secondExport.getAttributes().get(Constants.VERSION_ATTRIBUTE));
+
+        List<BundleRequirement> firstImports = getImports(first);
+        List<BundleRequirement> secondImports = getImports(second);
+        assertEquals(firstImports.size(), secondImports.size());
+        for (int i = 0; i < firstImports.size(); i++)
+        {
+            assertSame(firstImports.get(i).getDirectives(),
+                secondImports.get(i).getDirectives());
+        }
+    }
+
+    public void testOnlyParsedValuesInterned() throws Exception
+    {
+        assertTrue(Interner.isInterned(getExport(createParser(0)).getDirectives()));
+        assertTrue(Interner.isInterned(getImports(createParser(0)).get(0).getDirectives()));
+
+        // Requirements created elsewhere, e.g., for dynamic imports while
+        // loading classes, do not go through the interner.
+        Map<String, String> dirs = new HashMap<String, String>();
+        dirs.put(Constants.RESOLUTION_DIRECTIVE, Constants.RESOLUTION_OPTIONAL);
+        Map<String, Object> attrs = new HashMap<String, Object>();
+        attrs.put(BundleRevision.PACKAGE_NAMESPACE, "org.example.api0");
+        BundleRequirement req = new BundleRequirementImpl(
+            null, BundleRevision.PACKAGE_NAMESPACE, dirs, attrs);
+        assertFalse(Interner.isInterned(req.getDirectives()));
+        assertEquals(dirs, req.getDirectives());
+        assertTrue(((BundleRequirementImpl) req).isOptional());
+    }
+
+    public void testHeapUsage() throws Exception
+    {
+        int count = 1000;
+
+        // Keep the attributes, directives, and uses of all revisions.
+        long before = getUsedMemory();
+        List<Object> interned = new ArrayList<Object>();
+        for (int i = 0; i < count; i++)
+        {
+            keep(createParser(i), interned, false);
+        }
+        long internedSize = getUsedMemory() - before;
+
+        // Keep unshared copies of the same values, as every revision had
+        // them before they were interned.
+        before = getUsedMemory();
+        List<Object> copies = new ArrayList<Object>();
+        for (int i = 0; i < count; i++)
+        {
+            keep(createParser(i), copies, true);
+        }
+        long copiesSize = getUsedMemory() - before;
+
+        assertEquals(copies.size(), interned.size());
+        assertTrue("Interned " + internedSize + " bytes, unshared " + copiesSize + " bytes",
+            2 * internedSize < copiesSize);
+    }
+
+    private static ManifestParser createParser(int i) throws Exception
+    {
+        StringBuilder imports = new StringBuilder();
+        StringBuilder uses = new StringBuilder();
+        for (int j = 0; j < 20; j++)
+        {
+            if (j > 0)
+            {
+                imports.append(',');
+                uses.append(',');
+            }
+            imports.append("org.example.api").append(j).append(";version=\"[1.2,2)\"");
+            uses.append("org.example.api").append(j);
+        }
+        Map<String, Object> headers = new HashMap<String, Object>();
+        headers.put(Constants.BUNDLE_MANIFESTVERSION, "2");
+        headers.put(Constants.BUNDLE_SYMBOLICNAME, "bundle" + i);
+        headers.put(Constants.IMPORT_PACKAGE, imports.toString());
+        headers.put(Constants.EXPORT_PACKAGE,
+            "org.example.impl;version=\"1.2.3\";uses:=\"" + uses + "\"");
+        return new ManifestParser(null, null, null, headers);
+    }
+
+    private static BundleCapability getExport(ManifestParser mp)
+    {
+        for (BundleCapability cap : mp.getCapabilities())
+        {
+            if (cap.getNamespace().equals(BundleRevision.PACKAGE_NAMESPACE))
+            {
+                return cap;
+            }
+        }
+        throw new AssertionError("No export found.");
+    }
+
+    private static List<BundleRequirement> getImports(ManifestParser mp)
+    {
+        List<BundleRequirement> result = new ArrayList<BundleRequirement>();
+        for (BundleRequirement req : mp.getRequirements())
+        {
+            if (req.getNamespace().equals(BundleRevision.PACKAGE_NAMESPACE))
+            {
+                result.add(req);
+            }
+        }
+        return result;
+    }
+
+    private static void keep(ManifestParser mp, List<Object> values, boolean copy)
+    {
+        for (BundleCapability cap : mp.getCapabilities())
+        {
+            values.add(copy ? copy(cap.getDirectives()) : cap.getDirectives());
+            values.add(copy ? copy(cap.getAttributes()) : cap.getAttributes());
+            List<String> uses = ((BundleCapabilityImpl) cap).getUses();
+            values.add(copy ? copy(uses) : uses);
+        }
+        for (BundleRequirement req : mp.getRequirements())
+        {
+            values.add(copy ? copy(req.getDirectives()) : req.getDirectives());
+            values.add(copy ? copy(req.getAttributes()) : req.getAttributes());
+        }
+    }
+
+    private static Object copy(Object value)
+    {
+        if (value instanceof String)
+        {
+            return new String((String) value);
+        }
+        else if (value instanceof Version)
+        {
+            return new Version(value.toString());
+        }
+        else if (value instanceof List)
+        {
+            List<Object> list = new ArrayList<Object>();
+            for (Object o : (List<?>) value)
+            {
+                list.add(copy(o));
+            }
+            return list;
+        }
+        else if (value instanceof Map)
+        {
+            Map<Object, Object> map = new HashMap<Object, Object>();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet())
+            {
+                map.put(copy(entry.getKey()), copy(entry.getValue()));
+            }
+            return map;
+        }
+        return value;
+    }
+
+    private static long getUsedMemory() throws InterruptedException
+    {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 5; i++)
+        {
+            System.gc();
+            Thread.sleep(20);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
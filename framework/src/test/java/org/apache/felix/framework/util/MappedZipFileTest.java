@@ -0,0 +1,196 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.framework.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import junit.framework.TestCase;
+import org.apache.felix.framework.util.WeakZipFileFactory.WeakZipFile;
+
+public class MappedZipFileTest extends TestCase
+{
+    private File m_zip;
+    private File m_index;
+    private byte[] m_content;
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+        m_content = new byte[16384];
+        for (int i = 0; i < m_content.length; i++)
+        {
+            m_content[i] = (byte) ((i % 65) + 65);
+        }
+
+        m_zip = File.createTempFile("felix.test", ".zip");
+        m_index = new File(m_zip.getPath() + ".index");
+        ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(m_zip));
+        zos.putNextEntry(new ZipEntry("dir/"));
+        zos.putNextEntry(new ZipEntry("dir/deflated.txt"));
+        zos.write(m_content);
+        ZipEntry stored = new ZipEntry("stored.txt");
+        stored.setMethod(ZipEntry.STORED);
+        stored.setSize(m_content.length);
+        CRC32 crc = new CRC32();
+        crc.update(m_content);
+        stored.setCrc(crc.getValue());
+        zos.putNextEntry(stored);
+        zos.write(m_content);
+        zos.close();
+    }
+
+    @Override
+    protected void tearDown() throws Exception
+    {
+        super.tearDown();
+        m_zip.delete();
+        m_index.delete();
+    }
+
+    public void testReadEntries() throws Exception
+    {
+        MappedZipFile zipFile = new MappedZipFile(m_zip, null);
+
+        List<String> names = Collections.list(zipFile.names());
+        assertEquals(3, names.size());
+        assertTrue(names.contains("dir/"));
+
+        ZipEntry ze = zipFile.getEntry("dir");
+        assertNotNull(ze);
+        assertTrue(ze.isDirectory());
+
+        ze = zipFile.getEntry("dir/deflated.txt");
+        assertEquals(m_content.length, ze.getSize());
+        assertEquals(ZipEntry.DEFLATED, ze.getMethod());
+        assertContent(zipFile.getInputStream(ze));
+
+        ze = zipFile.getEntry("stored.txt");
+        assertEquals(ZipEntry.STORED, ze.getMethod());
+        assertContent(zipFile.getInputStream(ze));
+
+        assertNull(zipFile.getEntry("missing.txt"));
+
+        zipFile.close();
+        try
+        {
+            zipFile.getEntry("stored.txt");
+            fail("Closed zip file must not be readable.");
+        }
+        catch (IllegalStateException ex)
+        {
+            // Expected.
+        }
+    }
+
+    public void testPersistedIndex() throws Exception
+    {
+        MappedZipFile zipFile = new MappedZipFile(m_zip, m_index);
+        assertTrue(m_index.exists());
+        long indexModified = m_index.lastModified();
+        List<String> names = Collections.list(zipFile.names());
+
+        // A matching index is reused as is.
+        zipFile = new MappedZipFile(m_zip, m_index);
+        assertEquals(indexModified, m_index.lastModified());
+        assertEquals(names, Collections.list(zipFile.names()));
+        assertContent(zipFile.getInputStream(zipFile.getEntry("dir/deflated.txt")));
+
+        // A stale index is ignored.
+        assertTrue(m_zip.setLastModified(m_zip.lastModified() - 10000));
+        zipFile = new MappedZipFile(m_zip, m_index);
+        assertEquals(names, Collections.list(zipFile.names()));
+        assertContent(zipFile.getInputStream(zipFile.getEntry("stored.txt")));
+    }
+
+    public void testIndexOfOtherFile() throws Exception
+    {
+        // Two zip files of the same length and modification time, which
+        // only differ in the name of an entry.
+        File first = File.createTempFile("felix.test", ".zip");
+        File second = File.createTempFile("felix.test", ".zip");
+        try
+        {
+            createZip(first, "dir/deflated.txt");
+            createZip(second, "dir/deflated.TXT");
+            assertEquals(first.length(), second.length());
+            assertTrue(second.setLastModified(first.lastModified()));
+
+            // The index written for one file is not used for the other.
+            new MappedZipFile(first, m_index);
+            MappedZipFile zipFile = new MappedZipFile(second, m_index);
+            assertNotNull(zipFile.getEntry("dir/deflated.TXT"));
+            assertNull(zipFile.getEntry("dir/deflated.txt"));
+            assertContent(zipFile.getInputStream(zipFile.getEntry("dir/deflated.TXT")));
+        }
+        finally
+        {
+            first.delete();
+            second.delete();
+        }
+    }
+
+    public void testMappedFactory() throws Exception
+    {
+        WeakZipFileFactory factory = new WeakZipFileFactory(1, true);
+        List<WeakZipFile> zipFiles = new ArrayList<WeakZipFile>();
+        for (int i = 0; i < 3; i++)
+        {
+            zipFiles.add(factory.create(m_zip, m_index));
+        }
+
+        // Mapped zip files do not count against the file limit.
+        assertTrue(factory.getOpenZipZiles().isEmpty());
+        for (WeakZipFile zipFile : zipFiles)
+        {
+            assertContent(zipFile.getInputStream(zipFile.getEntry("stored.txt")));
+            zipFile.close();
+        }
+    }
+
+    private void createZip(File file, String name) throws IOException
+    {
+        ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(file));
+        zos.putNextEntry(new ZipEntry(name));
+        zos.write(m_content);
+        zos.close();
+    }
+
+    private void assertContent(InputStream is) throws IOException
+    {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        byte[] buf = new byte[1000];
+        for (int len = is.read(buf); len >= 0; len = is.read(buf))
+        {
+            baos.write(buf, 0, len);
+        }
+        is.close();
+        assertTrue(Arrays.equals(m_content, baos.toByteArray()));
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.framework.util;
+
+import junit.framework.TestCase;
+
+public class NegativeLookupCacheTest extends TestCase
+{
+    public void testHitsAndMisses()
+    {
+        NegativeLookupCache cache = new NegativeLookupCache(10);
+        assertFalse(cache.contains(0, "foo", "foo.Bar"));
+        cache.add(0, "foo", "foo.Bar");
+        assertTrue(cache.contains(0, "foo", "foo.Bar"));
+        assertFalse(cache.contains(0, "foo", "foo.Baz"));
+
+        assertEquals(1, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+        assertEquals(1, cache.size());
+    }
+
+    public void testPackageInvalidation()
+    {
+        NegativeLookupCache cache = new NegativeLookupCache(10);
+        cache.add(0, "foo", "foo.Bar");
+        cache.add(0, "bar", "bar.Foo");
+
+        cache.invalidate("foo");
+        assertFalse(cache.contains(0, "foo", "foo.Bar"));
+        assertTrue(cache.contains(0, "bar", "bar.Foo"));
+        assertEquals(1, cache.size());
+    }
+
+    public void testGenerationChange()
+    {
+        NegativeLookupCache cache = new NegativeLookupCache(10);
+        cache.add(0, "foo", "foo.Bar");
+        assertFalse(cache.contains(1, "foo", "foo.Bar"));
+
+        // Misses recorded for an outdated generation are ignored.
+        cache.add(0, "foo", "foo.Bar");
+        assertFalse(cache.contains(1, "foo", "foo.Bar"));
+        assertEquals(0, cache.size());
+    }
+
+    public void testBounded()
+    {
+        NegativeLookupCache cache = new NegativeLookupCache(2);
+        cache.add(0, "foo", "foo.A");
+        cache.add(0, "foo", "foo.B");
+        cache.add(0, "foo", "foo.C");
+        assertTrue(cache.size() <= 2);
+        assertTrue(cache.contains(0, "foo", "foo.C"));
+    }
+}
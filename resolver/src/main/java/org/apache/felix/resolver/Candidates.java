@@ -51,7 +51,7 @@ class Candidates
     // Maps a capability to requirements that match it.
     private final OpenHashMapSet<Capability, Requirement> m_dependentMap;
     // Maps a requirement to the capability it matches.
-    private final OpenHashMapList m_candidateMap;
+    private final CandidateMap m_candidateMap;
     // Maps a bundle revision to its associated wrapped revision; this only happens
     // when a revision being resolved has fragments to attach to it.
     private final Map<Resource, WrappedResource> m_allWrappedHosts;
@@ -70,7 +70,7 @@ class Candidates
         ResolveSession session,
         AtomicBoolean candidateSelectorsUnmodifiable,
         OpenHashMapSet<Capability, Requirement> dependentMap,
-        OpenHashMapList candidateMap,
+        CandidateMap candidateMap,
         Map<Resource, WrappedResource> wrappedHosts,
         OpenHashMap<Resource, PopulateResult> populateResultCache,
         Map<Capability, Requirement> substitutableMap,
@@ -94,7 +94,7 @@ class Candidates
         m_session = session;
         m_candidateSelectorsUnmodifiable = new AtomicBoolean(false);
         m_dependentMap = new OpenHashMapSet<Capability, Requirement>();
-        m_candidateMap = new OpenHashMapList();
+        m_candidateMap = new CandidateMap();
         m_allWrappedHosts = new HashMap<Resource, WrappedResource>();
         m_populateResultCache = new OpenHashMap<Resource, PopulateResult>();
         m_subtitutableMap = new OpenHashMap<Capability, Requirement>();
@@ -320,7 +320,7 @@ class Candidates
     private static final int SUBSTITUTED = 2;
     private static final int EXPORTED = 3;
 
-    ResolutionError checkSubstitutes()
+    ResolutionError checkSubstitutes(ResolveSession session)
     {
         OpenHashMap<Capability, Integer> substituteStatuses = new OpenHashMap<Capability, Integer>(m_subtitutableMap.size());
         for (Capability substitutable : m_subtitutableMap.keySet())
@@ -341,7 +341,7 @@ class Candidates
             Requirement substitutedReq = m_subtitutableMap.get(substituteStatus.getKey());
             if (substitutedReq != null)
             {
-                m_session.permutateIfNeeded(PermutationType.SUBSTITUTE, substitutedReq, this);
+                session.permutateIfNeeded(PermutationType.SUBSTITUTE, substitutedReq, this);
             }
             Set<Requirement> dependents = m_dependentMap.get(substituteStatus.getKey());
             if (dependents != null)
@@ -349,6 +349,7 @@ class Candidates
                 for (Requirement dependent : dependents)
                 {
                     CandidateSelector candidates = m_candidateMap.get(dependent);
+                    boolean owned = false;
                     if (candidates != null)
                     {
                         candidates:
@@ -368,6 +369,11 @@ class Candidates
                                 case SUBSTITUTED:
                                 default:
                                     // Need to remove any substituted that comes before an exported candidate
+                                    if (!owned)
+                                    {
+                                        candidates = m_candidateMap.getForUpdate(dependent);
+                                        owned = true;
+                                    }
                                     candidates.removeCurrentCandidate();
                                     // continue to next candidate
                                     break;
@@ -712,7 +718,7 @@ class Candidates
 
     public void removeFirstCandidate(Requirement req)
     {
-        CandidateSelector candidates = m_candidateMap.get(req);
+        CandidateSelector candidates = m_candidateMap.getForUpdate(req);
         // Remove the conflicting candidate.
         Capability cap = candidates.removeCurrentCandidate();
         if (candidates.isEmpty())
@@ -907,7 +913,7 @@ class Candidates
                             // matter if they come from the host or fragment,
                             // since we are completing replacing the declaring
                             // host and fragments with the wrapped host.
-                            CandidateSelector cands = m_candidateMap.get(r);
+                            CandidateSelector cands = m_candidateMap.getForUpdate(r);
                             ShadowList shadow;
                             if (!(cands instanceof ShadowList))
                             {
@@ -957,7 +963,6 @@ class Candidates
 
         populateSubstitutables();
 
-        m_candidateMap.trim();
         m_dependentMap.trim();
 
         // mark the selectors as unmodifiable now
@@ -973,7 +978,7 @@ class Candidates
     {
         Map<Capability, Map<String, Map<Version, List<Requirement>>>> hostFragments =
             new HashMap<Capability, Map<String, Map<Version, List<Requirement>>>>();
-        for (Entry<Requirement, CandidateSelector> entry : m_candidateMap.fast())
+        for (Entry<Requirement, CandidateSelector> entry : m_candidateMap)
         {
             Requirement req = entry.getKey();
             CandidateSelector caps = entry.getValue();
@@ -1123,7 +1128,7 @@ class Candidates
     }
 
     private CandidateSelector removeCandidate(Requirement req, Capability cap) {
-        CandidateSelector candidates = m_candidateMap.get(req);
+        CandidateSelector candidates = m_candidateMap.getForUpdate(req);
         candidates.remove(cap);
         return candidates;
     }
@@ -1140,7 +1145,7 @@ class Candidates
                 m_session,
                 m_candidateSelectorsUnmodifiable,
                 m_dependentMap,
-                m_candidateMap.deepClone(),
+                m_candidateMap.copy(),
                 m_allWrappedHosts,
                 m_populateResultCache,
                 m_subtitutableMap,
@@ -1151,8 +1156,7 @@ class Candidates
     {
         // Create set of all revisions from requirements.
         Set<Resource> resources = new CopyOnWriteSet<Resource>();
-        for (Entry<Requirement, CandidateSelector> entry
-            : m_candidateMap.entrySet())
+        for (Entry<Requirement, CandidateSelector> entry : m_candidateMap)
         {
             resources.add(entry.getKey().getResource());
         }
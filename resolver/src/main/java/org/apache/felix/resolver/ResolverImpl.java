@@ -22,6 +22,7 @@ import java.security.*;
 import java.util.*;
 import java.util.Map.Entry;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 
 import org.apache.felix.resolver.reason.ReasonException;
@@ -45,6 +46,12 @@ public class ResolverImpl implements Resolver
 
     private final Executor m_executor;
 
+    private final int m_permutationParallelism;
+
+    // Whether permutations reuse the package spaces of the resources they
+    // do not affect; only turned off to compare with a full recalculation.
+    private volatile boolean m_reusePackageSpaces = true;
+
     enum PermutationType {
         USES,
         IMPORT,
@@ -56,6 +63,7 @@ public class ResolverImpl implements Resolver
     static class ResolveSession implements Runnable
     {
         // Holds the resolve context for this session
+        private final ResolveSession m_parent;
         private final ResolveContext m_resolveContext;
         private final Collection<Resource> m_mandatoryResources;
         private final Collection<Resource> m_optionalResources;
@@ -88,7 +96,10 @@ public class ResolverImpl implements Resolver
         private final Executor m_executor;
         private final Set<Requirement> m_mutated = new HashSet<Requirement>();
         private final Set<Requirement> m_sub_mutated = new HashSet<Requirement>();
-        private final ConcurrentMap<String, List<String>> m_usesCache = new ConcurrentHashMap<String, List<String>>();
+        private final ConcurrentMap<String, List<String>> m_usesCache;
+        // The package spaces calculated for the last checked permutation,
+        // used to only recalculate the resources affected by a permutation.
+        private PackageSpaces m_packageSpaces;
         private ResolutionError m_currentError;
         volatile private CancellationException m_isCancelled = null;
 
@@ -104,7 +115,9 @@ public class ResolverImpl implements Resolver
 
         private ResolveSession(ResolveContext resolveContext, Executor executor, Resource dynamicHost, Requirement dynamicReq, List<Capability> dynamicCandidates)
         {
+            m_parent = null;
             m_resolveContext = resolveContext;
+            m_usesCache = new ConcurrentHashMap<String, List<String>>();
             m_executor = executor;
             m_dynamicHost = dynamicHost;
             m_dynamicReq = dynamicReq;
@@ -119,6 +132,57 @@ public class ResolverImpl implements Resolver
             }
         }
 
+        /**
+         * Creates a session used to check a single permutation in isolation.
+         * It shares the resolve context, resources and uses cache with the
+         * parent session, but records the permutations it creates so that
+         * the parent can merge them in a deterministic order.
+         */
+        private ResolveSession(ResolveSession parent, Executor executor)
+        {
+            m_parent = parent;
+            m_resolveContext = parent.m_resolveContext;
+            m_executor = executor;
+            m_dynamicHost = parent.m_dynamicHost;
+            m_dynamicReq = parent.m_dynamicReq;
+            m_dynamicCandidates = parent.m_dynamicCandidates;
+            m_mandatoryResources = parent.m_mandatoryResources;
+            m_optionalResources = parent.m_optionalResources;
+            m_validRelatedResources = parent.m_validRelatedResources;
+            m_relatedResources = parent.m_relatedResources;
+            m_usesCache = parent.m_usesCache;
+            m_packageSpaces = parent.m_packageSpaces;
+            m_sub_mutated.addAll(parent.m_sub_mutated);
+        }
+
+        ResolveSession createCheckSession(Executor executor)
+        {
+            return new ResolveSession(this, executor);
+        }
+
+        /**
+         * Adds the permutations recorded by the given check session with
+         * the same priority they would have had if the checked permutation
+         * had been the current one of this session.
+         */
+        void mergePermutations(ResolveSession check)
+        {
+            clearMutateIndexes();
+            for (Candidates permutation : check.m_usesPermutations)
+            {
+                addPermutation(PermutationType.USES, permutation);
+            }
+            for (Candidates permutation : check.m_importPermutations)
+            {
+                addPermutation(PermutationType.IMPORT, permutation);
+            }
+            for (Candidates permutation : check.m_substPermutations)
+            {
+                addPermutation(PermutationType.SUBSTITUTE, permutation);
+            }
+            m_sub_mutated.addAll(check.m_sub_mutated);
+        }
+
         private void initMandatoryAndOptionalResources() {
             if (!isDynamic()) {
                 m_mandatoryResources.addAll(getContext().getMandatoryResources());
@@ -130,6 +194,11 @@ public class ResolverImpl implements Resolver
             return m_multipleCardCandidates;
         }
 
+        void setMultipleCardCandidates(Candidates multipleCardCandidates)
+        {
+            m_multipleCardCandidates = multipleCardCandidates;
+        }
+
         ResolveContext getContext()
         {
             return m_resolveContext;
@@ -139,6 +208,14 @@ public class ResolverImpl implements Resolver
             return m_usesCache;
         }
 
+        PackageSpaces getPackageSpaces() {
+            return m_packageSpaces;
+        }
+
+        void setPackageSpaces(PackageSpaces packageSpaces) {
+            m_packageSpaces = packageSpaces;
+        }
+
         void permutateIfNeeded(PermutationType type, Requirement req, Candidates permutation) {
             List<Capability> candidates = permutation.getCandidates(req);
             if ((candidates != null) && (candidates.size() > 1))
@@ -231,6 +308,7 @@ public class ResolverImpl implements Resolver
             m_substPermutations.clear();
             m_multipleCardCandidates = null;
             m_processedDeltas.clear();
+            m_packageSpaces = null;
             m_currentError = null;
         }
 
@@ -338,12 +416,13 @@ public class ResolverImpl implements Resolver
         }
 
         boolean isCancelled() {
-            return m_isCancelled != null;
+            return m_isCancelled != null || (m_parent != null && m_parent.isCancelled());
         }
 
         void checkForCancel() throws ResolutionException {
             if (isCancelled()) {
-                throw new ResolutionException("Resolver operation has been cancelled.", m_isCancelled, null);
+                CancellationException cause = m_isCancelled != null ? m_isCancelled : m_parent.m_isCancelled;
+                throw new ResolutionException("Resolver operation has been cancelled.", cause, null);
             }
         }
     }
@@ -354,17 +433,42 @@ public class ResolverImpl implements Resolver
     }
 
     public ResolverImpl(Logger logger, int parallelism)
+    {
+        this(logger, parallelism, 1);
+    }
+
+    /**
+     * Creates a resolver which checks up to the given number of candidate
+     * permutations at once when uses constraint violations force it to
+     * backtrack. The permutations of a batch are checked on the executor
+     * and the first consistent one in queue order is used, so the result
+     * does not depend on thread scheduling. A value of 1 checks one
+     * permutation at a time.
+     */
+    public ResolverImpl(Logger logger, int parallelism, int permutationParallelism)
     {
         this.m_logger = logger;
         this.m_parallelism = parallelism;
         this.m_executor = null;
+        this.m_permutationParallelism = permutationParallelism;
     }
 
     public ResolverImpl(Logger logger, Executor executor)
+    {
+        this(logger, executor, 1);
+    }
+
+    public ResolverImpl(Logger logger, Executor executor, int permutationParallelism)
     {
         this.m_logger = logger;
         this.m_parallelism = -1;
         this.m_executor = executor;
+        this.m_permutationParallelism = permutationParallelism;
+    }
+
+    void setReusePackageSpaces(boolean reuse)
+    {
+        m_reusePackageSpaces = reuse;
     }
 
     public Map<Resource, List<Wire>> resolve(ResolveContext rc) throws ResolutionException
@@ -556,6 +660,10 @@ public class ResolverImpl implements Resolver
     }
 
     private Candidates findValidCandidates(ResolveSession session, Map<Resource, ResolutionError> faultyResources) {
+        if (m_permutationParallelism > 1)
+        {
+            return findValidCandidatesInBatches(session, faultyResources);
+        }
         Candidates allCandidates = null;
         boolean foundFaultyResources = false;
         do
@@ -598,17 +706,229 @@ public class ResolverImpl implements Resolver
         return allCandidates;
     }
 
+    private Candidates findValidCandidatesInBatches(ResolveSession session, Map<Resource, ResolutionError> faultyResources) {
+        Candidates allCandidates = null;
+        boolean foundFaultyResources = false;
+        do
+        {
+            List<Candidates> batch = new ArrayList<Candidates>(m_permutationParallelism);
+            while (batch.size() < m_permutationParallelism)
+            {
+                Candidates next = session.getNextPermutation();
+                if (next == null)
+                {
+                    break;
+                }
+                batch.add(next);
+            }
+            if (batch.isEmpty())
+            {
+                allCandidates = null;
+                break;
+            }
+
+            // A single permutation may still calculate its package spaces on
+            // the executor; when several are checked at once, each check
+            // already occupies an executor thread and calculates them itself.
+            Executor checkExecutor = batch.size() == 1 ? session.getExecutor() : new DumbExecutor();
+            List<PermutationCheck> checks = new ArrayList<PermutationCheck>(batch.size());
+            for (Candidates candidates : batch)
+            {
+                checks.add(new PermutationCheck(session.createCheckSession(checkExecutor), candidates));
+            }
+
+            // Check all but the first permutation on the executor and the
+            // first one on the current thread.
+            for (int i = 1; i < checks.size(); i++)
+            {
+                PermutationCheck check = checks.get(i);
+                try
+                {
+                    session.getExecutor().execute(check);
+                }
+                catch (RejectedExecutionException e)
+                {
+                    check.run();
+                }
+            }
+            checks.get(0).run();
+
+            // The first consistent permutation in queue order wins, which keeps
+            // the result independent of which check finishes first. Later
+            // checks are no longer needed once a winner is known.
+            int last = checks.size() - 1;
+            for (int i = 0; i < checks.size(); i++)
+            {
+                PermutationCheck check = checks.get(i);
+                check.await();
+                if (i < last && check.isConsistent())
+                {
+                    last = i;
+                    for (int j = i + 1; j < checks.size(); j++)
+                    {
+                        checks.get(j).cancel();
+                    }
+                }
+            }
+            if (session.isCancelled())
+            {
+                break;
+            }
+
+            for (int i = 0; i <= last; i++)
+            {
+                Map<Resource, ResolutionError> currentFaultyResources = checks.get(i).getFaultyResources();
+                if (!currentFaultyResources.isEmpty())
+                {
+                    if (!foundFaultyResources)
+                    {
+                        foundFaultyResources = true;
+                        faultyResources.putAll(currentFaultyResources);
+                    }
+                    else if (faultyResources.size() > currentFaultyResources.size())
+                    {
+                        // save the optimal faultyResources which has less
+                        faultyResources.clear();
+                        faultyResources.putAll(currentFaultyResources);
+                    }
+                }
+            }
+
+            PermutationCheck result = checks.get(last);
+            allCandidates = result.getCandidates();
+            session.setCurrentError(result.getError());
+            session.setPackageSpaces(result.getSession().getPackageSpaces());
+            if (result.isConsistent())
+            {
+                session.setMultipleCardCandidates(result.getSession().getMultipleCardCandidates());
+            }
+            else
+            {
+                // Merge in reverse so the permutations derived from the
+                // earliest permutation of the batch get the highest priority.
+                for (int i = last; i >= 0; i--)
+                {
+                    session.mergePermutations(checks.get(i).getSession());
+                }
+            }
+        }
+        while (!session.isCancelled() && session.getCurrentError() != null);
+
+        return allCandidates;
+    }
+
+    private class PermutationCheck implements Runnable
+    {
+        private final ResolveSession m_session;
+        private final Candidates m_candidates;
+        private final Map<Resource, ResolutionError> m_faultyResources = new HashMap<Resource, ResolutionError>();
+        private final CountDownLatch m_done = new CountDownLatch(1);
+        private final AtomicBoolean m_started = new AtomicBoolean();
+        private volatile ResolutionError m_error;
+        private volatile Throwable m_throwable;
+
+        PermutationCheck(ResolveSession session, Candidates candidates)
+        {
+            m_session = session;
+            m_candidates = candidates;
+        }
+
+        public void run()
+        {
+            if (!m_started.compareAndSet(false, true))
+            {
+                return;
+            }
+            try
+            {
+                if (!m_session.isCancelled())
+                {
+                    m_error = checkConsistency(m_session, m_candidates, m_faultyResources);
+                }
+            }
+            catch (Throwable t)
+            {
+                m_throwable = t;
+            }
+            finally
+            {
+                m_done.countDown();
+            }
+        }
+
+        void cancel()
+        {
+            m_session.run();
+        }
+
+        void await()
+        {
+            // Run the check here if no executor thread picked it up yet.
+            run();
+            try
+            {
+                m_done.await();
+            }
+            catch (InterruptedException e)
+            {
+                throw new IllegalStateException(e);
+            }
+            Throwable t = m_throwable;
+            if (t instanceof RuntimeException)
+            {
+                throw (RuntimeException) t;
+            }
+            else if (t instanceof Error)
+            {
+                throw (Error) t;
+            }
+            else if (t != null)
+            {
+                throw new RuntimeException(t);
+            }
+        }
+
+        boolean isConsistent()
+        {
+            return m_error == null && !m_session.isCancelled();
+        }
+
+        ResolveSession getSession()
+        {
+            return m_session;
+        }
+
+        Candidates getCandidates()
+        {
+            return m_candidates;
+        }
+
+        ResolutionError getError()
+        {
+            return m_error;
+        }
+
+        Map<Resource, ResolutionError> getFaultyResources()
+        {
+            return m_faultyResources;
+        }
+    }
+
     private ResolutionError checkConsistency(
         ResolveSession session,
         Candidates allCandidates,
         Map<Resource, ResolutionError> currentFaultyResources)
     {
-        ResolutionError rethrow = allCandidates.checkSubstitutes();
+        ResolutionError rethrow = allCandidates.checkSubstitutes(session);
         if (rethrow != null)
         {
             return rethrow;
         }
         Map<Resource, Resource> allhosts = allCandidates.getRootHosts();
+        if (!m_reusePackageSpaces)
+        {
+            session.setPackageSpaces(null);
+        }
         // Calculate package spaces
         Map<Resource, Packages> resourcePkgMap =
             calculatePackageSpaces(session, allCandidates, allhosts.values());
@@ -1165,10 +1485,21 @@ public class ResolverImpl implements Resolver
             executor.await();
         }
 
+        // Only resources whose wire candidates changed since the previously
+        // checked permutation, or which depend on such a resource, need their
+        // package spaces to be calculated again.
+        final PackageSpaces previous = session.getPackageSpaces();
+        final Set<Resource> dirty = getChangedResources(allWireCandidates, previous);
+
         // Parallel get all exported packages
         final OpenHashMap<Resource, Packages> allPackages = new OpenHashMap<Resource, Packages>(allCandidates.getNbResources());
         for (final Resource resource : allWireCandidates.keySet())
         {
+            if (!dirty.contains(resource))
+            {
+                allPackages.put(resource, previous.m_packages.get(resource));
+                continue;
+            }
             final Packages packages = new Packages(resource);
             allPackages.put(resource, packages);
             executor.execute(new Runnable()
@@ -1183,7 +1514,7 @@ public class ResolverImpl implements Resolver
         executor.await();
 
         // Parallel compute package lists
-        for (final Resource resource : allWireCandidates.keySet())
+        for (final Resource resource : dirty)
         {
             executor.execute(new Runnable()
             {
@@ -1199,10 +1530,9 @@ public class ResolverImpl implements Resolver
         // First, sequentially compute packages for resources
         // that have required packages, so that all recursive
         // calls can be done without threading problems
-        for (Map.Entry<Resource, Packages> entry : allPackages.fast())
+        for (Resource resource : dirty)
         {
-            final Resource resource = entry.getKey();
-            final Packages packages = entry.getValue();
+            final Packages packages = allPackages.get(resource);
             if (!packages.m_requiredPkgs.isEmpty())
             {
                 getPackageSourcesInternal(session, allPackages, resource, packages);
@@ -1210,10 +1540,9 @@ public class ResolverImpl implements Resolver
         }
         // Next, for all remaining resources, we can compute them
         // in parallel, as they won't refer to other resource packages
-        for (Map.Entry<Resource, Packages> entry : allPackages.fast())
+        for (final Resource resource : dirty)
         {
-            final Resource resource = entry.getKey();
-            final Packages packages = entry.getValue();
+            final Packages packages = allPackages.get(resource);
             if (packages.m_sources.isEmpty())
             {
                 executor.execute(new Runnable()
@@ -1228,7 +1557,7 @@ public class ResolverImpl implements Resolver
         executor.await();
 
         // Parallel compute uses
-        for (final Resource resource : allWireCandidates.keySet())
+        for (final Resource resource : dirty)
         {
             executor.execute(new Runnable()
             {
@@ -1240,9 +1569,79 @@ public class ResolverImpl implements Resolver
         }
         executor.await();
 
+        session.setPackageSpaces(new PackageSpaces(allWireCandidates, allPackages));
         return allPackages;
     }
 
+    private static Set<Resource> getChangedResources(
+        Map<Resource, List<WireCandidate>> allWireCandidates, PackageSpaces previous)
+    {
+        if (previous == null)
+        {
+            return allWireCandidates.keySet();
+        }
+        Set<Resource> changed = new HashSet<Resource>();
+        Map<Resource, List<Resource>> requirers = new HashMap<Resource, List<Resource>>();
+        for (Map.Entry<Resource, List<WireCandidate>> entry : allWireCandidates.entrySet())
+        {
+            Resource resource = entry.getKey();
+            List<WireCandidate> wireCandidates = entry.getValue();
+            if (!previous.m_packages.containsKey(resource)
+                || !isSameWireCandidates(wireCandidates, previous.m_wireCandidates.get(resource)))
+            {
+                changed.add(resource);
+            }
+            for (WireCandidate w : wireCandidates)
+            {
+                Resource provider = w.capability.getResource();
+                List<Resource> list = requirers.get(provider);
+                if (list == null)
+                {
+                    list = new ArrayList<Resource>();
+                    requirers.put(provider, list);
+                }
+                list.add(resource);
+            }
+        }
+        // A package space depends on the package spaces of all resources
+        // it is wired to, so anything that transitively requires a changed
+        // resource has to be calculated again.
+        List<Resource> toVisit = new ArrayList<Resource>(changed);
+        while (!toVisit.isEmpty())
+        {
+            List<Resource> list = requirers.get(toVisit.remove(toVisit.size() - 1));
+            if (list != null)
+            {
+                for (Resource requirer : list)
+                {
+                    if (changed.add(requirer))
+                    {
+                        toVisit.add(requirer);
+                    }
+                }
+            }
+        }
+        return changed;
+    }
+
+    private static boolean isSameWireCandidates(List<WireCandidate> current, List<WireCandidate> previous)
+    {
+        if (previous == null || current.size() != previous.size())
+        {
+            return false;
+        }
+        for (int i = 0; i < current.size(); i++)
+        {
+            WireCandidate c = current.get(i);
+            WireCandidate p = previous.get(i);
+            if (!c.requirement.equals(p.requirement) || !c.capability.equals(p.capability))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
     private static List<String> parseUses(String s) {
         int nb = 1;
         int l = s.length();
@@ -2105,6 +2504,23 @@ public class ResolverImpl implements Resolver
         }
     }
 
+    /**
+     * The package spaces calculated for a permutation along with the wire
+     * candidates they were calculated from. Once calculated, the package
+     * spaces are only read, so they can be shared with later permutations.
+     */
+    static final class PackageSpaces
+    {
+        final Map<Resource, List<WireCandidate>> m_wireCandidates;
+        final Map<Resource, Packages> m_packages;
+
+        PackageSpaces(Map<Resource, List<WireCandidate>> wireCandidates, Map<Resource, Packages> packages)
+        {
+            m_wireCandidates = wireCandidates;
+            m_packages = packages;
+        }
+    }
+
     public static class Packages
     {
         public final OpenHashMap<String, Blame> m_exportedPkgs;
@@ -0,0 +1,228 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.resolver.util;
+
+import java.util.AbstractMap;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.osgi.resource.Requirement;
+
+/**
+ * Maps requirements to their candidate selectors. Requirements are interned
+ * to int ids shared by all copies of a map, and the selectors are stored in
+ * fixed size chunks indexed by id. Copies share the chunks and the selectors
+ * and only copy the ones that are modified afterwards, so creating a
+ * permutation costs memory proportional to what it changes rather than to
+ * the number of requirements.
+ *
+ * Selectors returned by {@link #get(Requirement)} must not be modified; use
+ * {@link #getForUpdate(Requirement)} to get a selector owned by this map.
+ */
+public class CandidateMap implements Iterable<Map.Entry<Requirement, CandidateSelector>> {
+
+    private static final int CHUNK_SHIFT = 5;
+    private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private final Index index;
+    private CandidateSelector[][] chunks;
+    // chunks this map may write to in place
+    private boolean[] ownedChunks;
+    // one bit per entry for selectors this map may modify in place
+    private int[] ownedSelectors;
+    private int size;
+
+    public CandidateMap() {
+        this(new Index(), new CandidateSelector[0][], 0);
+    }
+
+    private CandidateMap(Index index, CandidateSelector[][] chunks, int size) {
+        this.index = index;
+        this.chunks = chunks;
+        this.ownedChunks = new boolean[chunks.length];
+        this.ownedSelectors = new int[chunks.length];
+        this.size = size;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public CandidateSelector get(Requirement req) {
+        int id = index.get(req);
+        if (id < 0 || (id >> CHUNK_SHIFT) >= chunks.length) {
+            return null;
+        }
+        CandidateSelector[] chunk = chunks[id >> CHUNK_SHIFT];
+        return chunk != null ? chunk[id & CHUNK_MASK] : null;
+    }
+
+    /**
+     * Returns the selector of the given requirement, copying it first if it
+     * is shared with another map.
+     */
+    public CandidateSelector getForUpdate(Requirement req) {
+        CandidateSelector selector = get(req);
+        if (selector == null) {
+            return null;
+        }
+        int id = index.get(req);
+        int c = id >> CHUNK_SHIFT;
+        int bit = 1 << (id & CHUNK_MASK);
+        if ((ownedSelectors[c] & bit) == 0) {
+            selector = selector.copy();
+            ownChunk(c)[id & CHUNK_MASK] = selector;
+            ownedSelectors[c] |= bit;
+        }
+        return selector;
+    }
+
+    public CandidateSelector put(Requirement req, CandidateSelector selector) {
+        int id = index.intern(req);
+        int c = id >> CHUNK_SHIFT;
+        ensureCapacity(c);
+        CandidateSelector[] chunk = ownChunk(c);
+        CandidateSelector old = chunk[id & CHUNK_MASK];
+        chunk[id & CHUNK_MASK] = selector;
+        ownedSelectors[c] |= 1 << (id & CHUNK_MASK);
+        if (old == null) {
+            size++;
+        }
+        return old;
+    }
+
+    public CandidateSelector remove(Requirement req) {
+        CandidateSelector old = get(req);
+        if (old != null) {
+            int id = index.get(req);
+            int c = id >> CHUNK_SHIFT;
+            ownChunk(c)[id & CHUNK_MASK] = null;
+            ownedSelectors[c] &= ~(1 << (id & CHUNK_MASK));
+            size--;
+        }
+        return old;
+    }
+
+    /**
+     * Creates a copy of this map. Both maps share all chunks and selectors
+     * until they are modified.
+     */
+    public CandidateMap copy() {
+        Arrays.fill(ownedChunks, false);
+        Arrays.fill(ownedSelectors, 0);
+        return new CandidateMap(index, chunks.clone(), size);
+    }
+
+    public Iterator<Map.Entry<Requirement, CandidateSelector>> iterator() {
+        return new Iterator<Map.Entry<Requirement, CandidateSelector>>() {
+            int next = advance(0);
+
+            private int advance(int id) {
+                int max = chunks.length << CHUNK_SHIFT;
+                while (id < max) {
+                    CandidateSelector[] chunk = chunks[id >> CHUNK_SHIFT];
+                    if (chunk == null) {
+                        id = ((id >> CHUNK_SHIFT) + 1) << CHUNK_SHIFT;
+                    } else if (chunk[id & CHUNK_MASK] == null) {
+                        id++;
+                    } else {
+                        break;
+                    }
+                }
+                return id;
+            }
+
+            public boolean hasNext() {
+                return next < (chunks.length << CHUNK_SHIFT);
+            }
+
+            public Map.Entry<Requirement, CandidateSelector> next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                int id = next;
+                next = advance(id + 1);
+                return new AbstractMap.SimpleImmutableEntry<Requirement, CandidateSelector>(
+                    index.getRequirement(id), chunks[id >> CHUNK_SHIFT][id & CHUNK_MASK]);
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    private void ensureCapacity(int c) {
+        if (c >= chunks.length) {
+            int length = Math.max(c + 1, chunks.length * 2);
+            chunks = Arrays.copyOf(chunks, length);
+            ownedChunks = Arrays.copyOf(ownedChunks, length);
+            ownedSelectors = Arrays.copyOf(ownedSelectors, length);
+        }
+    }
+
+    private CandidateSelector[] ownChunk(int c) {
+        CandidateSelector[] chunk = chunks[c];
+        if (!ownedChunks[c]) {
+            chunk = chunk != null ? chunk.clone() : new CandidateSelector[CHUNK_SIZE];
+            chunks[c] = chunk;
+            ownedChunks[c] = true;
+        }
+        return chunk;
+    }
+
+    /**
+     * Requirement ids shared by a map and all its copies.
+     */
+    private static class Index {
+        private final ConcurrentMap<Requirement, Integer> ids = new ConcurrentHashMap<Requirement, Integer>();
+        private Requirement[] requirements = new Requirement[CHUNK_SIZE];
+
+        int get(Requirement req) {
+            Integer id = ids.get(req);
+            return id != null ? id : -1;
+        }
+
+        synchronized int intern(Requirement req) {
+            Integer id = ids.get(req);
+            if (id == null) {
+                id = ids.size();
+                if (id == requirements.length) {
+                    requirements = Arrays.copyOf(requirements, id * 2);
+                }
+                requirements[id] = req;
+                ids.put(req, id);
+            }
+            return id;
+        }
+
+        synchronized Requirement getRequirement(int id) {
+            return requirements[id];
+        }
+    }
+}
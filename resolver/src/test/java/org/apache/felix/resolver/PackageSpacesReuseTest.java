@@ -0,0 +1,233 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.resolver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.felix.resolver.test.util.PackageCapability;
+import org.apache.felix.resolver.test.util.PackageRequirement;
+import org.apache.felix.resolver.test.util.ResolveContextImpl;
+import org.apache.felix.resolver.test.util.ResourceImpl;
+import org.junit.Test;
+import org.osgi.framework.namespace.PackageNamespace;
+import org.osgi.resource.Capability;
+import org.osgi.resource.Requirement;
+import org.osgi.resource.Resource;
+import org.osgi.resource.Wire;
+import org.osgi.resource.Wiring;
+import org.osgi.service.resolver.ResolutionException;
+
+/**
+ * Checks that permutations which only recalculate the package spaces of
+ * the affected resources find the same uses conflicts and the same wiring
+ * as permutations which recalculate all package spaces.
+ */
+public class PackageSpacesReuseTest
+{
+    @Test
+    public void testTransitiveUsesChange() throws Exception
+    {
+        // C imports r from R, which uses q from Q, which uses p. Q first
+        // gets p from P1, which conflicts with C getting p from P2, so Q
+        // has to be permutated while the wire candidates of R and C stay
+        // the same. U is not affected and keeps its package space.
+        Map<Requirement, List<Capability>> candMap = new HashMap<Requirement, List<Capability>>();
+        ResourceImpl p1 = exporter("P1", "p", null);
+        ResourceImpl p2 = exporter("P2", "p", null);
+        ResourceImpl q = exporter("Q", "q", "p");
+        importer(q, "p", candMap, p1, p2);
+        ResourceImpl r = exporter("R", "r", "q");
+        importer(r, "q", candMap, q);
+        ResourceImpl c = new ResourceImpl("C");
+        importer(c, "r", candMap, r);
+        importer(c, "p", candMap, p2);
+        ResourceImpl u = new ResourceImpl("U");
+        importer(u, "p", candMap, p1);
+
+        Result result = resolveBothWays(candMap, c, u);
+        assertTrue(result.m_conflicts.size() > 0);
+        assertEquals(p2, getProvider(result.m_wires, q, "p"));
+        assertEquals(p1, getProvider(result.m_wires, u, "p"));
+    }
+
+    @Test
+    public void testSubstitutionChange() throws Exception
+    {
+        // A exports and imports p and first wires to its own export, so its
+        // export of a uses A's own p, which conflicts with C getting p from
+        // B. The permutation substitutes A's export of p, which changes the
+        // package space of A and, through the uses of a, that of C, while
+        // the wire candidates of C stay the same.
+        Map<Requirement, List<Capability>> candMap = new HashMap<Requirement, List<Capability>>();
+        ResourceImpl b = exporter("B", "p", null);
+        ResourceImpl a = exporter("A", "p", null);
+        PackageCapability ac = new PackageCapability(a, "a");
+        ac.addDirective(PackageNamespace.CAPABILITY_USES_DIRECTIVE, "p");
+        a.addCapability(ac);
+        importer(a, "p", candMap, a, b);
+        ResourceImpl c = new ResourceImpl("C");
+        importer(c, "a", candMap, a);
+        importer(c, "p", candMap, b);
+
+        Result result = resolveBothWays(candMap, c);
+        assertTrue(result.m_conflicts.size() > 0);
+        assertEquals(b, getProvider(result.m_wires, a, "p"));
+        assertEquals(b, getProvider(result.m_wires, c, "p"));
+    }
+
+    @Test
+    public void testConflictInEveryPermutation() throws Exception
+    {
+        // Like the transitive case, but no provider of p that Q can use
+        // is consistent with C, so all permutations fail.
+        Map<Requirement, List<Capability>> candMap = new HashMap<Requirement, List<Capability>>();
+        ResourceImpl p1 = exporter("P1", "p", null);
+        ResourceImpl p2 = exporter("P2", "p", null);
+        ResourceImpl p3 = exporter("P3", "p", null);
+        ResourceImpl q = exporter("Q", "q", "p");
+        importer(q, "p", candMap, p1, p3);
+        ResourceImpl r = exporter("R", "r", "q");
+        importer(r, "q", candMap, q);
+        ResourceImpl c = new ResourceImpl("C");
+        importer(c, "r", candMap, r);
+        importer(c, "p", candMap, p2);
+
+        Result result = resolveBothWays(candMap, c);
+        assertTrue(result.m_conflicts.size() > 1);
+        assertNotNull(result.m_error);
+    }
+
+    private static Result resolveBothWays(
+        Map<Requirement, List<Capability>> candMap, Resource... mandatory)
+    {
+        Result full = resolve(candMap, false, mandatory);
+        Result reused = resolve(candMap, true, mandatory);
+        assertEquals(full.m_conflicts, reused.m_conflicts);
+        assertEquals(full.m_wires, reused.m_wires);
+        assertEquals(full.m_error, reused.m_error);
+        return reused;
+    }
+
+    private static Result resolve(
+        Map<Requirement, List<Capability>> candMap, boolean reuse, Resource... mandatory)
+    {
+        final List<String> conflicts = new ArrayList<String>();
+        Logger logger = new Logger(Logger.LOG_DEBUG)
+        {
+            @Override
+            protected void doLog(int level, String msg, Throwable throwable)
+            {
+                if (msg.startsWith("Candidate permutation failed"))
+                {
+                    conflicts.add(msg);
+                }
+            }
+        };
+        ResolverImpl resolver = new ResolverImpl(logger, 1);
+        resolver.setReusePackageSpaces(reuse);
+
+        Result result = new Result();
+        result.m_conflicts = conflicts;
+        try
+        {
+            Map<Resource, List<Wire>> wireMap = resolver.resolve(new ResolveContextImpl(
+                Collections.<Resource, Wiring> emptyMap(), candMap,
+                Arrays.asList(mandatory), Collections.<Resource> emptyList()));
+            result.m_wires = new HashSet<List<Object>>();
+            for (List<Wire> wires : wireMap.values())
+            {
+                for (Wire wire : wires)
+                {
+                    result.m_wires.add(Arrays.<Object> asList(
+                        wire.getRequirer(), wire.getRequirement(),
+                        wire.getProvider(), wire.getCapability()));
+                }
+            }
+        }
+        catch (ResolutionException ex)
+        {
+            result.m_error = ex.getMessage();
+        }
+        return result;
+    }
+
+    private static ResourceImpl exporter(String name, String pkg, String uses)
+    {
+        ResourceImpl resource = new ResourceImpl(name);
+        PackageCapability cap = new PackageCapability(resource, pkg);
+        if (uses != null)
+        {
+            cap.addDirective(PackageNamespace.CAPABILITY_USES_DIRECTIVE, uses);
+        }
+        resource.addCapability(cap);
+        return resource;
+    }
+
+    private static void importer(
+        ResourceImpl resource, String pkg, Map<Requirement, List<Capability>> candMap,
+        Resource... providers)
+    {
+        Requirement req = new PackageRequirement(resource, pkg);
+        resource.addRequirement(req);
+        List<Capability> cands = new ArrayList<Capability>();
+        for (Resource provider : providers)
+        {
+            for (Capability cap : provider.getCapabilities(PackageNamespace.PACKAGE_NAMESPACE))
+            {
+                if (pkg.equals(cap.getAttributes().get(PackageNamespace.PACKAGE_NAMESPACE)))
+                {
+                    cands.add(cap);
+                }
+            }
+        }
+        candMap.put(req, cands);
+    }
+
+    private static Resource getProvider(Set<List<Object>> wires, Resource requirer, String pkg)
+    {
+        for (List<Object> wire : wires)
+        {
+            Capability cap = (Capability) wire.get(3);
+            if (wire.get(0).equals(requirer)
+                && pkg.equals(cap.getAttributes().get(PackageNamespace.PACKAGE_NAMESPACE)))
+            {
+                return (Resource) wire.get(2);
+            }
+        }
+        return null;
+    }
+
+    private static class Result
+    {
+        List<String> m_conflicts;
+        Set<List<Object>> m_wires;
+        String m_error;
+    }
+}
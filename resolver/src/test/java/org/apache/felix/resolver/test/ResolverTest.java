@@ -32,6 +32,8 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.apache.felix.resolver.Logger;
 import org.apache.felix.resolver.ResolverImpl;
@@ -923,6 +925,88 @@ public class ResolverTest
         assertEquals("Wrong number of resolved bundles", 9, result.size());
     }
 
+    @Test
+    public void testParallelPermutations() throws Exception
+    {
+        ResolveContext rci = populateParallelPermutations(8);
+        Map<Resource, List<Wire>> expected =
+            new ResolverImpl(new Logger(Logger.LOG_DEBUG), 1).resolve(rci);
+        assertConsistentConsumer(expected);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try
+        {
+            ResolverImpl resolver = new ResolverImpl(new Logger(Logger.LOG_DEBUG), executor, 4);
+            Map<Resource, List<Wire>> result = resolver.resolve(rci);
+            assertConsistentConsumer(result);
+            for (int i = 0; i < 20; i++)
+            {
+                assertEquals(result, resolver.resolve(rci));
+            }
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void assertConsistentConsumer(Map<Resource, List<Wire>> wireMap)
+    {
+        Resource consumer = findResource("consumer", wireMap.keySet());
+        List<Wire> wires = wireMap.get(consumer);
+        assertEquals(2, wires.size());
+        String pProvider = null;
+        String qProvider = null;
+        for (Wire w : wires)
+        {
+            String name = getResourceName(w.getProvider());
+            if (name.startsWith("P"))
+            {
+                pProvider = name;
+            }
+            else
+            {
+                qProvider = name;
+            }
+        }
+        assertNotNull(pProvider);
+        assertNotNull(qProvider);
+        assertEquals(pProvider.substring(1), qProvider.substring(1));
+    }
+
+    private ResolveContext populateParallelPermutations(int count)
+    {
+        Map<Requirement, List<Capability>> candMap = new HashMap<Requirement, List<Capability>>();
+        List<Resource> mandatory = new ArrayList<Resource>();
+
+        ResourceImpl consumer = new ResourceImpl("consumer");
+        Requirement consumer_pReq = addReq(consumer, PackageNamespace.PACKAGE_NAMESPACE, "p");
+        Requirement consumer_qReq = addReq(consumer, PackageNamespace.PACKAGE_NAMESPACE, "q");
+        List<Capability> pCaps = new ArrayList<Capability>();
+        List<Capability> qCaps = new ArrayList<Capability>();
+        for (int i = 0; i < count; i++)
+        {
+            // Each q provider is only consistent with the p provider
+            // of the same index.
+            ResourceImpl p = new ResourceImpl("P" + i);
+            Capability pCap = addCap(p, PackageNamespace.PACKAGE_NAMESPACE, "p");
+            ResourceImpl q = new ResourceImpl("Q" + i);
+            Capability qCap = addCap(q, PackageNamespace.PACKAGE_NAMESPACE, "q", "p");
+            Requirement q_pReq = addReq(q, PackageNamespace.PACKAGE_NAMESPACE, "p");
+            candMap.put(q_pReq, Collections.singletonList(pCap));
+            pCaps.add(pCap);
+            qCaps.add(0, qCap);
+            mandatory.add(p);
+            mandatory.add(q);
+        }
+        candMap.put(consumer_pReq, pCaps);
+        candMap.put(consumer_qReq, qCaps);
+        mandatory.add(consumer);
+
+        return new ResolveContextImpl(Collections.<Resource, Wiring> emptyMap(), candMap,
+            mandatory, Collections.<Resource> emptyList());
+    }
+
     private ResolveContext populateScenario17(boolean realSubstitute,
         boolean felixResolveContext, boolean existingWirings)
     {
@@ -0,0 +1,136 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.scr.benchmarks;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.felix.scr.impl.inject.InjectionHandles;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares calling bind methods and setting reference fields of a component
+ * reflectively, as SCR did before, with the method handles SCR uses now.
+ * The component methods and fields are private, as they usually are.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InjectionBenchmark
+{
+    private final Component m_component = new Component();
+    private final Object m_service = new Object();
+
+    private Method m_bindService;
+    private Method m_bindServiceProperties;
+    private Field m_field;
+    private MethodHandle m_bindServiceHandle;
+    private MethodHandle m_bindServicePropertiesHandle;
+    private MethodHandle m_fieldSetter;
+    private Object[] m_serviceArgs;
+    private Object[] m_servicePropertiesArgs;
+
+    @Setup
+    public void setUp() throws Exception
+    {
+        m_bindService = Component.class.getDeclaredMethod("bindService", Object.class);
+        m_bindService.setAccessible(true);
+        m_bindServiceProperties = Component.class.getDeclaredMethod(
+            "bindServiceProperties", Object.class, Map.class);
+        m_bindServiceProperties.setAccessible(true);
+        m_field = Component.class.getDeclaredField("m_service");
+        m_field.setAccessible(true);
+
+        m_bindServiceHandle = InjectionHandles.getInvoker(m_bindService);
+        m_bindServicePropertiesHandle = InjectionHandles.getInvoker(m_bindServiceProperties);
+        m_fieldSetter = InjectionHandles.getSetter(m_field);
+
+        m_serviceArgs = new Object[] { m_service };
+        m_servicePropertiesArgs = new Object[] { m_service, System.getProperties() };
+    }
+
+    @Benchmark
+    public Object bindReflective() throws Exception
+    {
+        return m_bindService.invoke(m_component, m_serviceArgs);
+    }
+
+    @Benchmark
+    public Object bindHandle() throws Throwable
+    {
+        return (Object) m_bindServiceHandle.invokeExact((Object) m_component, m_serviceArgs);
+    }
+
+    @Benchmark
+    public Object bindPropertiesReflective() throws Exception
+    {
+        return m_bindServiceProperties.invoke(m_component, m_servicePropertiesArgs);
+    }
+
+    @Benchmark
+    public Object bindPropertiesHandle() throws Throwable
+    {
+        return (Object) m_bindServicePropertiesHandle.invokeExact(
+            (Object) m_component, m_servicePropertiesArgs);
+    }
+
+    @Benchmark
+    public void fieldReflective() throws Exception
+    {
+        m_field.set(m_component, m_service);
+    }
+
+    @Benchmark
+    public void fieldHandle() throws Throwable
+    {
+        m_fieldSetter.invokeExact((Object) m_component, m_service);
+    }
+
+    static class Component
+    {
+        private volatile Object m_service;
+        private volatile Map<?, ?> m_properties;
+
+        private void bindService(Object service)
+        {
+            m_service = service;
+        }
+
+        private void bindServiceProperties(Object service, Map<?, ?> properties)
+        {
+            m_service = service;
+            m_properties = properties;
+        }
+    }
+}
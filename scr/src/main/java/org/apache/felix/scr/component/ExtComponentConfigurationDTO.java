@@ -16,30 +16,27 @@
  * specific language governing permissions and limitations
  * under the License.
  */
-package org.apache.felix.resolver.util;
+package org.apache.felix.scr.component;
 
-import org.osgi.resource.Requirement;
 
-public class OpenHashMapList extends OpenHashMap<Requirement, CandidateSelector> {
-    private static final long serialVersionUID = 0L;
+import org.osgi.service.component.runtime.dto.ComponentConfigurationDTO;
 
-    public OpenHashMapList() {
-        super();
-    }
 
-    public OpenHashMapList(int initialCapacity) {
-        super(initialCapacity);
-    }
+/**
+ * The <code>ExtComponentConfigurationDTO</code> is a custom extension of the
+ * standard ComponentConfigurationDTO. The component configurations returned
+ * by the <code>ServiceComponentRuntime</code> service are instances of this
+ * class.
+ */
+public class ExtComponentConfigurationDTO extends ComponentConfigurationDTO
+{
 
-    public OpenHashMapList deepClone() {
-        OpenHashMapList copy = (OpenHashMapList) super.clone();
-        Object[] values = copy.value;
-        for (int i = values.length; i-- > 0;) {
-            if (values[i] != null) {
-                values[i] = ((CandidateSelector) values[i]).copy();
-            }
-        }
-        return copy;
-    }
+    /**
+     * The time in nanoseconds it took to create the last component instance
+     * of this component configuration, to bind its references and to call
+     * its activate method. This is <code>-1</code> if no component instance
+     * has been activated yet.
+     */
+    public long activationTime;
 
 }
@@ -18,14 +18,16 @@
  */
 package org.apache.felix.scr.impl;
 
-import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
@@ -47,6 +49,7 @@ import org.apache.felix.scr.impl.manager.ComponentHolder;
 import org.apache.felix.scr.impl.metadata.ComponentMetadata;
 import org.apache.felix.scr.impl.metadata.MetadataStoreHelper.MetaDataReader;
 import org.apache.felix.scr.impl.metadata.MetadataStoreHelper.MetaDataWriter;
+import org.apache.felix.scr.impl.metadata.StoredComponentMetadata;
 import org.apache.felix.scr.impl.runtime.ServiceComponentRuntimeImpl;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
@@ -91,6 +94,9 @@ public class Activator extends AbstractExtender
     //  thread acting upon configurations
     private ComponentActorThread m_componentActor;
 
+    // threads enabling components of started bundles, null unless started
+    private volatile ComponentActivationPool m_activationPool;
+
     private ServiceRegistration<ServiceComponentRuntime> m_runtime_reg;
 
     private ComponentCommands m_componentCommands;
@@ -169,6 +175,19 @@ public class Activator extends AbstractExtender
 
     }
 
+    /**
+     * Applies a changed number of activation threads to the running
+     * implementation. Bundles started afterwards are enabled accordingly.
+     */
+    public void setActivationThreads(int threads)
+    {
+        final ComponentActivationPool pool = m_activationPool;
+        if ( pool != null )
+        {
+            pool.setThreads( threads );
+        }
+    }
+
     @Override
     protected void doStart() throws Exception
     {
@@ -193,6 +212,8 @@ public class Activator extends AbstractExtender
         t.setDaemon( true );
         t.start();
 
+        m_activationPool = new ComponentActivationPool( m_configuration.activationThreads(), this.logger );
+
         super.doStart();
 
         m_componentCommands = new ComponentCommands(m_context, runtime, m_configuration);
@@ -237,8 +258,21 @@ public class Activator extends AbstractExtender
             File store = context.getDataFile("componentMetadataStore");
             if (store.isFile())
             {
-                try (DataInputStream in = new DataInputStream(
-                    new BufferedInputStream(new FileInputStream(store))))
+                // The store is read at once, but the components of a bundle are
+                // only decoded when its components are loaded
+                final byte[] data;
+                try
+                {
+                    data = Files.readAllBytes(store.toPath());
+                }
+                catch (IOException e)
+                {
+                    logger.log(LogService.LOG_WARNING,
+                        "Error loading component metadata cache.", e);
+                    return result;
+                }
+                ByteArrayInputStream bytes = new ByteArrayInputStream(data);
+                try (DataInputStream in = new DataInputStream(bytes))
                 {
                     MetaDataReader metaDataReader = new MetaDataReader();
                     if (!metaDataReader.isVersionSupported(in))
@@ -251,18 +285,25 @@ public class Activator extends AbstractExtender
                     {
                         metaDataReader.readIndexedString(in);
                     }
+                    List<String> strings = metaDataReader.getStrings();
+                    if (strings.contains(null)
+                        || new HashSet<>(strings).size() != strings.size())
+                    {
+                        // the string table is expected to be contiguous and unique
+                        return result;
+                    }
                     int numBundles = in.readInt();
                     for (int i = 0; i < numBundles; i++)
                     {
-                        // Read all the components for the ID even if the bundle does not exist;
+                        // Skip the components for the ID even if the bundle does not exist;
                         long bundleId = in.readLong();
                         int numComponents = in.readInt();
                         long lastModified = in.readLong();
-                        List<ComponentMetadata> components = new ArrayList<>(
-                            numComponents);
-                        for (int j = 0; j < numComponents; j++)
+                        int length = in.readInt();
+                        int offset = data.length - bytes.available();
+                        if (in.skipBytes(length) != length)
                         {
-                            components.add(ComponentMetadata.load(in, metaDataReader));
+                            throw new EOFException();
                         }
                         // Check with system context by ID to avoid hooks hiding;
                         Bundle b = systemContext.getBundle(bundleId);
@@ -270,7 +311,8 @@ public class Activator extends AbstractExtender
                         {
                             if (lastModified == b.getLastModified())
                             {
-                                result.put(bundleId, components);
+                                result.put(bundleId, new StoredComponentMetadata(
+                                    metaDataReader, data, offset, length, numComponents));
                             }
                         }
                     }
@@ -309,9 +351,26 @@ public class Activator extends AbstractExtender
             MetaDataWriter metaDataWriter = new MetaDataWriter();
             metaDataWriter.writeVersion(out);
 
+            // Components which have not been decoded are written as they were
+            // read, which requires the strings they were read with to keep
+            // their indices
+            MetaDataReader previousReader = null;
             Set<String> allStrings = new HashSet<>();
             for (List<ComponentMetadata> components : componentsMap.values())
             {
+                if (components instanceof StoredComponentMetadata
+                    && !((StoredComponentMetadata) components).isLoaded())
+                {
+                    MetaDataReader reader = ((StoredComponentMetadata) components).getMetaDataReader();
+                    if (previousReader == null)
+                    {
+                        previousReader = reader;
+                    }
+                    if (reader == previousReader)
+                    {
+                        continue;
+                    }
+                }
                 for (ComponentMetadata component : components)
                 {
                     component.collectStrings(allStrings);
@@ -319,22 +378,46 @@ public class Activator extends AbstractExtender
             }
             // remove possible null
             allStrings.remove(null);
-            out.writeInt(allStrings.size());
-            for (String s : allStrings)
+            List<String> strings = new ArrayList<>();
+            if (previousReader != null)
+            {
+                strings.addAll(previousReader.getStrings());
+                allStrings.removeAll(strings);
+            }
+            strings.addAll(allStrings);
+            out.writeInt(strings.size());
+            for (String s : strings)
             {
                 metaDataWriter.writeIndexedString(s, out);
             }
             out.writeInt(componentsMap.size());
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream componentsOut = new DataOutputStream(bytes);
             for (Entry<Long, List<ComponentMetadata>> entry : componentsMap.entrySet())
             {
+                List<ComponentMetadata> components = entry.getValue();
+                bytes.reset();
+                if (components instanceof StoredComponentMetadata
+                    && ((StoredComponentMetadata) components).getMetaDataReader() == previousReader
+                    && !((StoredComponentMetadata) components).isLoaded())
+                {
+                    ((StoredComponentMetadata) components).writeTo(componentsOut);
+                }
+                else
+                {
+                    for (ComponentMetadata component : components)
+                    {
+                        component.store(componentsOut, metaDataWriter);
+                    }
+                }
+                componentsOut.flush();
+
                 out.writeLong(entry.getKey());
-                out.writeInt(entry.getValue().size());
+                out.writeInt(components.size());
                 Bundle b = systemContext.getBundle(entry.getKey());
                 out.writeLong(b == null ? -1 : b.getLastModified());
-                for (ComponentMetadata component : entry.getValue())
-                {
-                    component.store(out, metaDataWriter);
-                }
+                out.writeInt(bytes.size());
+                bytes.writeTo(out);
             }
         }
         catch (IOException e)
@@ -377,6 +460,13 @@ public class Activator extends AbstractExtender
             m_componentActor = null;
         }
 
+        // terminate the activation pool
+        if ( m_activationPool != null )
+        {
+            m_activationPool.terminate( m_configuration.stopTimeout() );
+            m_activationPool = null;
+        }
+
         // close the LogService tracker now
         if ( logger != null )
         {
@@ -480,6 +570,21 @@ public class Activator extends AbstractExtender
             return;
         }
 
+        if (cached instanceof StoredComponentMetadata)
+        {
+            try
+            {
+                cached = ((StoredComponentMetadata) cached).load();
+            }
+            catch (IOException e)
+            {
+                logger.log(LogService.LOG_WARNING,
+                    "Error loading cached component metadata of {0}.", e, bundle);
+                m_componentMetadataStore.remove(bundleId);
+                cached = null;
+            }
+        }
+
         if (cached == null
             && bundle.getHeaders("").get(ComponentConstants.SERVICE_COMPONENT) == null)
         {
@@ -549,7 +654,7 @@ public class Activator extends AbstractExtender
         try
         {
             BundleComponentActivator ga = new BundleComponentActivator( this.logger, m_componentRegistry, m_componentActor,
-                context, m_configuration, cached);
+                m_activationPool, context, m_configuration, cached);
             ga.initialEnable();
             if (cached == null)
             {
@@ -30,8 +30,15 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.StringTokenizer;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.felix.scr.impl.helper.ConfigAdminTracker;
@@ -83,6 +90,13 @@ public class BundleComponentActivator implements ComponentActivator
     // thread acting upon configurations
     private final ComponentActorThread m_componentActor;
 
+    // threads enabling the components, null or without threads if enabled
+    // by the calling thread
+    private final ComponentActivationPool m_activationPool;
+
+    // component holders being enabled by the activation pool
+    private final List<Future<?>> m_pendingEnables = new ArrayList<>();
+
     // true as long as the dispose method is not called
     private final AtomicBoolean m_active = new AtomicBoolean( true );
     private final CountDownLatch m_closeLatch = new CountDownLatch( 1 );
@@ -96,9 +110,19 @@ public class BundleComponentActivator implements ComponentActivator
 
     private final BundleLogger logger;
 
+    /**
+     * The service listener shared by all dependency managers of the bundle
+     * tracking services of the same class. Each service event is matched once
+     * against each distinct target filter and is then forwarded to all the
+     * dependency managers using that target.
+     */
     private static class ListenerInfo implements ServiceListener
     {
-        private Map<Filter, List<ExtendedServiceListener<ExtendedServiceEvent>>> filterMap = new HashMap<>();
+        // the listeners of dependency managers without target filter
+        private final List<ExtendedServiceListener<ExtendedServiceEvent>> unfiltered = new CopyOnWriteArrayList<>();
+
+        // the listeners of dependency managers by their (equal) target filter
+        private final ConcurrentMap<Filter, List<ExtendedServiceListener<ExtendedServiceEvent>>> filterMap = new ConcurrentHashMap<>();
 
         @Override
         public void serviceChanged(ServiceEvent event)
@@ -106,15 +130,18 @@ public class BundleComponentActivator implements ComponentActivator
             ServiceReference<?> ref = event.getServiceReference();
             ExtendedServiceEvent extEvent = null;
             ExtendedServiceEvent endMatchEvent = null;
-            Map<Filter, List<ExtendedServiceListener<ExtendedServiceEvent>>> filterMap;
-            synchronized ( this )
+            if ( !unfiltered.isEmpty() )
             {
-                filterMap = this.filterMap;
+                extEvent = new ExtendedServiceEvent( event );
+                for ( ExtendedServiceListener<ExtendedServiceEvent> forwardTo : unfiltered )
+                {
+                    forwardTo.serviceChanged( extEvent );
+                }
             }
             for ( Map.Entry<Filter, List<ExtendedServiceListener<ExtendedServiceEvent>>> entry : filterMap.entrySet() )
             {
                 Filter filter = entry.getKey();
-                if ( filter == null || filter.match( ref ) )
+                if ( filter.match( ref ) )
                 {
                     if ( extEvent == null )
                     {
@@ -147,40 +174,47 @@ public class BundleComponentActivator implements ComponentActivator
             }
         }
 
-        public synchronized void add(Filter filter, ExtendedServiceListener<ExtendedServiceEvent> listener)
+        // callers synchronize on the listener map
+        void add(Filter filter, ExtendedServiceListener<ExtendedServiceEvent> listener)
         {
-            filterMap = new HashMap<>( filterMap );
+            if ( filter == null )
+            {
+                unfiltered.add( listener );
+                return;
+            }
             List<ExtendedServiceListener<ExtendedServiceEvent>> listeners = filterMap.get( filter );
             if ( listeners == null )
             {
-                listeners = Collections.<ExtendedServiceListener<ExtendedServiceEvent>> singletonList( listener );
+                listeners = new CopyOnWriteArrayList<>();
+                listeners.add( listener );
+                filterMap.put( filter, listeners );
             }
             else
             {
-                listeners = new ArrayList<>( listeners );
                 listeners.add( listener );
             }
-            filterMap.put( filter, listeners );
         }
 
-        public synchronized boolean remove(Filter filter, ExtendedServiceListener<ExtendedServiceEvent> listener)
+        // callers synchronize on the listener map
+        boolean remove(Filter filter, ExtendedServiceListener<ExtendedServiceEvent> listener)
         {
-            List<ExtendedServiceListener<ExtendedServiceEvent>> listeners = filterMap.get( filter );
-            if ( listeners != null )
+            if ( filter == null )
             {
-                filterMap = new HashMap<>( filterMap );
-                listeners = new ArrayList<>( listeners );
-                listeners.remove( listener );
-                if ( listeners.isEmpty() )
-                {
-                    filterMap.remove( filter );
-                }
-                else
+                unfiltered.remove( listener );
+            }
+            else
+            {
+                List<ExtendedServiceListener<ExtendedServiceEvent>> listeners = filterMap.get( filter );
+                if ( listeners != null )
                 {
-                    filterMap.put( filter, listeners );
+                    listeners.remove( listener );
+                    if ( listeners.isEmpty() )
+                    {
+                        filterMap.remove( filter );
+                    }
                 }
             }
-            return filterMap.isEmpty();
+            return unfiltered.isEmpty() && filterMap.isEmpty();
         }
     }
 
@@ -188,11 +222,10 @@ public class BundleComponentActivator implements ComponentActivator
     public void addServiceListener(String classNameFilter, Filter eventFilter,
         ExtendedServiceListener<ExtendedServiceEvent> listener)
     {
-        ListenerInfo listenerInfo;
         synchronized ( listenerMap )
         {
             logger.log( LogService.LOG_DEBUG, "classNameFilter: " + classNameFilter + " event filter: " + eventFilter, null);
-            listenerInfo = listenerMap.get( classNameFilter );
+            ListenerInfo listenerInfo = listenerMap.get( classNameFilter );
             if ( listenerInfo == null )
             {
                 listenerInfo = new ListenerInfo();
@@ -203,12 +236,15 @@ public class BundleComponentActivator implements ComponentActivator
                 }
                 catch ( InvalidSyntaxException e )
                 {
+                    listenerMap.remove( classNameFilter );
                     throw (IllegalArgumentException) new IllegalArgumentException(
                         "invalid class name filter" ).initCause( e );
                 }
             }
+            // add while holding the lock so the shared listener is not
+            // unregistered concurrently by removing its last listener
+            listenerInfo.add( eventFilter, listener );
         }
-        listenerInfo.add( eventFilter, listener );
     }
 
     @Override
@@ -236,6 +272,8 @@ public class BundleComponentActivator implements ComponentActivator
      * @param componentRegistry The <code>ComponentRegistry</code> used to
      *      register components with to ensure uniqueness of component names
      *      and to ensure configuration updates.
+     * @param activationPool The pool used to enable the components or
+     *      <code>null</code> to enable them in the calling thread.
      * @param   context  The bundle context owning the components
      *
      * @throws ComponentException if any error occurrs initializing this class
@@ -243,6 +281,7 @@ public class BundleComponentActivator implements ComponentActivator
     public BundleComponentActivator(final ScrLogger scrLogger,
             final ComponentRegistry componentRegistry,
             final ComponentActorThread componentActor,
+            final ComponentActivationPool activationPool,
             final BundleContext context,
             final ScrConfiguration configuration,
             final List<ComponentMetadata> cachedComponentMetadata)
@@ -253,6 +292,7 @@ public class BundleComponentActivator implements ComponentActivator
         // keep the parameters for later
         m_componentRegistry = componentRegistry;
         m_componentActor = componentActor;
+        m_activationPool = activationPool;
         m_context = context;
         m_bundle = context.getBundle();
 
@@ -333,41 +373,57 @@ public class BundleComponentActivator implements ComponentActivator
     /**
      * Called outside the constructor so that the m_managers field is completely initialized.
      * A component might possibly start a thread to enable other components, which could access m_managers
+     * <p>
+     * If an activation pool is configured, the component holders are enabled
+     * by the pool threads and this method does not wait for them to be enabled.
      */
     void initialEnable()
     {
         //enable all the enabled components
-        for ( ComponentHolder<?> componentHolder : m_holders )
+        for ( final ComponentHolder<?> componentHolder : m_holders )
         {
             logger.log( LogService.LOG_DEBUG, "BundleComponentActivator : May enable component holder {0}", null,
                 componentHolder.getComponentMetadata().getName() );
 
             if ( componentHolder.getComponentMetadata().isEnabled() )
             {
-                logger.log( LogService.LOG_DEBUG, "BundleComponentActivator :Enabling component holder {0}", null,
-                    componentHolder.getComponentMetadata().getName() );
-
-                try
+                if ( m_activationPool == null || !m_activationPool.isEnabled() )
                 {
-                    componentHolder.enableComponents( false );
+                    enableComponentHolder( componentHolder );
+                    continue;
                 }
-                catch ( Throwable t )
+                synchronized ( m_pendingEnables )
                 {
-                    // caught on unhandled RuntimeException or Error
-                    // (e.g. ClassDefNotFoundError)
-
-                    // make sure the component is properly disabled, just in case
-                    try
+                    if ( !isActive() )
                     {
-                        componentHolder.disableComponents( false );
+                        return;
                     }
-                    catch ( Throwable ignore )
+                    Future<?> pending = m_activationPool.schedule( new Runnable()
                     {
+                        @Override
+                        public void run()
+                        {
+                            if ( isActive() )
+                            {
+                                enableComponentHolder( componentHolder );
+                            }
+                        }
+
+                        @Override
+                        public String toString()
+                        {
+                            return "Initial Enable: " + componentHolder.getComponentMetadata().getName();
+                        }
+                    } );
+                    if ( pending == null )
+                    {
+                        // the pool has been emptied or terminated concurrently
+                        enableComponentHolder( componentHolder );
+                    }
+                    else
+                    {
+                        m_pendingEnables.add( pending );
                     }
-
-                    logger.log( LogService.LOG_ERROR,
-                        "BundleComponentActivator : Unexpected failure enabling component holder {0}", t,
-                        componentHolder.getComponentMetadata().getName() );
                 }
             }
             else
@@ -379,6 +435,74 @@ public class BundleComponentActivator implements ComponentActivator
         }
     }
 
+    private void enableComponentHolder( final ComponentHolder<?> componentHolder )
+    {
+        logger.log( LogService.LOG_DEBUG, "BundleComponentActivator :Enabling component holder {0}", null,
+            componentHolder.getComponentMetadata().getName() );
+
+        try
+        {
+            componentHolder.enableComponents( false );
+        }
+        catch ( Throwable t )
+        {
+            // caught on unhandled RuntimeException or Error
+            // (e.g. ClassDefNotFoundError)
+
+            // make sure the component is properly disabled, just in case
+            try
+            {
+                componentHolder.disableComponents( false );
+            }
+            catch ( Throwable ignore )
+            {
+            }
+
+            logger.log( LogService.LOG_ERROR,
+                "BundleComponentActivator : Unexpected failure enabling component holder {0}", t,
+                componentHolder.getComponentMetadata().getName() );
+        }
+    }
+
+    /**
+     * Waits for the component holders currently being enabled by the
+     * activation pool. Holders not enabled yet are not enabled any more.
+     * Must only be called after this instance has been deactivated.
+     */
+    private void awaitPendingEnables()
+    {
+        final List<Future<?>> pendingEnables;
+        synchronized ( m_pendingEnables )
+        {
+            pendingEnables = new ArrayList<>( m_pendingEnables );
+            m_pendingEnables.clear();
+        }
+        for ( Future<?> pending : pendingEnables )
+        {
+            if ( !pending.cancel( false ) )
+            {
+                try
+                {
+                    pending.get( m_configuration.lockTimeout(), TimeUnit.MILLISECONDS );
+                }
+                catch ( CancellationException | ExecutionException e )
+                {
+                    // failures are logged by the task
+                }
+                catch ( TimeoutException e )
+                {
+                    logger.log( LogService.LOG_WARNING,
+                        "BundleComponentActivator : Timeout waiting for component enablement to finish", null );
+                }
+                catch ( InterruptedException e )
+                {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
     /**
      * Finds component descriptors based on descriptor location.
      *
@@ -523,6 +647,8 @@ public class BundleComponentActivator implements ComponentActivator
             logger.log( LogService.LOG_DEBUG, "BundleComponentActivator : Will destroy {0} instances",
                 null, m_holders.size() );
 
+            awaitPendingEnables();
+
             for ( ComponentHolder<?> holder : m_holders )
             {
                 try
@@ -743,6 +869,28 @@ public class BundleComponentActivator implements ComponentActivator
         }
     }
 
+    /**
+     * Schedules the given <code>task</code> for asynchrounous execution once
+     * the given delay has passed. If the thread is not running, the task is
+     * scheduled without delay as by {@link #schedule(Runnable)}.
+     *
+     * @param task The component task to execute
+     * @param delay The delay in milliseconds
+     */
+    @Override
+    public void schedule(Runnable task, long delay)
+    {
+        ComponentActorThread cat = m_componentActor;
+        if ( isActive() && cat != null )
+        {
+            cat.schedule( task, delay );
+        }
+        else
+        {
+            schedule( task );
+        }
+    }
+
     @Override
     public BundleLogger getLogger() {
         return logger;
@@ -0,0 +1,165 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.scr.impl;
+
+
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.felix.scr.impl.logger.ScrLogger;
+import org.osgi.service.log.LogService;
+
+
+/**
+ * The <code>ComponentActivationPool</code> is a bounded set of threads used
+ * to enable the components of started bundles in parallel. The number of
+ * threads is taken from the <code>ds.activation.threads</code> configuration
+ * and follows its updates. Without threads, the pool does not accept tasks
+ * and the thread starting a bundle enables its components itself. Idle
+ * threads end after a while, so the pool does not keep threads once the
+ * bundles are started.
+ * <p>
+ * Components are enabled and activated by the pool threads exactly as they are
+ * by the thread starting a bundle, so the locks of the component managers
+ * are not affected. A component with unsatisfied references stays
+ * unsatisfied until the services it depends on are registered, and is then
+ * activated by the thread registering them. Thus only components which do not
+ * depend on each other are activated concurrently.
+ */
+class ComponentActivationPool
+{
+
+    private static final long KEEP_ALIVE_SECONDS = 60;
+
+    private final ThreadPoolExecutor executor;
+
+    private final ScrLogger logger;
+
+    private volatile int threads;
+
+
+    ComponentActivationPool( final int threads, final ScrLogger log )
+    {
+        logger = log;
+        this.threads = threads;
+        final int size = Math.max( threads, 1 );
+        executor = new ThreadPoolExecutor( size, size, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(), new ThreadFactory()
+        {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread( Runnable r )
+            {
+                Thread t = new Thread( r, "SCR Component Activator " + count.incrementAndGet() );
+                t.setDaemon( true );
+                return t;
+            }
+        } );
+        executor.allowCoreThreadTimeOut( true );
+    }
+
+
+    // whether the pool has threads to run tasks
+    boolean isEnabled()
+    {
+        return threads > 0;
+    }
+
+
+    // changes the number of threads, tasks already queued are still run
+    // by the remaining threads even if the number is 0
+    synchronized void setThreads( final int threads )
+    {
+        this.threads = threads;
+        final int size = Math.max( threads, 1 );
+        if ( size > executor.getMaximumPoolSize() )
+        {
+            executor.setMaximumPoolSize( size );
+            executor.setCorePoolSize( size );
+        }
+        else
+        {
+            executor.setCorePoolSize( size );
+            executor.setMaximumPoolSize( size );
+        }
+    }
+
+
+    // queue the given task to be run by one of the pool threads, logs any
+    // exception thrown by the task. Returns null if the pool has no threads
+    // or is terminated.
+    Future<?> schedule( final Runnable task )
+    {
+        if ( !isEnabled() )
+        {
+            return null;
+        }
+        try
+        {
+            return executor.submit( new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        logger.log( LogService.LOG_DEBUG, "Running task: " + task, null );
+                        task.run();
+                    }
+                    catch ( Throwable t )
+                    {
+                        logger.log( LogService.LOG_ERROR, "Unexpected problem executing task " + task, t );
+                    }
+                }
+            } );
+        }
+        catch ( RejectedExecutionException ree )
+        {
+            logger.log( LogService.LOG_DEBUG, "Component activation pool terminated, not running task {0}", null, task );
+            return null;
+        }
+    }
+
+
+    // stops accepting tasks and waits for the queued tasks to finish
+    void terminate( final long timeout )
+    {
+        executor.shutdown();
+        try
+        {
+            if ( !executor.awaitTermination( timeout, TimeUnit.MILLISECONDS ) )
+            {
+                logger.log( LogService.LOG_WARNING,
+                    "Component activation pool did not terminate within {0} milliseconds", null, timeout );
+                executor.shutdownNow();
+            }
+        }
+        catch ( InterruptedException e )
+        {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -20,6 +20,8 @@ package org.apache.felix.scr.impl;
 
 
 import java.util.LinkedList;
+import java.util.Timer;
+import java.util.TimerTask;
 
 import org.apache.felix.scr.impl.logger.ScrLogger;
 import org.osgi.service.log.LogService;
@@ -51,6 +53,12 @@ class ComponentActorThread implements Runnable
     // the queue of Runnable instances  to be run
     private final LinkedList<Runnable> tasks = new LinkedList<>();
 
+    // the timer delaying tasks before they are queued, created on demand
+    private Timer timer;
+
+    // whether tasks may still be delayed
+    private boolean terminated;
+
     private final ScrLogger logger;
 
 
@@ -131,6 +139,15 @@ class ComponentActorThread implements Runnable
     // of the queue
     void terminate()
     {
+        synchronized ( tasks )
+        {
+            terminated = true;
+            if ( timer != null )
+            {
+                timer.cancel();
+                timer = null;
+            }
+        }
         schedule( TERMINATION_TASK );
         synchronized ( tasks )
         {
@@ -174,4 +191,31 @@ class ComponentActorThread implements Runnable
             tasks.notifyAll();
         }
     }
+
+
+    // queue the given runnable to be run once the given delay in milliseconds
+    // has passed. Delayed tasks not queued yet are dropped on termination.
+    void schedule( final Runnable task, final long delay )
+    {
+        synchronized ( tasks )
+        {
+            if ( terminated )
+            {
+                logger.log( LogService.LOG_DEBUG, "Component Actor terminated, not scheduling {0}", null, task );
+                return;
+            }
+            if ( timer == null )
+            {
+                timer = new Timer( "SCR Component Actor Timer", true );
+            }
+            timer.schedule( new TimerTask()
+            {
+                @Override
+                public void run()
+                {
+                    schedule( task );
+                }
+            }, delay );
+        }
+    }
 }
@@ -83,6 +83,10 @@ public class ScrConfigurationImpl implements ScrConfiguration
 
     private boolean cacheMetadata;
 
+    private int activationThreads;
+
+    private long rebindCoalescingWindow;
+
     private long lockTimeout = DEFAULT_LOCK_TIMEOUT_MILLISECONDS;
 
     private long stopTimeout = DEFAULT_STOP_TIMEOUT_MILLISECONDS;
@@ -161,6 +165,7 @@ public class ScrConfigurationImpl implements ScrConfiguration
     {
         Boolean newGlobalExtender;
         Boolean oldGlobalExtender;
+        int newActivationThreads;
         synchronized (this)
         {
             if ( config == null )
@@ -178,6 +183,8 @@ public class ScrConfigurationImpl implements ScrConfiguration
                         serviceChangecountTimeout = DEFAULT_SERVICE_CHANGECOUNT_TIMEOUT_MILLISECONDS;
                         newGlobalExtender = false;
                         cacheMetadata = false;
+                        activationThreads = 0;
+                        rebindCoalescingWindow = 0;
                     }
                     else
                     {
@@ -190,6 +197,8 @@ public class ScrConfigurationImpl implements ScrConfiguration
                         serviceChangecountTimeout = getServiceChangecountTimeout();
                         newGlobalExtender = getDefaultGlobalExtender();
                         cacheMetadata = getDefaultCacheMetadata();
+                        activationThreads = getDefaultActivationThreads();
+                        rebindCoalescingWindow = getDefaultRebindCoalescingWindow();
                     }
                 }
                 else
@@ -210,6 +219,8 @@ public class ScrConfigurationImpl implements ScrConfiguration
                 newGlobalExtender = VALUE_TRUE.equalsIgnoreCase( String.valueOf( config.get( PROP_GLOBAL_EXTENDER) ) );
                 cacheMetadata = VALUE_TRUE.equalsIgnoreCase(
                     String.valueOf(config.get(PROP_CACHE_METADATA)));
+                activationThreads = getActivationThreads( config.get( PROP_ACTIVATION_THREADS ) );
+                rebindCoalescingWindow = getRebindCoalescingWindow( config.get( PROP_REBIND_COALESCING ) );
             }
             if ( scrCommand != null )
             {
@@ -217,7 +228,9 @@ public class ScrConfigurationImpl implements ScrConfiguration
             }
             oldGlobalExtender = this.globalExtender;
             this.globalExtender = newGlobalExtender;
+            newActivationThreads = activationThreads;
         }
+        activator.setActivationThreads( newActivationThreads );
         if ( newGlobalExtender != oldGlobalExtender )
         {
             activator.restart( newGlobalExtender );
@@ -279,6 +292,18 @@ public class ScrConfigurationImpl implements ScrConfiguration
         return cacheMetadata;
     }
 
+    @Override
+    public int activationThreads()
+    {
+        return activationThreads;
+    }
+
+    @Override
+    public long rebindCoalescingWindow()
+    {
+        return rebindCoalescingWindow;
+    }
+
     @Override
     public long serviceChangecountTimeout()
     {
@@ -348,6 +373,56 @@ public class ScrConfigurationImpl implements ScrConfiguration
             bundleContext.getProperty(PROP_CACHE_METADATA));
     }
 
+    private int getDefaultActivationThreads()
+    {
+        return getActivationThreads( bundleContext.getProperty( PROP_ACTIVATION_THREADS ) );
+    }
+
+    private int getActivationThreads( final Object threadsObject )
+    {
+        if ( threadsObject instanceof Number )
+        {
+            return Math.max( 0, ( ( Number ) threadsObject ).intValue() );
+        }
+        if ( threadsObject != null )
+        {
+            try
+            {
+                return Math.max( 0, Integer.parseInt( threadsObject.toString().trim() ) );
+            }
+            catch ( NumberFormatException nfe )
+            {
+                // fall back to enabling components without a pool
+            }
+        }
+        return 0;
+    }
+
+    private long getDefaultRebindCoalescingWindow()
+    {
+        return getRebindCoalescingWindow( bundleContext.getProperty( PROP_REBIND_COALESCING ) );
+    }
+
+    private long getRebindCoalescingWindow( final Object windowObject )
+    {
+        if ( windowObject instanceof Number )
+        {
+            return Math.max( 0, ( ( Number ) windowObject ).longValue() );
+        }
+        if ( windowObject != null )
+        {
+            try
+            {
+                return Math.max( 0, Long.parseLong( windowObject.toString().trim() ) );
+            }
+            catch ( NumberFormatException nfe )
+            {
+                // fall back to binding services as they are added
+            }
+        }
+        return 0;
+    }
+
     private int getLogLevel( final Object levelObject )
     {
         if ( levelObject != null )
@@ -123,6 +123,32 @@ class ScrMetaTypeProvider implements MetaTypeProvider
                 "Whether to extend all bundles whether or not visible to this bundle.",
                 false ) );
 
+        adList.add( new AttributeDefinitionImpl(
+                ScrConfiguration.PROP_ACTIVATION_THREADS,
+                "Activation threads",
+                "Number of threads enabling and activating the components of started bundles in parallel. "
+                    + "Components depending on each other are still activated in order as their references "
+                    + "become satisfied. The default of 0 enables components on the thread starting the bundle. "
+                    + "Changes apply to the bundles started afterwards.",
+                AttributeDefinition.INTEGER,
+                new String[] { String.valueOf(this.configuration.activationThreads())},
+                0, null, null) );
+
+        adList.add( new AttributeDefinitionImpl(
+                ScrConfiguration.PROP_REBIND_COALESCING,
+                "Rebind coalescing milliseconds",
+                "How long services added to a dynamic multiple reference of an active component are collected "
+                    + "before they are bound together. Field references using the replace strategy then get "
+                    + "a single new collection for all collected services. The collected services of all "
+                    + "components are bound one batch after the other on the single thread which also runs the "
+                    + "other asynchronous tasks of the Declarative Services implementation, so a slow bind "
+                    + "method delays the binds of other components. Removed services are unbound immediately "
+                    + "unless they are still being bound, in which case they are unbound once their batch is "
+                    + "complete. The default of 0 binds each service as soon as it is added.",
+                AttributeDefinition.LONG,
+                new String[] { String.valueOf(this.configuration.rebindCoalescingWindow())},
+                0, null, null) );
+
         return new ObjectClassDefinition()
         {
 
@@ -26,10 +26,24 @@ public class BindParameters extends BaseParameter
 {
 
     private final RefPair<?, ?> refPair;
+
+    private final boolean batched;
+
     public BindParameters(ComponentContextImpl<?> componentContext, RefPair<?, ?> refPair)
+    {
+        this(componentContext, refPair, false);
+    }
+
+    /**
+     * @param batched Whether more services of the same reference are bound
+     *      right after this one, in which case a replaced field collection
+     *      is only set when binding the last service
+     */
+    public BindParameters(ComponentContextImpl<?> componentContext, RefPair<?, ?> refPair, boolean batched)
     {
         super(componentContext);
         this.refPair = refPair;
+        this.batched = batched;
     }
 
     public RefPair getRefPair()
@@ -37,6 +51,11 @@ public class BindParameters extends BaseParameter
         return refPair;
     }
 
+    public boolean isBatched()
+    {
+        return batched;
+    }
+
     @SuppressWarnings({ "unchecked", "rawtypes" })
     public Object getServiceObject() {
       	return refPair.getServiceObject((ComponentContextImpl)this.getComponentContext());
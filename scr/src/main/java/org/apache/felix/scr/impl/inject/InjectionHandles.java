@@ -0,0 +1,198 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.scr.impl.inject;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+
+/**
+ * Method handles for the methods and fields used for injection. The handles
+ * are created once per member of a component class and are shared by all
+ * components and component instances using the class. They are kept with the
+ * declaring class, so they do not prevent the class from being unloaded.
+ * <p>
+ * Invoking a method handle avoids the access and argument checks done on
+ * each reflective call. If a handle cannot be created for a member, e.g.,
+ * because the field is final, <code>null</code> is returned and callers
+ * fall back to reflection.
+ */
+public class InjectionHandles
+{
+
+    private static final MethodType INVOKER_TYPE = MethodType.methodType( Object.class, Object.class, Object[].class );
+
+    private static final MethodType GETTER_TYPE = MethodType.methodType( Object.class, Object.class );
+
+    private static final MethodType SETTER_TYPE = MethodType.methodType( void.class, Object.class, Object.class );
+
+    // placeholder for members no handle can be created for
+    private static final MethodHandle NONE = MethodHandles.constant( Object.class, null );
+
+    private static final ClassValue<ConcurrentMap<Key, MethodHandle>> HANDLES = new ClassValue<ConcurrentMap<Key, MethodHandle>>()
+    {
+        @Override
+        protected ConcurrentMap<Key, MethodHandle> computeValue( Class<?> type )
+        {
+            return new ConcurrentHashMap<>();
+        }
+    };
+
+
+    private InjectionHandles()
+    {
+    }
+
+
+    /**
+     * Returns a method handle invoking the given instance method with the
+     * arguments of an array. The type of the handle is
+     * <code>(Object, Object[])Object</code>, where the result is
+     * <code>null</code> for <code>void</code> methods. Exceptions thrown by
+     * the method are thrown as is, i.e. they are not wrapped into an
+     * <code>InvocationTargetException</code>.
+     *
+     * @param method The method, which must be accessible.
+     * @return The method handle or <code>null</code> if no handle can be
+     *      created for the method.
+     */
+    public static MethodHandle getInvoker( final Method method )
+    {
+        final Key key = new Key( method, 0 );
+        MethodHandle handle = getCached( key );
+        if ( handle == null )
+        {
+            try
+            {
+                handle = MethodHandles.lookup().unreflect( method )
+                        .asSpreader( Object[].class, method.getParameterTypes().length )
+                        .asType( INVOKER_TYPE );
+            }
+            catch ( Exception e )
+            {
+                handle = NONE;
+            }
+            handle = putCached( key, handle );
+        }
+        return ( handle == NONE ) ? null : handle;
+    }
+
+
+    /**
+     * Returns a method handle reading the given instance field. The type of
+     * the handle is <code>(Object)Object</code>.
+     *
+     * @param field The field, which must be accessible.
+     * @return The method handle or <code>null</code> if no handle can be
+     *      created for the field.
+     */
+    public static MethodHandle getGetter( final Field field )
+    {
+        final Key key = new Key( field, 1 );
+        MethodHandle handle = getCached( key );
+        if ( handle == null )
+        {
+            try
+            {
+                handle = MethodHandles.lookup().unreflectGetter( field ).asType( GETTER_TYPE );
+            }
+            catch ( Exception e )
+            {
+                handle = NONE;
+            }
+            handle = putCached( key, handle );
+        }
+        return ( handle == NONE ) ? null : handle;
+    }
+
+
+    /**
+     * Returns a method handle writing the given instance field. The type of
+     * the handle is <code>(Object, Object)void</code>.
+     *
+     * @param field The field, which must be accessible.
+     * @return The method handle or <code>null</code> if no handle can be
+     *      created for the field, which is the case for final fields.
+     */
+    public static MethodHandle getSetter( final Field field )
+    {
+        final Key key = new Key( field, 2 );
+        MethodHandle handle = getCached( key );
+        if ( handle == null )
+        {
+            try
+            {
+                handle = MethodHandles.lookup().unreflectSetter( field ).asType( SETTER_TYPE );
+            }
+            catch ( Exception e )
+            {
+                handle = NONE;
+            }
+            handle = putCached( key, handle );
+        }
+        return ( handle == NONE ) ? null : handle;
+    }
+
+
+    private static MethodHandle getCached( final Key key )
+    {
+        return HANDLES.get( key.m_member.getDeclaringClass() ).get( key );
+    }
+
+
+    private static MethodHandle putCached( final Key key, final MethodHandle handle )
+    {
+        final MethodHandle existing = HANDLES.get( key.m_member.getDeclaringClass() ).putIfAbsent( key, handle );
+        return ( existing != null ) ? existing : handle;
+    }
+
+    private static final class Key
+    {
+        private final Member m_member;
+        private final int m_kind;
+
+
+        Key( final Member member, final int kind )
+        {
+            m_member = member;
+            m_kind = kind;
+        }
+
+
+        @Override
+        public int hashCode()
+        {
+            return m_member.hashCode() * 31 + m_kind;
+        }
+
+
+        @Override
+        public boolean equals( final Object obj )
+        {
+            return ( obj instanceof Key ) && ( ( Key ) obj ).m_kind == m_kind
+                    && ( ( Key ) obj ).m_member.equals( m_member );
+        }
+    }
+}
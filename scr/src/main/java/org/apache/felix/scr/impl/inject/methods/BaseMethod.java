@@ -19,6 +19,7 @@
 package org.apache.felix.scr.impl.inject.methods;
 
 
+import java.lang.invoke.MethodHandle;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
@@ -29,6 +30,7 @@ import java.util.Map;
 
 import org.apache.felix.scr.impl.inject.BaseParameter;
 import org.apache.felix.scr.impl.inject.ClassUtils;
+import org.apache.felix.scr.impl.inject.InjectionHandles;
 import org.apache.felix.scr.impl.inject.MethodResult;
 import org.apache.felix.scr.impl.logger.ComponentLogger;
 import org.apache.felix.scr.impl.metadata.DSVersion;
@@ -49,6 +51,9 @@ public abstract class BaseMethod<P extends BaseParameter, T>
 
     private volatile Method m_method;
 
+    // the handle invoking m_method or null to invoke it reflectively
+    private volatile MethodHandle m_handle;
+
     private final boolean m_methodRequired;
 
     private volatile State m_state;
@@ -109,6 +114,7 @@ public abstract class BaseMethod<P extends BaseParameter, T>
 
         if (m_method != null)
         {
+            m_handle = InjectionHandles.getInvoker( m_method );
             setTypes(methodInfo.getTypes());
             m_state = Resolved.INSTANCE;
             logger.log( LogService.LOG_DEBUG, "Found {0} method: {1}", null,
@@ -239,7 +245,7 @@ public abstract class BaseMethod<P extends BaseParameter, T>
                     logger.log(LogService.LOG_DEBUG, "invoking {0}: {1}: parameters {2}", null, getMethodNamePrefix(),
                             getMethodName(), Arrays.asList(getParametersForLogging(params)));
                 }
-                final Object result = m_method.invoke(componentInstance, params);
+                final Object result = invoke(componentInstance, params);
                 logger.log(LogService.LOG_DEBUG, "invoked {0}: {1}", null,
                         getMethodNamePrefix(), getMethodName() );
                 return new MethodResult((m_method.getReturnType() != Void.TYPE), (Map<String, Object>) result);
@@ -277,6 +283,25 @@ public abstract class BaseMethod<P extends BaseParameter, T>
         return MethodResult.VOID;
     }
 
+    private Object invoke(final Object componentInstance, final Object[] params)
+            throws IllegalAccessException, InvocationTargetException
+    {
+        final MethodHandle handle = m_handle;
+        if ( handle == null )
+        {
+            return m_method.invoke(componentInstance, params);
+        }
+        try
+        {
+            return (Object) handle.invokeExact(componentInstance, params);
+        }
+        catch ( Throwable t )
+        {
+            // report exceptions thrown by the method like Method.invoke
+            throw new InvocationTargetException( t );
+        }
+    }
+
     protected boolean returnValue()
     {
         // allow returning Map if declared as DS 1.2-Felix or newer
@@ -162,6 +162,8 @@ public abstract class AbstractComponentManager<S> implements ComponentManager<S>
 
     private volatile String failureReason;
 
+    private volatile long activationTime = -1;
+
     /**
      * The constructor receives both the container and the methods.
      *
@@ -230,6 +232,16 @@ public abstract class AbstractComponentManager<S> implements ComponentManager<S>
         return ScrConfiguration.DEFAULT_LOCK_TIMEOUT_MILLISECONDS;
     }
 
+    final long getRebindCoalescingWindow()
+    {
+        //for tests....
+        if (m_container.getActivator().getConfiguration() != null)
+        {
+            return m_container.getActivator().getConfiguration().rebindCoalescingWindow();
+        }
+        return 0;
+    }
+
     private void obtainLock(Lock lock)
     {
         try
@@ -1052,6 +1064,13 @@ public abstract class AbstractComponentManager<S> implements ComponentManager<S>
     abstract <T> void invokeUnbindMethod(DependencyManager<S, T> dependencyManager, RefPair<S, T> oldRefPair,
             int trackingCount);
 
+    /**
+     * Invoke the bind method for a batch of services added to a dynamic
+     * multiple reference, mapped to the tracking count of each service.
+     */
+    abstract <T> void invokeBindMethods(DependencyManager<S, T> dependencyManager,
+            Map<RefPair<S, T>, Integer> refPairs);
+
     void notifyWaiters()
     {
         if ( registrationManager.getServiceRegistration() != null )
@@ -1408,6 +1427,22 @@ public abstract class AbstractComponentManager<S> implements ComponentManager<S>
         this.failureReason = sw.toString();
     }
 
+    /**
+     * Returns the time in nanoseconds it took to create, bind and activate
+     * the last component instance or <code>-1</code> if no instance has
+     * been activated.
+     */
+    @Override
+    public long getActivationTime()
+    {
+        return this.activationTime;
+    }
+
+    void setActivationTime(final long nanos)
+    {
+        this.activationTime = nanos;
+    }
+
     void setState(final State previousState, final State newState)
     {
         if (state.compareAndSet(previousState, newState))
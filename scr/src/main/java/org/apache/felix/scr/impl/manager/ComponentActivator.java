@@ -36,6 +36,8 @@ public interface ComponentActivator extends ExtendedServiceListenerContext<Exten
 
     void schedule(Runnable runnable);
 
+    void schedule(Runnable runnable, long delay);
+
     long registerComponentId(AbstractComponentManager<?> sAbstractComponentManager);
 
     void unregisterComponentId(AbstractComponentManager<?> sAbstractComponentManager);
@@ -336,6 +336,11 @@ public int hashCode()
     {
     }
 
+    @Override
+    <T> void invokeBindMethods( DependencyManager<S, T> dependencyManager, Map<RefPair<S, T>, Integer> refPairs )
+    {
+    }
+
     //---------- Component interface
 
 
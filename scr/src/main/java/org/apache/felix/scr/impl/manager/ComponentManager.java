@@ -41,6 +41,8 @@ public interface ComponentManager<S> {
 
     String getFailureReason();
 
+    long getActivationTime();
+
     List<? extends ReferenceManager<S, ?>> getReferenceManagers();
 
     ServiceReference<S> getRegisteredServiceReference();
@@ -22,8 +22,11 @@ import java.security.Permission;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.SortedMap;
 import java.util.TreeMap;
 import java.util.concurrent.CountDownLatch;
@@ -138,6 +141,11 @@ public class DependencyManager<S, T> implements ReferenceManager<S, T>
         void setTrackerOpened();
 
         void setPreviousRefMap(Map<ServiceReference<T>, RefPair<S, T>> previousRefMap);
+
+        /**
+         * @return whether the given service was added to an active component but its bind is not complete yet.
+         */
+        boolean isPending(RefPair<S, T> refPair);
     }
 
     private abstract class AbstractCustomizer implements Customizer<S, T>
@@ -186,6 +194,12 @@ public class DependencyManager<S, T> implements ReferenceManager<S, T>
             return trackerOpened;
         }
 
+        @Override
+        public boolean isPending(RefPair<S, T> refPair)
+        {
+            return false;
+        }
+
         @Override
         public void setTrackerOpened()
         {
@@ -297,6 +311,15 @@ public class DependencyManager<S, T> implements ReferenceManager<S, T>
         private RefPair<S, T> lastRefPair;
         private int lastRefPairTrackingCount;
 
+        // services added while the component is active which are not bound
+        // yet, mapped to the tracking count of their event
+        private final Map<RefPair<S, T>, Integer> pendingBinds = new LinkedHashMap<>();
+
+        // services being bound by bindPending and the thread binding them,
+        // guarded by pendingBinds like the queued services
+        private Set<RefPair<S, T>> bindingPairs;
+        private Thread bindingThread;
+
         @Override
         public RefPair<S, T> addingService(ServiceReference<T> serviceReference)
         {
@@ -317,7 +340,15 @@ public class DependencyManager<S, T> implements ReferenceManager<S, T>
             boolean tracked = false;
             if (getPreviousRefMap().remove(serviceReference) == null)
             {
-                if (isActive())
+                long window = m_componentManager.getRebindCoalescingWindow();
+                if (isActive() && window > 0)
+                {
+                    m_componentManager.getLogger().log(LogService.LOG_DEBUG,
+                        "dm {0} tracking {1} MultipleDynamic already active, queueing {2}",
+                        null, getName(), trackingCount, serviceReference );
+                    queueBind(refPair, trackingCount, window);
+                }
+                else if (isActive())
                 {
                     m_componentManager.getLogger().log(LogService.LOG_DEBUG,
                         "dm {0} tracking {1} MultipleDynamic already active, binding {2}",
@@ -374,10 +405,25 @@ public class DependencyManager<S, T> implements ReferenceManager<S, T>
             m_componentManager.getLogger().log(LogService.LOG_DEBUG, "dm {0} tracking {1} MultipleDynamic removed {2} (enter)",
                     null, getName(), trackingCount, serviceReference );
             refPair.markDeleted();
+            // a service still waiting to be bound must not be unbound
+            boolean queued;
+            // a service removed by a bind method of the batch it is bound in,
+            // or whose batch is not complete within the lock timeout, is
+            // unbound once the batch is complete
+            boolean binding;
+            synchronized (pendingBinds)
+            {
+                queued = pendingBinds.remove(refPair) != null;
+                binding = bindingThread == Thread.currentThread() && bindingPairs.contains(refPair);
+            }
+            if (!queued && !binding)
+            {
+                binding = !waitForBind(refPair);
+            }
             boolean unbind = cardinalitySatisfied(getTracker().getServiceCount());
             if (unbind)
             {
-                if (isActive())
+                if (isActive() && !queued && !binding)
                 {
                     m_componentManager.invokeUnbindMethod(DependencyManager.this, refPair, trackingCount);
                 }
@@ -387,7 +433,7 @@ public class DependencyManager<S, T> implements ReferenceManager<S, T>
             }
             else
             {
-                lastRefPair = refPair;
+                lastRefPair = queued || binding ? null : refPair;
                 lastRefPairTrackingCount = trackingCount;
                 tracked(trackingCount);
                 deactivateComponentManager();
@@ -396,7 +442,14 @@ public class DependencyManager<S, T> implements ReferenceManager<S, T>
                     "dm {0} tracking {1} MultipleDynamic removed (deactivate) {2}",
                     null, getName(), trackingCount, serviceReference );
             }
-            ungetService(refPair);
+            if (binding)
+            {
+                unbindAfterPending(refPair, trackingCount);
+            }
+            else
+            {
+                ungetService(refPair);
+            }
         }
 
         @Override
@@ -429,9 +482,150 @@ public class DependencyManager<S, T> implements ReferenceManager<S, T>
             return false;
         }
 
+        // collects the given service to be bound with the other services added
+        // within the given number of milliseconds
+        private void queueBind(RefPair<S, T> refPair, int trackingCount, long window)
+        {
+            synchronized (pendingBinds)
+            {
+                pendingBinds.put(refPair, trackingCount);
+                if (pendingBinds.size() > 1)
+                {
+                    // already scheduled
+                    return;
+                }
+            }
+            m_componentManager.getActivator().schedule(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    bindPending();
+                }
+
+                @Override
+                public String toString()
+                {
+                    return "Bind pending services of reference " + getName();
+                }
+            }, window);
+        }
+
+        private void bindPending()
+        {
+            Map<RefPair<S, T>, Integer> refPairs;
+            synchronized (pendingBinds)
+            {
+                if (pendingBinds.isEmpty())
+                {
+                    return;
+                }
+                refPairs = new LinkedHashMap<>(pendingBinds);
+                pendingBinds.clear();
+                // the services stay pending until their bind is complete, so
+                // that they are not unbound before they are bound
+                bindingPairs = refPairs.keySet();
+                bindingThread = Thread.currentThread();
+            }
+            try
+            {
+                m_componentManager.getLogger().log(LogService.LOG_DEBUG, "dm {0} MultipleDynamic binding {1} pending services",
+                        null, getName(), refPairs.size() );
+                m_componentManager.invokeBindMethods(DependencyManager.this, refPairs);
+                for (Map.Entry<RefPair<S, T>, Integer> entry : refPairs.entrySet())
+                {
+                    if (entry.getKey().isFailed() && !entry.getKey().isDeleted())
+                    {
+                        m_componentManager.registerMissingDependency(DependencyManager.this, entry.getKey().getRef(),
+                            entry.getValue());
+                    }
+                }
+            }
+            finally
+            {
+                synchronized (pendingBinds)
+                {
+                    bindingPairs = null;
+                    bindingThread = null;
+                    pendingBinds.notifyAll();
+                }
+            }
+        }
+
+        // waits until the given service is no longer being bound by another
+        // thread, returns false if it is still being bound
+        private boolean waitForBind(RefPair<S, T> refPair)
+        {
+            synchronized (pendingBinds)
+            {
+                long timeout = m_componentManager.getLockTimeout();
+                long deadline = System.currentTimeMillis() + timeout;
+                while (bindingPairs != null && bindingPairs.contains(refPair))
+                {
+                    if (timeout <= 0)
+                    {
+                        m_componentManager.getLogger().log(LogService.LOG_ERROR,
+                            "dm {0} MultipleDynamic : timeout waiting for the bind of {1} to complete, unbinding it afterwards",
+                            null, getName(), refPair.getRef() );
+                        m_componentManager.dumpThreads();
+                        return false;
+                    }
+                    try
+                    {
+                        pendingBinds.wait(timeout);
+                    }
+                    catch (InterruptedException e)
+                    {
+                        Thread.currentThread().interrupt();
+                        return false;
+                    }
+                    timeout = deadline - System.currentTimeMillis();
+                }
+                return true;
+            }
+        }
+
+        // unbinds the given service after the batch it is bound in, which is
+        // run by the component actor as well
+        private void unbindAfterPending(final RefPair<S, T> refPair, final int trackingCount)
+        {
+            m_componentManager.getActivator().schedule(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    if (isActive() && !refPair.isFailed())
+                    {
+                        m_componentManager.invokeUnbindMethod(DependencyManager.this, refPair, trackingCount);
+                    }
+                    ungetService(refPair);
+                }
+
+                @Override
+                public String toString()
+                {
+                    return "Unbind removed service of reference " + getName();
+                }
+            });
+        }
+
+        @Override
+        public boolean isPending(RefPair<S, T> refPair)
+        {
+            synchronized (pendingBinds)
+            {
+                return pendingBinds.containsKey(refPair)
+                    || (bindingPairs != null && bindingPairs.contains(refPair));
+            }
+        }
+
         @Override
         public void close()
         {
+            synchronized (pendingBinds)
+            {
+                pendingBinds.clear();
+            }
             AtomicInteger trackingCount = new AtomicInteger();
             for (RefPair<S, T> ref : getRefs(trackingCount))
             {
@@ -1242,6 +1436,12 @@ public class DependencyManager<S, T> implements ReferenceManager<S, T>
         {
         }
 
+        @Override
+        public boolean isPending(RefPair<S, T> refPair)
+        {
+            return false;
+        }
+
         @Override
         public RefPair<S, T> addingService(ServiceReference<T> tServiceReference)
         {
@@ -1677,7 +1877,8 @@ public class DependencyManager<S, T> implements ReferenceManager<S, T>
         m_componentManager.waitForTracked(trackingCount.get());
         for (RefPair<S, T> boundRef : refPairs)
         {
-            if (doUnbind && !boundRef.isFailed())
+            // services still waiting to be bound are not unbound
+            if (doUnbind && !boundRef.isFailed() && !m_customizer.isPending(boundRef))
             {
                 invokeUnbindMethod(componentContext, boundRef, trackingCount.get(), edgeInfo);
             }
@@ -1797,6 +1998,65 @@ public class DependencyManager<S, T> implements ReferenceManager<S, T>
         }
     }
 
+    /**
+     * Calls the bind method for each of the services added to a dynamic
+     * multiple reference while the component was active, in the order they
+     * were added. Services whose tracking count is out of range for the
+     * instance are skipped, as for {@link #invokeBindMethod(ComponentContextImpl, RefPair, int, EdgeInfo)}.
+     * A field using the replace strategy is set only once, after all services
+     * have been added to it.
+     *
+     * @param componentContext instance we are binding to
+     * @param refPairs the service reference, service object tuples mapped to
+     *      the service event counter of each service
+     * @param info EdgeInfo for the combination of this instance and this dependency manager.
+     */
+    void invokeBindMethods(ComponentContextImpl<S> componentContext, Map<RefPair<S, T>, Integer> refPairs,
+        EdgeInfo info)
+    {
+        if (componentContext.getImplementationObject(false) == null)
+        {
+            m_componentManager.getLogger().log(LogService.LOG_DEBUG,
+                "DependencyManager : component not yet created, assuming bind method calls succeeded", null);
+            return;
+        }
+        List<RefPair<S, T>> toBind = new ArrayList<>(refPairs.size());
+        synchronized (m_tracker.tracked())
+        {
+            for (Map.Entry<RefPair<S, T>, Integer> entry : refPairs.entrySet())
+            {
+                //ignore events before open started or we will have duplicate binds.
+                if (!info.outOfRange(entry.getValue()))
+                {
+                    toBind.add(entry.getKey());
+                }
+            }
+        }
+        // obtain all services first, so the last one to be bound is known
+        final ReferenceMethod bindMethod = m_bindMethods.getBind();
+        for (Iterator<RefPair<S, T>> i = toBind.iterator(); i.hasNext();)
+        {
+            RefPair<S, T> refPair = i.next();
+            if (!getServiceObject(componentContext, bindMethod, refPair))
+            {
+                m_componentManager.getLogger().log(LogService.LOG_WARNING,
+                    "DependencyManager : invokeBindMethods : Service not available from service registry for ServiceReference {0} for reference {1}",
+                    null, refPair.getRef(), getName() );
+                i.remove();
+            }
+        }
+        for (int i = 0; i < toBind.size(); i++)
+        {
+            RefPair<S, T> refPair = toBind.get(i);
+            MethodResult result = bindMethod.invoke(componentContext.getImplementationObject(false),
+                new BindParameters(componentContext, refPair, i < toBind.size() - 1), MethodResult.VOID);
+            if (result != null)
+            {
+                m_componentManager.setServiceProperties(result, refPairs.get(refPair));
+            }
+        }
+    }
+
     private boolean doInvokeBindMethod(ComponentContextImpl<S> componentContext,
             final ReferenceMethod bindMethod,
             RefPair<S, T> refPair,
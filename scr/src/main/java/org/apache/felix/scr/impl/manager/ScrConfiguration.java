@@ -70,6 +70,10 @@ public interface ScrConfiguration
 
     String PROP_CACHE_METADATA = "ds.cache.metadata";
 
+    String PROP_ACTIVATION_THREADS = "ds.activation.threads";
+
+    String PROP_REBIND_COALESCING = "ds.rebind.coalescing.milliseconds";
+
     /**
      * Returns the current log level.
      * @return
@@ -101,4 +105,25 @@ public interface ScrConfiguration
 
     boolean cacheMetadata();
 
+    /**
+     * Returns the number of threads used to enable and activate the
+     * components of started bundles. If this is zero, which is the default,
+     * components are enabled by the thread starting the bundle.
+     *
+     * @since 2.2
+     */
+    int activationThreads();
+
+    /**
+     * Returns the number of milliseconds services added to the dynamic
+     * multiple references of an active component are collected before they
+     * are bound together. If this is zero, which is the default, services
+     * are bound as soon as they are added. The collected services are bound
+     * on the single thread running the asynchronous tasks of the
+     * implementation.
+     *
+     * @since 2.2
+     */
+    long rebindCoalescingWindow();
+
 }
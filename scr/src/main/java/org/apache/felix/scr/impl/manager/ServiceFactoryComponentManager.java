@@ -23,6 +23,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Dictionary;
 import java.util.IdentityHashMap;
+import java.util.Map;
 
 import org.apache.felix.scr.impl.inject.ComponentMethods;
 import org.apache.felix.scr.impl.inject.LifecycleMethod;
@@ -197,6 +198,15 @@ public class ServiceFactoryComponentManager<S> extends SingleComponentManager<S>
         }
     }
 
+    @Override
+    <T> void invokeBindMethods( DependencyManager<S, T> dependencyManager, Map<RefPair<S, T>, Integer> refPairs )
+    {
+        for ( ComponentContextImpl<S> cc : getComponentContexts() )
+        {
+            dependencyManager.invokeBindMethods( cc, refPairs, cc.getEdgeInfo( dependencyManager ) );
+        }
+    }
+
     @Override
     <T> boolean invokeUpdatedMethod( DependencyManager<S, T> dependencyManager, RefPair<S, T> refPair, int trackingCount )
     {
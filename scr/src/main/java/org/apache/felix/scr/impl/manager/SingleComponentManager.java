@@ -224,6 +224,7 @@ public class SingleComponentManager<S> extends AbstractComponentManager<S> imple
     @SuppressWarnings("unchecked")
     protected S createImplementationObject( Bundle usingBundle, SetImplementationObject<S> setter, ComponentContextImpl<S> componentContext )
     {
+        final long start = System.nanoTime();
         S implementationObject = null;
 
         // 1. Load the component implementation class
@@ -388,6 +389,7 @@ public class SingleComponentManager<S> extends AbstractComponentManager<S> imple
             setServiceProperties( result, null );
         }
 
+        setActivationTime( System.nanoTime() - start );
         return implementationObject;
     }
 
@@ -436,6 +438,17 @@ public class SingleComponentManager<S> extends AbstractComponentManager<S> imple
         }
     }
 
+    @Override
+    <T> void invokeBindMethods( DependencyManager<S, T> dependencyManager, Map<RefPair<S, T>, Integer> refPairs )
+    {
+        ComponentContextImpl<S> componentContext = m_componentContext;
+        if ( componentContext != null )
+        {
+            EdgeInfo info = componentContext.getEdgeInfo( dependencyManager );
+            dependencyManager.invokeBindMethods( componentContext, refPairs, info );
+        }
+    }
+
     @Override
     <T> boolean invokeUpdatedMethod( DependencyManager<S, T> dependencyManager, RefPair<S, T> refPair, int trackingCount )
     {
@@ -22,6 +22,7 @@ import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -31,7 +32,7 @@ public class MetadataStoreHelper
 {
     // The version of the component metadata store.  If the
     // stored metadata is not this version then the cache is ignored
-    static final int STORE_VERSION = 1;
+    static final int STORE_VERSION = 2;
 
     static final byte STRING_NULL = 0;
     static final byte STRING_OBJECT = 1;
@@ -81,6 +82,15 @@ public class MetadataStoreHelper
             return s;
         }
 
+        /**
+         * Returns the strings read with {@link #readIndexedString(DataInputStream)}
+         * in the order of their indices.
+         */
+        public List<String> getStrings()
+        {
+            return Collections.unmodifiableList(stringTable);
+        }
+
         private void addToStringTable(String s, int index)
         {
             if (index == stringTable.size())
@@ -0,0 +1,138 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.scr.impl.metadata;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.felix.scr.impl.metadata.MetadataStoreHelper.MetaDataReader;
+
+/**
+ * The component metadata of a bundle as read from the component metadata
+ * store. The metadata is kept in its stored form until it is first accessed,
+ * so the components of bundles which are never started are not decoded.
+ * Until then, the stored form can also be written back to a new store as is,
+ * provided the strings of the reader are written first.
+ */
+public class StoredComponentMetadata extends AbstractList<ComponentMetadata>
+{
+    private final MetaDataReader m_metaDataReader;
+
+    private final byte[] m_data;
+
+    private final int m_offset;
+
+    private final int m_length;
+
+    private final int m_size;
+
+    private volatile List<ComponentMetadata> m_components;
+
+    /**
+     * @param metaDataReader The reader whose string table the stored
+     *      components refer to
+     * @param data The store contents
+     * @param offset The offset of the first component
+     * @param length The number of bytes used by the components
+     * @param size The number of components
+     */
+    public StoredComponentMetadata(MetaDataReader metaDataReader, byte[] data,
+        int offset, int length, int size)
+    {
+        m_metaDataReader = metaDataReader;
+        m_data = data;
+        m_offset = offset;
+        m_length = length;
+        m_size = size;
+    }
+
+    /**
+     * Decodes the component metadata, if not done yet.
+     *
+     * @return The component metadata
+     * @throws IOException If the stored form cannot be decoded
+     */
+    public List<ComponentMetadata> load() throws IOException
+    {
+        List<ComponentMetadata> components = m_components;
+        if (components == null)
+        {
+            synchronized (this)
+            {
+                components = m_components;
+                if (components == null)
+                {
+                    DataInputStream in = new DataInputStream(
+                        new ByteArrayInputStream(m_data, m_offset, m_length));
+                    components = new ArrayList<>(m_size);
+                    for (int i = 0; i < m_size; i++)
+                    {
+                        components.add(ComponentMetadata.load(in, m_metaDataReader));
+                    }
+                    components = Collections.unmodifiableList(components);
+                    m_components = components;
+                }
+            }
+        }
+        return components;
+    }
+
+    public boolean isLoaded()
+    {
+        return m_components != null;
+    }
+
+    public MetaDataReader getMetaDataReader()
+    {
+        return m_metaDataReader;
+    }
+
+    /**
+     * Writes the stored form of the components.
+     */
+    public void writeTo(DataOutputStream out) throws IOException
+    {
+        out.write(m_data, m_offset, m_length);
+    }
+
+    @Override
+    public ComponentMetadata get(int index)
+    {
+        try
+        {
+            return load().get(index);
+        }
+        catch (IOException e)
+        {
+            throw new IllegalStateException("Cannot decode stored component metadata", e);
+        }
+    }
+
+    @Override
+    public int size()
+    {
+        return m_size;
+    }
+}
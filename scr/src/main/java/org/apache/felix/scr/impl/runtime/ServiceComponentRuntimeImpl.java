@@ -27,6 +27,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
+import org.apache.felix.scr.component.ExtComponentConfigurationDTO;
 import org.apache.felix.scr.impl.ComponentRegistry;
 import org.apache.felix.scr.impl.manager.ComponentHolder;
 import org.apache.felix.scr.impl.manager.ComponentManager;
@@ -211,7 +212,7 @@ public class ServiceComponentRuntimeImpl implements ServiceComponentRuntime, Ser
 
     private ComponentConfigurationDTO managerToConfiguration(final ComponentManager<?> manager, final ComponentDescriptionDTO description)
     {
-        final ComponentConfigurationDTO dto = new ComponentConfigurationDTO();
+        final ExtComponentConfigurationDTO dto = new ExtComponentConfigurationDTO();
         dto.satisfiedReferences = satisfiedRefManagersToDTO(manager.getReferenceManagers());
         dto.unsatisfiedReferences = unsatisfiedRefManagersToDTO(manager.getReferenceManagers());
         dto.description = description;
@@ -229,6 +230,7 @@ public class ServiceComponentRuntimeImpl implements ServiceComponentRuntime, Ser
             dto.state = ComponentConfigurationDTO.FAILED_ACTIVATION;
             dto.failure = manager.getFailureReason();
         }
+        dto.activationTime = manager.getActivationTime();
         return dto;
     }
 
@@ -18,14 +18,31 @@
  */
 package org.apache.felix.scr.impl;
 
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Enumeration;
+import java.util.List;
 import java.util.Vector;
 
+import org.apache.felix.scr.impl.logger.MockScrLogger;
+import org.apache.felix.scr.impl.logger.ScrLogger;
+import org.apache.felix.scr.impl.manager.ExtendedServiceEvent;
+import org.apache.felix.scr.impl.manager.ExtendedServiceListener;
+import org.apache.felix.scr.impl.manager.ScrConfiguration;
+import org.apache.felix.scr.impl.metadata.ComponentMetadata;
 import org.mockito.Mockito;
 import org.osgi.framework.Bundle;
+import org.osgi.framework.Filter;
+import org.osgi.framework.FrameworkUtil;
+import org.osgi.framework.ServiceEvent;
+import org.osgi.framework.ServiceListener;
+import org.osgi.framework.ServiceReference;
 
 import junit.framework.TestCase;
 
@@ -178,4 +195,109 @@ public class BundleComponentActivatorTest extends TestCase
         assertEquals( "Descriptor length", 0, actualUrls.length );
     }
 
-}
\ No newline at end of file
+
+    /**
+     * Test that dependency managers tracking the same service class share a
+     * single service listener and events are forwarded per target filter.
+     */
+    public void test_sharedServiceListener() throws Exception
+    {
+        final List<ServiceListener> registered = new ArrayList<>();
+        final MockBundleContext context = new MockBundleContext( new MockBundle() )
+        {
+            @Override
+            public void addServiceListener( ServiceListener listener, String filter )
+            {
+                // ignore the log service tracker of the activator
+                if ( "(objectClass=foo)".equals( filter ) )
+                {
+                    registered.add( listener );
+                }
+            }
+
+            @Override
+            public void removeServiceListener( ServiceListener listener )
+            {
+                registered.remove( listener );
+            }
+        };
+        final ScrConfiguration configuration = Mockito.mock( ScrConfiguration.class );
+        final ScrLogger logger = new MockScrLogger();
+        final BundleComponentActivator activator = new BundleComponentActivator( logger,
+            new ComponentRegistry( configuration, logger ), null, null, context,
+            configuration, Collections.<ComponentMetadata> emptyList() );
+
+        final RecordingListener first = new RecordingListener();
+        final RecordingListener second = new RecordingListener();
+        final RecordingListener unfiltered = new RecordingListener();
+        final Filter firstFilter = FrameworkUtil.createFilter( "(name=a)" );
+        final Filter secondFilter = FrameworkUtil.createFilter( "(name=a)" );
+        activator.addServiceListener( "(objectClass=foo)", firstFilter, first );
+        activator.addServiceListener( "(objectClass=foo)", secondFilter, second );
+        activator.addServiceListener( "(objectClass=foo)", null, unfiltered );
+        assertEquals( "Shared service listener", 1, registered.size() );
+
+        final ServiceListener listener = registered.get( 0 );
+        listener.serviceChanged( new ServiceEvent( ServiceEvent.REGISTERED, createReference( "a" ) ) );
+        assertEquals( Arrays.asList( ServiceEvent.REGISTERED ), first.types );
+        assertEquals( Arrays.asList( ServiceEvent.REGISTERED ), second.types );
+        assertEquals( Arrays.asList( ServiceEvent.REGISTERED ), unfiltered.types );
+
+        listener.serviceChanged( new ServiceEvent( ServiceEvent.MODIFIED, createReference( "b" ) ) );
+        assertEquals( Arrays.asList( ServiceEvent.REGISTERED, ServiceEvent.MODIFIED_ENDMATCH ), first.types );
+        assertEquals( Arrays.asList( ServiceEvent.REGISTERED, ServiceEvent.MODIFIED_ENDMATCH ), second.types );
+        assertEquals( Arrays.asList( ServiceEvent.REGISTERED, ServiceEvent.MODIFIED ), unfiltered.types );
+
+        activator.removeServiceListener( "(objectClass=foo)", firstFilter, first );
+        activator.removeServiceListener( "(objectClass=foo)", null, unfiltered );
+        listener.serviceChanged( new ServiceEvent( ServiceEvent.UNREGISTERING, createReference( "a" ) ) );
+        assertEquals( 2, first.types.size() );
+        assertEquals( 3, second.types.size() );
+        assertEquals( 2, unfiltered.types.size() );
+        assertEquals( "Service listener still registered", 1, registered.size() );
+
+        activator.removeServiceListener( "(objectClass=foo)", secondFilter, second );
+        assertEquals( "Service listener unregistered", 0, registered.size() );
+    }
+
+    private static ServiceReference<?> createReference( final String name )
+    {
+        return ( ServiceReference<?> ) Proxy.newProxyInstance( ServiceReference.class.getClassLoader(),
+            new Class<?>[] { ServiceReference.class }, new InvocationHandler()
+            {
+                @Override
+                public Object invoke( Object proxy, Method method, Object[] args )
+                {
+                    if ( "getProperty".equals( method.getName() ) )
+                    {
+                        return "name".equalsIgnoreCase( ( String ) args[0] ) ? name : null;
+                    }
+                    if ( "getPropertyKeys".equals( method.getName() ) )
+                    {
+                        return new String[] { "name" };
+                    }
+                    if ( "hashCode".equals( method.getName() ) )
+                    {
+                        return System.identityHashCode( proxy );
+                    }
+                    if ( "equals".equals( method.getName() ) )
+                    {
+                        return proxy == args[0];
+                    }
+                    return null;
+                }
+            } );
+    }
+
+    private static class RecordingListener implements ExtendedServiceListener<ExtendedServiceEvent>
+    {
+        final List<Integer> types = new ArrayList<>();
+
+        @Override
+        public void serviceChanged( ExtendedServiceEvent event )
+        {
+            types.add( event.getType() );
+        }
+    }
+
+}
@@ -0,0 +1,169 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.scr.impl;
+
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.felix.scr.impl.logger.MockScrLogger;
+
+import junit.framework.TestCase;
+
+
+public class ComponentActivationPoolTest extends TestCase
+{
+
+    public void test_parallel() throws Exception
+    {
+        final ComponentActivationPool pool = new ComponentActivationPool( 2, new MockScrLogger() );
+        try
+        {
+            // both tasks only complete if they run at the same time
+            final CountDownLatch latch = new CountDownLatch( 2 );
+            final Runnable task = new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    latch.countDown();
+                    try
+                    {
+                        latch.await( 10, TimeUnit.SECONDS );
+                    }
+                    catch ( InterruptedException e )
+                    {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            };
+            Future<?> first = pool.schedule( task );
+            Future<?> second = pool.schedule( task );
+            first.get( 10, TimeUnit.SECONDS );
+            second.get( 10, TimeUnit.SECONDS );
+            assertEquals( 0, latch.getCount() );
+        }
+        finally
+        {
+            pool.terminate( 10000 );
+        }
+    }
+
+
+    public void test_failing_task() throws Exception
+    {
+        final ComponentActivationPool pool = new ComponentActivationPool( 1, new MockScrLogger() );
+        try
+        {
+            Future<?> failing = pool.schedule( new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    throw new IllegalStateException( "failed" );
+                }
+            } );
+            // the failure is logged and does not affect the pool
+            assertNull( failing.get( 10, TimeUnit.SECONDS ) );
+
+            final CountDownLatch latch = new CountDownLatch( 1 );
+            pool.schedule( new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    latch.countDown();
+                }
+            } );
+            assertTrue( latch.await( 10, TimeUnit.SECONDS ) );
+        }
+        finally
+        {
+            pool.terminate( 10000 );
+        }
+    }
+
+
+    public void test_set_threads() throws Exception
+    {
+        final ComponentActivationPool pool = new ComponentActivationPool( 0, new MockScrLogger() );
+        try
+        {
+            final Runnable noop = new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                }
+            };
+            // without threads the caller runs the tasks itself
+            assertFalse( pool.isEnabled() );
+            assertNull( pool.schedule( noop ) );
+
+            pool.setThreads( 2 );
+            assertTrue( pool.isEnabled() );
+            final CountDownLatch latch = new CountDownLatch( 2 );
+            final Runnable task = new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    latch.countDown();
+                    try
+                    {
+                        latch.await( 10, TimeUnit.SECONDS );
+                    }
+                    catch ( InterruptedException e )
+                    {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            };
+            Future<?> first = pool.schedule( task );
+            Future<?> second = pool.schedule( task );
+            first.get( 10, TimeUnit.SECONDS );
+            second.get( 10, TimeUnit.SECONDS );
+            assertEquals( 0, latch.getCount() );
+
+            pool.setThreads( 0 );
+            assertFalse( pool.isEnabled() );
+            assertNull( pool.schedule( noop ) );
+        }
+        finally
+        {
+            pool.terminate( 10000 );
+        }
+    }
+
+
+    public void test_terminated() throws Exception
+    {
+        final ComponentActivationPool pool = new ComponentActivationPool( 1, new MockScrLogger() );
+        pool.terminate( 10000 );
+        assertNull( pool.schedule( new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                fail( "Task run after termination" );
+            }
+        } ) );
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.scr.impl;
+
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.felix.scr.impl.logger.MockScrLogger;
+
+import junit.framework.TestCase;
+
+
+public class ComponentActorThreadTest extends TestCase
+{
+
+    public void test_delayed() throws Exception
+    {
+        final ComponentActorThread cat = new ComponentActorThread( new MockScrLogger() );
+        final Thread t = new Thread( cat, "SCR Component Actor" );
+        t.setDaemon( true );
+        t.start();
+        try
+        {
+            final CountDownLatch latch = new CountDownLatch( 1 );
+            final AtomicReference<Thread> runner = new AtomicReference<>();
+            final long start = System.nanoTime();
+            cat.schedule( new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    runner.set( Thread.currentThread() );
+                    latch.countDown();
+                }
+            }, 100 );
+            assertTrue( latch.await( 10, TimeUnit.SECONDS ) );
+            assertTrue( System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos( 100 ) );
+            // delayed tasks are run by the actor thread
+            assertSame( t, runner.get() );
+        }
+        finally
+        {
+            cat.terminate();
+        }
+    }
+
+
+    public void test_terminated() throws Exception
+    {
+        final ComponentActorThread cat = new ComponentActorThread( new MockScrLogger() );
+        final Thread t = new Thread( cat, "SCR Component Actor" );
+        t.setDaemon( true );
+        t.start();
+        final CountDownLatch latch = new CountDownLatch( 1 );
+        final Runnable task = new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                latch.countDown();
+            }
+        };
+        // neither pending nor later delayed tasks are run after termination
+        cat.schedule( task, 100 );
+        cat.terminate();
+        cat.schedule( task, 0 );
+        t.join( 10000 );
+        assertFalse( t.isAlive() );
+        assertFalse( latch.await( 200, TimeUnit.MILLISECONDS ) );
+    }
+}
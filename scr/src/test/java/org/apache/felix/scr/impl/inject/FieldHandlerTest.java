@@ -0,0 +1,181 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.scr.impl.inject;
+
+
+import java.util.Arrays;
+import java.util.Dictionary;
+import java.util.Hashtable;
+import java.util.List;
+
+import org.apache.felix.scr.impl.MockBundle;
+import org.apache.felix.scr.impl.inject.field.FieldHandler;
+import org.apache.felix.scr.impl.logger.ComponentLogger;
+import org.apache.felix.scr.impl.logger.MockComponentLogger;
+import org.apache.felix.scr.impl.manager.ComponentActivator;
+import org.apache.felix.scr.impl.manager.ComponentContainer;
+import org.apache.felix.scr.impl.manager.ComponentContextImpl;
+import org.apache.felix.scr.impl.manager.RefPair;
+import org.apache.felix.scr.impl.manager.SingleComponentManager;
+import org.apache.felix.scr.impl.manager.SingleRefPair;
+import org.apache.felix.scr.impl.manager.components.FakeService;
+import org.apache.felix.scr.impl.metadata.ComponentMetadata;
+import org.apache.felix.scr.impl.metadata.DSVersion;
+import org.apache.felix.scr.impl.metadata.ReferenceMetadata;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.ServiceReference;
+
+import junit.framework.TestCase;
+
+
+public class FieldHandlerTest extends TestCase
+{
+
+    public void test_replace_batched() throws Exception
+    {
+        final ReferenceMetadata metadata = new ReferenceMetadata();
+        metadata.setName( "services" );
+        metadata.setInterface( FakeService.class.getName() );
+        metadata.setCardinality( "0..n" );
+        metadata.setPolicy( "dynamic" );
+        metadata.setField( "services" );
+        metadata.setFieldOption( "replace" );
+        metadata.setFieldCollectionType( "service" );
+
+        final FieldHandler handler = new FieldHandler( metadata, FieldComponent.class );
+        final SingleComponentManager<FieldComponent> icm = new SingleComponentManager<>( newContainer(),
+            new ComponentMethodsImpl<FieldComponent>() );
+        final ComponentContextImpl<FieldComponent> cc = new ComponentContextImpl<>( icm, new MockBundle(), null );
+        final FieldComponent component = new FieldComponent();
+        final ComponentLogger logger = new MockComponentLogger();
+        assertTrue( handler.getInit().init( component, logger ) );
+        final List<FakeService> initial = component.services;
+        assertTrue( initial.isEmpty() );
+
+        final FakeService[] services = new FakeService[3];
+        final ReferenceMethod bind = handler.getBind();
+        for ( int i = 0; i < services.length; i++ )
+        {
+            services[i] = new FakeService() {};
+            final RefPair<FieldComponent, FakeService> refPair = new SingleRefPair<>( new Reference( i ) );
+            refPair.setServiceObject( cc, services[i] );
+            assertSame( MethodResult.VOID, bind.invoke( component,
+                new BindParameters( cc, refPair, i < services.length - 1 ), null ) );
+            if ( i < services.length - 1 )
+            {
+                // the field is not replaced until the last service of the batch
+                assertSame( initial, component.services );
+            }
+        }
+        assertNotSame( initial, component.services );
+        assertEquals( Arrays.asList( services ), component.services );
+    }
+
+    public static class FieldComponent
+    {
+        volatile List<FakeService> services;
+    }
+
+    private ComponentContainer<FieldComponent> newContainer()
+    {
+        final ComponentMetadata metadata = new ComponentMetadata( DSVersion.DS13 );
+        metadata.setName( "foo" );
+        metadata.setImplementationClassName( FieldComponent.class.getName() );
+        metadata.validate();
+        return new ComponentContainer<FieldComponent>()
+        {
+
+            @Override
+            public ComponentActivator getActivator()
+            {
+                return null;
+            }
+
+            @Override
+            public ComponentMetadata getComponentMetadata()
+            {
+                return metadata;
+            }
+
+            @Override
+            public void disposed(SingleComponentManager<FieldComponent> component)
+            {
+            }
+
+            @Override
+            public ComponentLogger getLogger()
+            {
+                return new MockComponentLogger();
+            }
+        };
+    }
+
+    private static class Reference implements ServiceReference<FakeService>
+    {
+        private final long id;
+
+        Reference( long id )
+        {
+            this.id = id;
+        }
+
+        @Override
+        public Object getProperty( String key )
+        {
+            return null;
+        }
+
+        @Override
+        public String[] getPropertyKeys()
+        {
+            return new String[0];
+        }
+
+        // only part of newer versions of the framework API
+        public Dictionary<String, Object> getProperties()
+        {
+            return new Hashtable<>();
+        }
+
+        @Override
+        public Bundle getBundle()
+        {
+            return null;
+        }
+
+        @Override
+        public Bundle[] getUsingBundles()
+        {
+            return null;
+        }
+
+        @Override
+        public boolean isAssignableTo( Bundle bundle, String className )
+        {
+            return true;
+        }
+
+        @Override
+        public int compareTo( Object reference )
+        {
+            // bound services are ordered by service id
+            return Long.compare( id, ( ( Reference ) reference ).id );
+        }
+    }
+}
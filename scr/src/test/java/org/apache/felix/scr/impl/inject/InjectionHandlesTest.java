@@ -0,0 +1,112 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.scr.impl.inject;
+
+
+import java.lang.invoke.MethodHandle;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+
+import junit.framework.TestCase;
+
+
+public class InjectionHandlesTest extends TestCase
+{
+
+    public void test_invoker() throws Throwable
+    {
+        Method method = Component.class.getDeclaredMethod( "bind", String.class, int.class );
+        method.setAccessible( true );
+        MethodHandle invoker = InjectionHandles.getInvoker( method );
+        assertNotNull( invoker );
+        assertSame( invoker, InjectionHandles.getInvoker( method ) );
+
+        Component component = new Component();
+        Object result = (Object) invoker.invokeExact( (Object) component, new Object[] { "value", 2 } );
+        assertNull( result );
+        assertEquals( "valuevalue", component.value );
+    }
+
+
+    public void test_invoker_exception() throws Throwable
+    {
+        Method method = Component.class.getDeclaredMethod( "fail" );
+        method.setAccessible( true );
+        MethodHandle invoker = InjectionHandles.getInvoker( method );
+        try
+        {
+            Object result = (Object) invoker.invokeExact( (Object) new Component(), new Object[0] );
+            fail( "Expected exception, got " + result );
+        }
+        catch ( IllegalStateException ise )
+        {
+            assertEquals( "failed", ise.getMessage() );
+        }
+    }
+
+
+    public void test_field() throws Throwable
+    {
+        Field field = Component.class.getDeclaredField( "value" );
+        field.setAccessible( true );
+        MethodHandle setter = InjectionHandles.getSetter( field );
+        MethodHandle getter = InjectionHandles.getGetter( field );
+        assertNotNull( setter );
+        assertNotNull( getter );
+
+        Component component = new Component();
+        setter.invokeExact( (Object) component, (Object) "set" );
+        assertEquals( "set", component.value );
+        assertEquals( "set", (Object) getter.invokeExact( (Object) component ) );
+    }
+
+
+    public void test_static_field() throws Exception
+    {
+        // static fields cannot be injected, so there are no handles
+        Field field = Component.class.getDeclaredField( "instances" );
+        field.setAccessible( true );
+        assertNull( InjectionHandles.getSetter( field ) );
+        assertNull( InjectionHandles.getGetter( field ) );
+    }
+
+    private static class Component
+    {
+        private static Object instances;
+
+        private String value;
+
+
+        private void bind( String value, int count )
+        {
+            StringBuilder buf = new StringBuilder();
+            for ( int i = 0; i < count; i++ )
+            {
+                buf.append( value );
+            }
+            this.value = buf.toString();
+        }
+
+
+        private void fail()
+        {
+            throw new IllegalStateException( "failed" );
+        }
+    }
+}
@@ -84,6 +84,18 @@ public class MockScrLogger extends ScrLogger
             {
                 return false;
             }
+
+            @Override
+            public int activationThreads()
+            {
+                return 0;
+            }
+
+            @Override
+            public long rebindCoalescingWindow()
+            {
+                return 0;
+            }
         }, new MockBundleContext(new MockBundle()));
     }
 }
\ No newline at end of file
@@ -94,6 +94,13 @@ public class SingleComponentManagerTest
 
         }
 
+        @Override
+        public void schedule(Runnable runnable, long delay)
+        {
+            // TODO Auto-generated method stub
+
+        }
+
         @Override
         public long registerComponentId(AbstractComponentManager<?> sAbstractComponentManager)
         {
@@ -0,0 +1,117 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.scr.impl.metadata;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.felix.scr.impl.metadata.MetadataStoreHelper.MetaDataReader;
+import org.apache.felix.scr.impl.metadata.MetadataStoreHelper.MetaDataWriter;
+
+import junit.framework.TestCase;
+
+public class StoredComponentMetadataTest extends TestCase
+{
+
+    public void testLazyLoad() throws Exception
+    {
+        ComponentMetadata first = createComponentMetadata("first");
+        ComponentMetadata second = createComponentMetadata("second");
+
+        // a store with a string table followed by the components
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        DataOutputStream dataOut = new DataOutputStream(out);
+        MetaDataWriter metaDataWriter = new MetaDataWriter();
+        Set<String> strings = new HashSet<>();
+        first.collectStrings(strings);
+        second.collectStrings(strings);
+        strings.remove(null);
+        dataOut.writeInt(strings.size());
+        for (String s : strings)
+        {
+            metaDataWriter.writeIndexedString(s, dataOut);
+        }
+        dataOut.flush();
+        int offset = out.size();
+        first.store(dataOut, metaDataWriter);
+        second.store(dataOut, metaDataWriter);
+        dataOut.flush();
+        byte[] data = out.toByteArray();
+
+        MetaDataReader metaDataReader = new MetaDataReader();
+        DataInputStream dataIn = new DataInputStream(new ByteArrayInputStream(data));
+        int numStrings = dataIn.readInt();
+        for (int i = 0; i < numStrings; i++)
+        {
+            metaDataReader.readIndexedString(dataIn);
+        }
+        assertEquals(strings.size(), metaDataReader.getStrings().size());
+
+        StoredComponentMetadata stored = new StoredComponentMetadata(metaDataReader,
+            data, offset, data.length - offset, 2);
+        assertFalse(stored.isLoaded());
+        assertEquals(2, stored.size());
+        assertFalse(stored.isEmpty());
+        assertFalse(stored.isLoaded());
+
+        // the stored form is written back as is
+        ByteArrayOutputStream copy = new ByteArrayOutputStream();
+        stored.writeTo(new DataOutputStream(copy));
+        assertTrue(Arrays.equals(Arrays.copyOfRange(data, offset, data.length),
+            copy.toByteArray()));
+        assertFalse(stored.isLoaded());
+
+        assertEquals("first", stored.get(0).getName());
+        assertTrue(stored.isLoaded());
+        assertEquals("second", stored.get(1).getName());
+        assertEquals("second.implementation", stored.get(1).getImplementationClassName());
+        assertSame(stored.get(0), stored.load().get(0));
+    }
+
+    public void testCorrupt() throws Exception
+    {
+        StoredComponentMetadata stored = new StoredComponentMetadata(
+            new MetaDataReader(), new byte[] { 1, 2, 3 }, 0, 3, 1);
+        assertEquals(1, stored.size());
+        try
+        {
+            stored.get(0);
+            fail("Expected corrupt metadata to fail decoding");
+        }
+        catch (IllegalStateException ise)
+        {
+            // expected
+        }
+        assertFalse(stored.isLoaded());
+    }
+
+    private static ComponentMetadata createComponentMetadata(String name)
+    {
+        ComponentMetadata meta = new ComponentMetadata(DSVersion.DS13);
+        meta.setName(name);
+        meta.setImplementationClassName(name + ".implementation");
+        meta.validate();
+        return meta;
+    }
+}
@@ -128,6 +128,9 @@ public abstract class ComponentTestBase
     protected static boolean NONSTANDARD_COMPONENT_FACTORY_BEHAVIOR = false;
     
     protected static boolean CACHE_META_DATA = false;
+
+    // milliseconds to collect services added to dynamic multiple references
+    protected static long REBIND_COALESCING_WINDOW = 0;
     
     protected volatile Log log;
 
@@ -188,11 +191,13 @@ public abstract class ComponentTestBase
                 junitBundles(), frameworkProperty( "org.osgi.framework.bsnversion" ).value( bsnVersionUniqueness ),
                 systemProperty( "ds.factory.enabled" ).value( Boolean.toString( NONSTANDARD_COMPONENT_FACTORY_BEHAVIOR ) ),
                 systemProperty( "ds.loglevel" ).value( DS_LOGLEVEL ),
-                systemProperty( "ds.cache.metadata" ).value( Boolean.toString(CACHE_META_DATA) )
+                systemProperty( "ds.cache.metadata" ).value( Boolean.toString(CACHE_META_DATA) ),
+                systemProperty( "ds.rebind.coalescing.milliseconds" ).value( Long.toString( REBIND_COALESCING_WINDOW ) )
 
                 );
         final Option vmOption = ( paxRunnerVmOption != null )? CoreOptions.vmOption( paxRunnerVmOption ): null;
         NONSTANDARD_COMPONENT_FACTORY_BEHAVIOR = false;
+        REBIND_COALESCING_WINDOW = 0;
         return OptionUtils.combine( base, vmOption );
     }
 
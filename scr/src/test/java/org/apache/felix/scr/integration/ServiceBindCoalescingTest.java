@@ -0,0 +1,108 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.scr.integration;
+
+
+import org.apache.felix.scr.integration.components.SimpleComponent;
+import org.apache.felix.scr.integration.components.SimpleServiceImpl;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.ops4j.pax.exam.junit.PaxExam;
+import org.osgi.service.component.runtime.dto.ComponentConfigurationDTO;
+
+import junit.framework.TestCase;
+
+
+@RunWith(PaxExam.class)
+public class ServiceBindCoalescingTest extends ComponentTestBase
+{
+
+    private static final int WINDOW = 2000;
+
+    static
+    {
+        // uncomment to enable debugging of this test class
+        // paxRunnerVmOption = DEBUG_VM_OPTION;
+
+        descriptorFile = "/integration_test_simple_components_service_binding.xml";
+        REBIND_COALESCING_WINDOW = WINDOW;
+    }
+
+
+    @Test
+    public void test_queued_bind() throws Exception
+    {
+        String name = "test_optional_multiple_dynamic";
+        getDisabledConfigurationAndEnable( name, ComponentConfigurationDTO.ACTIVE );
+        final SimpleComponent comp10 = SimpleComponent.INSTANCE;
+        TestCase.assertNotNull( comp10 );
+        TestCase.assertTrue( comp10.m_multiRef.isEmpty() );
+
+        final SimpleServiceImpl srv1 = SimpleServiceImpl.create( bundleContext, "srv1" );
+        final SimpleServiceImpl srv2 = SimpleServiceImpl.create( bundleContext, "srv2" );
+
+        // services are queued until the window has passed
+        TestCase.assertEquals( 0, comp10.m_multiRefBind );
+        TestCase.assertTrue( comp10.m_multiRef.isEmpty() );
+
+        delay( 2 * WINDOW );
+        final SimpleComponent comp11 = SimpleComponent.INSTANCE;
+        TestCase.assertSame( comp10, comp11 );
+        TestCase.assertEquals( 2, comp11.m_multiRefBind );
+        TestCase.assertEquals( 0, comp11.m_multiRefUnbind );
+        TestCase.assertTrue( comp11.m_multiRef.contains( srv1 ) );
+        TestCase.assertTrue( comp11.m_multiRef.contains( srv2 ) );
+
+        // bound services are still unbound immediately
+        srv1.drop();
+        TestCase.assertEquals( 1, comp11.m_multiRefUnbind );
+        TestCase.assertFalse( comp11.m_multiRef.contains( srv1 ) );
+        TestCase.assertTrue( comp11.m_multiRef.contains( srv2 ) );
+
+        srv2.drop();
+    }
+
+
+    @Test
+    public void test_remove_queued() throws Exception
+    {
+        String name = "test_optional_multiple_dynamic";
+        getDisabledConfigurationAndEnable( name, ComponentConfigurationDTO.ACTIVE );
+        final SimpleComponent comp10 = SimpleComponent.INSTANCE;
+        TestCase.assertNotNull( comp10 );
+
+        final SimpleServiceImpl srv1 = SimpleServiceImpl.create( bundleContext, "srv1" );
+        final SimpleServiceImpl srv2 = SimpleServiceImpl.create( bundleContext, "srv2" );
+
+        // a service removed while it is queued is neither bound nor unbound
+        srv1.drop();
+        TestCase.assertEquals( 0, comp10.m_multiRefUnbind );
+
+        delay( 2 * WINDOW );
+        final SimpleComponent comp11 = SimpleComponent.INSTANCE;
+        TestCase.assertSame( comp10, comp11 );
+        TestCase.assertEquals( 1, comp11.m_multiRefBind );
+        TestCase.assertEquals( 0, comp11.m_multiRefUnbind );
+        TestCase.assertFalse( comp11.m_multiRef.contains( srv1 ) );
+        TestCase.assertTrue( comp11.m_multiRef.contains( srv2 ) );
+
+        srv2.drop();
+        TestCase.assertEquals( 1, comp11.m_multiRefUnbind );
+    }
+}